@@ -8,8 +8,10 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -28,6 +30,7 @@ import com.alibaba.rocketmq.broker.processor.PullMessageProcessor;
 import com.alibaba.rocketmq.broker.processor.QueryMessageProcessor;
 import com.alibaba.rocketmq.broker.processor.SendMessageProcessor;
 import com.alibaba.rocketmq.broker.topic.TopicConfigManager;
+import com.alibaba.rocketmq.broker.transaction.DefaultTransactionCheckExecuter;
 import com.alibaba.rocketmq.common.BrokerConfig;
 import com.alibaba.rocketmq.common.DataVersion;
 import com.alibaba.rocketmq.common.MixAll;
@@ -80,7 +83,9 @@ public class BrokerController {
     // Ϣ̳߳
     private ExecutorService sendMessageExecutor;
     // ȡϢ̳߳
-    private ExecutorService pullMessageExecutor;
+    private ThreadPoolExecutor pullMessageExecutor;
+    // ȡϢ̳߳أΪnullʾ
+    private ThreadPoolExecutor pullMessageColdExecutor;
     // Broker̳߳
     private ExecutorService adminBrokerExecutor;
 
@@ -164,7 +169,8 @@ public class BrokerController {
         // ʼ洢
         if (result) {
             try {
-                this.messageStore = new DefaultMessageStore(this.messageStoreConfig);
+                this.messageStore =
+                        new DefaultMessageStore(this.messageStoreConfig, new DefaultTransactionCheckExecuter(this));
             }
             catch (IOException e) {
                 result = false;
@@ -181,7 +187,9 @@ public class BrokerController {
 
             // ʼ̳߳
             this.sendMessageExecutor =
-                    Executors.newFixedThreadPool(this.brokerConfig.getSendMessageThreadPoolNums(),
+                    new ThreadPoolExecutor(this.brokerConfig.getSendMessageThreadPoolNums(),
+                        this.brokerConfig.getSendMessageThreadPoolNums(), 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(this.brokerConfig.getSendThreadPoolQueueCapacity()),
                         new ThreadFactory() {
 
                             private AtomicInteger threadIndex = new AtomicInteger(0);
@@ -194,7 +202,9 @@ public class BrokerController {
                         });
 
             this.pullMessageExecutor =
-                    Executors.newFixedThreadPool(this.brokerConfig.getPullMessageThreadPoolNums(),
+                    new ThreadPoolExecutor(this.brokerConfig.getPullMessageThreadPoolNums(),
+                        this.brokerConfig.getPullMessageThreadPoolNums(), 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(this.brokerConfig.getPullThreadPoolQueueCapacity()),
                         new ThreadFactory() {
 
                             private AtomicInteger threadIndex = new AtomicInteger(0);
@@ -206,8 +216,28 @@ public class BrokerController {
                             }
                         });
 
+            if (this.brokerConfig.isPullColdLaneEnable()) {
+                this.pullMessageColdExecutor =
+                        new ThreadPoolExecutor(this.brokerConfig.getPullColdThreadPoolNums(),
+                            this.brokerConfig.getPullColdThreadPoolNums(), 0L, TimeUnit.MILLISECONDS,
+                            new LinkedBlockingQueue<Runnable>(this.brokerConfig.getPullColdThreadPoolQueueCapacity()),
+                            new ThreadFactory() {
+
+                                private AtomicInteger threadIndex = new AtomicInteger(0);
+
+
+                                @Override
+                                public Thread newThread(Runnable r) {
+                                    return new Thread(r, "PullMessageColdThread_"
+                                            + this.threadIndex.incrementAndGet());
+                                }
+                            });
+            }
+
             this.adminBrokerExecutor =
-                    Executors.newFixedThreadPool(this.brokerConfig.getAdminBrokerThreadPoolNums(),
+                    new ThreadPoolExecutor(this.brokerConfig.getAdminBrokerThreadPoolNums(),
+                        this.brokerConfig.getAdminBrokerThreadPoolNums(), 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(this.brokerConfig.getAdminBrokerThreadPoolQueueCapacity()),
                         new ThreadFactory() {
 
                             private AtomicInteger threadIndex = new AtomicInteger(0);
@@ -337,6 +367,10 @@ public class BrokerController {
             this.pullMessageExecutor.shutdown();
         }
 
+        if (this.pullMessageColdExecutor != null) {
+            this.pullMessageColdExecutor.shutdown();
+        }
+
         if (this.adminBrokerExecutor != null) {
             this.adminBrokerExecutor.shutdown();
         }
@@ -457,6 +491,16 @@ public class BrokerController {
     }
 
 
+    public ThreadPoolExecutor getPullMessageExecutor() {
+        return pullMessageExecutor;
+    }
+
+
+    public ThreadPoolExecutor getPullMessageColdExecutor() {
+        return pullMessageColdExecutor;
+    }
+
+
     public PullRequestHoldService getPullRequestHoldService() {
         return pullRequestHoldService;
     }
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -39,12 +40,43 @@ public class ProducerManager {
     private final HashMap<String /* group name */, HashMap<Integer/* channel id */, ClientChannelInfo>> groupChannelTable =
             new HashMap<String, HashMap<Integer, ClientChannelInfo>>();
 
+    private final Random random = new Random();
+
 
     public ProducerManager() {
 
     }
 
 
+    /**
+     * زʱͬһProducer Groupѡһ
+     */
+    public ClientChannelInfo pickProducerChannelRandomly(final int producerGroupHashCode) {
+        try {
+            if (this.hashcodeChannelLock.tryLock(LockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                try {
+                    List<ClientChannelInfo> channelInfoList = this.hashcodeChannelTable.get(producerGroupHashCode);
+                    if (channelInfoList != null && !channelInfoList.isEmpty()) {
+                        int index = this.random.nextInt(channelInfoList.size());
+                        return channelInfoList.get(index);
+                    }
+                }
+                finally {
+                    this.hashcodeChannelLock.unlock();
+                }
+            }
+            else {
+                log.warn("ProducerManager pickProducerChannelRandomly lock timeout");
+            }
+        }
+        catch (InterruptedException e) {
+            log.error("", e);
+        }
+
+        return null;
+    }
+
+
     public void scanNotActiveChannel() {
         try {
             if (this.hashcodeChannelLock.tryLock(LockTimeoutMillis, TimeUnit.MILLISECONDS)) {
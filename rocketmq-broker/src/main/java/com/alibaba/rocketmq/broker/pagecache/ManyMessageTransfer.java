@@ -8,6 +8,7 @@ import io.netty.channel.FileRegion;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.List;
 
@@ -21,6 +22,8 @@ import com.alibaba.rocketmq.store.GetMessageResult;
 public class ManyMessageTransfer extends AbstractReferenceCounted implements FileRegion {
     private final ByteBuffer byteBufferHeader;
     private final GetMessageResult getMessageResult;
+    // HeaderдϢھۼд
+    private ByteBuffer[] byteBuffers;
 
 
     public ManyMessageTransfer(ByteBuffer byteBufferHeader, GetMessageResult getMessageResult) {
@@ -31,9 +34,9 @@ public class ManyMessageTransfer extends AbstractReferenceCounted implements Fil
 
     @Override
     public long position() {
-        List<ByteBuffer> messageBufferList = this.getMessageResult.getMessageBufferList();
+        List<ByteBuffer> transferBufferList = this.getMessageResult.getTransferBufferList();
         int pos = 0;
-        for (ByteBuffer bb : messageBufferList) {
+        for (ByteBuffer bb : transferBufferList) {
             pos += bb.position();
         }
         return pos;
@@ -48,12 +51,26 @@ public class ManyMessageTransfer extends AbstractReferenceCounted implements Fil
 
     @Override
     public long transferTo(WritableByteChannel target, long position) throws IOException {
+        // ϢѾϲHeaderϢһд
+        if (target instanceof GatheringByteChannel) {
+            if (null == this.byteBuffers) {
+                List<ByteBuffer> transferBufferList = this.getMessageResult.getTransferBufferList();
+                this.byteBuffers = new ByteBuffer[transferBufferList.size() + 1];
+                this.byteBuffers[0] = this.byteBufferHeader;
+                for (int i = 0; i < transferBufferList.size(); i++) {
+                    this.byteBuffers[i + 1] = transferBufferList.get(i);
+                }
+            }
+
+            return ((GatheringByteChannel) target).write(this.byteBuffers);
+        }
+
         if (this.byteBufferHeader.hasRemaining()) {
             return target.write(this.byteBufferHeader);
         }
         else {
-            List<ByteBuffer> messageBufferList = this.getMessageResult.getMessageBufferList();
-            for (ByteBuffer bb : messageBufferList) {
+            List<ByteBuffer> transferBufferList = this.getMessageResult.getTransferBufferList();
+            for (ByteBuffer bb : transferBufferList) {
                 if (bb.hasRemaining()) {
                     return target.write(bb);
                 }
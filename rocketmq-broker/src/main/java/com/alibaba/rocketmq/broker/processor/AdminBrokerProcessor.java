@@ -6,6 +6,8 @@ package com.alibaba.rocketmq.broker.processor;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.slf4j.Logger;
@@ -95,7 +97,7 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
 
             // ȡBrokerʱϢ
         case GET_BROKER_RUNTIME_INFO:
-            break;
+            return this.getBrokerRuntimeInfo(ctx, request);
 
         case PULL_ALL_CONSUMER_OFFSET:
             break;
@@ -266,6 +268,25 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
     private RemotingCommand getBrokerRuntimeInfo(ChannelHandlerContext ctx, RemotingCommand request) {
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
 
+        HashMap<String, String> runtimeInfo = this.brokerController.getMessageStore().getRuntimeInfo();
+        this.brokerController.getPullMessageProcessor().putRuntimeInfo(runtimeInfo);
+        this.brokerController.getRemotingServer().putRuntimeInfo(runtimeInfo);
+
+        Properties properties = new Properties();
+        for (Map.Entry<String, String> entry : runtimeInfo.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue());
+        }
+
+        try {
+            response.setBody(MixAll.properties2String(properties).getBytes(MixAll.DEFAULT_CHARSET));
+        }
+        catch (UnsupportedEncodingException e) {
+            log.error("", e);
+            response.setCode(ResponseCode.SYSTEM_ERROR_VALUE);
+            response.setRemark("UnsupportedEncodingException " + e);
+            return response;
+        }
+
         response.setCode(ResponseCode.SUCCESS_VALUE);
         response.setRemark(null);
         return response;
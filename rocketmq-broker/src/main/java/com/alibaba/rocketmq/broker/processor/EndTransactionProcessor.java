@@ -73,6 +73,43 @@ public class EndTransactionProcessor implements NettyRequestProcessor {
     }
 
 
+    /**
+     * ǣַֻҪԣ洢Ϣ<br>
+     * Consume QueueָǱϢʱٸݱҵPreparedϢظConsumer
+     */
+    private MessageExtBrokerInner endMessageTransactionLightweight(MessageExt msgExt) {
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setBody(null);
+        msgInner.setFlag(msgExt.getFlag());
+
+        final String tags = msgExt.getTags();
+        if (tags != null) {
+            msgInner.putProperty(Message.PROPERTY_TAGS, tags);
+        }
+        msgInner.putProperty(Message.PROPERTY_PRODUCER_GROUP, msgExt.getProperty(Message.PROPERTY_PRODUCER_GROUP));
+
+        TopicFilterType topicFilterType =
+                (msgExt.getSysFlag() & MessageSysFlag.MultiTagsFlag) == MessageSysFlag.MultiTagsFlag ? TopicFilterType.MULTI_TAG
+                        : TopicFilterType.SINGLE_TAG;
+        long tagsCodeValue = MessageExtBrokerInner.tagsString2tagsCode(topicFilterType, tags);
+        msgInner.setTagsCode(tagsCodeValue);
+        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgInner.getProperties()));
+
+        msgInner.setSysFlag(msgExt.getSysFlag() | MessageSysFlag.TransactionLightweightMarkerFlag);
+        msgInner.setBornTimestamp(msgExt.getBornTimestamp());
+        msgInner.setBornHost(msgExt.getBornHost());
+        msgInner.setStoreHost(msgExt.getStoreHost());
+        msgInner.setReconsumeTimes(msgExt.getReconsumeTimes());
+
+        msgInner.setWaitStoreMsgOK(false);
+
+        msgInner.setTopic(msgExt.getTopic());
+        msgInner.setQueueId(msgExt.getQueueId());
+
+        return msgInner;
+    }
+
+
     @Override
     public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request)
             throws RemotingCommandException {
@@ -105,7 +142,9 @@ public class EndTransactionProcessor implements NettyRequestProcessor {
                 return response;
             }
 
-            MessageExtBrokerInner msgInner = this.endMessageTransaction(msgExt);
+            MessageExtBrokerInner msgInner =
+                    this.brokerController.getMessageStoreConfig().isLightweightTransactionMarkerEnable() ? this
+                        .endMessageTransactionLightweight(msgExt) : this.endMessageTransaction(msgExt);
             msgInner.setSysFlag(MessageSysFlag.resetTransactionValue(msgInner.getSysFlag(),
                 requestHeader.getCommitOrRollback()));
 
@@ -0,0 +1,69 @@
+/**
+ * $Id: PullLaneStats.java 1831 2013-05-16 01:39:51Z shijia.wxr $
+ */
+package com.alibaba.rocketmq.broker.processor;
+
+import java.util.HashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Ϣ̳߳صͳƣݸһ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class PullLaneStats {
+    // ǷͳŶӺʱͨŲֱύ̳߳ص޷ͳ
+    private final boolean waitMeasured;
+    // 
+    private final AtomicLong pullTimes = new AtomicLong(0);
+    // ̳߳Ŷӵܺʱ
+    private final AtomicLong waitTotalMillis = new AtomicLong(0);
+    // ܺʱ
+    private final AtomicLong serviceTotalMillis = new AtomicLong(0);
+    // ̳߳Ŷܾ
+    private final AtomicLong rejectedTimes = new AtomicLong(0);
+
+
+    public PullLaneStats(final boolean waitMeasured) {
+        this.waitMeasured = waitMeasured;
+    }
+
+
+    public void record(final long waitMillis, final long serviceMillis) {
+        this.pullTimes.incrementAndGet();
+        this.waitTotalMillis.addAndGet(waitMillis);
+        this.serviceTotalMillis.addAndGet(serviceMillis);
+    }
+
+
+    public void recordRejected() {
+        this.rejectedTimes.incrementAndGet();
+    }
+
+
+    public void putRuntimeInfo(final String lane, final ThreadPoolExecutor executor,
+            final HashMap<String, String> result) {
+        long times = this.pullTimes.get();
+        result.put(lane + "QueueSize", String.valueOf(executor != null ? executor.getQueue().size() : 0));
+        result.put(lane + "Times", String.valueOf(times));
+        result.put(lane + "RejectedTimes", String.valueOf(this.rejectedTimes.get()));
+        if (this.waitMeasured) {
+            result.put(lane + "AvgWaitMillis",
+                String.format("%.2f", times > 0 ? (double) this.waitTotalMillis.get() / times : 0.0));
+        }
+        result.put(lane + "AvgServiceMillis",
+            String.format("%.2f", times > 0 ? (double) this.serviceTotalMillis.get() / times : 0.0));
+    }
+
+
+    public AtomicLong getPullTimes() {
+        return pullTimes;
+    }
+
+
+    public AtomicLong getRejectedTimes() {
+        return rejectedTimes;
+    }
+}
@@ -9,6 +9,10 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.FileRegion;
 
+import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +42,10 @@ public class PullMessageProcessor implements NettyRequestProcessor {
     private static final Logger log = LoggerFactory.getLogger(MixAll.BrokerLoggerName);
 
     private final BrokerController brokerController;
+    // ȡڴϢͳ
+    private final PullLaneStats hotLaneStats = new PullLaneStats(false);
+    // ȡϢͳ
+    private final PullLaneStats coldLaneStats = new PullLaneStats(true);
 
 
     public PullMessageProcessor(final BrokerController brokerController) {
@@ -46,15 +54,82 @@ public class PullMessageProcessor implements NettyRequestProcessor {
 
 
     @Override
-    public RemotingCommand processRequest(final ChannelHandlerContext ctx, RemotingCommand request)
+    public RemotingCommand processRequest(final ChannelHandlerContext ctx, final RemotingCommand request)
             throws RemotingCommandException {
-        return this.processRequest(ctx.channel(), request, true);
+        final PullMessageRequestHeader requestHeader =
+                (PullMessageRequestHeader) request.decodeCommandCustomHeader(PullMessageRequestHeader.class);
+
+        // ϢѾڴ棬ת̳߳أȱҳжȡڴϢ
+        final ThreadPoolExecutor coldExecutor = this.brokerController.getPullMessageColdExecutor();
+        if (coldExecutor != null
+                && this.brokerController.getMessageStore().checkInDiskByConsumeOffset(requestHeader.getTopic(),
+                    requestHeader.getQueueId(), requestHeader.getQueueOffset())) {
+            final Channel channel = ctx.channel();
+            final long enqueueTimestamp = System.currentTimeMillis();
+            try {
+                coldExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long beginTimestamp = System.currentTimeMillis();
+                        try {
+                            RemotingCommand response =
+                                    PullMessageProcessor.this.processRequest(channel, request, requestHeader, true);
+                            PullMessageProcessor.this.writeResponse(channel, request, response);
+                        }
+                        catch (Throwable e) {
+                            log.error("process cold pull request exception", e);
+                            RemotingCommand response =
+                                    RemotingCommand.createResponseCommand(ResponseCode.SYSTEM_ERROR_VALUE,
+                                        e.getMessage());
+                            PullMessageProcessor.this.writeResponse(channel, request, response);
+                        }
+                        finally {
+                            long now = System.currentTimeMillis();
+                            coldLaneStats.record(beginTimestamp - enqueueTimestamp, now - beginTimestamp);
+                        }
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                this.coldLaneStats.recordRejected();
+                log.warn("cold pull thread pool busy, " + channel.remoteAddress());
+                return RemotingCommand.createResponseCommand(ResponseCode.SYSTEM_BUSY_VALUE,
+                    "[PULL]cold pull thread pool busy, try again later");
+            }
+
+            return null;
+        }
+
+        long beginTimestamp = System.currentTimeMillis();
+        try {
+            return this.processRequest(ctx.channel(), request, requestHeader, true);
+        }
+        finally {
+            this.hotLaneStats.record(0, System.currentTimeMillis() - beginTimestamp);
+        }
     }
 
 
     public void excuteRequestWhenWakeup(final Channel channel, final RemotingCommand request)
             throws RemotingCommandException {
-        final RemotingCommand response = this.processRequest(channel, request, false);
+        final PullMessageRequestHeader requestHeader =
+                (PullMessageRequestHeader) request.decodeCommandCustomHeader(PullMessageRequestHeader.class);
+        final RemotingCommand response = this.processRequest(channel, request, requestHeader, false);
+        this.writeResponse(channel, request, response);
+    }
+
+
+    /**
+     * ̳߳صŶʱ
+     */
+    public void putRuntimeInfo(final HashMap<String, String> result) {
+        this.hotLaneStats.putRuntimeInfo("pullHot", this.brokerController.getPullMessageExecutor(), result);
+        this.coldLaneStats.putRuntimeInfo("pullCold", this.brokerController.getPullMessageColdExecutor(), result);
+    }
+
+
+    private void writeResponse(final Channel channel, final RemotingCommand request,
+            final RemotingCommand response) {
         if (response != null) {
             response.setOpaque(request.getOpaque());
             response.markResponseType();
@@ -81,14 +156,14 @@ public class PullMessageProcessor implements NettyRequestProcessor {
 
 
     private RemotingCommand processRequest(final Channel channel, RemotingCommand request,
-            boolean brokerAllowSuspend) throws RemotingCommandException {
+            final PullMessageRequestHeader requestHeader, boolean brokerAllowSuspend)
+            throws RemotingCommandException {
         RemotingCommand response = RemotingCommand.createResponseCommand(PullMessageResponseHeader.class);
         final PullMessageResponseHeader responseHeader = (PullMessageResponseHeader) response.getCustomHeader();
-        final PullMessageRequestHeader requestHeader =
-                (PullMessageRequestHeader) request.decodeCommandCustomHeader(PullMessageRequestHeader.class);
 
         // ʹsendfileԱҪ
         response.setOpaque(request.getOpaque());
+        response.negotiateHeaderFormat(request);
 
         if (log.isDebugEnabled()) {
             log.debug("receive PullMessage request command, " + request);
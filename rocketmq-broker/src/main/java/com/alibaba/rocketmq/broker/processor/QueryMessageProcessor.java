@@ -71,6 +71,7 @@ public class QueryMessageProcessor implements NettyRequestProcessor {
 
         // ʹsendfileԱҪ
         response.setOpaque(request.getOpaque());
+        response.negotiateHeaderFormat(request);
 
         final QueryMessageResult queryMessageResult =
                 this.brokerController.getMessageStore().queryMessage(requestHeader.getTopic(),
@@ -122,6 +123,7 @@ public class QueryMessageProcessor implements NettyRequestProcessor {
 
         // ʹsendfileԱҪ
         response.setOpaque(request.getOpaque());
+        response.negotiateHeaderFormat(request);
 
         final SelectMapedBufferResult selectMapedBufferResult =
                 this.brokerController.getMessageStore().selectOneMessageByOffset(requestHeader.getOffset());
@@ -0,0 +1,92 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.broker.transaction;
+
+import io.netty.channel.Channel;
+
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.rocketmq.broker.BrokerController;
+import com.alibaba.rocketmq.broker.client.ClientChannelInfo;
+import com.alibaba.rocketmq.common.MixAll;
+import com.alibaba.rocketmq.common.protocol.MQProtos.MQRequestCode;
+import com.alibaba.rocketmq.common.protocol.header.CheckTransactionStateRequestHeader;
+import com.alibaba.rocketmq.remoting.RemotingServer;
+import com.alibaba.rocketmq.remoting.common.RemotingHelper;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.store.SelectMapedBufferResult;
+import com.alibaba.rocketmq.store.transaction.TransactionCheckExecuter;
+
+
+/**
+ * 洢㷢ֳʱδͨProducerӻز״̬
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class DefaultTransactionCheckExecuter implements TransactionCheckExecuter {
+    private static final Logger log = LoggerFactory.getLogger(MixAll.BrokerLoggerName);
+    // زΪOnewayʽͳʱʱ
+    private static final long CheckTransactionTimeoutMillis = 1000 * 3;
+
+    private final BrokerController brokerController;
+
+
+    public DefaultTransactionCheckExecuter(final BrokerController brokerController) {
+        this.brokerController = brokerController;
+    }
+
+
+    @Override
+    public void gotoCheck(int producerGroupHashCode, long tranStateTableOffset, long commitLogOffset,
+            int msgSize) {
+        final RemotingServer remotingServer = this.brokerController.getRemotingServer();
+        if (null == remotingServer) {
+            return;
+        }
+
+        final ClientChannelInfo clientChannelInfo =
+                this.brokerController.getProducerManager().pickProducerChannelRandomly(producerGroupHashCode);
+        if (null == clientChannelInfo) {
+            log.warn("check transaction state, but not find any producer channel, group hash code: {}",
+                producerGroupHashCode);
+            return;
+        }
+
+        // ϢһProducerProducerж״̬
+        final SelectMapedBufferResult selectMapedBufferResult =
+                this.brokerController.getMessageStore().selectOneMessageByOffset(commitLogOffset);
+        if (null == selectMapedBufferResult) {
+            log.warn("check transaction state, but the message not exist, commitLogOffset: {}", commitLogOffset);
+            return;
+        }
+
+        final byte[] body = new byte[selectMapedBufferResult.getSize()];
+        try {
+            ByteBuffer byteBuffer = selectMapedBufferResult.getByteBuffer();
+            byteBuffer.get(body);
+        }
+        finally {
+            selectMapedBufferResult.release();
+        }
+
+        final CheckTransactionStateRequestHeader requestHeader = new CheckTransactionStateRequestHeader();
+        requestHeader.setTranStateTableOffset(tranStateTableOffset);
+        requestHeader.setCommitLogOffset(commitLogOffset);
+        final RemotingCommand request =
+                RemotingCommand.createRequestCommand(MQRequestCode.CHECK_TRANSACTION_STATE_VALUE, requestHeader);
+        request.setBody(body);
+
+        final Channel channel = clientChannelInfo.getChannel();
+        try {
+            remotingServer.invokeOneway(channel, request, CheckTransactionTimeoutMillis);
+        }
+        catch (Exception e) {
+            log.error("check transaction state, invoke producer[" + RemotingHelper.parseChannelRemoteAddr(channel)
+                    + "] exception", e);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.broker.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundMessageHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedMessageChannel;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.broker.BrokerController;
+import com.alibaba.rocketmq.common.BrokerConfig;
+import com.alibaba.rocketmq.common.protocol.MQProtos.MQRequestCode;
+import com.alibaba.rocketmq.common.protocol.header.PullMessageRequestHeader;
+import com.alibaba.rocketmq.remoting.netty.NettyServerConfig;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.ResponseCode;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.MessageStore;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * Ϣڴ̵ת̳߳أ̳߳Ŷʱϵͳæ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class PullMessageProcessorTest {
+    private static final String Topic = "PULL_COLD";
+
+    private BrokerController brokerController;
+    private EmbeddedMessageChannel channel;
+
+
+    @Before
+    public void setUp() throws Exception {
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setNamesrvAddr("127.0.0.1:9876");
+        // ̳߳أ1̣߳Ŷӳ1
+        brokerConfig.setPullColdLaneEnable(true);
+        brokerConfig.setPullColdThreadPoolNums(1);
+        brokerConfig.setPullColdThreadPoolQueueCapacity(1);
+
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 256);
+        messageStoreConfig.setMapedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+        // еϢΪڴ
+        messageStoreConfig.setAccessMessageInMemoryMaxRatio(0);
+
+        this.brokerController = new BrokerController(brokerConfig, new NettyServerConfig(), messageStoreConfig);
+        assertTrue(this.brokerController.initialize());
+        this.brokerController.getMessageStore().start();
+
+        this.channel = new EmbeddedMessageChannel(new ChannelInboundMessageHandlerAdapter<Object>() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, Object msg) throws Exception {
+            }
+        });
+    }
+
+
+    @After
+    public void tearDown() {
+        this.brokerController.shutdown();
+        this.brokerController.getMessageStore().destroy();
+        this.channel.close();
+    }
+
+
+    private void putMessages(final int total) throws Exception {
+        MessageStore messageStore = this.brokerController.getMessageStore();
+        for (int i = 0; i < total; i++) {
+            MessageExtBrokerInner msg = new MessageExtBrokerInner();
+            msg.setTopic(Topic);
+            msg.setTags("TAG1");
+            msg.setBody(new byte[1024]);
+            msg.setQueueId(0);
+            msg.setBornTimestamp(System.currentTimeMillis());
+            msg.setStoreHost(new InetSocketAddress(InetAddress.getLocalHost(), 8123));
+            msg.setBornHost(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+            assertTrue(messageStore.putMessage(msg).isOk());
+        }
+
+        while (messageStore.getMaxOffsetInQuque(Topic, 0) < total) {
+            Thread.sleep(10);
+        }
+    }
+
+
+    /**
+     * ģյԶHeaderл
+     */
+    private static RemotingCommand buildPullRequest(final long queueOffset) throws Exception {
+        PullMessageRequestHeader requestHeader = new PullMessageRequestHeader();
+        requestHeader.setConsumerGroup("PULL_COLD_GROUP");
+        requestHeader.setTopic(Topic);
+        requestHeader.setQueueId(0);
+        requestHeader.setQueueOffset(queueOffset);
+        requestHeader.setMaxMsgNums(32);
+        requestHeader.setSysFlag(0);
+        requestHeader.setCommitOffset(0L);
+        requestHeader.setSuspendTimeoutMillis(0L);
+        requestHeader.setSubscription("*");
+
+        RemotingCommand request =
+                RemotingCommand.createRequestCommand(MQRequestCode.PULL_MESSAGE_VALUE, requestHeader);
+        ByteBuffer byteBuffer = request.encode();
+        // ȥܳ
+        byteBuffer.getInt();
+        return RemotingCommand.decode(byteBuffer.slice());
+    }
+
+
+    @Test
+    public void test_cold_pull_busy_when_queue_full() throws Exception {
+        putMessages(10);
+
+        PullMessageProcessor processor = this.brokerController.getPullMessageProcessor();
+        ThreadPoolExecutor coldExecutor = this.brokerController.getPullMessageColdExecutor();
+        assertNotNull(coldExecutor);
+        ChannelHandlerContext ctx = this.channel.pipeline().firstContext();
+
+        // ռס̳߳Ψһ߳
+        final CountDownLatch startedLatch = new CountDownLatch(1);
+        final CountDownLatch blockLatch = new CountDownLatch(1);
+        coldExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                startedLatch.countDown();
+                try {
+                    blockLatch.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(startedLatch.await(3000, TimeUnit.MILLISECONDS));
+
+        try {
+            // Ϣڴ̣ת̳߳Ŷӣڵǰ߳Ӧ
+            assertNull(processor.processRequest(ctx, buildPullRequest(0)));
+            assertEquals(1, coldExecutor.getQueue().size());
+
+            // Ŷϵͳæ
+            long begin = System.currentTimeMillis();
+            RemotingCommand busy = processor.processRequest(ctx, buildPullRequest(1));
+            assertTrue(System.currentTimeMillis() - begin < 1000);
+            assertNotNull(busy);
+            assertEquals(ResponseCode.SYSTEM_BUSY_VALUE, busy.getCode());
+
+            // ȴϢ̳߳Ӱ죬ڵǰ̴߳
+            RemotingCommand hot = processor.processRequest(ctx, buildPullRequest(10));
+            assertNotNull(hot);
+            assertTrue(ResponseCode.SYSTEM_BUSY_VALUE != hot.getCode());
+            assertEquals(1, coldExecutor.getQueue().size());
+        }
+        finally {
+            blockLatch.countDown();
+        }
+
+        // Ŷӵ̳߳ش
+        for (int i = 0; i < 300 && coldExecutor.getCompletedTaskCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, coldExecutor.getCompletedTaskCount());
+
+        HashMap<String, String> runtimeInfo = new HashMap<String, String>();
+        processor.putRuntimeInfo(runtimeInfo);
+        assertEquals("1", runtimeInfo.get("pullColdTimes"));
+        assertEquals("1", runtimeInfo.get("pullColdRejectedTimes"));
+        assertEquals("1", runtimeInfo.get("pullHotTimes"));
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.broker.transaction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundMessageHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedMessageChannel;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.broker.BrokerController;
+import com.alibaba.rocketmq.broker.client.ClientChannelInfo;
+import com.alibaba.rocketmq.common.BrokerConfig;
+import com.alibaba.rocketmq.common.MessageDecoder;
+import com.alibaba.rocketmq.common.MessageExt;
+import com.alibaba.rocketmq.common.protocol.MQProtos.MQRequestCode;
+import com.alibaba.rocketmq.common.protocol.header.CheckTransactionStateRequestHeader;
+import com.alibaba.rocketmq.remoting.netty.NettyServerConfig;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.store.AppendMessageResult;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.PutMessageResult;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * زݣԼĸProducer
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class DefaultTransactionCheckExecuterTest {
+    private static final String Topic = "TRANSACTION_CHECK";
+    private static final String ProducerGroup = "TRANSACTION_CHECK_GROUP";
+
+    private BrokerController brokerController;
+    private EmbeddedMessageChannel channel;
+    private DefaultTransactionCheckExecuter checkExecuter;
+
+
+    @Before
+    public void setUp() throws Exception {
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setNamesrvAddr("127.0.0.1:9876");
+
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 256);
+        messageStoreConfig.setMapedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+
+        this.brokerController = new BrokerController(brokerConfig, new NettyServerConfig(), messageStoreConfig);
+        assertTrue(this.brokerController.initialize());
+        this.brokerController.getMessageStore().start();
+
+        // ģProducerӣزд
+        this.channel = new EmbeddedMessageChannel(new ChannelInboundMessageHandlerAdapter<Object>() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, Object msg) throws Exception {
+            }
+        });
+        this.brokerController.getProducerManager().registerProducer(ProducerGroup,
+            new ClientChannelInfo(this.channel));
+
+        this.checkExecuter = new DefaultTransactionCheckExecuter(this.brokerController);
+    }
+
+
+    @After
+    public void tearDown() {
+        this.brokerController.shutdown();
+        this.brokerController.getMessageStore().destroy();
+        this.channel.close();
+    }
+
+
+    private AppendMessageResult putMessage() throws Exception {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(Topic);
+        msg.setTags("TAG1");
+        msg.setKeys("KEY1");
+        msg.setBody("Hello, transaction".getBytes());
+        msg.setQueueId(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(new InetSocketAddress(InetAddress.getLocalHost(), 8123));
+        msg.setBornHost(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+
+        PutMessageResult result = this.brokerController.getMessageStore().putMessage(msg);
+        assertTrue(result.isOk());
+        return result.getAppendMessageResult();
+    }
+
+
+    @Test
+    public void test_check_request() throws Exception {
+        // һϢ֮ϢcommitLogOffsetΪ0
+        this.putMessage();
+        AppendMessageResult appendResult = this.putMessage();
+        assertTrue(appendResult.getWroteOffset() > 0);
+
+        final long tranStateTableOffset = 7;
+        this.checkExecuter.gotoCheck(ProducerGroup.hashCode(), tranStateTableOffset,
+            appendResult.getWroteOffset(), appendResult.getWroteBytes());
+
+        RemotingCommand request = (RemotingCommand) this.channel.readOutbound();
+        assertEquals(MQRequestCode.CHECK_TRANSACTION_STATE_VALUE, request.getCode());
+        assertTrue(request.isOnewayRPC());
+
+        // Header¼״̬CommitLogλãProducerӦʱԭ
+        CheckTransactionStateRequestHeader requestHeader =
+                (CheckTransactionStateRequestHeader) request.getCustomHeader();
+        assertEquals(tranStateTableOffset, requestHeader.getTranStateTableOffset().longValue());
+        assertEquals(appendResult.getWroteOffset(), requestHeader.getCommitLogOffset().longValue());
+
+        // bodyĴ洢Ϣ
+        assertEquals(appendResult.getWroteBytes(), request.getBody().length);
+        MessageExt msgExt = MessageDecoder.decode(ByteBuffer.wrap(request.getBody()));
+        assertEquals(Topic, msgExt.getTopic());
+        assertEquals(appendResult.getWroteOffset(), msgExt.getCommitLogOffset());
+        assertArrayEquals("Hello, transaction".getBytes(), msgExt.getBody());
+
+        assertNull(this.channel.readOutbound());
+    }
+
+
+    @Test
+    public void test_no_request_without_producer_or_message() throws Exception {
+        AppendMessageResult appendResult = this.putMessage();
+
+        // Producer Groupû
+        this.checkExecuter.gotoCheck((ProducerGroup + "_NOT_EXIST").hashCode(), 0,
+            appendResult.getWroteOffset(), appendResult.getWroteBytes());
+        assertNull(this.channel.readOutbound());
+
+        // Ϣ
+        this.checkExecuter.gotoCheck(ProducerGroup.hashCode(), 0, appendResult.getWroteOffset() + 1024 * 1024,
+            appendResult.getWroteBytes());
+        assertNull(this.channel.readOutbound());
+    }
+}
@@ -389,4 +389,9 @@ public class DefaultMQPullConsumerImpl implements MQConsumerInner {
     public String getGroupName() {
         return this.defaultMQPullConsumer.getConsumerGroup();
     }
+
+
+    public PullAPIWrapper getPullAPIWrapper() {
+        return pullAPIWrapper;
+    }
 }
@@ -3,8 +3,9 @@
  */
 package com.alibaba.rocketmq.client.impl.consumer;
 
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.alibaba.rocketmq.client.consumer.PullCallback;
 import com.alibaba.rocketmq.client.consumer.ConsumeFromWhichNode;
@@ -27,8 +28,28 @@ import com.alibaba.rocketmq.remoting.exception.RemotingException;
  * 
  */
 public class PullAPIWrapper {
-    private ConcurrentHashMap<MessageQueue, AtomicBoolean/* suggestPullingFromSlave */> pullFromWhichNodeTable =
-            new ConcurrentHashMap<MessageQueue, AtomicBoolean>(32);
+    private ConcurrentHashMap<MessageQueue, PullFromWhichNodeState> pullFromWhichNodeTable =
+            new ConcurrentHashMap<MessageQueue, PullFromWhichNodeState>(32);
+
+    // лͳƣǷлBrokerݽ롢˳ֵͻֻ潨
+    private final AtomicLong switchToSlaveTimes = new AtomicLong(0);
+    private final AtomicLong switchToMasterTimes = new AtomicLong(0);
+    // ѾĸMasterSlaveͣʱ䣬λ
+    private final AtomicLong pullFromMasterMillis = new AtomicLong(0);
+    private final AtomicLong pullFromSlaveMillis = new AtomicLong(0);
+
+    /**
+     * ÿеǰĸڵԼϴлʱ
+     */
+    static class PullFromWhichNodeState {
+        private volatile boolean pullFromSlave;
+        private volatile long lastSwitchTimestamp = System.currentTimeMillis();
+
+
+        public PullFromWhichNodeState(boolean pullFromSlave) {
+            this.pullFromSlave = pullFromSlave;
+        }
+    }
 
     private final MQClientFactory mQClientFactory;
     private final String consumerGroup;
@@ -44,13 +65,48 @@ public class PullAPIWrapper {
 
 
     public void updatePullFromWhichNode(final MessageQueue mq, final boolean suggestPullingFromSlave) {
-        AtomicBoolean suggest = this.pullFromWhichNodeTable.get(mq);
-        if (null == suggest) {
-            this.pullFromWhichNodeTable.put(mq, new AtomicBoolean(suggestPullingFromSlave));
+        PullFromWhichNodeState state = this.pullFromWhichNodeTable.get(mq);
+        if (null == state) {
+            this.pullFromWhichNodeTable.put(mq, new PullFromWhichNodeState(suggestPullingFromSlave));
+            if (suggestPullingFromSlave) {
+                this.switchToSlaveTimes.incrementAndGet();
+            }
         }
-        else {
-            suggest.set(suggestPullingFromSlave);
+        else if (state.pullFromSlave != suggestPullingFromSlave) {
+            long now = System.currentTimeMillis();
+            long stayed = now - state.lastSwitchTimestamp;
+            if (suggestPullingFromSlave) {
+                this.pullFromMasterMillis.addAndGet(stayed);
+                this.switchToSlaveTimes.incrementAndGet();
+            }
+            else {
+                this.pullFromSlaveMillis.addAndGet(stayed);
+                this.switchToMasterTimes.incrementAndGet();
+            }
+            state.pullFromSlave = suggestPullingFromSlave;
+            state.lastSwitchTimestamp = now;
+        }
+    }
+
+
+    /**
+     * лͳ
+     */
+    public HashMap<String, String> getPullFromWhichNodeStats() {
+        HashMap<String, String> result = new HashMap<String, String>();
+        result.put("switchToSlaveTimes", String.valueOf(this.switchToSlaveTimes.get()));
+        result.put("switchToMasterTimes", String.valueOf(this.switchToMasterTimes.get()));
+        result.put("pullFromMasterMillis", String.valueOf(this.pullFromMasterMillis.get()));
+        result.put("pullFromSlaveMillis", String.valueOf(this.pullFromSlaveMillis.get()));
+
+        int slaveQueues = 0;
+        for (PullFromWhichNodeState state : this.pullFromWhichNodeTable.values()) {
+            if (state.pullFromSlave) {
+                slaveQueues++;
+            }
         }
+        result.put("pullFromSlaveQueues", String.valueOf(slaveQueues));
+        return result;
     }
 
 
@@ -60,9 +116,9 @@ public class PullAPIWrapper {
     public ConsumeFromWhichNode recalculatePullFromWhichNode(final MessageQueue mq) {
         switch (this.consumeFromWhichNode) {
         case CONSUME_FROM_MASTER_FIRST:
-            AtomicBoolean suggest = this.pullFromWhichNodeTable.get(mq);
-            if (suggest != null) {
-                if (suggest.get()) {
+            PullFromWhichNodeState state = this.pullFromWhichNodeTable.get(mq);
+            if (state != null) {
+                if (state.pullFromSlave) {
                     return ConsumeFromWhichNode.CONSUME_FROM_SLAVE_FIRST;
                 }
             }
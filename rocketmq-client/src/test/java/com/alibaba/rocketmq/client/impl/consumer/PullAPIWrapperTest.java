@@ -0,0 +1,64 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.client.impl.consumer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.alibaba.rocketmq.client.consumer.ConsumeFromWhichNode;
+import com.alibaba.rocketmq.common.MessageQueue;
+
+
+/**
+ * BrokerĽ֮лϢ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class PullAPIWrapperTest {
+    private final MessageQueue mq = new MessageQueue("TopicTest", "brokerName", 0);
+    private final MessageQueue otherMq = new MessageQueue("TopicTest", "brokerName", 1);
+
+
+    @Test
+    public void test_follow_suggest() {
+        PullAPIWrapper wrapper =
+                new PullAPIWrapper(null, "test_group", ConsumeFromWhichNode.CONSUME_FROM_MASTER_FIRST);
+        // ûн֮ǰMaster
+        assertEquals(ConsumeFromWhichNode.CONSUME_FROM_MASTER_FIRST, wrapper.recalculatePullFromWhichNode(this.mq));
+
+        wrapper.updatePullFromWhichNode(this.mq, true);
+        assertEquals(ConsumeFromWhichNode.CONSUME_FROM_SLAVE_FIRST, wrapper.recalculatePullFromWhichNode(this.mq));
+        // ÿжл
+        assertEquals(ConsumeFromWhichNode.CONSUME_FROM_MASTER_FIRST,
+            wrapper.recalculatePullFromWhichNode(this.otherMq));
+
+        // ͬĽ鲻ظ
+        wrapper.updatePullFromWhichNode(this.mq, true);
+        wrapper.updatePullFromWhichNode(this.mq, false);
+        assertEquals(ConsumeFromWhichNode.CONSUME_FROM_MASTER_FIRST, wrapper.recalculatePullFromWhichNode(this.mq));
+        wrapper.updatePullFromWhichNode(this.mq, true);
+        wrapper.updatePullFromWhichNode(this.otherMq, false);
+
+        HashMap<String, String> stats = wrapper.getPullFromWhichNodeStats();
+        assertEquals("2", stats.get("switchToSlaveTimes"));
+        assertEquals("1", stats.get("switchToMasterTimes"));
+        assertEquals("1", stats.get("pullFromSlaveQueues"));
+    }
+
+
+    @Test
+    public void test_fixed_node_ignore_suggest() {
+        PullAPIWrapper wrapper =
+                new PullAPIWrapper(null, "test_group", ConsumeFromWhichNode.CONSUME_FROM_MASTER_ONLY);
+        wrapper.updatePullFromWhichNode(this.mq, true);
+        assertEquals(ConsumeFromWhichNode.CONSUME_FROM_MASTER_ONLY, wrapper.recalculatePullFromWhichNode(this.mq));
+
+        wrapper = new PullAPIWrapper(null, "test_group", ConsumeFromWhichNode.CONSUME_FROM_SLAVE_FIRST);
+        wrapper.updatePullFromWhichNode(this.mq, false);
+        assertEquals(ConsumeFromWhichNode.CONSUME_FROM_SLAVE_FIRST, wrapper.recalculatePullFromWhichNode(this.mq));
+    }
+}
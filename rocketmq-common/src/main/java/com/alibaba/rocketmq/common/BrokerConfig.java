@@ -34,6 +34,15 @@ public class BrokerConfig {
     private int sendMessageThreadPoolNums = Runtime.getRuntime().availableProcessors() * 6;
     private int pullMessageThreadPoolNums = Runtime.getRuntime().availableProcessors() * 6;
     private int adminBrokerThreadPoolNums = 8;
+    // ̳߳Ŷޣϵͳæ
+    private int sendThreadPoolQueueCapacity = 10000;
+    private int pullThreadPoolQueueCapacity = 10000;
+    private int adminBrokerThreadPoolQueueCapacity = 10000;
+    // ȡϢڴʱǷŵ̳߳شȡڴϢ
+    private boolean pullColdLaneEnable = true;
+    private int pullColdThreadPoolNums = 8;
+    // ȡŶޣ򷵻ϵͳæ
+    private int pullColdThreadPoolQueueCapacity = 1024;
 
     private String topicConfigPath = System.getProperty("user.home") + File.separator + "store"
             + File.separator + "config" + File.separator + "topics.properties";
@@ -164,6 +173,36 @@ public class BrokerConfig {
     }
 
 
+    public boolean isPullColdLaneEnable() {
+        return pullColdLaneEnable;
+    }
+
+
+    public void setPullColdLaneEnable(boolean pullColdLaneEnable) {
+        this.pullColdLaneEnable = pullColdLaneEnable;
+    }
+
+
+    public int getPullColdThreadPoolNums() {
+        return pullColdThreadPoolNums;
+    }
+
+
+    public void setPullColdThreadPoolNums(int pullColdThreadPoolNums) {
+        this.pullColdThreadPoolNums = pullColdThreadPoolNums;
+    }
+
+
+    public int getPullColdThreadPoolQueueCapacity() {
+        return pullColdThreadPoolQueueCapacity;
+    }
+
+
+    public void setPullColdThreadPoolQueueCapacity(int pullColdThreadPoolQueueCapacity) {
+        this.pullColdThreadPoolQueueCapacity = pullColdThreadPoolQueueCapacity;
+    }
+
+
     public int getAdminBrokerThreadPoolNums() {
         return adminBrokerThreadPoolNums;
     }
@@ -174,6 +213,36 @@ public class BrokerConfig {
     }
 
 
+    public int getSendThreadPoolQueueCapacity() {
+        return sendThreadPoolQueueCapacity;
+    }
+
+
+    public void setSendThreadPoolQueueCapacity(int sendThreadPoolQueueCapacity) {
+        this.sendThreadPoolQueueCapacity = sendThreadPoolQueueCapacity;
+    }
+
+
+    public int getPullThreadPoolQueueCapacity() {
+        return pullThreadPoolQueueCapacity;
+    }
+
+
+    public void setPullThreadPoolQueueCapacity(int pullThreadPoolQueueCapacity) {
+        this.pullThreadPoolQueueCapacity = pullThreadPoolQueueCapacity;
+    }
+
+
+    public int getAdminBrokerThreadPoolQueueCapacity() {
+        return adminBrokerThreadPoolQueueCapacity;
+    }
+
+
+    public void setAdminBrokerThreadPoolQueueCapacity(int adminBrokerThreadPoolQueueCapacity) {
+        this.adminBrokerThreadPoolQueueCapacity = adminBrokerThreadPoolQueueCapacity;
+    }
+
+
     public String getTopicConfigPath() {
         return topicConfigPath;
     }
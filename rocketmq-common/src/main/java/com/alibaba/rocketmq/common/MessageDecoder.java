@@ -35,9 +35,16 @@ public class MessageDecoder {
      * 洢¼ֶλ
      */
     public final static int MessageMagicCodePostion = 4;
+    public final static int MessageQueueIdPostion = 12;
     public final static int MessageFlagPostion = 16;
+    public final static int MessageQueueOffsetPostion = 20;
     public final static int MessagePhysicOffsetPostion = 28;
+    public final static int MessageSysFlagPostion = 36;
     public final static int MessageStoreTimestampPostion = 56;
+    public final static int MessageStoreHostPostion = 64;
+    public final static int MessagePreparedTransactionOffsetPostion = 76;
+    public final static int MessageBodyLengthPostion = 84;
+    public final static int MessageBodyPostion = 88;
 
 
     public static String createMessageId(final ByteBuffer input, final int time, final ByteBuffer addr,
@@ -275,5 +282,66 @@ public class MessageDecoder {
         return map;
     }
 
+
+    /**
+     * ֱлԴɾĳԣԱԭ˳򣬱ⷴлл
+     */
+    public static String clearProperty(final String properties, final String name) {
+        if (null == properties || properties.length() == 0) {
+            return properties;
+        }
+
+        final String item = name + NAME_VALUE_SEPARATOR;
+        int begin = -1;
+        if (properties.startsWith(item)) {
+            begin = 0;
+        }
+        else {
+            int index = properties.indexOf(PROPERTY_SEPARATOR + item);
+            if (index >= 0) {
+                begin = index + 1;
+            }
+        }
+
+        if (begin < 0) {
+            return properties;
+        }
+
+        int end = properties.indexOf(PROPERTY_SEPARATOR, begin);
+        end = (end < 0) ? properties.length() : end + 1;
+        return properties.substring(0, begin) + properties.substring(end);
+    }
+
+
+
+    /**
+     * ֱлԴϲĳԣⷴлȫ
+     */
+    public static String getProperty(final String properties, final String name) {
+        if (null == properties || properties.length() == 0) {
+            return null;
+        }
+
+        final String item = name + NAME_VALUE_SEPARATOR;
+        int begin = -1;
+        if (properties.startsWith(item)) {
+            begin = item.length();
+        }
+        else {
+            int index = properties.indexOf(PROPERTY_SEPARATOR + item);
+            if (index >= 0) {
+                begin = index + 1 + item.length();
+            }
+        }
+
+        if (begin < 0) {
+            return null;
+        }
+
+        int end = properties.indexOf(PROPERTY_SEPARATOR, begin);
+        end = (end < 0) ? properties.length() : end;
+        return properties.substring(begin, end);
+    }
+
     private static final Logger log = LoggerFactory.getLogger(MixAll.CommonLoggerName);
 }
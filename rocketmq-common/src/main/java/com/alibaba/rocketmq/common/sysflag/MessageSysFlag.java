@@ -23,6 +23,11 @@ public class MessageSysFlag {
     public final static int TransactionCommitType = (0x2 << 2);
     public final static int TransactionRollbackType = (0x3 << 2);
 
+    /**
+     * ǣϢֻ¼PreparedϢλãظ洢Ϣ
+     */
+    public final static int TransactionLightweightMarkerFlag = (0x1 << 4);
+
 
     public static int getTransactionValue(final int flag) {
         return flag & TransactionRollbackType;
@@ -5,6 +5,7 @@ package com.alibaba.rocketmq.remoting;
 
 import io.netty.channel.Channel;
 
+import java.util.HashMap;
 import java.util.concurrent.Executor;
 
 import com.alibaba.rocketmq.remoting.exception.RemotingSendRequestException;
@@ -45,4 +46,10 @@ public interface RemotingServer {
 
 
     public void shutdown();
+
+
+    /**
+     * ̳߳ŶŶӺʱܾ
+     */
+    public void putRuntimeInfo(final HashMap<String, String> result);
 }
@@ -4,6 +4,7 @@
 package com.alibaba.rocketmq.remoting.common;
 
 import io.netty.channel.Channel;
+import io.netty.channel.local.LocalAddress;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -227,12 +228,14 @@ public class RemotingHelper {
                  */
                 socketChannel.socket().setSoTimeout((int) timeoutMillis);
 
-                // 
-                ByteBuffer byteBufferRequest = request.encode();
-                while (byteBufferRequest.hasRemaining()) {
-                    int length = socketChannel.write(byteBufferRequest);
+                // ݣHeaderbodyֿۼдbodyٿ·Ļ
+                ByteBuffer[] byteBufferRequest = new ByteBuffer[] { request.encodeHeader(), null };
+                byteBufferRequest[1] =
+                        request.getBody() != null ? ByteBuffer.wrap(request.getBody()) : ByteBuffer.allocate(0);
+                while (byteBufferRequest[1].hasRemaining() || byteBufferRequest[0].hasRemaining()) {
+                    long length = socketChannel.write(byteBufferRequest);
                     if (length > 0) {
-                        if (byteBufferRequest.hasRemaining()) {
+                        if (byteBufferRequest[1].hasRemaining()) {
                             if ((System.currentTimeMillis() - beginTime) > timeoutMillis) {
                                 // ʱ
                                 throw new RemotingSendRequestException(addr);
@@ -321,6 +324,11 @@ public class RemotingHelper {
 
     public static String parseChannelRemoteAddr(final Channel channel) {
         final SocketAddress remote = channel.remoteAddress();
+        // ڴӣʹID
+        if (remote instanceof LocalAddress) {
+            return ((LocalAddress) remote).id();
+        }
+
         final String addr = remote != null ? remote.toString() : "";
 
         if (addr.length() > 0) {
@@ -16,6 +16,8 @@ import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
 
 
 /**
@@ -113,6 +115,44 @@ public class RemotingUtil {
     }
 
 
+    /**
+     * ĵַػַ
+     */
+    private static volatile Set<String> localInetAddrs;
+
+
+    private static Set<String> getLocalInetAddrs() {
+        Set<String> addrs = localInetAddrs;
+        if (null == addrs) {
+            addrs = new HashSet<String>();
+            try {
+                Enumeration<NetworkInterface> enumeration = NetworkInterface.getNetworkInterfaces();
+                while (enumeration.hasMoreElements()) {
+                    Enumeration<InetAddress> en = enumeration.nextElement().getInetAddresses();
+                    while (en.hasMoreElements()) {
+                        addrs.add(en.nextElement().getHostAddress());
+                    }
+                }
+            }
+            catch (SocketException e) {
+                e.printStackTrace();
+            }
+            addrs.add("localhost");
+            localInetAddrs = addrs;
+        }
+
+        return addrs;
+    }
+
+
+    /**
+     * жǷΪMixAll.isLocalAddrַͬȽ
+     */
+    public static boolean isLocalAddr(final String host) {
+        return getLocalInetAddrs().contains(host);
+    }
+
+
     public static String normalizeHostAddress(final InetAddress localHost) {
         if (localHost instanceof Inet6Address) {
             return "[" + localHost.getHostAddress() + "]";
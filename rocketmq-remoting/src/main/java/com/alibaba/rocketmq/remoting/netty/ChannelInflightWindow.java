@@ -0,0 +1,124 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * ӵ첽Onewayô<br>
+ * ʱʧܣ÷RTT󡢳ԼСڣAIMD
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class ChannelInflightWindow {
+    // RTT׼RTTıΪӵ
+    private static final int CongestionRttRatio = 4;
+    // RTTСʱĶӵ
+    private static final long CongestionRttSlackMillis = 50;
+    // ׼RTTȡһڵСRTTڽʱ²Ӧ·仯
+    private static final long BaseRttPeriodMillis = 1000 * 10;
+
+    private final int minSize;
+    private final int maxSize;
+    private volatile int size;
+    private final AtomicInteger inflight = new AtomicInteger(0);
+
+    // ֶreleaseм
+    private long baseRttMillis = -1;
+    private long periodMinRttMillis = Long.MAX_VALUE;
+    private long periodBeginTimestamp = System.currentTimeMillis();
+    private long lastDecreaseTimestamp = 0;
+    private int ackTimes = 0;
+
+
+    public ChannelInflightWindow(final int initSize, final int minSize, final int maxSize) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.size = Math.min(this.maxSize, Math.max(this.minSize, initSize));
+    }
+
+
+    /**
+     * ȡ
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            int current = this.inflight.get();
+            if (current >= this.size) {
+                return false;
+            }
+
+            if (this.inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+
+    public boolean isFull() {
+        return this.inflight.get() >= this.size;
+    }
+
+
+    /**
+     * ͷŴڣݱεõRTTڴС
+     * 
+     * @param rttMillis
+     *            յӦOnewayΪдɣĺʱ
+     * @param success
+     *            falseʾʱ߷ʧ
+     */
+    public void release(final long rttMillis, final boolean success) {
+        this.inflight.decrementAndGet();
+
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            if (success) {
+                this.periodMinRttMillis = Math.min(this.periodMinRttMillis, rttMillis);
+                if (this.baseRttMillis < 0 || rttMillis < this.baseRttMillis) {
+                    this.baseRttMillis = rttMillis;
+                }
+
+                if (now - this.periodBeginTimestamp > BaseRttPeriodMillis) {
+                    this.baseRttMillis = this.periodMinRttMillis;
+                    this.periodMinRttMillis = Long.MAX_VALUE;
+                    this.periodBeginTimestamp = now;
+                }
+            }
+
+            boolean congested =
+                    !success || rttMillis > this.baseRttMillis * CongestionRttRatio + CongestionRttSlackMillis;
+            if (congested) {
+                // ͬһӵֻСһδ
+                if (now - this.lastDecreaseTimestamp > Math.max(this.baseRttMillis, CongestionRttSlackMillis)) {
+                    this.size = Math.max(this.minSize, this.size / 2);
+                    this.lastDecreaseTimestamp = now;
+                }
+                this.ackTimes = 0;
+            }
+            else if (++this.ackTimes >= this.size) {
+                this.size = Math.min(this.maxSize, this.size + 1);
+                this.ackTimes = 0;
+            }
+        }
+    }
+
+
+    public int getSize() {
+        return size;
+    }
+
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return "ChannelInflightWindow [size=" + size + ", inflight=" + inflight + ", minSize=" + minSize
+                + ", maxSize=" + maxSize + "]";
+    }
+}
@@ -17,6 +17,26 @@ public class NettyClientConfig {
     private long connectTimeoutMillis = 3000;
     // channel1Ӳ ͹ر
     private long channelNotActiveInterval = 1000 * 60;
+    // ϲдһϲдСڵ1ʾϲ
+    private int clientWriteBatchMaxWrites = 64;
+    // ÿַName Server̶ʹ1
+    private int clientChannelPoolSize = 1;
+    // ѡԣROUND_ROBIN, LEAST_INFLIGHT, REQUEST_CODE_LANE
+    private String clientChannelSelectPolicy = "ROUND_ROBIN";
+    // REQUEST_CODE_LANE¶ռӵ룬ŷָ˳12...ӣʹõ0
+    // ڳʱŶԳȡģͬͬһʱֻڳл
+    private String clientChannelLaneCodes = "";
+    // 첽Onewayãʱʧܣٵȴȫź
+    private boolean clientChannelWindowEnable = false;
+    // ӴڵĳʼСֵRTTСֵֵ֮
+    private int clientChannelWindowInitSize = 32;
+    private int clientChannelWindowMinSize = 4;
+    private int clientChannelWindowMaxSize = 256;
+    // ڱҿڴʱʹùڴӣֻ֧HotSpot x86_64ƽ̨ȻֻTCP
+    private boolean clientLocalTransportEnable = false;
+    private String clientLocalTransportDir = SharedMemoryConnection.DefaultDir;
+    // ÿλĴСҪ֡
+    private int clientLocalTransportRingSize = 1024 * 1024 * 16;
 
 
     public int getClientWorkerThreads() {
@@ -87,4 +107,114 @@ public class NettyClientConfig {
     public void setClientAsyncSemaphoreValue(int clientAsyncSemaphoreValue) {
         this.clientAsyncSemaphoreValue = clientAsyncSemaphoreValue;
     }
+
+
+    public int getClientWriteBatchMaxWrites() {
+        return clientWriteBatchMaxWrites;
+    }
+
+
+    public void setClientWriteBatchMaxWrites(int clientWriteBatchMaxWrites) {
+        this.clientWriteBatchMaxWrites = clientWriteBatchMaxWrites;
+    }
+
+
+    public int getClientChannelPoolSize() {
+        return clientChannelPoolSize;
+    }
+
+
+    public void setClientChannelPoolSize(int clientChannelPoolSize) {
+        this.clientChannelPoolSize = clientChannelPoolSize;
+    }
+
+
+    public String getClientChannelSelectPolicy() {
+        return clientChannelSelectPolicy;
+    }
+
+
+    public void setClientChannelSelectPolicy(String clientChannelSelectPolicy) {
+        this.clientChannelSelectPolicy = clientChannelSelectPolicy;
+    }
+
+
+    public String getClientChannelLaneCodes() {
+        return clientChannelLaneCodes;
+    }
+
+
+    public void setClientChannelLaneCodes(String clientChannelLaneCodes) {
+        this.clientChannelLaneCodes = clientChannelLaneCodes;
+    }
+
+
+    public boolean isClientChannelWindowEnable() {
+        return clientChannelWindowEnable;
+    }
+
+
+    public void setClientChannelWindowEnable(boolean clientChannelWindowEnable) {
+        this.clientChannelWindowEnable = clientChannelWindowEnable;
+    }
+
+
+    public int getClientChannelWindowInitSize() {
+        return clientChannelWindowInitSize;
+    }
+
+
+    public void setClientChannelWindowInitSize(int clientChannelWindowInitSize) {
+        this.clientChannelWindowInitSize = clientChannelWindowInitSize;
+    }
+
+
+    public int getClientChannelWindowMinSize() {
+        return clientChannelWindowMinSize;
+    }
+
+
+    public void setClientChannelWindowMinSize(int clientChannelWindowMinSize) {
+        this.clientChannelWindowMinSize = clientChannelWindowMinSize;
+    }
+
+
+    public int getClientChannelWindowMaxSize() {
+        return clientChannelWindowMaxSize;
+    }
+
+
+    public void setClientChannelWindowMaxSize(int clientChannelWindowMaxSize) {
+        this.clientChannelWindowMaxSize = clientChannelWindowMaxSize;
+    }
+
+
+    public boolean isClientLocalTransportEnable() {
+        return clientLocalTransportEnable;
+    }
+
+
+    public void setClientLocalTransportEnable(boolean clientLocalTransportEnable) {
+        this.clientLocalTransportEnable = clientLocalTransportEnable;
+    }
+
+
+    public String getClientLocalTransportDir() {
+        return clientLocalTransportDir;
+    }
+
+
+    public void setClientLocalTransportDir(String clientLocalTransportDir) {
+        this.clientLocalTransportDir = clientLocalTransportDir;
+    }
+
+
+    public int getClientLocalTransportRingSize() {
+        return clientLocalTransportRingSize;
+    }
+
+
+    public void setClientLocalTransportRingSize(int clientLocalTransportRingSize) {
+        this.clientLocalTransportRingSize = clientLocalTransportRingSize;
+    }
 }
@@ -6,6 +6,7 @@ package com.alibaba.rocketmq.remoting.netty;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.AttributeKey;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +22,9 @@ import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
 public class NettyDecoder extends LengthFieldBasedFrameDecoder {
     private static final Logger log = LoggerFactory.getLogger(RemotingHelper.RemotingLogName);
     private static final int FRAME_MAX_LENGTH = 1024 * 1024 * 8;
+    // Զ˿ԽսHeaderʽ
+    public static final AttributeKey<Boolean> CompactHeaderAcceptedKey = new AttributeKey<Boolean>(
+        "rocketmq.remoting.compactHeaderAccepted");
 
 
     public NettyDecoder() {
@@ -36,7 +40,16 @@ public class NettyDecoder extends LengthFieldBasedFrameDecoder {
                 return null;
             }
 
-            return RemotingCommand.decode(frame.array());
+            // ֱ֡Ͻ룬Ҫڴ
+            RemotingCommand cmd = RemotingCommand.decode(frame.nioBuffer());
+            // Զ˷ոʽԽգ֮Զ˵ʹýոʽ
+            if (cmd.isCompactHeader() || (!cmd.isResponseType() && cmd.isCompactHeaderAccepted())) {
+                if (!Boolean.TRUE.equals(ctx.channel().attr(CompactHeaderAcceptedKey).get())) {
+                    ctx.channel().attr(CompactHeaderAcceptedKey).set(Boolean.TRUE);
+                }
+            }
+
+            return cmd;
         }
         catch (Exception e) {
             log.error("decode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
@@ -45,4 +58,14 @@ public class NettyDecoder extends LengthFieldBasedFrameDecoder {
 
         return null;
     }
+
+
+    /**
+     * ֡ٿ·Ļֱѽ<br>
+     * decodeǰѽϣbodyѾԲҪretain
+     */
+    @Override
+    protected ByteBuf extractFrame(ByteBuf buffer, int index, int length) {
+        return buffer.slice(index, length);
+    }
 }
\ No newline at end of file
@@ -30,9 +30,17 @@ public class NettyEncoder extends MessageToByteEncoder<Object> {
         try {
             if (msg instanceof RemotingCommand) {
                 cmd = (RemotingCommand) msg;
-                ByteBuffer header = cmd.encodeHeader();
-                out.writeBytes(header);
+                // ӦЭ̸ʽݶԶǷԽսոʽ
+                boolean compact =
+                        cmd.isResponseType() ? cmd.isCompactHeader() : RemotingCommand.isCompactHeaderEnable()
+                                && Boolean.TRUE.equals(ctx.channel().attr(NettyDecoder.CompactHeaderAcceptedKey)
+                                    .get());
                 byte[] body = cmd.getBody();
+                int bodyLength = body != null ? body.length : 0;
+                ByteBuffer header = cmd.encodeHeader(bodyLength, compact);
+                // һԤ֡ռ䣬Headerbodyֱд뷢ͻΪٿд
+                out.ensureWritable(header.remaining() + bodyLength);
+                out.writeBytes(header);
                 if (body != null) {
                     out.writeBytes(body);
                 }
@@ -7,16 +7,21 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,12 +56,26 @@ public abstract class NettyRemotingAbstract {
     protected final ConcurrentHashMap<Integer /* opaque */, ResponseFuture> responseTable =
             new ConcurrentHashMap<Integer, ResponseFuture>(256);
 
+    // ʱ̶ֿȣ첽óʱľ
+    private static final long ResponseTimerTickMillis = 10;
+    private static final int ResponseTimerTicksPerWheel = 512;
+
+    // 첽óʱʱ֣ResponseFutureʱעᣬյӦʱȡⶨʱȫɨ
+    protected final HashedWheelTimer responseTimer;
+
     // Ĭ봦
     protected Pair<NettyRequestProcessor, Executor> defaultRequestProcessor;
 
-    // עĸRPC
-    protected final HashMap<Integer/* request code */, Pair<NettyRequestProcessor, Executor>> processorTable =
-            new HashMap<Integer, Pair<NettyRequestProcessor, Executor>>(64);
+    // ޣͳƱֱ±
+    public static final int MaxRequestCode = 1024;
+
+    // עĸRPC±Ϊrequest code
+    protected final AtomicReferenceArray<Pair<NettyRequestProcessor, Executor>> processorTable =
+            new AtomicReferenceArray<Pair<NettyRequestProcessor, Executor>>(MaxRequestCode);
+
+    // ͳ̳߳Ŷ״յʱ
+    protected final AtomicReferenceArray<RequestCodeStats> requestCodeStatsTable =
+            new AtomicReferenceArray<RequestCodeStats>(MaxRequestCode);
 
     protected final NettyEventExecuter nettyEventExecuter = new NettyEventExecuter();
 
@@ -129,18 +148,79 @@ public abstract class NettyRemotingAbstract {
     public NettyRemotingAbstract(final int permitsOneway, final int permitsAsync) {
         this.semaphoreOneway = new Semaphore(permitsOneway, true);
         this.semaphoreAsync = new Semaphore(permitsAsync, true);
+        this.responseTimer = new HashedWheelTimer(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "NettyResponseTimer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, ResponseTimerTickMillis, TimeUnit.MILLISECONDS, ResponseTimerTicksPerWheel);
+    }
+
+
+    private static boolean isRequestCodeInRange(final int requestCode) {
+        return requestCode >= 0 && requestCode < MaxRequestCode;
+    }
+
+
+    protected void putProcessor(final int requestCode, final Pair<NettyRequestProcessor, Executor> pair) {
+        if (!isRequestCodeInRange(requestCode)) {
+            throw new IllegalArgumentException("request code " + requestCode + " out of range [0, "
+                    + MaxRequestCode + ")");
+        }
+
+        this.processorTable.set(requestCode, pair);
+    }
+
+
+    /**
+     * ȡӦͳƣ򴴽볬Χnull
+     */
+    public RequestCodeStats getRequestCodeStats(final int requestCode) {
+        if (!isRequestCodeInRange(requestCode)) {
+            return null;
+        }
+
+        RequestCodeStats stats = this.requestCodeStatsTable.get(requestCode);
+        if (null == stats) {
+            this.requestCodeStatsTable.compareAndSet(requestCode, null, new RequestCodeStats(requestCode));
+            stats = this.requestCodeStatsTable.get(requestCode);
+        }
+
+        return stats;
+    }
+
+
+    /**
+     * ŶŶӺʱܾ
+     */
+    public void putRuntimeInfo(final HashMap<String, String> result) {
+        for (int i = 0; i < this.requestCodeStatsTable.length(); i++) {
+            RequestCodeStats stats = this.requestCodeStatsTable.get(i);
+            if (stats != null) {
+                stats.putRuntimeInfo(result);
+            }
+        }
     }
 
 
     public void processRequestCommand(final ChannelHandlerContext ctx, final RemotingCommand cmd) {
-        final Pair<NettyRequestProcessor, Executor> matched = this.processorTable.get(cmd.getCode());
+        final Pair<NettyRequestProcessor, Executor> matched =
+                isRequestCodeInRange(cmd.getCode()) ? this.processorTable.get(cmd.getCode()) : null;
         final Pair<NettyRequestProcessor, Executor> pair =
                 null == matched ? this.defaultRequestProcessor : matched;
 
         if (pair != null) {
+            final RequestCodeStats stats = this.getRequestCodeStats(cmd.getCode());
+            final long enqueueTimestamp = System.currentTimeMillis();
             Runnable run = new Runnable() {
                 @Override
                 public void run() {
+                    if (stats != null) {
+                        stats.recordDequeue(System.currentTimeMillis() - enqueueTimestamp);
+                    }
+
                     try {
                         final RemotingCommand response = pair.getObject1().processRequest(ctx, cmd);
                         if (cmd.isOnewayRPC()) {
@@ -154,6 +234,7 @@ public abstract class NettyRemotingAbstract {
                             if (response != null) {
                                 response.setOpaque(cmd.getOpaque());
                                 response.markResponseType();
+                                response.negotiateHeaderFormat(cmd);
                                 try {
                                     ctx.write(response).addListener(new ChannelFutureListener() {
                                         @Override
@@ -196,27 +277,23 @@ public abstract class NettyRemotingAbstract {
                 }
             };
 
-            boolean executed = false;
-            for (int retry = 0; retry < 3 && !executed; retry++) {
-                try {
-                    pair.getObject2().execute(run);
-                    executed = true;
-                    break;
-                }
-                catch (RejectedExecutionException e) {
+            if (stats != null) {
+                stats.recordEnqueue();
+            }
+
+            // ̳߳ŶʱϵͳæIO߳Իȴ
+            try {
+                pair.getObject2().execute(run);
+            }
+            catch (RejectedExecutionException e) {
+                long rejectedTimes = stats != null ? stats.recordRejected() : 1;
+                // ʱÿ󶼻ᱻܾ־ӡ
+                if (rejectedTimes % 1000 == 1) {
                     plog.warn(RemotingHelper.parseChannelRemoteAddr(ctx.channel())
-                            + ", system thread pool busy, RejectedExecutionException "
-                            + pair.getObject2().toString());
-                    try {
-                        Thread.sleep(2);
-                    }
-                    catch (InterruptedException e1) {
-                        plog.error("", e1);
-                    }
+                            + ", system thread pool busy, RejectedExecutionException " + rejectedTimes
+                            + " times, request code " + cmd.getCode() + " " + pair.getObject2().toString());
                 }
-            }
 
-            if (!executed) {
                 if (!cmd.isOnewayRPC()) {
                     final RemotingCommand response =
                             RemotingCommand.createResponseCommand(ResponseCode.SYSTEM_BUSY_VALUE,
@@ -238,47 +315,17 @@ public abstract class NettyRemotingAbstract {
 
 
     public void processResponseCommand(ChannelHandlerContext ctx, RemotingCommand cmd) {
-        final ResponseFuture responseFuture = responseTable.get(cmd.getOpaque());
+        // ȴӱժ볬ʱ֤صִֻһ
+        final ResponseFuture responseFuture = responseTable.remove(cmd.getOpaque());
         if (responseFuture != null) {
+            responseFuture.cancelTimeout();
             responseFuture.setResponseCommand(cmd);
 
             responseFuture.release();
 
             // 첽
             if (responseFuture.getInvokeCallback() != null) {
-                boolean runInThisThread = false;
-                Executor executor = this.getCallbackExecutor();
-                if (executor != null) {
-                    try {
-                        executor.execute(new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    responseFuture.getInvokeCallback().operationComplete(responseFuture);
-                                }
-                                catch (Throwable e) {
-                                    plog.warn("excute callback in executor exception, and callback throw", e);
-                                }
-                            }
-                        });
-                    }
-                    catch (Exception e) {
-                        runInThisThread = true;
-                        plog.warn("excute callback in executor exception, maybe executor busy", e);
-                    }
-                }
-                else {
-                    runInThisThread = true;
-                }
-
-                if (runInThisThread) {
-                    try {
-                        responseFuture.getInvokeCallback().operationComplete(responseFuture);
-                    }
-                    catch (Throwable e) {
-                        plog.warn("", e);
-                    }
-                }
+                this.executeInvokeCallback(responseFuture, false);
             }
             // ͬ
             else {
@@ -290,8 +337,55 @@ public abstract class NettyRemotingAbstract {
                     + RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
             plog.warn(cmd.toString());
         }
+    }
+
+
+    /**
+     * ڻصִ̳߳첽ûص̳߳طæʱڵǰִ߳<br>
+     * ʱ־Ҳڻص̳߳дӡͬʱʱʱʱ߳
+     */
+    private void executeInvokeCallback(final ResponseFuture responseFuture, final boolean timeout) {
+        boolean runInThisThread = false;
+        Executor executor = this.getCallbackExecutor();
+        if (executor != null) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            responseFuture.getInvokeCallback().operationComplete(responseFuture);
+                        }
+                        catch (Throwable e) {
+                            plog.warn("excute callback in executor exception, and callback throw", e);
+                        }
+
+                        if (timeout) {
+                            plog.warn("remove timeout request, " + responseFuture);
+                        }
+                    }
+                });
+            }
+            catch (Exception e) {
+                runInThisThread = true;
+                plog.warn("excute callback in executor exception, maybe executor busy", e);
+            }
+        }
+        else {
+            runInThisThread = true;
+        }
+
+        if (runInThisThread) {
+            try {
+                responseFuture.getInvokeCallback().operationComplete(responseFuture);
+            }
+            catch (Throwable e) {
+                plog.warn("", e);
+            }
 
-        responseTable.remove(cmd.getOpaque());
+            if (timeout) {
+                plog.warn("remove timeout request, " + responseFuture);
+            }
+        }
     }
 
 
@@ -315,29 +409,38 @@ public abstract class NettyRemotingAbstract {
     abstract public Executor getCallbackExecutor();
 
 
-    public void scanResponseTable() {
-        List<Integer> todoList = new LinkedList<Integer>();
-
-        for (ResponseFuture rep : this.responseTable.values()) {
-            if ((rep.getBeginTimestamp() + rep.getTimeoutMillis() + 1000) <= System.currentTimeMillis()) {
-                todoList.add(rep.getOpaque());
-                if (rep.getInvokeCallback() != null) {
-                    try {
-                        rep.getInvokeCallback().operationComplete(rep);
-                    }
-                    catch (Throwable e) {
-                        plog.error("scanResponseTable, operationComplete exception", e);
-                    }
-                }
+    /**
+     * 첽עᵽʱʱ<br>
+     * ʱֻopaqueȡʱڼ䲻Ӧ
+     */
+    private void registerResponseTimeout(final ResponseFuture responseFuture) {
+        final int opaque = responseFuture.getOpaque();
+        Timeout timeout = this.responseTimer.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) throws Exception {
+                NettyRemotingAbstract.this.processResponseTimeout(opaque);
             }
+        }, responseFuture.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        responseFuture.setTimeout(timeout);
+    }
+
+
+    private void processResponseTimeout(final int opaque) {
+        final ResponseFuture responseFuture = this.responseTable.remove(opaque);
+        if (responseFuture != null) {
+            responseFuture.releaseWindow(false);
+            responseFuture.release();
+            this.executeInvokeCallback(responseFuture, true);
         }
+    }
 
-        for (Integer opaque : todoList) {
-            ResponseFuture responseFuture = this.responseTable.remove(opaque);
-            if (responseFuture != null) {
-                responseFuture.release();
-                plog.warn("remove timeout request, " + responseFuture);
-            }
+
+    public void shutdownResponseTimer() {
+        try {
+            this.responseTimer.stop();
+        }
+        catch (Exception e) {
+            plog.error("shutdown response timer exception", e);
         }
     }
 
@@ -393,39 +496,49 @@ public abstract class NettyRemotingAbstract {
     public void invokeAsyncImpl(final Channel channel, final RemotingCommand request, final long timeoutMillis,
             final InvokeCallback invokeCallback) throws InterruptedException, RemotingTooMuchRequestException,
             RemotingTimeoutException, RemotingSendRequestException {
-        boolean acquired = this.semaphoreAsync.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
-        if (acquired) {
-            final SemaphoreReleaseOnlyOnce once = new SemaphoreReleaseOnlyOnce(this.semaphoreAsync);
+        this.invokeAsyncImpl(channel, request, timeoutMillis, invokeCallback, null);
+    }
 
-            final ResponseFuture responseFuture =
-                    new ResponseFuture(request.getOpaque(), timeoutMillis, invokeCallback, once);
-            this.responseTable.put(request.getOpaque(), responseFuture);
-            try {
-                channel.write(request).addListener(new ChannelFutureListener() {
-                    @Override
-                    public void operationComplete(ChannelFuture f) throws Exception {
-                        if (f.isSuccess()) {
-                            responseFuture.setSendRequestOK(true);
-                            return;
-                        }
-                        else {
-                            responseFuture.setSendRequestOK(false);
-                        }
 
-                        once.release();
+    /**
+     * 첽
+     * 
+     * @param window
+     *            ӵĵôڣΪnullʱʹȫźʱ׳RemotingTooMuchRequestException
+     */
+    public void invokeAsyncImpl(final Channel channel, final RemotingCommand request, final long timeoutMillis,
+            final InvokeCallback invokeCallback, final ChannelInflightWindow window) throws InterruptedException,
+            RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
+        this.invokeAsyncImpl(channel, request, timeoutMillis, invokeCallback, window, null);
+    }
 
-                        responseTable.remove(request.getOpaque());
-                        responseFuture.putResponse(null);
-                        plog.warn("send a request command to channel <" + channel.remoteAddress() + "> failed.");
-                        plog.warn(request.toString());
-                    }
-                });
-            }
-            catch (Exception e) {
-                once.release();
-                plog.warn("write send a request command to channel <" + channel.remoteAddress() + "> failed.");
-                throw new RemotingSendRequestException(RemotingHelper.parseChannelRemoteAddr(channel), e);
+
+    /**
+     * 첽
+     * 
+     * @param window
+     *            ӵĵôڣΪnullʱʹȫźʱ׳RemotingTooMuchRequestException
+     * @param inflight
+     *            δɵ󷢳ǰ1Ӧ𡢳ʱ߷ʧʱ1Ϊnull
+     */
+    public void invokeAsyncImpl(final Channel channel, final RemotingCommand request, final long timeoutMillis,
+            final InvokeCallback invokeCallback, final ChannelInflightWindow window, final AtomicInteger inflight)
+            throws InterruptedException, RemotingTooMuchRequestException, RemotingTimeoutException,
+            RemotingSendRequestException {
+        if (window != null) {
+            if (!window.tryAcquire()) {
+                throw new RemotingTooMuchRequestException("invokeAsyncImpl channel window full, "
+                        + RemotingHelper.parseChannelRemoteAddr(channel) + " " + window);
             }
+
+            this.doInvokeAsync(channel, request, timeoutMillis, invokeCallback, null, window, inflight);
+            return;
+        }
+
+        boolean acquired = this.semaphoreAsync.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (acquired) {
+            final SemaphoreReleaseOnlyOnce once = new SemaphoreReleaseOnlyOnce(this.semaphoreAsync);
+            this.doInvokeAsync(channel, request, timeoutMillis, invokeCallback, once, null, inflight);
         }
         else {
             if (timeoutMillis <= 0) {
@@ -442,31 +555,81 @@ public abstract class NettyRemotingAbstract {
     }
 
 
+    private void doInvokeAsync(final Channel channel, final RemotingCommand request, final long timeoutMillis,
+            final InvokeCallback invokeCallback, final SemaphoreReleaseOnlyOnce once,
+            final ChannelInflightWindow window, final AtomicInteger inflight) throws RemotingSendRequestException {
+        if (inflight != null) {
+            inflight.incrementAndGet();
+        }
+        final ResponseFuture responseFuture =
+                new ResponseFuture(request.getOpaque(), timeoutMillis, invokeCallback, once, window, inflight);
+        this.responseTable.put(request.getOpaque(), responseFuture);
+        this.registerResponseTimeout(responseFuture);
+        try {
+            channel.write(request).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture f) throws Exception {
+                    if (f.isSuccess()) {
+                        responseFuture.setSendRequestOK(true);
+                        return;
+                    }
+                    else {
+                        responseFuture.setSendRequestOK(false);
+                    }
+
+                    responseFuture.releaseWindow(false);
+                    responseFuture.release();
+
+                    responseTable.remove(request.getOpaque());
+                    responseFuture.cancelTimeout();
+                    responseFuture.putResponse(null);
+                    plog.warn("send a request command to channel <" + channel.remoteAddress() + "> failed.");
+                    plog.warn(request.toString());
+                }
+            });
+        }
+        catch (Exception e) {
+            responseFuture.releaseWindow(false);
+            responseFuture.release();
+            this.responseTable.remove(request.getOpaque());
+            responseFuture.cancelTimeout();
+            plog.warn("write send a request command to channel <" + channel.remoteAddress() + "> failed.");
+            throw new RemotingSendRequestException(RemotingHelper.parseChannelRemoteAddr(channel), e);
+        }
+    }
+
+
     public void invokeOnewayImpl(final Channel channel, final RemotingCommand request, final long timeoutMillis)
             throws InterruptedException, RemotingTooMuchRequestException, RemotingTimeoutException,
             RemotingSendRequestException {
+        this.invokeOnewayImpl(channel, request, timeoutMillis, null);
+    }
+
+
+    /**
+     * Onewayãдɼͷ
+     * 
+     * @param window
+     *            ӵĵôڣΪnullʱʹȫźʱ׳RemotingTooMuchRequestException
+     */
+    public void invokeOnewayImpl(final Channel channel, final RemotingCommand request, final long timeoutMillis,
+            final ChannelInflightWindow window) throws InterruptedException, RemotingTooMuchRequestException,
+            RemotingTimeoutException, RemotingSendRequestException {
         request.markOnewayRPC();
+        if (window != null) {
+            if (!window.tryAcquire()) {
+                throw new RemotingTooMuchRequestException("invokeOnewayImpl channel window full, "
+                        + RemotingHelper.parseChannelRemoteAddr(channel) + " " + window);
+            }
+
+            this.doInvokeOneway(channel, request, null, window);
+            return;
+        }
+
         boolean acquired = this.semaphoreOneway.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
         if (acquired) {
             final SemaphoreReleaseOnlyOnce once = new SemaphoreReleaseOnlyOnce(this.semaphoreOneway);
-            try {
-                channel.write(request).addListener(new ChannelFutureListener() {
-                    @Override
-                    public void operationComplete(ChannelFuture f) throws Exception {
-                        once.release();
-                        if (!f.isSuccess()) {
-                            plog.warn("send a request command to channel <" + channel.remoteAddress()
-                                    + "> failed.");
-                            plog.warn(request.toString());
-                        }
-                    }
-                });
-            }
-            catch (Exception e) {
-                once.release();
-                plog.warn("write send a request command to channel <" + channel.remoteAddress() + "> failed.");
-                throw new RemotingSendRequestException(RemotingHelper.parseChannelRemoteAddr(channel), e);
-            }
+            this.doInvokeOneway(channel, request, once, null);
         }
         else {
             if (timeoutMillis <= 0) {
@@ -481,4 +644,39 @@ public abstract class NettyRemotingAbstract {
             }
         }
     }
+
+
+    private void doInvokeOneway(final Channel channel, final RemotingCommand request,
+            final SemaphoreReleaseOnlyOnce once, final ChannelInflightWindow window)
+            throws RemotingSendRequestException {
+        final long beginTimestamp = System.currentTimeMillis();
+        final AtomicBoolean windowReleased = new AtomicBoolean(false);
+        try {
+            channel.write(request).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture f) throws Exception {
+                    if (once != null) {
+                        once.release();
+                    }
+                    if (window != null && windowReleased.compareAndSet(false, true)) {
+                        window.release(System.currentTimeMillis() - beginTimestamp, f.isSuccess());
+                    }
+                    if (!f.isSuccess()) {
+                        plog.warn("send a request command to channel <" + channel.remoteAddress() + "> failed.");
+                        plog.warn(request.toString());
+                    }
+                }
+            });
+        }
+        catch (Exception e) {
+            if (once != null) {
+                once.release();
+            }
+            if (window != null && windowReleased.compareAndSet(false, true)) {
+                window.release(System.currentTimeMillis() - beginTimestamp, false);
+            }
+            plog.warn("write send a request command to channel <" + channel.remoteAddress() + "> failed.");
+            throw new RemotingSendRequestException(RemotingHelper.parseChannelRemoteAddr(channel), e);
+        }
+    }
 }
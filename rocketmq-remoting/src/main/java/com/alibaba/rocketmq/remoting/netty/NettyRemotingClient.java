@@ -13,6 +13,7 @@ import io.netty.channel.ChannelInboundMessageHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.local.LocalChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -27,10 +28,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -62,8 +66,16 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     private final Bootstrap bootstrap = new Bootstrap();
 
     private final Lock lockChannelTables = new ReentrantLock();
-    private final ConcurrentHashMap<String /* addr */, ChannelWrapper> channelTables =
-            new ConcurrentHashMap<String, ChannelWrapper>();
+    // ÿַһӳأӳشɾ봴Ӳʱڱ
+    private final ConcurrentHashMap<String /* addr */, ChannelPool> channelTables =
+            new ConcurrentHashMap<String, ChannelPool>();
+
+    // ѡ
+    private final ChannelSelectPolicy channelSelectPolicy;
+    // REQUEST_CODE_LANE£Ӧ
+    private final int[] requestCodeLaneTable = new int[MaxRequestCode];
+    // REQUEST_CODE_LANEµĳõĵ0
+    private final int laneCount;
 
     // ʱ
     private final Timer timer = new Timer("ClientHouseKeepingService", true);
@@ -77,15 +89,43 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     // CallbackӦ
     private final ExecutorService publicExecutor;
 
+    // Ӵʱں̨ӳأ߳
+    private final ExecutorService channelCreateExecutor;
+
     private final ChannelEventListener channelEventListener;
 
+    // ڴδʱΪnull
+    private SharedMemoryConnector sharedMemoryConnector;
+
+    enum ChannelSelectPolicy {
+        // ѯ
+        ROUND_ROBIN,
+        // ѡδٵ
+        LEAST_INFLIGHT,
+        // ʹöռӣϢϢ
+        REQUEST_CODE_LANE
+    }
+
     class ChannelWrapper {
         private final Channel channel;
         private volatile long lastActiveTimestamp = System.currentTimeMillis();
+        // ѷδյӦͬ첽
+        private final AtomicInteger inflight = new AtomicInteger(0);
+        // 첽OnewayôڣδʱΪnull
+        private final ChannelInflightWindow asyncWindow;
+        private final ChannelInflightWindow onewayWindow;
 
 
         public ChannelWrapper(Channel channel) {
             this.channel = channel;
+            if (nettyClientConfig.isClientChannelWindowEnable()) {
+                this.asyncWindow = newChannelWindow();
+                this.onewayWindow = newChannelWindow();
+            }
+            else {
+                this.asyncWindow = null;
+                this.onewayWindow = null;
+            }
         }
 
 
@@ -102,6 +142,86 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         public Channel getChannel() {
             return channel;
         }
+
+
+        public AtomicInteger getInflight() {
+            return inflight;
+        }
+
+
+        public ChannelInflightWindow getAsyncWindow() {
+            return asyncWindow;
+        }
+
+
+        public ChannelInflightWindow getOnewayWindow() {
+            return onewayWindow;
+        }
+    }
+
+
+    private ChannelInflightWindow newChannelWindow() {
+        return new ChannelInflightWindow(this.nettyClientConfig.getClientChannelWindowInitSize(),
+            this.nettyClientConfig.getClientChannelWindowMinSize(),
+            this.nettyClientConfig.getClientChannelWindowMaxSize());
+    }
+
+    /**
+     * ͬһַĶӣλʾδѹر
+     */
+    class ChannelPool {
+        private final AtomicReferenceArray<ChannelWrapper> slots;
+        private final AtomicInteger roundRobinIndex = new AtomicInteger(0);
+        // ں̨ӵĿλ
+        private final AtomicIntegerArray creating;
+
+
+        public ChannelPool(final int size) {
+            this.slots = new AtomicReferenceArray<ChannelWrapper>(size);
+            this.creating = new AtomicIntegerArray(size);
+        }
+
+
+        public int size() {
+            return this.slots.length();
+        }
+
+
+        public ChannelWrapper get(final int slot) {
+            return this.slots.get(slot);
+        }
+
+
+        public void set(final int slot, final ChannelWrapper cw) {
+            this.slots.set(slot, cw);
+        }
+
+
+        public int indexOf(final Channel channel) {
+            for (int i = 0; i < this.slots.length(); i++) {
+                ChannelWrapper cw = this.slots.get(i);
+                if (cw != null && cw.getChannel() == channel) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+
+        public int nextRoundRobinIndex() {
+            return Math.abs(this.roundRobinIndex.getAndIncrement() % this.slots.length());
+        }
+
+
+        public boolean tryMarkCreating(final int slot) {
+            return this.creating.compareAndSet(slot, 0, 1);
+        }
+
+
+        public void clearCreating(final int slot) {
+            this.creating.set(slot, 0);
+        }
     }
 
     class NettyClientHandler extends ChannelInboundMessageHandlerAdapter<Object> {
@@ -215,6 +335,38 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             }
         });
 
+        this.channelCreateExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "NettyClientCreateChannelThread");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        ChannelSelectPolicy policy = ChannelSelectPolicy.ROUND_ROBIN;
+        try {
+            policy = ChannelSelectPolicy.valueOf(nettyClientConfig.getClientChannelSelectPolicy().trim());
+        }
+        catch (Exception e) {
+            log.warn("unknown channel select policy {}, use {}", nettyClientConfig.getClientChannelSelectPolicy(),
+                policy);
+        }
+        this.channelSelectPolicy = policy;
+
+        int lanes = 1;
+        String laneCodes = nettyClientConfig.getClientChannelLaneCodes();
+        if (laneCodes != null && laneCodes.trim().length() > 0) {
+            String[] codes = laneCodes.split(",");
+            for (int i = 0; i < codes.length; i++) {
+                int code = Integer.parseInt(codes[i].trim());
+                if (code >= 0 && code < MaxRequestCode) {
+                    this.requestCodeLaneTable[code] = i + 1;
+                }
+            }
+            lanes += codes.length;
+        }
+        this.laneCount = lanes;
     }
 
 
@@ -223,12 +375,16 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         if (this.lockChannelTables.tryLock(LockTimeoutMillis, TimeUnit.MILLISECONDS)) {
             try {
                 for (String addr : this.channelTables.keySet()) {
-                    ChannelWrapper cw = this.channelTables.get(addr);
-                    if (cw != null) {
-                        long diff = System.currentTimeMillis() - cw.getLastActiveTimestamp();
-                        if (diff > this.nettyClientConfig.getChannelNotActiveInterval()) {
-                            log.warn("the channel[{}] not active for a while[{}ms], close it forcibly", addr, diff);
-                            this.closeChannel(addr, cw.getChannel());
+                    ChannelPool pool = this.channelTables.get(addr);
+                    for (int i = 0; i < pool.size(); i++) {
+                        ChannelWrapper cw = pool.get(i);
+                        if (cw != null) {
+                            long diff = System.currentTimeMillis() - cw.getLastActiveTimestamp();
+                            if (diff > this.nettyClientConfig.getChannelNotActiveInterval()) {
+                                log.warn("the channel[{}#{}] not active for a while[{}ms], close it forcibly",
+                                    new Object[] { addr, i, diff });
+                                this.closeChannel(addr, cw.getChannel());
+                            }
                         }
                     }
                 }
@@ -253,27 +409,22 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             .handler(new ChannelInitializer<SocketChannel>() {
                 @Override
                 public void initChannel(SocketChannel ch) throws Exception {
-                    ch.pipeline().addLast(//
-                        new DefaultEventExecutorGroup(nettyClientConfig.getClientWorkerThreads()), //
-                        new NettyEncoder(), //
+                    DefaultEventExecutorGroup group =
+                            new DefaultEventExecutorGroup(nettyClientConfig.getClientWorkerThreads());
+                    ch.pipeline().addLast(group, new NettyEncoder());
+                    if (nettyClientConfig.getClientWriteBatchMaxWrites() > 1) {
+                        ch.pipeline().addLast(group,
+                            new NettyWriteBatchHandler(nettyClientConfig.getClientWriteBatchMaxWrites()));
+                    }
+                    ch.pipeline().addLast(group, //
                         new NettyDecoder(), //
                         new NettyConnetManageHandler(), new NettyClientHandler());
                 }
             });
 
-        // ÿ1ɨ첽óʱ
-        this.timer.scheduleAtFixedRate(new TimerTask() {
-
-            @Override
-            public void run() {
-                try {
-                    NettyRemotingClient.this.scanResponseTable();
-                }
-                catch (Exception e) {
-                    log.error("scanResponseTable exception", e);
-                }
-            }
-        }, 1000 * 3, 1000);
+        if (this.nettyClientConfig.isClientLocalTransportEnable()) {
+            this.startSharedMemoryConnector();
+        }
 
         // ÿ10ɨ²
         this.timer.scheduleAtFixedRate(new TimerTask() {
@@ -295,6 +446,34 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     }
 
 
+    /**
+     * ڴPipelineҪ룬TCPͬ<br>
+     * ʧʱȫʹTCP
+     */
+    private void startSharedMemoryConnector() {
+        SharedMemoryConnector connector =
+                new SharedMemoryConnector(this.nettyClientConfig.getClientLocalTransportDir(),
+                    this.nettyClientConfig.getClientLocalTransportRingSize(),
+                    new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        public void initChannel(LocalChannel ch) throws Exception {
+                            DefaultEventExecutorGroup group =
+                                    new DefaultEventExecutorGroup(nettyClientConfig.getClientWorkerThreads());
+                            ch.pipeline().addLast(group, //
+                                new NettyConnetManageHandler(), new NettyClientHandler());
+                        }
+                    });
+        try {
+            connector.start();
+            this.sharedMemoryConnector = connector;
+        }
+        catch (Exception e) {
+            log.warn("start shared memory connector failed, only tcp available", e);
+            connector.shutdown();
+        }
+    }
+
+
     @Override
     public void shutdown() {
         try {
@@ -304,18 +483,32 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
 
             this.timer.cancel();
 
-            for (ChannelWrapper cw : this.channelTables.values()) {
-                this.closeChannel(null, cw.getChannel());
+            this.shutdownResponseTimer();
+
+            for (String addr : this.channelTables.keySet()) {
+                ChannelPool pool = this.channelTables.get(addr);
+                for (int i = 0; i < pool.size(); i++) {
+                    ChannelWrapper cw = pool.get(i);
+                    if (cw != null) {
+                        this.closeChannel(addr, cw.getChannel());
+                    }
+                }
             }
 
             this.channelTables.clear();
 
+            if (this.sharedMemoryConnector != null) {
+                this.sharedMemoryConnector.shutdown();
+            }
+
             this.bootstrap.shutdown();
         }
         catch (Exception e) {
             log.error("NettyRemotingClient shutdown exception, ", e);
         }
 
+        this.channelCreateExecutor.shutdown();
+
         if (this.publicExecutor != null) {
             try {
                 this.publicExecutor.shutdown();
@@ -327,27 +520,155 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     }
 
 
-    private Channel getAndCreateChannel(final String addr) throws InterruptedException {
+    private ChannelPool getOrCreateChannelPool(final String addr) {
+        ChannelPool pool = this.channelTables.get(addr);
+        if (null == pool) {
+            pool = new ChannelPool(Math.max(1, this.nettyClientConfig.getClientChannelPoolSize()));
+            ChannelPool prev = this.channelTables.putIfAbsent(addr, pool);
+            if (prev != null) {
+                pool = prev;
+            }
+        }
+
+        return pool;
+    }
+
+
+    private int selectChannelSlot(final ChannelPool pool, final RemotingCommand request) {
+        final int size = pool.size();
+        if (size <= 1) {
+            return 0;
+        }
+
+        switch (this.channelSelectPolicy) {
+        case LEAST_INFLIGHT:
+            int slot = 0;
+            int minInflight = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                ChannelWrapper cw = pool.get(i);
+                // λûδȽ
+                int inflight = cw != null ? cw.getInflight().get() : 0;
+                if (inflight < minInflight) {
+                    minInflight = inflight;
+                    slot = i;
+                }
+            }
+            return slot;
+        case REQUEST_CODE_LANE:
+            int code = request.getCode();
+            return code >= 0 && code < MaxRequestCode ? this.requestCodeLaneTable[code] % size : 0;
+        default:
+            return pool.nextRoundRobinIndex();
+        }
+    }
+
+
+    private ChannelWrapper getAndCreateChannel(final String addr, final RemotingCommand request)
+            throws InterruptedException {
         if (null == addr)
             return getAndCreateNameserverChannel();
 
-        ChannelWrapper cw = this.channelTables.get(addr);
+        ChannelPool pool = this.getOrCreateChannelPool(addr);
+        int slot = this.selectChannelSlot(pool, request);
+        ChannelWrapper cw = pool.get(slot);
         if (cw != null) {
             cw.setLastActiveTimestamp(System.currentTimeMillis());
-            return cw.getChannel();
+            return cw;
+        }
+
+        return this.createChannel(addr, slot);
+    }
+
+
+    /**
+     * REQUEST_CODE_LANE£ŶԳȡģͬͬһӶԻ
+     */
+    private boolean isSameLane(final int slot, final int other) {
+        if (ChannelSelectPolicy.REQUEST_CODE_LANE != this.channelSelectPolicy) {
+            return true;
         }
 
-        return this.createChannel(addr);
+        return slot % this.laneCount == other % this.laneCount;
     }
 
 
-    private Channel getAndCreateNameserverChannel() throws InterruptedException {
+    /**
+     * ѡӵĴʱͬһѾδ<br>
+     * λں̨ӣεãûп򷵻ԭӣɵ÷ʧ
+     */
+    private ChannelWrapper failoverChannel(final String addr, final ChannelWrapper cw, final boolean oneway) {
+        ChannelInflightWindow window = oneway ? cw.getOnewayWindow() : cw.getAsyncWindow();
+        if (null == addr || null == window || !window.isFull()) {
+            return cw;
+        }
+
+        ChannelPool pool = this.channelTables.get(addr);
+        final int slot = pool != null ? pool.indexOf(cw.getChannel()) : -1;
+        if (slot < 0) {
+            return cw;
+        }
+
+        for (int i = 0; i < pool.size(); i++) {
+            if (i == slot || !this.isSameLane(slot, i)) {
+                continue;
+            }
+
+            ChannelWrapper other = pool.get(i);
+            if (null == other) {
+                this.createChannelAsync(addr, pool, i);
+            }
+            else if (other.getChannel().isActive()) {
+                ChannelInflightWindow otherWindow = oneway ? other.getOnewayWindow() : other.getAsyncWindow();
+                if (!otherWindow.isFull()) {
+                    other.setLastActiveTimestamp(System.currentTimeMillis());
+                    return other;
+                }
+            }
+        }
+
+        return cw;
+    }
+
+
+    /**
+     * ں̨ӣͬһλͬʱֻһ
+     */
+    private void createChannelAsync(final String addr, final ChannelPool pool, final int slot) {
+        if (!pool.tryMarkCreating(slot)) {
+            return;
+        }
+
+        try {
+            this.channelCreateExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        NettyRemotingClient.this.createChannel(addr, slot);
+                    }
+                    catch (InterruptedException e) {
+                        log.warn("createChannelAsync: create channel interrupted, {}#{}", addr, slot);
+                    }
+                    finally {
+                        pool.clearCreating(slot);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            pool.clearCreating(slot);
+            log.warn("createChannelAsync: client shutdown, {}#{}", addr, slot);
+        }
+    }
+
+
+    private ChannelWrapper getAndCreateNameserverChannel() throws InterruptedException {
         String addr = this.namesrvAddrChoosed.get();
         if (addr != null) {
-            ChannelWrapper cw = this.channelTables.get(addr);
+            ChannelPool pool = this.channelTables.get(addr);
+            ChannelWrapper cw = pool != null ? pool.get(0) : null;
             if (cw != null) {
                 cw.setLastActiveTimestamp(System.currentTimeMillis());
-                return cw.getChannel();
+                return cw;
             }
         }
 
@@ -357,10 +678,11 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             try {
                 addr = this.namesrvAddrChoosed.get();
                 if (addr != null) {
-                    ChannelWrapper cw = this.channelTables.get(addr);
+                    ChannelPool pool = this.channelTables.get(addr);
+                    ChannelWrapper cw = pool != null ? pool.get(0) : null;
                     if (cw != null) {
                         cw.setLastActiveTimestamp(System.currentTimeMillis());
-                        return cw.getChannel();
+                        return cw;
                     }
                 }
 
@@ -372,7 +694,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                         String newAddr = addrList.get(index);
 
                         this.namesrvAddrChoosed.set(newAddr);
-                        Channel channelNew = this.createChannel(newAddr);
+                        ChannelWrapper channelNew = this.createChannel(newAddr, 0);
                         if (channelNew != null)
                             return channelNew;
                     }
@@ -394,17 +716,27 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     }
 
 
-    private Channel createChannel(final String addr) throws InterruptedException {
+    private ChannelWrapper createChannel(final String addr, final int slot) throws InterruptedException {
         // Դ
         if (this.lockChannelTables.tryLock(LockTimeoutMillis, TimeUnit.MILLISECONDS)) {
             try {
-                ChannelWrapper cw = this.channelTables.get(addr);
+                ChannelPool pool = this.getOrCreateChannelPool(addr);
+                ChannelWrapper cw = pool.get(slot);
                 if (cw != null) {
                     cw.setLastActiveTimestamp(System.currentTimeMillis());
-                    return cw.getChannel();
+                    return cw;
                 }
 
-                ChannelFuture channelFuture = this.bootstrap.connect(RemotingHelper.string2SocketAddress(addr));
+                // ڱʱʹùڴ棬ʱʹTCP
+                ChannelFuture channelFuture = null;
+                if (this.sharedMemoryConnector != null) {
+                    channelFuture =
+                            this.sharedMemoryConnector.connect(addr,
+                                this.nettyClientConfig.getConnectTimeoutMillis());
+                }
+                if (null == channelFuture) {
+                    channelFuture = this.bootstrap.connect(RemotingHelper.string2SocketAddress(addr));
+                }
                 Channel channel = null;
                 if (channelFuture.awaitUninterruptibly(this.nettyClientConfig.getConnectTimeoutMillis())) {
                     channel = channelFuture.channel();
@@ -419,9 +751,10 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     return null;
                 }
 
-                log.info("connect {} success, and add to the channel table", addr);
-                this.channelTables.put(addr, new ChannelWrapper(channel));
-                return channel;
+                log.info("connect {}#{} success, and add to the channel table", addr, slot);
+                cw = new ChannelWrapper(channel);
+                pool.set(slot, cw);
+                return cw;
             }
             catch (Exception e) {
                 log.error("createChannel: create channel exception", e);
@@ -448,16 +781,17 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             if (this.lockChannelTables.tryLock(LockTimeoutMillis, TimeUnit.MILLISECONDS)) {
                 try {
                     boolean removeItemFromTable = true;
-                    final ChannelWrapper prevCW = this.channelTables.get(addrRemote);
+                    final ChannelPool pool = this.channelTables.get(addrRemote);
+                    final int slot = pool != null ? pool.indexOf(channel) : -1;
 
-                    log.info("closeChannel: begin close the channel[{}] Found: {}", addrRemote, (prevCW != null));
+                    log.info("closeChannel: begin close the channel[{}] Found: {}", addrRemote, (pool != null));
 
-                    if (null == prevCW) {
+                    if (null == pool) {
                         log.info("closeChannel: the channel[{}] has been removed from the channel table before",
                             addrRemote);
                         removeItemFromTable = false;
                     }
-                    else if (prevCW.getChannel() != channel) {
+                    else if (slot < 0) {
                         log.info(
                             "closeChannel: the channel[{}] has been closed before, and has been created again, nothing to do.",
                             addrRemote);
@@ -465,8 +799,8 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     }
 
                     if (removeItemFromTable) {
-                        this.channelTables.remove(addrRemote);
-                        log.info("closeChannel: the channel[{}] was removed from channel table", addrRemote);
+                        pool.set(slot, null);
+                        log.info("closeChannel: the channel[{}#{}] was removed from channel table", addrRemote, slot);
                     }
 
                     channel.close().addListener(new ChannelFutureListener() {
@@ -502,26 +836,29 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             if (this.lockChannelTables.tryLock(LockTimeoutMillis, TimeUnit.MILLISECONDS)) {
                 try {
                     boolean removeItemFromTable = true;
-                    ChannelWrapper prevCW = null;
+                    ChannelPool prevPool = null;
+                    int slot = -1;
                     String addrRemote = null;
                     for (String key : channelTables.keySet()) {
-                        ChannelWrapper prev = this.channelTables.get(key);
-                        if (prev.channel.equals(channel)) {
-                            prevCW = prev;
+                        ChannelPool pool = this.channelTables.get(key);
+                        slot = pool.indexOf(channel);
+                        if (slot >= 0) {
+                            prevPool = pool;
                             addrRemote = key;
                             break;
                         }
                     }
 
-                    if (null == prevCW) {
+                    if (null == prevPool) {
                         log.info("eventCloseChannel: the channel[[" + addrRemote
                                 + "]] has been removed from the channel table before");
                         removeItemFromTable = false;
                     }
 
                     if (removeItemFromTable) {
-                        this.channelTables.remove(addrRemote);
-                        log.info("closeChannel: the channel[" + addrRemote + "] was removed from channel table");
+                        prevPool.set(slot, null);
+                        log.info("closeChannel: the channel[" + addrRemote + "#" + slot
+                                + "] was removed from channel table");
                     }
                 }
                 catch (Exception e) {
@@ -550,7 +887,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
 
         Pair<NettyRequestProcessor, Executor> pair =
                 new Pair<NettyRequestProcessor, Executor>(processor, executorThis);
-        this.processorTable.put(requestCode, pair);
+        this.putProcessor(requestCode, pair);
     }
 
 
@@ -558,8 +895,10 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     public RemotingCommand invokeSync(String addr, final RemotingCommand request, long timeoutMillis)
             throws InterruptedException, RemotingConnectException, RemotingSendRequestException,
             RemotingTimeoutException {
-        final Channel channel = this.getAndCreateChannel(addr);
+        final ChannelWrapper cw = this.getAndCreateChannel(addr, request);
+        final Channel channel = cw != null ? cw.getChannel() : null;
         if (channel != null && channel.isActive()) {
+            cw.getInflight().incrementAndGet();
             try {
                 return this.invokeSyncImpl(channel, request, timeoutMillis);
             }
@@ -573,6 +912,9 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                 this.closeChannel(addr, channel);
                 throw e;
             }
+            finally {
+                cw.getInflight().decrementAndGet();
+            }
         }
         else {
             this.closeChannel(addr, channel);
@@ -585,10 +927,17 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     public void invokeAsync(String addr, RemotingCommand request, long timeoutMillis, InvokeCallback invokeCallback)
             throws InterruptedException, RemotingConnectException, RemotingTooMuchRequestException,
             RemotingTimeoutException, RemotingSendRequestException {
-        final Channel channel = this.getAndCreateChannel(addr);
+        ChannelWrapper selected = this.getAndCreateChannel(addr, request);
+        if (selected != null) {
+            selected = this.failoverChannel(addr, selected, false);
+        }
+        final ChannelWrapper cw = selected;
+        final Channel channel = cw != null ? cw.getChannel() : null;
         if (channel != null && channel.isActive()) {
             try {
-                this.invokeAsyncImpl(channel, request, timeoutMillis, invokeCallback);
+                // δResponseFutureͷţʧʱͬ
+                this.invokeAsyncImpl(channel, request, timeoutMillis, invokeCallback, cw.getAsyncWindow(),
+                    cw.getInflight());
             }
             catch (RemotingSendRequestException e) {
                 log.warn("invokeAsync: send request exception, so close the channel[{}]", addr);
@@ -607,10 +956,15 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     public void invokeOneway(String addr, RemotingCommand request, long timeoutMillis)
             throws InterruptedException, RemotingConnectException, RemotingTooMuchRequestException,
             RemotingTimeoutException, RemotingSendRequestException {
-        final Channel channel = this.getAndCreateChannel(addr);
+        ChannelWrapper selected = this.getAndCreateChannel(addr, request);
+        if (selected != null) {
+            selected = this.failoverChannel(addr, selected, true);
+        }
+        final ChannelWrapper cw = selected;
+        final Channel channel = cw != null ? cw.getChannel() : null;
         if (channel != null && channel.isActive()) {
             try {
-                this.invokeOnewayImpl(channel, request, timeoutMillis);
+                this.invokeOnewayImpl(channel, request, timeoutMillis, cw.getOnewayWindow());
             }
             catch (RemotingSendRequestException e) {
                 log.warn("invokeOneway: send request exception, so close the channel[{}]", addr);
@@ -11,6 +11,7 @@ import io.netty.channel.ChannelInboundMessageHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.local.LocalChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -52,6 +53,9 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
 
     private final ChannelEventListener channelEventListener;
 
+    // ڴ㣬δʱΪnull
+    private SharedMemoryAcceptor sharedMemoryAcceptor;
+
     class NettyServerHandler extends ChannelInboundMessageHandlerAdapter<Object> {
 
         @Override
@@ -170,9 +174,14 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
             .childHandler(new ChannelInitializer<SocketChannel>() {
                 @Override
                 public void initChannel(SocketChannel ch) throws Exception {
-                    ch.pipeline().addLast(//
-                        new DefaultEventExecutorGroup(nettyServerConfig.getServerWorkerThreads()), //
-                        new NettyEncoder(), //
+                    DefaultEventExecutorGroup group =
+                            new DefaultEventExecutorGroup(nettyServerConfig.getServerWorkerThreads());
+                    ch.pipeline().addLast(group, new NettyEncoder());
+                    if (nettyServerConfig.getServerWriteBatchMaxWrites() > 1) {
+                        ch.pipeline().addLast(group,
+                            new NettyWriteBatchHandler(nettyServerConfig.getServerWriteBatchMaxWrites()));
+                    }
+                    ch.pipeline().addLast(group, //
                         new NettyDecoder(), //
                         new NettyConnetManageHandler(), new NettyServerHandler());
                 }
@@ -180,20 +189,57 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
 
         this.serverBootstrap.bind().sync();
 
+        if (this.nettyServerConfig.isServerLocalTransportEnable()) {
+            this.startSharedMemoryAcceptor();
+        }
+
         if (this.channelEventListener != null) {
             this.nettyEventExecuter.start();
         }
     }
 
 
+    /**
+     * ڴPipelineҪ룬TCPͬ<br>
+     * ʧܲӰTCP
+     */
+    private void startSharedMemoryAcceptor() {
+        SharedMemoryAcceptor acceptor =
+                new SharedMemoryAcceptor(this.nettyServerConfig.getServerLocalTransportDir(),
+                    this.nettyServerConfig.getListenPort(), new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        public void initChannel(LocalChannel ch) throws Exception {
+                            DefaultEventExecutorGroup group =
+                                    new DefaultEventExecutorGroup(nettyServerConfig.getServerWorkerThreads());
+                            ch.pipeline().addLast(group, //
+                                new NettyConnetManageHandler(), new NettyServerHandler());
+                        }
+                    });
+        try {
+            acceptor.start();
+            this.sharedMemoryAcceptor = acceptor;
+        }
+        catch (Exception e) {
+            log.warn("start shared memory acceptor failed, only tcp available", e);
+            acceptor.shutdown();
+        }
+    }
+
+
     @Override
     public void shutdown() {
         try {
+            if (this.sharedMemoryAcceptor != null) {
+                this.sharedMemoryAcceptor.shutdown();
+            }
+
             this.serverBootstrap.shutdown();
 
             if (this.nettyEventExecuter != null) {
                 this.nettyEventExecuter.shutdown();
             }
+
+            this.shutdownResponseTimer();
         }
         catch (Exception e) {
             log.error("NettyRemotingServer shutdown exception, ", e);
@@ -219,7 +265,7 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
 
         Pair<NettyRequestProcessor, Executor> pair =
                 new Pair<NettyRequestProcessor, Executor>(processor, executorThis);
-        this.processorTable.put(requestCode, pair);
+        this.putProcessor(requestCode, pair);
     }
 
 
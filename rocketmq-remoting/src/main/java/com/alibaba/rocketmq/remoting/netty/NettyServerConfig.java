@@ -14,6 +14,11 @@ public class NettyServerConfig {
     private int serverSelectorThreads = 8;
     private int serverOnewaySemaphoreValue = 32;
     private int serverAsyncSemaphoreValue = 64;
+    // ϲдһϲдСڵ1ʾϲ
+    private int serverWriteBatchMaxWrites = 64;
+    // ͬͻͨڴʣTCPػֻ֧HotSpot x86_64ƽ̨ȻֻTCP
+    private boolean serverLocalTransportEnable = false;
+    private String serverLocalTransportDir = SharedMemoryConnection.DefaultDir;
 
 
     public int getListenPort() {
@@ -74,4 +79,34 @@ public class NettyServerConfig {
     public void setServerAsyncSemaphoreValue(int serverAsyncSemaphoreValue) {
         this.serverAsyncSemaphoreValue = serverAsyncSemaphoreValue;
     }
+
+
+    public int getServerWriteBatchMaxWrites() {
+        return serverWriteBatchMaxWrites;
+    }
+
+
+    public void setServerWriteBatchMaxWrites(int serverWriteBatchMaxWrites) {
+        this.serverWriteBatchMaxWrites = serverWriteBatchMaxWrites;
+    }
+
+
+    public boolean isServerLocalTransportEnable() {
+        return serverLocalTransportEnable;
+    }
+
+
+    public void setServerLocalTransportEnable(boolean serverLocalTransportEnable) {
+        this.serverLocalTransportEnable = serverLocalTransportEnable;
+    }
+
+
+    public String getServerLocalTransportDir() {
+        return serverLocalTransportDir;
+    }
+
+
+    public void setServerLocalTransportDir(String serverLocalTransportDir) {
+        this.serverLocalTransportDir = serverLocalTransportDir;
+    }
 }
@@ -0,0 +1,122 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import io.netty.buffer.MessageBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOperationHandlerAdapter;
+import io.netty.channel.ChannelOutboundMessageHandler;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * ϲдˢSocket<br>
+ * ߳лŶӵͨ߳ύдʱдֻ뻺ŶӵִͳһˢһΣ
+ * ܵдﵽʱˢûŶʱˢӳ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class NettyWriteBatchHandler extends ChannelOperationHandlerAdapter implements
+        ChannelOutboundMessageHandler<Object> {
+    private final int maxBatchWrites;
+    // ״ֻ̬ctx.executor()߳з
+    private final List<ChannelPromise> pendingPromises = new ArrayList<ChannelPromise>();
+    private boolean flushScheduled = false;
+
+
+    public NettyWriteBatchHandler(final int maxBatchWrites) {
+        this.maxBatchWrites = maxBatchWrites;
+    }
+
+
+    @Override
+    public MessageBuf<Object> newOutboundBuffer(ChannelHandlerContext ctx) throws Exception {
+        return Unpooled.messageBuffer();
+    }
+
+
+    @Override
+    public void flush(final ChannelHandlerContext ctx, final ChannelPromise promise) throws Exception {
+        this.pendingPromises.add(promise);
+        if (this.pendingPromises.size() >= this.maxBatchWrites || !hasPendingTasks(ctx.executor())) {
+            this.flushPending(ctx);
+            return;
+        }
+
+        if (!this.flushScheduled) {
+            this.flushScheduled = true;
+            ctx.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    NettyWriteBatchHandler.this.flushScheduled = false;
+                    NettyWriteBatchHandler.this.flushPending(ctx);
+                }
+            });
+        }
+    }
+
+
+    private static boolean hasPendingTasks(final EventExecutor executor) {
+        if (executor instanceof SingleThreadEventExecutor) {
+            return ((SingleThreadEventExecutor) executor).pendingTasks() > 0;
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        // رǰˢѻд
+        this.flushPending(ctx);
+        ctx.close(promise);
+    }
+
+
+    private void flushPending(final ChannelHandlerContext ctx) {
+        if (this.pendingPromises.isEmpty()) {
+            return;
+        }
+
+        final ChannelPromise[] promises = this.pendingPromises.toArray(new ChannelPromise[this.pendingPromises.size()]);
+        this.pendingPromises.clear();
+
+        try {
+            MessageBuf<Object> in = ctx.outboundMessageBuffer();
+            in.drainTo(ctx.nextOutboundMessageBuffer());
+
+            ChannelPromise batchPromise = ctx.newPromise();
+            batchPromise.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    // ѾȡӰͬһ
+                    if (future.isSuccess()) {
+                        for (ChannelPromise p : promises) {
+                            p.trySuccess();
+                        }
+                    }
+                    else {
+                        for (ChannelPromise p : promises) {
+                            p.tryFailure(future.cause());
+                        }
+                    }
+                }
+            });
+            ctx.flush(batchPromise);
+        }
+        catch (Throwable e) {
+            for (ChannelPromise p : promises) {
+                p.tryFailure(e);
+            }
+        }
+    }
+}
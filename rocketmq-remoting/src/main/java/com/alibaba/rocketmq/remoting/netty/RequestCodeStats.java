@@ -0,0 +1,87 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * ͳ̳߳Ŷ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class RequestCodeStats {
+    private final int requestCode;
+    // ύ̳߳أδʼ
+    private final AtomicLong queueSize = new AtomicLong(0);
+    // ʼ
+    private final AtomicLong requestTimes = new AtomicLong(0);
+    // ̳߳Ŷӵܺʱ
+    private final AtomicLong waitTotalMillis = new AtomicLong(0);
+    // ̳߳Ŷܾ
+    private final AtomicLong rejectedTimes = new AtomicLong(0);
+
+
+    public RequestCodeStats(final int requestCode) {
+        this.requestCode = requestCode;
+    }
+
+
+    public void recordEnqueue() {
+        this.queueSize.incrementAndGet();
+    }
+
+
+    public void recordDequeue(final long waitMillis) {
+        this.queueSize.decrementAndGet();
+        this.requestTimes.incrementAndGet();
+        this.waitTotalMillis.addAndGet(waitMillis);
+    }
+
+
+    /**
+     * @return ۼƾܾ
+     */
+    public long recordRejected() {
+        this.queueSize.decrementAndGet();
+        return this.rejectedTimes.incrementAndGet();
+    }
+
+
+    public void putRuntimeInfo(final HashMap<String, String> result) {
+        final String prefix = "request" + this.requestCode;
+        long times = this.requestTimes.get();
+        result.put(prefix + "QueueSize", String.valueOf(this.queueSize.get()));
+        result.put(prefix + "Times", String.valueOf(times));
+        result.put(prefix + "RejectedTimes", String.valueOf(this.rejectedTimes.get()));
+        result.put(prefix + "AvgWaitMillis",
+            String.format("%.2f", times > 0 ? (double) this.waitTotalMillis.get() / times : 0.0));
+    }
+
+
+    public int getRequestCode() {
+        return requestCode;
+    }
+
+
+    public AtomicLong getQueueSize() {
+        return queueSize;
+    }
+
+
+    public AtomicLong getRequestTimes() {
+        return requestTimes;
+    }
+
+
+    public AtomicLong getWaitTotalMillis() {
+        return waitTotalMillis;
+    }
+
+
+    public AtomicLong getRejectedTimes() {
+        return rejectedTimes;
+    }
+}
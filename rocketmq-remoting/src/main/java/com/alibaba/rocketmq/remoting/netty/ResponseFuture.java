@@ -3,9 +3,13 @@
  */
 package com.alibaba.rocketmq.remoting.netty;
 
+import io.netty.util.Timeout;
+
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.alibaba.rocketmq.remoting.InvokeCallback;
 import com.alibaba.rocketmq.remoting.common.SemaphoreReleaseOnlyOnce;
@@ -27,21 +31,65 @@ public class ResponseFuture {
     private final long beginTimestamp = System.currentTimeMillis();
     private final CountDownLatch countDownLatch = new CountDownLatch(1);
     private final SemaphoreReleaseOnlyOnce once;
+    // ӵĵôڣδʱΪnull
+    private final ChannelInflightWindow window;
+    private final AtomicBoolean windowReleased = new AtomicBoolean(false);
+    // δɵͳʱΪnull
+    private final AtomicInteger inflight;
+    private final AtomicBoolean inflightReleased = new AtomicBoolean(false);
+    // 첽ʱеĳʱյӦȡ
+    private volatile Timeout timeout;
 
 
     public ResponseFuture(int opaque, long timeoutMillis, InvokeCallback invokeCallback,
             SemaphoreReleaseOnlyOnce once) {
+        this(opaque, timeoutMillis, invokeCallback, once, null);
+    }
+
+
+    public ResponseFuture(int opaque, long timeoutMillis, InvokeCallback invokeCallback,
+            SemaphoreReleaseOnlyOnce once, ChannelInflightWindow window) {
+        this(opaque, timeoutMillis, invokeCallback, once, window, null);
+    }
+
+
+    public ResponseFuture(int opaque, long timeoutMillis, InvokeCallback invokeCallback,
+            SemaphoreReleaseOnlyOnce once, ChannelInflightWindow window, AtomicInteger inflight) {
         this.opaque = opaque;
         this.timeoutMillis = timeoutMillis;
         this.invokeCallback = invokeCallback;
         this.once = once;
+        this.window = window;
+        this.inflight = inflight;
     }
 
 
+    /**
+     * յӦ𡢳ʱʧܶãԴֻͷһ
+     */
     public void release() {
         if (this.once != null) {
             this.once.release();
         }
+
+        this.releaseWindow(true);
+
+        if (this.inflight != null && this.inflightReleased.compareAndSet(false, true)) {
+            this.inflight.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * ͷӴڣֻͷһΣͬʱѱRTT
+     * 
+     * @param success
+     *            falseʾʱ߷ʧ
+     */
+    public void releaseWindow(final boolean success) {
+        if (this.window != null && this.windowReleased.compareAndSet(false, true)) {
+            this.window.release(System.currentTimeMillis() - this.beginTimestamp, success);
+        }
     }
 
 
@@ -113,6 +161,27 @@ public class ResponseFuture {
     }
 
 
+    public Timeout getTimeout() {
+        return timeout;
+    }
+
+
+    public void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * ȡʱеĳʱ
+     */
+    public void cancelTimeout() {
+        Timeout t = this.timeout;
+        if (t != null) {
+            t.cancel();
+        }
+    }
+
+
     @Override
     public String toString() {
         return "ResponseFuture [responseCommand=" + responseCommand + ", sendRequestOK=" + sendRequestOK
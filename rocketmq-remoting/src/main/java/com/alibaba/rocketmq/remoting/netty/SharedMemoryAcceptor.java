@@ -0,0 +1,235 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalEventLoopGroup;
+import io.netty.channel.local.LocalServerChannel;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.rocketmq.remoting.common.RemotingHelper;
+import com.alibaba.rocketmq.remoting.common.ServiceThread;
+
+
+/**
+ * ˹ڴ㣬Ŀ¼˿<br>
+ * ͻͨ巢IDļΪ䴴һLocalChannelPipelineһ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class SharedMemoryAcceptor {
+    private static final Logger log = LoggerFactory.getLogger(RemotingHelper.RemotingLogName);
+
+    static final String AcceptorFile = "acceptor";
+    static final String AcceptorLockFile = "acceptor.lock";
+
+    private final File endpointDir;
+    private final ChannelHandler pipelineHandler;
+    private final LocalEventLoopGroup eventLoopGroup = new LocalEventLoopGroup(1);
+    private final LocalAddress serverAddress;
+    private final ConcurrentHashMap<String /* id */, SharedMemoryConnection> connectionTable =
+            new ConcurrentHashMap<String, SharedMemoryConnection>();
+    private final AcceptService acceptService = new AcceptService();
+    private ServerBootstrap serverBootstrap;
+    private RandomAccessFile lockFile;
+    private FileLock lock;
+    private DatagramSocket acceptorSocket;
+
+
+    public SharedMemoryAcceptor(final String baseDir, final int listenPort, final ChannelHandler pipelineHandler) {
+        this.endpointDir = new File(baseDir, String.valueOf(listenPort));
+        this.pipelineHandler = pipelineHandler;
+        this.serverAddress = new LocalAddress("rocketmq-shm-server-" + listenPort);
+    }
+
+
+    public void start() throws IOException, InterruptedException {
+        if (!SharedMemoryRingBuffer.isPlatformSupported()) {
+            throw new IOException("shared memory transport only supported on HotSpot x86_64");
+        }
+
+        if (!this.endpointDir.isDirectory() && !this.endpointDir.mkdirs()) {
+            throw new IOException("create shared memory dir failed, " + this.endpointDir);
+        }
+
+        this.lockFile = new RandomAccessFile(new File(this.endpointDir, AcceptorLockFile), "rw");
+        this.lock = SharedMemoryConnection.tryLock(this.lockFile);
+        if (null == this.lock) {
+            this.lockFile.close();
+            throw new IOException("shared memory endpoint in use by other process, " + this.endpointDir);
+        }
+
+        this.cleanExpiredConnections();
+
+        this.serverBootstrap = new ServerBootstrap();
+        this.serverBootstrap.group(this.eventLoopGroup).channel(LocalServerChannel.class)
+            .childHandler(this.pipelineHandler);
+        this.serverBootstrap.bind(this.serverAddress).sync();
+
+        this.acceptorSocket = new DatagramSocket(new InetSocketAddress(InetAddress.getByAddress(new byte[] { 127, 0,
+                                                                                                           0, 1 }),
+            0));
+        this.acceptorSocket.setSoTimeout(1000);
+
+        // дʱļٸͻ˲Ķ˿
+        File tmp = new File(this.endpointDir, AcceptorFile + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(String.valueOf(this.acceptorSocket.getLocalPort()).getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+        File acceptor = new File(this.endpointDir, AcceptorFile);
+        acceptor.delete();
+        if (!tmp.renameTo(acceptor)) {
+            throw new IOException("publish shared memory acceptor failed, " + acceptor);
+        }
+
+        this.acceptService.start();
+        log.info("shared memory acceptor started, {}", this.endpointDir);
+    }
+
+
+    /**
+     * ϴĿ¼ͻѾ˳ֱɾ
+     */
+    private void cleanExpiredConnections() {
+        File[] dirs = this.endpointDir.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.isDirectory() && !SharedMemoryConnection.isLockHeld(new File(dir, "client.lock"))) {
+                    log.info("delete expired shared memory connection {}", dir);
+                    SharedMemoryConnection.deleteDir(dir);
+                }
+            }
+        }
+    }
+
+
+    private void accept(final String id) {
+        try {
+            final SharedMemoryConnection conn = SharedMemoryConnection.accept(this.endpointDir, id);
+            this.connectionTable.put(id, conn);
+            conn.setCloseListener(new Runnable() {
+                @Override
+                public void run() {
+                    connectionTable.remove(id);
+                }
+            });
+
+            Bootstrap bootstrap = new Bootstrap();
+            bootstrap.group(this.eventLoopGroup).channel(LocalChannel.class).handler(conn.newBridgeHandler());
+            bootstrap.connect(this.serverAddress, new LocalAddress("shm-" + id)).addListener(
+                new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        if (!future.isSuccess()) {
+                            log.warn("shared memory bridge connect failed, " + id, future.cause());
+                            conn.close();
+                        }
+                    }
+                });
+
+            log.info("shared memory connection {} accepted", id);
+        }
+        catch (Exception e) {
+            log.warn("accept shared memory connection failed, " + id, e);
+        }
+    }
+
+
+    public void shutdown() {
+        this.acceptService.makeStop();
+        if (this.acceptorSocket != null) {
+            this.acceptorSocket.close();
+        }
+
+        for (SharedMemoryConnection conn : this.connectionTable.values()) {
+            conn.close();
+        }
+        this.awaitConnectionsReleased();
+
+        this.eventLoopGroup.shutdownGracefully();
+
+        new File(this.endpointDir, AcceptorFile).delete();
+        if (this.lockFile != null) {
+            try {
+                this.lockFile.close();
+            }
+            catch (IOException e) {
+            }
+        }
+
+        log.info("shared memory acceptor shutdown, {}", this.endpointDir);
+    }
+
+
+    /**
+     * ȴͷϣEventLoopӹرգԶΪȻ
+     */
+    private void awaitConnectionsReleased() {
+        long deadline = System.currentTimeMillis() + 1000 * 3;
+        while (!this.connectionTable.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    class AcceptService extends ServiceThread {
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+
+            final byte[] buffer = new byte[256];
+            while (!this.isStoped()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    acceptorSocket.receive(packet);
+                    accept(new String(packet.getData(), 0, packet.getLength(), "UTF-8"));
+                }
+                catch (SocketTimeoutException e) {
+                }
+                catch (Exception e) {
+                    if (!this.isStoped()) {
+                        log.warn(this.getServiceName() + " service has exception. ", e);
+                    }
+                }
+            }
+
+            log.info(this.getServiceName() + " service end");
+        }
+
+
+        @Override
+        public String getServiceName() {
+            return AcceptService.class.getSimpleName();
+        }
+    }
+}
@@ -0,0 +1,703 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import io.netty.buffer.MessageBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundMessageHandlerAdapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.rocketmq.remoting.common.RemotingHelper;
+import com.alibaba.rocketmq.remoting.common.ServiceThread;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+
+
+/**
+ * ̼ͬڹڴӣÿһλļ<br>
+ * ߳̿ʱUDPϵȴдֻڶ˯ʱ壬æʱûϵͳ<br>
+ * ͨNetty LocalChannelŽӵԭеPipelineҪĶ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class SharedMemoryConnection {
+    private static final Logger log = LoggerFactory.getLogger(RemotingHelper.RemotingLogName);
+
+    public static final String DefaultDir = defaultDir();
+
+    private static final String ClientToServerFile = "c2s";
+    private static final String ServerToClientFile = "s2c";
+    private static final String ClientLockFile = "client.lock";
+    private static final String ServerLockFile = "server.lock";
+    // ߳̽˯ǰ
+    private static final int SpinTimes = 256;
+    // ÿͶݵŽChannel
+    private static final int DeliverBatchSize = 64;
+    // ߳ϵȴʱ䣬ʱԶǷ
+    private static final int DoorbellWaitMillis = 100;
+    private static final long PeerCheckIntervalMillis = 1000;
+    // λʱȴԶڳռʱ
+    private static final long WriteTimeoutMillis = 1000 * 3;
+    // дд֡ʱ̼߳Զ˶ȵļ
+    private static final long PendingCheckIntervalNanos = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final AtomicLong ConnectionIndex = new AtomicLong(0);
+    private static final InetAddress Loopback = loopback();
+
+    private final String id;
+    private final File dir;
+    private final boolean clientSide;
+    private final SharedMemoryRingBuffer inbound;
+    private final SharedMemoryRingBuffer outbound;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+    private final DatagramSocket doorbell;
+    private final DatagramPacket doorbellPacket = new DatagramPacket(new byte[1], 1);
+    private final ReadService readService = new ReadService();
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private volatile Channel bridgeChannel;
+    private volatile Runnable closeListener;
+    // Զ˶̵ַ߳Զ˵ǼǶ˿ںٱ仯
+    private InetSocketAddress peerDoorbellAddress;
+    // λʱݴֻ֡ŽChannelEventLoopз
+    private final LinkedList<PendingFrame> pendingFrames = new LinkedList<PendingFrame>();
+    // һд֡ҪԶ˶λã߳̾ݴ˾ʱ
+    private volatile long pendingReadIndex;
+    // д֡ʼȴʱ䣬0ʾûдд֡
+    private volatile long pendingTimestamp = 0;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Runnable flushPendingTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+            flushPending();
+        }
+    };
+
+    static class PendingFrame {
+        private final ByteBuffer header;
+        private final byte[] body;
+        private final int length;
+
+
+        PendingFrame(final ByteBuffer header, final byte[] body, final int length) {
+            this.header = header;
+            this.body = body;
+            this.length = length;
+        }
+    }
+
+
+    private SharedMemoryConnection(final String id, final File dir, final boolean clientSide,
+            final SharedMemoryRingBuffer inbound, final SharedMemoryRingBuffer outbound,
+            final RandomAccessFile lockFile, final FileLock lock, final DatagramSocket doorbell) {
+        this.id = id;
+        this.dir = dir;
+        this.clientSide = clientSide;
+        this.inbound = inbound;
+        this.outbound = outbound;
+        this.lockFile = lockFile;
+        this.lock = lock;
+        this.doorbell = doorbell;
+    }
+
+
+    private static String defaultDir() {
+        String user = System.getProperty("user.name", "default");
+        File shm = new File("/dev/shm");
+        if (shm.isDirectory() && shm.canWrite()) {
+            return shm.getPath() + File.separator + "rocketmq-" + user;
+        }
+
+        return System.getProperty("java.io.tmpdir") + File.separator + "rocketmq-shm-" + user;
+    }
+
+
+    private static InetAddress loopback() {
+        try {
+            return InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 });
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static String newConnectionId() {
+        String pid = ManagementFactory.getRuntimeMXBean().getName();
+        int index = pid.indexOf('@');
+        if (index > 0) {
+            pid = pid.substring(0, index);
+        }
+
+        return pid + "-" + ConnectionIndex.incrementAndGet() + "-" + Long.toHexString(System.nanoTime());
+    }
+
+
+    /**
+     * жļǷ̻̳߱
+     */
+    static boolean isLockHeld(final File file) {
+        if (!file.exists()) {
+            return false;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            FileLock fileLock = raf.getChannel().tryLock();
+            if (fileLock != null) {
+                fileLock.release();
+                return false;
+            }
+            return true;
+        }
+        catch (OverlappingFileLockException e) {
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+        finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                }
+                catch (IOException e) {
+                }
+            }
+        }
+    }
+
+
+    static FileLock tryLock(final RandomAccessFile raf) throws IOException {
+        try {
+            return raf.getChannel().tryLock();
+        }
+        catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+
+    private static DatagramSocket openDoorbell() throws IOException {
+        DatagramSocket socket = new DatagramSocket(new InetSocketAddress(Loopback, 0));
+        socket.setSoTimeout(DoorbellWaitMillis);
+        return socket;
+    }
+
+
+    static void deleteDir(final File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+
+    /**
+     * ͻ˴ļͨ˵֪ͨˣȴ˽
+     */
+    public static SharedMemoryConnection connect(final File endpointDir, final int acceptorPort,
+            final int ringSize, final long timeoutMillis) throws IOException, InterruptedException {
+        final String id = newConnectionId();
+        final File dir = new File(endpointDir, id);
+        if (!dir.mkdirs()) {
+            throw new IOException("create shared memory connection dir failed, " + dir);
+        }
+
+        SharedMemoryRingBuffer c2s = null;
+        SharedMemoryRingBuffer s2c = null;
+        RandomAccessFile lockFile = null;
+        DatagramSocket doorbell = null;
+        boolean ok = false;
+        try {
+            c2s = SharedMemoryRingBuffer.create(new File(dir, ClientToServerFile), ringSize);
+            s2c = SharedMemoryRingBuffer.create(new File(dir, ServerToClientFile), ringSize);
+            lockFile = new RandomAccessFile(new File(dir, ClientLockFile), "rw");
+            FileLock lock = tryLock(lockFile);
+            doorbell = openDoorbell();
+            s2c.setReaderDoorbellPort(doorbell.getLocalPort());
+
+            byte[] request = id.getBytes("UTF-8");
+            doorbell.send(new DatagramPacket(request, request.length, new InetSocketAddress(Loopback, acceptorPort)));
+
+            // ˽ܺc2sϵǼԼ˿
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (c2s.getReaderDoorbellPort() == 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    log.warn("shared memory connect {} timeout, {}ms", dir, timeoutMillis);
+                    return null;
+                }
+                Thread.sleep(1);
+            }
+
+            ok = true;
+            return new SharedMemoryConnection(id, dir, true, s2c, c2s, lockFile, lock, doorbell);
+        }
+        finally {
+            if (!ok) {
+                releaseQuietly(c2s, s2c, lockFile, doorbell);
+                deleteDir(dir);
+            }
+        }
+    }
+
+
+    /**
+     * ˴򿪿ͻ˴ļ
+     */
+    public static SharedMemoryConnection accept(final File endpointDir, final String id) throws IOException {
+        final File dir = new File(endpointDir, id);
+        if (id.indexOf(File.separatorChar) >= 0 || id.indexOf("..") >= 0 || !dir.isDirectory()) {
+            throw new IOException("invalid shared memory connection " + id);
+        }
+
+        SharedMemoryRingBuffer c2s = null;
+        SharedMemoryRingBuffer s2c = null;
+        RandomAccessFile lockFile = null;
+        DatagramSocket doorbell = null;
+        boolean ok = false;
+        try {
+            c2s = SharedMemoryRingBuffer.open(new File(dir, ClientToServerFile));
+            s2c = SharedMemoryRingBuffer.open(new File(dir, ServerToClientFile));
+            lockFile = new RandomAccessFile(new File(dir, ServerLockFile), "rw");
+            FileLock lock = tryLock(lockFile);
+            doorbell = openDoorbell();
+            c2s.setReaderDoorbellPort(doorbell.getLocalPort());
+            ok = true;
+            return new SharedMemoryConnection(id, dir, false, c2s, s2c, lockFile, lock, doorbell);
+        }
+        finally {
+            if (!ok) {
+                releaseQuietly(c2s, s2c, lockFile, doorbell);
+            }
+        }
+    }
+
+
+    private static void releaseQuietly(final SharedMemoryRingBuffer c2s, final SharedMemoryRingBuffer s2c,
+            final RandomAccessFile lockFile, final DatagramSocket doorbell) {
+        if (doorbell != null) {
+            doorbell.close();
+        }
+        if (c2s != null) {
+            c2s.release();
+        }
+        if (s2c != null) {
+            s2c.release();
+        }
+        if (lockFile != null) {
+            try {
+                lockFile.close();
+            }
+            catch (IOException e) {
+            }
+        }
+    }
+
+
+    public ChannelInboundMessageHandlerAdapter<Object> newBridgeHandler() {
+        return new BridgeHandler();
+    }
+
+
+    /**
+     * дԶ˵ĻλֻŽChannelEventLoopе<br>
+     * ռ䲻ʱݴ棬ɶ߳ڶԶڳռ֪ͨEventLoopԣEventLoop
+     */
+    private void write(final RemotingCommand cmd, final boolean compact) throws IOException {
+        byte[] body = cmd.getBody();
+        int bodyLength = body != null ? body.length : 0;
+        ByteBuffer header = cmd.encodeHeader(bodyLength, compact);
+        int length = header.remaining() + bodyLength - 4;
+        if (!this.outbound.fits(length)) {
+            throw new IOException("frame too large for shared memory ring, " + length);
+        }
+
+        if (!this.pendingFrames.isEmpty() || !this.outbound.hasRoom(length)) {
+            if (this.pendingFrames.isEmpty()) {
+                this.pendingReadIndex = this.outbound.roomReadIndex(length);
+                this.pendingTimestamp = System.currentTimeMillis();
+            }
+            this.pendingFrames.add(new PendingFrame(header, body, length));
+            return;
+        }
+
+        this.writeFrame(header, body);
+    }
+
+
+    private void writeFrame(final ByteBuffer header, final byte[] body) {
+        this.outbound.write(header, body);
+        if (this.outbound.isReaderSleeping()) {
+            this.ring();
+        }
+    }
+
+
+    /**
+     * ˳дݴֻ֡ŽChannelEventLoopе
+     */
+    private void flushPending() {
+        if (this.released.get()) {
+            this.pendingFrames.clear();
+            return;
+        }
+
+        boolean written = false;
+        while (!this.pendingFrames.isEmpty()) {
+            PendingFrame frame = this.pendingFrames.getFirst();
+            if (!this.outbound.hasRoom(frame.length)) {
+                this.pendingReadIndex = this.outbound.roomReadIndex(frame.length);
+                if (written) {
+                    this.pendingTimestamp = System.currentTimeMillis();
+                }
+                return;
+            }
+
+            this.pendingFrames.removeFirst();
+            this.writeFrame(frame.header, frame.body);
+            written = true;
+        }
+
+        this.pendingTimestamp = 0;
+    }
+
+
+    /**
+     * ̼߳ݴ֡Զڳռ֪ͨEventLoopԣʱûнչر
+     * 
+     * @return Ƿݴ֡
+     */
+    private boolean checkPending() {
+        long timestamp = this.pendingTimestamp;
+        if (0 == timestamp) {
+            return false;
+        }
+
+        if (this.outbound.isClosed() || System.currentTimeMillis() - timestamp > WriteTimeoutMillis) {
+            log.error("shared memory ring full, peer not read for {}ms, close {}", WriteTimeoutMillis, this.dir);
+            this.close();
+            return false;
+        }
+
+        if (this.outbound.getReadIndex() >= this.pendingReadIndex && this.flushScheduled.compareAndSet(false, true)) {
+            try {
+                this.bridgeChannel.eventLoop().execute(this.flushPendingTask);
+            }
+            catch (Exception e) {
+                this.flushScheduled.set(false);
+                log.warn("schedule shared memory pending write failed, " + this.dir, e);
+            }
+        }
+
+        return true;
+    }
+
+
+    private void ring() {
+        if (null == this.peerDoorbellAddress) {
+            int port = this.outbound.getReaderDoorbellPort();
+            if (port <= 0) {
+                return;
+            }
+            this.peerDoorbellAddress = new InetSocketAddress(Loopback, port);
+        }
+
+        try {
+            this.doorbell.send(new DatagramPacket(new byte[1], 1, this.peerDoorbellAddress));
+        }
+        catch (IOException e) {
+            log.warn("ring shared memory doorbell failed, " + this.dir, e);
+        }
+    }
+
+
+    private RemotingCommand decode(final byte[] frame) {
+        try {
+            RemotingCommand cmd = RemotingCommand.decode(frame);
+            final Channel channel = this.bridgeChannel;
+            if (cmd.isCompactHeader() || (!cmd.isResponseType() && cmd.isCompactHeaderAccepted())) {
+                if (!Boolean.TRUE.equals(channel.attr(NettyDecoder.CompactHeaderAcceptedKey).get())) {
+                    channel.attr(NettyDecoder.CompactHeaderAcceptedKey).set(Boolean.TRUE);
+                }
+            }
+            return cmd;
+        }
+        catch (Exception e) {
+            log.error("decode shared memory frame exception, " + this.dir, e);
+            this.close();
+        }
+
+        return null;
+    }
+
+
+    /**
+     * һֻύһˢһΣԶPipelineһյ
+     */
+    private void deliver(final List<RemotingCommand> cmds) {
+        final Channel channel = this.bridgeChannel;
+        try {
+            channel.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    MessageBuf<Object> buf = channel.outboundMessageBuffer();
+                    for (RemotingCommand cmd : cmds) {
+                        buf.add(cmd);
+                    }
+                    channel.flush();
+                }
+            });
+        }
+        catch (Exception e) {
+            log.warn("deliver shared memory commands failed, " + this.dir, e);
+        }
+    }
+
+
+    /**
+     * رӣԴŽChannelرպͷ
+     */
+    public void close() {
+        Channel channel = this.bridgeChannel;
+        if (channel != null) {
+            channel.close();
+        }
+        else {
+            this.release();
+        }
+    }
+
+
+    /**
+     * ֪ͨԶ˲ͷԴ߳˳Žӳ
+     */
+    private void release() {
+        if (!this.released.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.inbound.markClosed();
+        this.outbound.markClosed();
+        this.ring();
+
+        this.readService.makeStop();
+        this.doorbell.close();
+        if (Thread.currentThread() != this.readService.getThread() && this.readService.getThread().isAlive()) {
+            try {
+                this.readService.getThread().join(DoorbellWaitMillis * 10);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        this.inbound.release();
+        this.outbound.release();
+        try {
+            this.lockFile.close();
+        }
+        catch (IOException e) {
+        }
+
+        if (this.clientSide) {
+            deleteDir(this.dir);
+        }
+
+        log.info("shared memory connection {} released", this.dir);
+
+        Runnable listener = this.closeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+
+    private boolean isPeerAlive() {
+        if (this.inbound.isClosed()) {
+            return false;
+        }
+
+        return isLockHeld(new File(this.dir, this.clientSide ? ServerLockFile : ClientLockFile));
+    }
+
+    class ReadService extends ServiceThread {
+        public Thread getThread() {
+            return this.thread;
+        }
+
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started, " + dir);
+
+            try {
+                this.readLoop();
+            }
+            catch (IOException e) {
+                log.error("read shared memory ring exception, " + dir, e);
+            }
+
+            if (!this.isStoped()) {
+                SharedMemoryConnection.this.close();
+            }
+
+            log.info(this.getServiceName() + " service end, " + dir);
+        }
+
+
+        private void readLoop() throws IOException {
+            long lastPeerCheckTimestamp = System.currentTimeMillis();
+            int idle = 0;
+            while (!this.isStoped()) {
+                boolean pending = checkPending();
+                byte[] frame = inbound.read();
+                if (frame != null) {
+                    idle = 0;
+                    List<RemotingCommand> cmds = new ArrayList<RemotingCommand>();
+                    do {
+                        RemotingCommand cmd = decode(frame);
+                        if (null == cmd) {
+                            break;
+                        }
+                        cmds.add(cmd);
+                    } while (cmds.size() < DeliverBatchSize && (frame = inbound.read()) != null);
+
+                    if (!cmds.isEmpty()) {
+                        deliver(cmds);
+                    }
+                    continue;
+                }
+
+                if (++idle < SpinTimes) {
+                    Thread.yield();
+                    continue;
+                }
+
+                // ݴ֡ʱ˯ߣԶڳռ䲻ᷢ
+                if (pending) {
+                    LockSupport.parkNanos(PendingCheckIntervalNanos);
+                    continue;
+                }
+
+                // ˯ټһΣдݺ󿴵˯߱Ǿͻᷢ壬ᶪʧ
+                inbound.setReaderSleeping(true);
+                if (inbound.isEmpty()) {
+                    try {
+                        doorbell.receive(doorbellPacket);
+                    }
+                    catch (SocketTimeoutException e) {
+                    }
+                    catch (IOException e) {
+                        // ѹر
+                    }
+                }
+                inbound.setReaderSleeping(false);
+                idle = 0;
+
+                long now = System.currentTimeMillis();
+                if (inbound.isClosed() || now - lastPeerCheckTimestamp > PeerCheckIntervalMillis) {
+                    lastPeerCheckTimestamp = now;
+                    if (!this.isStoped() && inbound.isEmpty() && !isPeerAlive()) {
+                        log.info("shared memory peer closed, " + dir);
+                        break;
+                    }
+                }
+            }
+        }
+
+
+        @Override
+        public String getServiceName() {
+            return "SharedMemoryReadService";
+        }
+    }
+
+    /**
+     * ŽChannelϵĴԶPipelineд빲ڴ
+     */
+    class BridgeHandler extends ChannelInboundMessageHandlerAdapter<Object> {
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            bridgeChannel = ctx.channel();
+            readService.start();
+            super.channelActive(ctx);
+        }
+
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            release();
+            super.channelInactive(ctx);
+        }
+
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof RemotingCommand) {
+                RemotingCommand cmd = (RemotingCommand) msg;
+                boolean compact =
+                        cmd.isResponseType() ? cmd.isCompactHeader() : RemotingCommand.isCompactHeaderEnable()
+                                && Boolean.TRUE.equals(ctx.channel().attr(NettyDecoder.CompactHeaderAcceptedKey)
+                                    .get());
+                try {
+                    write(cmd, compact);
+                }
+                catch (Exception e) {
+                    log.error("write shared memory exception, " + dir, e);
+                    ctx.channel().close();
+                }
+            }
+        }
+
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            log.warn("shared memory bridge exception, " + dir, cause);
+            ctx.channel().close();
+        }
+    }
+
+
+    public String getId() {
+        return id;
+    }
+
+
+    public File getDir() {
+        return dir;
+    }
+
+
+    public void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalEventLoopGroup;
+import io.netty.channel.local.LocalServerChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.rocketmq.remoting.common.RemotingHelper;
+import com.alibaba.rocketmq.remoting.common.RemotingUtil;
+
+
+/**
+ * ͻ˹ڴڱҿڴʱʹ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class SharedMemoryConnector {
+    private static final Logger log = LoggerFactory.getLogger(RemotingHelper.RemotingLogName);
+
+    private static final AtomicInteger ConnectorIndex = new AtomicInteger(0);
+
+    private final String baseDir;
+    private final int ringSize;
+    private final LocalEventLoopGroup eventLoopGroup = new LocalEventLoopGroup(1);
+    private final LocalAddress bridgeAddress = new LocalAddress("rocketmq-shm-connector-"
+            + ConnectorIndex.incrementAndGet());
+    private final ConcurrentHashMap<String /* id */, SharedMemoryConnection> connectionTable =
+            new ConcurrentHashMap<String, SharedMemoryConnection>();
+    private final ServerBootstrap bridgeBootstrap = new ServerBootstrap();
+    private final Bootstrap pipelineBootstrap = new Bootstrap();
+
+
+    public SharedMemoryConnector(final String baseDir, final int ringSize, final ChannelHandler pipelineHandler) {
+        this.baseDir = baseDir;
+        this.ringSize = ringSize;
+        this.pipelineBootstrap.group(this.eventLoopGroup).channel(LocalChannel.class).handler(pipelineHandler);
+    }
+
+
+    public void start() throws IOException, InterruptedException {
+        if (!SharedMemoryRingBuffer.isPlatformSupported()) {
+            throw new IOException("shared memory transport only supported on HotSpot x86_64");
+        }
+
+        // ŽӶ˰Զ˵ַҵӦĹڴ
+        this.bridgeBootstrap.group(this.eventLoopGroup).channel(LocalServerChannel.class)
+            .childHandler(new ChannelInitializer<LocalChannel>() {
+                @Override
+                public void initChannel(LocalChannel ch) throws Exception {
+                    SharedMemoryConnection conn = connectionTable.get(ch.remoteAddress().id());
+                    if (conn != null) {
+                        ch.pipeline().addLast(conn.newBridgeHandler());
+                    }
+                    else {
+                        ch.close();
+                    }
+                }
+            });
+        this.bridgeBootstrap.bind(this.bridgeAddress).sync();
+    }
+
+
+    /**
+     * ȡ˽˿ڣ˲ڱ߽㲻ʱ-1
+     */
+    private int acceptorPort(final String addr) {
+        int index = addr.lastIndexOf(':');
+        if (index <= 0 || !RemotingUtil.isLocalAddr(addr.substring(0, index))) {
+            return -1;
+        }
+
+        File endpointDir = new File(this.baseDir, addr.substring(index + 1));
+        File acceptor = new File(endpointDir, SharedMemoryAcceptor.AcceptorFile);
+        if (!acceptor.isFile()
+                || !SharedMemoryConnection.isLockHeld(new File(endpointDir, SharedMemoryAcceptor.AcceptorLockFile))) {
+            return -1;
+        }
+
+        try {
+            FileInputStream in = new FileInputStream(acceptor);
+            try {
+                byte[] data = new byte[16];
+                int length = in.read(data);
+                return length > 0 ? Integer.parseInt(new String(data, 0, length, "UTF-8").trim()) : -1;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (Exception e) {
+            log.warn("read shared memory acceptor failed, " + acceptor, e);
+            return -1;
+        }
+    }
+
+
+    /**
+     * ˵Ĺڴ
+     * 
+     * @return ӵFuture˲ڱʧʱnullɵ÷TCP
+     */
+    public ChannelFuture connect(final String addr, final long timeoutMillis) {
+        int port = this.acceptorPort(addr);
+        if (port <= 0) {
+            return null;
+        }
+
+        try {
+            File endpointDir = new File(this.baseDir, addr.substring(addr.lastIndexOf(':') + 1));
+            final SharedMemoryConnection conn =
+                    SharedMemoryConnection.connect(endpointDir, port, this.ringSize, timeoutMillis);
+            if (null == conn) {
+                return null;
+            }
+
+            final String id = conn.getId();
+            this.connectionTable.put(id, conn);
+            conn.setCloseListener(new Runnable() {
+                @Override
+                public void run() {
+                    connectionTable.remove(id);
+                }
+            });
+
+            log.info("shared memory connection {} to {} created", id, addr);
+            ChannelFuture channelFuture = this.pipelineBootstrap.connect(this.bridgeAddress, new LocalAddress(id));
+            channelFuture.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        conn.close();
+                    }
+                }
+            });
+            return channelFuture;
+        }
+        catch (Exception e) {
+            log.warn("create shared memory connection to " + addr + " failed", e);
+        }
+
+        return null;
+    }
+
+
+    public void shutdown() {
+        for (SharedMemoryConnection conn : this.connectionTable.values()) {
+            conn.close();
+        }
+        this.awaitConnectionsReleased();
+
+        this.eventLoopGroup.shutdownGracefully();
+    }
+
+
+    /**
+     * ȴͷϣEventLoopӹرգԶΪȻ
+     */
+    private void awaitConnectionsReleased() {
+        long deadline = System.currentTimeMillis() + 1000 * 3;
+        while (!this.connectionTable.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+}
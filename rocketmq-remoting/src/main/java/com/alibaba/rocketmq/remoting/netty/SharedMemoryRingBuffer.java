@@ -0,0 +1,343 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+
+/**
+ * ڴӳļĵߡ߻λ̼ͬ䴫<br>
+ * ļͷдλ뻽ϢļͷֶεĶдǰڴϣ֤̰˳ɼ<br>
+ * дλõԭڴHotSpotx86_64ϵʵ֣Javaڴģ͵ı֤ƽ̨ʹ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class SharedMemoryRingBuffer {
+    private static final int Magic = 0x524D5152;
+    // ļͷֶΰид˫α
+    private static final int MagicOffset = 0;
+    private static final int CapacityOffset = 4;
+    private static final int WriteIndexOffset = 64;
+    private static final int ReadIndexOffset = 128;
+    private static final int ReaderSleepingOffset = 192;
+    private static final int ReaderDoorbellPortOffset = 196;
+    private static final int ClosedOffset = 256;
+    public static final int HeaderSize = 320;
+
+    private final File file;
+    private final int capacity;
+    private final int mask;
+    private final MappedByteBuffer mappedByteBuffer;
+    // ͼͬһһλֻֻдͼᱻʹ
+    private final ByteBuffer data;
+    // ˵Ķλûдλãֻһ߳޸
+    private long localIndex;
+    private final byte[] lengthBytes = new byte[4];
+    // ڴϣHotSpotvolatileдΪϣӳڴϵͨдԽ
+    // ÿֻڱʹãԶû
+    private volatile int fence;
+
+
+    /**
+     * Ƿʹùڴ滷λ<br>
+     * HotSpotx86_64Եָд8ֽڣдλòᱻ𿪣ƽ̨DirectByteBufferֽڶд
+     */
+    public static boolean isPlatformSupported() {
+        String arch = System.getProperty("os.arch", "");
+        String vm = System.getProperty("java.vm.name", "");
+        return ("amd64".equals(arch) || "x86_64".equals(arch)) && (vm.contains("HotSpot") || vm.contains("OpenJDK"));
+    }
+
+
+    private static void checkPlatform() throws IOException {
+        if (!isPlatformSupported()) {
+            throw new IOException("shared memory ring buffer not supported on " + System.getProperty("java.vm.name")
+                    + " " + System.getProperty("os.arch"));
+        }
+    }
+
+
+    private SharedMemoryRingBuffer(final File file, final int capacity, final MappedByteBuffer mappedByteBuffer) {
+        this.file = file;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.mappedByteBuffer = mappedByteBuffer;
+        ByteBuffer dup = mappedByteBuffer.duplicate();
+        dup.position(HeaderSize);
+        this.data = dup.slice();
+    }
+
+
+    /**
+     * ļʼļͷȡСֵָ2
+     */
+    public static SharedMemoryRingBuffer create(final File file, final int minCapacity) throws IOException {
+        checkPlatform();
+        int capacity = Integer.highestOneBit(Math.max(minCapacity, 1024) - 1) << 1;
+        MappedByteBuffer buffer = map(file, HeaderSize + capacity);
+        SharedMemoryRingBuffer ring = new SharedMemoryRingBuffer(file, capacity, buffer);
+        buffer.putInt(CapacityOffset, capacity);
+        buffer.putInt(MagicOffset, Magic);
+        return ring;
+    }
+
+
+    /**
+     * 򿪶Զ˴ļ
+     */
+    public static SharedMemoryRingBuffer open(final File file) throws IOException {
+        checkPlatform();
+        if (file.length() <= HeaderSize) {
+            throw new IOException("invalid ring buffer file " + file);
+        }
+
+        MappedByteBuffer buffer = map(file, (int) file.length());
+        if (buffer.getInt(MagicOffset) != Magic) {
+            clean(buffer);
+            throw new IOException("invalid ring buffer file magic " + file);
+        }
+
+        int capacity = buffer.getInt(CapacityOffset);
+        if (Integer.bitCount(capacity) != 1 || HeaderSize + capacity != file.length()) {
+            clean(buffer);
+            throw new IOException("invalid ring buffer file capacity " + file);
+        }
+
+        return new SharedMemoryRingBuffer(file, capacity, buffer);
+    }
+
+
+    private static MappedByteBuffer map(final File file, final int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            return raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+
+    private void fullFence() {
+        this.fence = 0;
+    }
+
+
+    /**
+     * ȡԶдļͷֶΣ֮Ķдǰȡ֮ǰ
+     */
+    private long getLongAcquire(final int offset) {
+        long value = this.mappedByteBuffer.getLong(offset);
+        this.fullFence();
+        return value;
+    }
+
+
+    private int getIntAcquire(final int offset) {
+        int value = this.mappedByteBuffer.getInt(offset);
+        this.fullFence();
+        return value;
+    }
+
+
+    /**
+     * дļͷֶΣ֮ǰĶдƳٵд֮֮ĶȡҲǰд֮ǰ
+     */
+    private void putLongVolatile(final int offset, final long value) {
+        this.fullFence();
+        this.mappedByteBuffer.putLong(offset, value);
+        this.fullFence();
+    }
+
+
+    private void putIntVolatile(final int offset, final int value) {
+        this.fullFence();
+        this.mappedByteBuffer.putInt(offset, value);
+        this.fullFence();
+    }
+
+
+    /**
+     * ʣռǷԷһ¼
+     */
+    public boolean hasRoom(final int length) {
+        return this.capacity - (this.localIndex - this.getReadIndex()) >= 4 + length;
+    }
+
+
+    /**
+     * ԶѾλãд߳߳ҲԵ
+     */
+    public long getReadIndex() {
+        return this.getLongAcquire(ReadIndexOffset);
+    }
+
+
+    /**
+     * Զ˶λú󣬲ܷһָȵļ¼ֻд̵߳
+     */
+    public long roomReadIndex(final int length) {
+        return this.localIndex + 4 + length - this.capacity;
+    }
+
+
+    public boolean fits(final int length) {
+        return 4 + length <= this.capacity;
+    }
+
+
+    /**
+     * дһ¼ǰҪȷhasRoomдԶɼ
+     * 
+     * @param header
+     *            ֡ͷǰ4ֽΪݳ
+     */
+    public void write(final ByteBuffer header, final byte[] body) {
+        this.put(header.array(), header.arrayOffset() + header.position(), header.remaining());
+        if (body != null) {
+            this.put(body, 0, body.length);
+        }
+
+        this.putLongVolatile(WriteIndexOffset, this.localIndex);
+    }
+
+
+    private void put(final byte[] src, final int offset, final int length) {
+        int pos = (int) (this.localIndex & this.mask);
+        int first = Math.min(length, this.capacity - pos);
+        this.data.position(pos);
+        this.data.put(src, offset, first);
+        if (first < length) {
+            this.data.position(0);
+            this.data.put(src, offset + first, length - first);
+        }
+
+        this.localIndex += length;
+    }
+
+
+    /**
+     * ȡһֶ֡Σûݷnull<br>
+     * дһη¼ȳ߳ѷ˵ļƻ
+     * 
+     * @throws IOException
+     *             ݲϷ÷Ҫر
+     */
+    public byte[] read() throws IOException {
+        long available = this.getLongAcquire(WriteIndexOffset) - this.localIndex;
+        if (available <= 0) {
+            return null;
+        }
+
+        if (available < 4 || available > this.capacity) {
+            throw new IOException("corrupted shared memory ring, available " + available + " " + this.file);
+        }
+
+        this.get(this.lengthBytes, 0, 4);
+        int length =
+                ((this.lengthBytes[0] & 0xff) << 24) | ((this.lengthBytes[1] & 0xff) << 16)
+                        | ((this.lengthBytes[2] & 0xff) << 8) | (this.lengthBytes[3] & 0xff);
+        if (length < 0 || length > this.capacity - 4 || length > available - 4) {
+            throw new IOException("corrupted shared memory ring, frame length " + length + " available "
+                    + available + " " + this.file);
+        }
+
+        byte[] frame = new byte[length];
+        this.get(frame, 0, length);
+        this.putLongVolatile(ReadIndexOffset, this.localIndex);
+        return frame;
+    }
+
+
+    public boolean isEmpty() {
+        return this.localIndex >= this.getLongAcquire(WriteIndexOffset);
+    }
+
+
+    private void get(final byte[] dst, final int offset, final int length) {
+        int pos = (int) (this.localIndex & this.mask);
+        int first = Math.min(length, this.capacity - pos);
+        this.data.position(pos);
+        this.data.get(dst, offset, first);
+        if (first < length) {
+            this.data.position(0);
+            this.data.get(dst, offset + first, length - first);
+        }
+
+        this.localIndex += length;
+    }
+
+
+    public boolean isReaderSleeping() {
+        return this.getIntAcquire(ReaderSleepingOffset) != 0;
+    }
+
+
+    public void setReaderSleeping(final boolean sleeping) {
+        this.putIntVolatile(ReaderSleepingOffset, sleeping ? 1 : 0);
+    }
+
+
+    public int getReaderDoorbellPort() {
+        return this.getIntAcquire(ReaderDoorbellPortOffset);
+    }
+
+
+    public void setReaderDoorbellPort(final int port) {
+        this.putIntVolatile(ReaderDoorbellPortOffset, port);
+    }
+
+
+    public boolean isClosed() {
+        return this.getIntAcquire(ClosedOffset) != 0;
+    }
+
+
+    public void markClosed() {
+        this.putIntVolatile(ClosedOffset, 1);
+    }
+
+
+    /**
+     * ӳ䣬ǰ뱣֤û߳ٷʸû
+     */
+    public void release() {
+        clean(this.mappedByteBuffer);
+    }
+
+
+    public File getFile() {
+        return file;
+    }
+
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    private static void clean(final ByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        }
+        catch (Exception e) {
+            // ܽӳʱGC
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.NVPair;
+
+
+/**
+ * նHeaderʽprotobufʽѡһ<br>
+ * ʹvarintֶʹñŴ棬ֵֶͣtoStringparseLong<br>
+ * ʽcode | language | version | opaque | flag | remark | (fieldId [fieldName] type value)*
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class CompactHeaderSerializer {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * ֶΪ±+10ʾֶ<br>
+     * ֻĩβ׷ӣ޸˳򣬷¾ɰ汾޷ͨ
+     */
+    private static final String[] FieldNames = { //
+        "topic", "queueId", "queueOffset", "maxMsgNums", "sysFlag", "commitOffset", "suspendTimeoutMillis",
+        "subscription", "consumerGroup", "producerGroup", "defaultTopic", "defaultTopicQueueNums",
+        "bornTimestamp", "flag", "properties", "reconsumeTimes", "msgId", "offset", "nextBeginOffset",
+        "minOffset", "maxOffset", "suggestPullingFromSlave", "brokerName", "brokerId", "brokerAddr",
+        "commitLogOffset", "tranStateTableOffset", "commitOrRollback", "timestamp", "version", "clientID",
+        "key", "maxNum", "beginTimestamp", "endTimestamp", "cluster", "clusterName" };
+    private static final HashMap<String, Integer> FieldIdTable = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < FieldNames.length; i++) {
+            FieldIdTable.put(FieldNames[i], i + 1);
+        }
+    }
+
+    // ֵֶ
+    public static final int ValueString = 0;
+    public static final int ValueLong = 1;
+    public static final int ValueTrue = 2;
+    public static final int ValueFalse = 3;
+    public static final int ValueDouble = 4;
+
+
+    public static int fieldId(final String name) {
+        Integer id = FieldIdTable.get(name);
+        return id != null ? id : 0;
+    }
+
+
+    /**
+     * д뻺
+     */
+    public static class Writer {
+        private byte[] buffer;
+        private int position = 0;
+
+
+        public Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+
+        private void ensure(final int size) {
+            if (this.position + size > this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + size));
+            }
+        }
+
+
+        public void writeByte(final int value) {
+            this.ensure(1);
+            this.buffer[this.position++] = (byte) value;
+        }
+
+
+        /**
+         * ޷varint
+         */
+        public void writeVarint(long value) {
+            this.ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.buffer[this.position++] = (byte) value;
+        }
+
+
+        public void writeUInt32(final int value) {
+            this.writeVarint(value & 0xFFFFFFFFL);
+        }
+
+
+        private void writeRaw(final byte[] data) {
+            this.ensure(data.length);
+            System.arraycopy(data, 0, this.buffer, this.position, data.length);
+            this.position += data.length;
+        }
+
+
+        /**
+         * Ϊյַȼ10ʾnull
+         */
+        public void writeNullableString(final String value) {
+            if (null == value) {
+                this.writeVarint(0);
+            }
+            else {
+                byte[] data = value.getBytes(UTF8);
+                this.writeVarint(data.length + 1);
+                this.writeRaw(data);
+            }
+        }
+
+
+        public void writeFieldName(final String name, final int id) {
+            this.writeVarint(id);
+            if (0 == id) {
+                byte[] data = name.getBytes(UTF8);
+                this.writeVarint(data.length);
+                this.writeRaw(data);
+            }
+        }
+
+
+        public void writeStringValue(final String value) {
+            byte[] data = value.getBytes(UTF8);
+            this.writeByte(ValueString);
+            this.writeVarint(data.length);
+            this.writeRaw(data);
+        }
+
+
+        public void writeLongValue(final long value) {
+            this.writeByte(ValueLong);
+            // zigzagҲܽձ
+            this.writeVarint((value << 1) ^ (value >> 63));
+        }
+
+
+        public void writeBooleanValue(final boolean value) {
+            this.writeByte(value ? ValueTrue : ValueFalse);
+        }
+
+
+        public void writeDoubleValue(final double value) {
+            this.writeByte(ValueDouble);
+            long bits = Double.doubleToLongBits(value);
+            this.ensure(8);
+            for (int i = 0; i < 8; i++) {
+                this.buffer[this.position++] = (byte) (bits >>> (i * 8));
+            }
+        }
+
+
+        public byte[] getBuffer() {
+            return buffer;
+        }
+
+
+        public int getPosition() {
+            return position;
+        }
+    }
+
+    /**
+     * ByteBufferǰλöȡָ
+     */
+    public static class Reader {
+        private final ByteBuffer byteBuffer;
+        private final int limit;
+
+
+        public Reader(ByteBuffer byteBuffer, int length) {
+            this.byteBuffer = byteBuffer;
+            this.limit = byteBuffer.position() + length;
+        }
+
+
+        public boolean hasRemaining() {
+            return this.byteBuffer.position() < this.limit;
+        }
+
+
+        public int readByte() {
+            return this.byteBuffer.get() & 0xFF;
+        }
+
+
+        public long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = this.byteBuffer.get();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+
+        private String readString(final int length) {
+            if (length < 0 || this.byteBuffer.position() + length > this.limit) {
+                throw new IllegalArgumentException("string length " + length + " out of header");
+            }
+
+            String value;
+            if (this.byteBuffer.hasArray()) {
+                value =
+                        new String(this.byteBuffer.array(), this.byteBuffer.arrayOffset()
+                                + this.byteBuffer.position(), length, UTF8);
+            }
+            else {
+                byte[] data = new byte[length];
+                this.byteBuffer.duplicate().get(data);
+                value = new String(data, UTF8);
+            }
+            this.byteBuffer.position(this.byteBuffer.position() + length);
+            return value;
+        }
+
+
+        public String readString() {
+            return this.readString((int) this.readVarint());
+        }
+
+
+        public String readNullableString() {
+            int length = (int) this.readVarint();
+            if (0 == length) {
+                return null;
+            }
+
+            return this.readString(length - 1);
+        }
+
+
+        /**
+         * °汾׷ӵıϰ汾вڣnullɵ÷ֶ
+         */
+        public String readFieldName() {
+            long id = this.readVarint();
+            if (0 == id) {
+                return this.readString();
+            }
+
+            if (id > FieldNames.length) {
+                return null;
+            }
+
+            return FieldNames[(int) id - 1];
+        }
+
+
+        public long readZigZag() {
+            long value = this.readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+
+        public double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits |= (long) (this.byteBuffer.get() & 0xFF) << (i * 8);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+    }
+
+    /**
+     * ԶֶΣֵԭʼ
+     */
+    public static class CompactFields {
+        private int size = 0;
+        private String[] names = new String[8];
+        private byte[] types = new byte[8];
+        private long[] longValues = new long[8];
+        private Object[] objectValues = new Object[8];
+
+
+        private void add(final String name, final int type, final long longValue, final Object objectValue) {
+            if (this.size == this.names.length) {
+                int capacity = this.size * 2;
+                this.names = Arrays.copyOf(this.names, capacity);
+                this.types = Arrays.copyOf(this.types, capacity);
+                this.longValues = Arrays.copyOf(this.longValues, capacity);
+                this.objectValues = Arrays.copyOf(this.objectValues, capacity);
+            }
+
+            this.names[this.size] = name;
+            this.types[this.size] = (byte) type;
+            this.longValues[this.size] = longValue;
+            this.objectValues[this.size] = objectValue;
+            this.size++;
+        }
+
+
+        /**
+         * ֵͣʶֶζֵ
+         */
+        public void read(final Reader reader) {
+            while (reader.hasRemaining()) {
+                String name = reader.readFieldName();
+                int type = reader.readByte();
+                long longValue = 0;
+                Object objectValue = null;
+                switch (type) {
+                case ValueString:
+                    objectValue = reader.readString();
+                    break;
+                case ValueLong:
+                    longValue = reader.readZigZag();
+                    break;
+                case ValueTrue:
+                case ValueFalse:
+                    break;
+                case ValueDouble:
+                    objectValue = reader.readDouble();
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown value type " + type);
+                }
+
+                if (name != null) {
+                    this.add(name, type, longValue, objectValue);
+                }
+            }
+        }
+
+
+        public int getSize() {
+            return size;
+        }
+
+
+        public String getName(final int index) {
+            return this.names[index];
+        }
+
+
+        public int getType(final int index) {
+            return this.types[index];
+        }
+
+
+        public long getLong(final int index) {
+            return this.longValues[index];
+        }
+
+
+        public String getString(final int index) {
+            return (String) this.objectValues[index];
+        }
+
+
+        public double getDouble(final int index) {
+            return (Double) this.objectValues[index];
+        }
+
+
+        /**
+         * ֵַʽprotobufʽһ
+         */
+        public String getValueAsString(final int index) {
+            switch (this.types[index]) {
+            case ValueString:
+                return this.getString(index);
+            case ValueLong:
+                return String.valueOf(this.getLong(index));
+            case ValueTrue:
+                return "true";
+            case ValueFalse:
+                return "false";
+            case ValueDouble:
+                return String.valueOf(this.getDouble(index));
+            default:
+                return null;
+            }
+        }
+
+
+        public List<NVPair> toNVPairs() {
+            List<NVPair> result = new ArrayList<NVPair>(this.size);
+            for (int i = 0; i < this.size; i++) {
+                result.add(NVPair.newBuilder().setName(this.names[i]).setValue(this.getValueAsString(i)).build());
+            }
+            return result;
+        }
+    }
+}
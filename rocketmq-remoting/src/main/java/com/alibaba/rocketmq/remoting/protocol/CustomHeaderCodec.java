@@ -0,0 +1,431 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.protocol;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.alibaba.rocketmq.remoting.CommandCustomHeader;
+import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
+import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import com.alibaba.rocketmq.remoting.protocol.CompactHeaderSerializer.CompactFields;
+import com.alibaba.rocketmq.remoting.protocol.CompactHeaderSerializer.Writer;
+import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.NVPair;
+
+
+/**
+ * CommandCustomHeader룬ÿHeaderֻһֶΣ֮벻ٲֶΡע
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class CustomHeaderCodec {
+    private static final ConcurrentHashMap<Class<?>, CustomHeaderCodec> CodecTable =
+            new ConcurrentHashMap<Class<?>, CustomHeaderCodec>(64);
+
+    // ֶ
+    private static final int TypeUnknown = 0;
+    private static final int TypeString = 1;
+    private static final int TypeInteger = 2;
+    private static final int TypeLong = 3;
+    private static final int TypeBoolean = 4;
+    private static final int TypeDouble = 5;
+    private static final int TypeInt = 6;
+    private static final int TypePrimitiveLong = 7;
+    private static final int TypePrimitiveBoolean = 8;
+    private static final int TypePrimitiveDouble = 9;
+
+    /**
+     * ֶεķϢ
+     */
+    static class FieldCodec {
+        private final Field field;
+        private final String name;
+        // ոʽеֶα
+        private final int nameId;
+        private final int type;
+        private final boolean notNull;
+
+
+        public FieldCodec(Field field) {
+            this.field = field;
+            this.field.setAccessible(true);
+            this.name = field.getName();
+            this.nameId = CompactHeaderSerializer.fieldId(this.name);
+            this.type = typeOf(field.getType());
+            this.notNull = field.isAnnotationPresent(CFNotNull.class);
+        }
+
+
+        /**
+         * ȡֵֶַʽͲװ
+         */
+        public String getAsString(final Object header) throws IllegalAccessException {
+            switch (this.type) {
+            case TypeInt:
+                return String.valueOf(this.field.getInt(header));
+            case TypePrimitiveLong:
+                return String.valueOf(this.field.getLong(header));
+            case TypePrimitiveBoolean:
+                return String.valueOf(this.field.getBoolean(header));
+            case TypePrimitiveDouble:
+                return String.valueOf(this.field.getDouble(header));
+            default:
+                Object value = this.field.get(header);
+                return value != null ? value.toString() : null;
+            }
+        }
+
+
+        /**
+         * ոʽдֶΣֵfalse
+         */
+        public boolean writeCompact(final Object header, final Writer writer) throws IllegalAccessException {
+            switch (this.type) {
+            case TypeInt:
+                writer.writeFieldName(this.name, this.nameId);
+                writer.writeLongValue(this.field.getInt(header));
+                return true;
+            case TypePrimitiveLong:
+                writer.writeFieldName(this.name, this.nameId);
+                writer.writeLongValue(this.field.getLong(header));
+                return true;
+            case TypePrimitiveBoolean:
+                writer.writeFieldName(this.name, this.nameId);
+                writer.writeBooleanValue(this.field.getBoolean(header));
+                return true;
+            case TypePrimitiveDouble:
+                writer.writeFieldName(this.name, this.nameId);
+                writer.writeDoubleValue(this.field.getDouble(header));
+                return true;
+            default:
+                break;
+            }
+
+            Object value = this.field.get(header);
+            if (null == value) {
+                return false;
+            }
+
+            writer.writeFieldName(this.name, this.nameId);
+            switch (this.type) {
+            case TypeInteger:
+            case TypeLong:
+                writer.writeLongValue(((Number) value).longValue());
+                break;
+            case TypeBoolean:
+                writer.writeBooleanValue((Boolean) value);
+                break;
+            case TypeDouble:
+                writer.writeDoubleValue((Double) value);
+                break;
+            default:
+                writer.writeStringValue(value.toString());
+                break;
+            }
+            return true;
+        }
+
+
+        /**
+         * ոʽеֵͲһʱֶַͱ仯
+         */
+        public void setFromLong(final Object header, final long value) throws IllegalAccessException {
+            switch (this.type) {
+            case TypeInteger:
+                this.field.set(header, Integer.valueOf((int) value));
+                break;
+            case TypeLong:
+                this.field.set(header, Long.valueOf(value));
+                break;
+            case TypeInt:
+                this.field.setInt(header, (int) value);
+                break;
+            case TypePrimitiveLong:
+                this.field.setLong(header, value);
+                break;
+            default:
+                this.setFromString(header, String.valueOf(value));
+                break;
+            }
+        }
+
+
+        public void setFromBoolean(final Object header, final boolean value) throws IllegalAccessException {
+            switch (this.type) {
+            case TypeBoolean:
+                this.field.set(header, Boolean.valueOf(value));
+                break;
+            case TypePrimitiveBoolean:
+                this.field.setBoolean(header, value);
+                break;
+            default:
+                this.setFromString(header, String.valueOf(value));
+                break;
+            }
+        }
+
+
+        public void setFromDouble(final Object header, final double value) throws IllegalAccessException {
+            switch (this.type) {
+            case TypeDouble:
+                this.field.set(header, Double.valueOf(value));
+                break;
+            case TypePrimitiveDouble:
+                this.field.setDouble(header, value);
+                break;
+            default:
+                this.setFromString(header, String.valueOf(value));
+                break;
+            }
+        }
+
+
+        public void setFromString(final Object header, final String value) throws IllegalAccessException {
+            switch (this.type) {
+            case TypeString:
+                this.field.set(header, value);
+                break;
+            case TypeInteger:
+                this.field.set(header, Integer.valueOf(value));
+                break;
+            case TypeLong:
+                this.field.set(header, Long.valueOf(value));
+                break;
+            case TypeBoolean:
+                this.field.set(header, Boolean.valueOf(value));
+                break;
+            case TypeDouble:
+                this.field.set(header, Double.valueOf(value));
+                break;
+            case TypeInt:
+                this.field.setInt(header, Integer.parseInt(value));
+                break;
+            case TypePrimitiveLong:
+                this.field.setLong(header, Long.parseLong(value));
+                break;
+            case TypePrimitiveBoolean:
+                this.field.setBoolean(header, Boolean.parseBoolean(value));
+                break;
+            case TypePrimitiveDouble:
+                this.field.setDouble(header, Double.parseDouble(value));
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private final Class<? extends CommandCustomHeader> headerClass;
+    // ˳getDeclaredFieldsһ
+    private final FieldCodec[] fields;
+    private final HashMap<String, FieldCodec> fieldTable;
+    // ֻǿֶ
+    private final FieldCodec[] notNullFields;
+
+
+    private CustomHeaderCodec(Class<? extends CommandCustomHeader> headerClass) {
+        this.headerClass = headerClass;
+        List<FieldCodec> all = new ArrayList<FieldCodec>();
+        List<FieldCodec> notNull = new ArrayList<FieldCodec>();
+        this.fieldTable = new HashMap<String, FieldCodec>();
+        for (Field field : headerClass.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.getName().startsWith("this")) {
+                continue;
+            }
+
+            FieldCodec fc = new FieldCodec(field);
+            all.add(fc);
+            this.fieldTable.put(fc.name, fc);
+            // ͲΪ
+            if (fc.notNull && !field.getType().isPrimitive()) {
+                notNull.add(fc);
+            }
+        }
+
+        this.fields = all.toArray(new FieldCodec[all.size()]);
+        this.notNullFields = notNull.toArray(new FieldCodec[notNull.size()]);
+    }
+
+
+    private static int typeOf(final Class<?> type) {
+        if (type == String.class)
+            return TypeString;
+        if (type == Integer.class)
+            return TypeInteger;
+        if (type == Long.class)
+            return TypeLong;
+        if (type == Boolean.class)
+            return TypeBoolean;
+        if (type == Double.class)
+            return TypeDouble;
+        if (type == int.class)
+            return TypeInt;
+        if (type == long.class)
+            return TypePrimitiveLong;
+        if (type == boolean.class)
+            return TypePrimitiveBoolean;
+        if (type == double.class)
+            return TypePrimitiveDouble;
+        return TypeUnknown;
+    }
+
+
+    public static CustomHeaderCodec getCodec(final Class<? extends CommandCustomHeader> headerClass) {
+        CustomHeaderCodec codec = CodecTable.get(headerClass);
+        if (null == codec) {
+            codec = new CustomHeaderCodec(headerClass);
+            CustomHeaderCodec prev = CodecTable.putIfAbsent(headerClass, codec);
+            if (prev != null) {
+                codec = prev;
+            }
+        }
+
+        return codec;
+    }
+
+
+    /**
+     * ǿֶαNVPair
+     */
+    public List<NVPair> encode(final CommandCustomHeader header) {
+        List<NVPair> result = new ArrayList<NVPair>(this.fields.length);
+        for (FieldCodec fc : this.fields) {
+            String value = null;
+            try {
+                value = fc.getAsString(header);
+            }
+            catch (IllegalAccessException e) {
+            }
+
+            if (value != null) {
+                result.add(NVPair.newBuilder().setName(fc.name).setValue(value).build());
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * ǿֶΰոʽд
+     */
+    public void encodeCompact(final CommandCustomHeader header, final Writer writer) {
+        for (FieldCodec fc : this.fields) {
+            try {
+                fc.writeCompact(header, writer);
+            }
+            catch (IllegalAccessException e) {
+            }
+        }
+    }
+
+
+    private CommandCustomHeader newHeader() {
+        try {
+            return this.headerClass.newInstance();
+        }
+        catch (InstantiationException e) {
+            return null;
+        }
+        catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * 벢ǿֶΣ޷󷵻null
+     */
+    public CommandCustomHeader decode(final List<NVPair> extFields) throws RemotingCommandException {
+        CommandCustomHeader header = this.newHeader();
+        if (null == header) {
+            return null;
+        }
+
+        for (NVPair nvp : extFields) {
+            FieldCodec fc = this.fieldTable.get(nvp.getName());
+            if (fc != null) {
+                try {
+                    fc.setFromString(header, nvp.getValue());
+                }
+                // ֵʽֶαĬֵ
+                catch (IllegalArgumentException e) {
+                }
+                catch (IllegalAccessException e) {
+                }
+            }
+        }
+
+        this.checkHeader(header);
+        return header;
+    }
+
+
+    /**
+     * ոʽֶΣֵַת
+     */
+    public CommandCustomHeader decodeCompact(final CompactFields compactFields) throws RemotingCommandException {
+        CommandCustomHeader header = this.newHeader();
+        if (null == header) {
+            return null;
+        }
+
+        for (int i = 0; i < compactFields.getSize(); i++) {
+            FieldCodec fc = this.fieldTable.get(compactFields.getName(i));
+            if (null == fc) {
+                continue;
+            }
+
+            try {
+                switch (compactFields.getType(i)) {
+                case CompactHeaderSerializer.ValueLong:
+                    fc.setFromLong(header, compactFields.getLong(i));
+                    break;
+                case CompactHeaderSerializer.ValueTrue:
+                    fc.setFromBoolean(header, true);
+                    break;
+                case CompactHeaderSerializer.ValueFalse:
+                    fc.setFromBoolean(header, false);
+                    break;
+                case CompactHeaderSerializer.ValueDouble:
+                    fc.setFromDouble(header, compactFields.getDouble(i));
+                    break;
+                default:
+                    fc.setFromString(header, compactFields.getString(i));
+                    break;
+                }
+            }
+            // ֵʽֶαĬֵ
+            catch (IllegalArgumentException e) {
+            }
+            catch (IllegalAccessException e) {
+            }
+        }
+
+        this.checkHeader(header);
+        return header;
+    }
+
+
+    private void checkHeader(final CommandCustomHeader header) throws RemotingCommandException {
+        for (FieldCodec fc : this.notNullFields) {
+            Object value = null;
+            try {
+                value = fc.field.get(header);
+            }
+            catch (IllegalAccessException e) {
+            }
+
+            if (null == value) {
+                throw new RemotingCommandException(fc.name + " is null");
+            }
+        }
+
+        header.checkFields();
+    }
+}
@@ -3,22 +3,22 @@
  */
 package com.alibaba.rocketmq.remoting.protocol;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.alibaba.rocketmq.remoting.CommandCustomHeader;
-import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import com.alibaba.rocketmq.remoting.protocol.CompactHeaderSerializer.CompactFields;
+import com.alibaba.rocketmq.remoting.protocol.CompactHeaderSerializer.Reader;
+import com.alibaba.rocketmq.remoting.protocol.CompactHeaderSerializer.Writer;
 import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.CommandHeader;
 import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.FlagBit;
 import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.LanguageCode;
 import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.NVPair;
 import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.ResponseCode;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 
@@ -31,6 +31,16 @@ public class RemotingCommand {
     public static String RemotingVersionKey = "rocketmq.remoting.version";
     private static volatile int ConfigVersion = -1;
     private static AtomicInteger RequestId = new AtomicInteger(0);
+    // ǷʹýHeaderʽرպֻʹprotobufʽܽոʽ
+    public static String CompactHeaderEnableKey = "rocketmq.remoting.compactHeader.enable";
+    private static final boolean CompactHeaderEnable = Boolean.parseBoolean(System.getProperty(
+        CompactHeaderEnableKey, "true"));
+    // ԽսHeaderʽϰ汾Դ˱־λ
+    private static final int CompactHeaderAcceptedBit = 2;
+    // HeaderȵֽڱʾHeaderʽprotobufʽΪ0
+    private static final int HeaderTypeShift = 24;
+    private static final int HeaderLengthMask = (1 << HeaderTypeShift) - 1;
+    private static final int HeaderTypeCompact = 1;
 
     /**
      * Header 
@@ -42,7 +52,11 @@ public class RemotingCommand {
     private int flag = 0;
     private String remark;
     private List<NVPair> extFields;
+    // ոʽԶֶ
+    private CompactFields compactFields;
     private CommandCustomHeader customHeader;
+    // ǷԽոʽ룬ϴ
+    private boolean compactHeader = false;
 
     /**
      * Body 
@@ -59,6 +73,9 @@ public class RemotingCommand {
         cmd.setCode(code);
         cmd.customHeader = customHeader;
         setCmdVersion(cmd);
+        if (CompactHeaderEnable) {
+            cmd.markCompactHeaderAccepted();
+        }
         return cmd;
     }
 
@@ -121,31 +138,7 @@ public class RemotingCommand {
 
     private void makeCustomHeaderToNet() {
         if (this.customHeader != null) {
-            Field[] fields = this.customHeader.getClass().getDeclaredFields();
-            this.extFields = new ArrayList<NVPair>(fields.length);
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String name = field.getName();
-                    if (!name.startsWith("this")) {
-                        Object value = null;
-                        try {
-                            field.setAccessible(true);
-                            value = field.get(this.customHeader);
-                        }
-                        catch (IllegalArgumentException e) {
-                        }
-                        catch (IllegalAccessException e) {
-                        }
-
-                        if (value != null) {
-                            NVPair.Builder nvb = NVPair.newBuilder();
-                            nvb.setName(name);
-                            nvb.setValue(value.toString());
-                            this.extFields.add(nvb.build());
-                        }
-                    }
-                }
-            }
+            this.extFields = CustomHeaderCodec.getCodec(this.customHeader.getClass()).encode(this.customHeader);
         }
     }
 
@@ -157,101 +150,12 @@ public class RemotingCommand {
 
     public CommandCustomHeader decodeCommandCustomHeader(Class<? extends CommandCustomHeader> classHeader)
             throws RemotingCommandException {
-        if (this.extFields != null) {
-            CommandCustomHeader objectHeader;
-            try {
-                objectHeader = classHeader.newInstance();
-            }
-            catch (InstantiationException e) {
-                return null;
-            }
-            catch (IllegalAccessException e) {
-                return null;
-            }
-
-            for (NVPair nvp : this.extFields) {
-                String name = nvp.getName();
-                String value = nvp.getValue();
-
-                try {
-                    Field field = objectHeader.getClass().getDeclaredField(name);
-                    field.setAccessible(true);
-                    String type = field.getType().getSimpleName();
-                    Object valueParsed = null;
-
-                    if (type.equals("String")) {
-                        valueParsed = value;
-                    }
-                    else if (type.equals("Integer")) {
-                        valueParsed = Integer.parseInt(value);
-                    }
-                    else if (type.equals("Long")) {
-                        valueParsed = Long.parseLong(value);
-                    }
-                    else if (type.equals("Boolean")) {
-                        valueParsed = Boolean.parseBoolean(value);
-                    }
-                    else if (type.equals("Double")) {
-                        valueParsed = Double.parseDouble(value);
-                    }
-                    else if (type.equals("int")) {
-                        valueParsed = Integer.parseInt(value);
-                    }
-                    else if (type.equals("long")) {
-                        valueParsed = Long.parseLong(value);
-                    }
-                    else if (type.equals("boolean")) {
-                        valueParsed = Boolean.parseBoolean(value);
-                    }
-                    else if (type.equals("double")) {
-                        valueParsed = Double.parseDouble(value);
-                    }
-
-                    field.set(objectHeader, valueParsed);
-                }
-                catch (SecurityException e) {
-                }
-                catch (NoSuchFieldException e) {
-                }
-                catch (IllegalArgumentException e) {
-                }
-                catch (IllegalAccessException e) {
-                }
-            }
-
-            // 鷵ضǷЧ
-            Field[] fields = objectHeader.getClass().getDeclaredFields();
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String name = field.getName();
-                    if (!name.startsWith("this")) {
-                        Object value = null;
-                        try {
-                            field.setAccessible(true);
-                            value = field.get(objectHeader);
-                        }
-                        catch (IllegalArgumentException e) {
-                        }
-                        catch (IllegalAccessException e) {
-                        }
-
-                        // ֵ
-                        if (null == value) {
-                            Annotation[] ann = field.getAnnotations();
-                            if (ann != null && ann.length > 0) {
-                                if (ann[0].annotationType().getSimpleName()
-                                    .equalsIgnoreCase(CFNotNull.class.getSimpleName())) {
-                                    throw new RemotingCommandException(name + " is null");
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-
-            objectHeader.checkFields();
+        if (this.compactFields != null) {
+            return CustomHeaderCodec.getCodec(classHeader).decodeCompact(this.compactFields);
+        }
 
-            return objectHeader;
+        if (this.extFields != null) {
+            return CustomHeaderCodec.getCodec(classHeader).decode(this.extFields);
         }
 
         return null;
@@ -273,7 +177,7 @@ public class RemotingCommand {
         this.makeCustomHeaderToNet();
 
         // extFields
-        if (this.extFields != null) {
+        if (this.getExtFields() != null) {
             int i = 0;
             for (NVPair nv : this.extFields) {
                 builder.addExtFields(i++, nv);
@@ -284,31 +188,77 @@ public class RemotingCommand {
     }
 
 
-    public ByteBuffer encode() {
-        CommandHeader header = this.buildHeader();
+    /**
+     * ոʽHeader
+     */
+    private Writer buildCompactHeader() {
+        Writer writer = new Writer(128);
+        writer.writeUInt32(this.code);
+        writer.writeByte(this.language.getNumber());
+        writer.writeUInt32(this.version);
+        writer.writeUInt32(this.opaque);
+        writer.writeUInt32(this.flag);
+        writer.writeNullableString(this.remark);
+
+        if (this.customHeader != null) {
+            CustomHeaderCodec.getCodec(this.customHeader.getClass()).encodeCompact(this.customHeader, writer);
+        }
+        else if (this.getExtFields() != null) {
+            for (NVPair nv : this.getExtFields()) {
+                writer.writeFieldName(nv.getName(), CompactHeaderSerializer.fieldId(nv.getName()));
+                writer.writeStringValue(nv.getValue());
+            }
+        }
+
+        return writer;
+    }
+
+
+    /**
+     * HeaderܳȡHeaderȣΪbodyԤռ
+     */
+    private ByteBuffer encodeHeader(final int bodyLength, final boolean compact, final int reserve) {
+        byte[] headerData;
+        int headerLength;
+        int headerType = 0;
+        if (compact) {
+            Writer writer = this.buildCompactHeader();
+            headerData = writer.getBuffer();
+            headerLength = writer.getPosition();
+            headerType = HeaderTypeCompact;
+        }
+        else {
+            headerData = this.buildHeader().toByteArray();
+            headerLength = headerData.length;
+        }
 
         // 1> header length size
         int length = 4;
 
         // 2> header data length
-        byte[] headerData = header.toByteArray();
-        length += headerData.length;
+        length += headerLength;
 
         // 3> body data length
-        if (this.body != null) {
-            length += body.length;
-        }
+        length += bodyLength;
 
-        ByteBuffer result = ByteBuffer.allocate(4 + length);
+        ByteBuffer result = ByteBuffer.allocate(4 + length - bodyLength + reserve);
 
         // length
         result.putInt(length);
 
         // header length
-        result.putInt(headerData.length);
+        result.putInt((headerType << HeaderTypeShift) | headerLength);
 
         // header data
-        result.put(headerData);
+        result.put(headerData, 0, headerLength);
+
+        return result;
+    }
+
+
+    public ByteBuffer encode() {
+        int bodyLength = this.body != null ? this.body.length : 0;
+        ByteBuffer result = this.encodeHeader(bodyLength, this.compactHeader, bodyLength);
 
         // body data;
         if (this.body != null) {
@@ -330,31 +280,16 @@ public class RemotingCommand {
      * ֻHeaderbodyֶ
      */
     public ByteBuffer encodeHeader(final int bodyLength) {
-        CommandHeader header = this.buildHeader();
-
-        // 1> header length size
-        int length = 4;
-
-        // 2> header data length
-        byte[] headerData = header.toByteArray();
-        length += headerData.length;
-
-        // 3> body data length
-        length += bodyLength;
-
-        ByteBuffer result = ByteBuffer.allocate(4 + length - bodyLength);
-
-        // length
-        result.putInt(length);
-
-        // header length
-        result.putInt(headerData.length);
+        return this.encodeHeader(bodyLength, this.compactHeader);
+    }
 
-        // header data
-        result.put(headerData);
 
+    /**
+     * ֻHeaderָHeaderʽ
+     */
+    public ByteBuffer encodeHeader(final int bodyLength, final boolean compact) {
+        ByteBuffer result = this.encodeHeader(bodyLength, compact, 0);
         result.flip();
-
         return result;
     }
 
@@ -367,10 +302,26 @@ public class RemotingCommand {
 
     public static RemotingCommand decode(final ByteBuffer byteBuffer) throws InvalidProtocolBufferException {
         int length = byteBuffer.limit();
-        int headerLength = byteBuffer.getInt();
+        int headerValue = byteBuffer.getInt();
+        int headerType = headerValue >>> HeaderTypeShift;
+        int headerLength = headerValue & HeaderLengthMask;
 
-        byte[] headerData = new byte[headerLength];
-        byteBuffer.get(headerData);
+        RemotingCommand cmd;
+        if (HeaderTypeCompact == headerType) {
+            cmd = decodeCompactHeader(byteBuffer, headerLength);
+        }
+        // ڴֱԭϽֻHeader
+        else if (byteBuffer.hasArray()) {
+            cmd =
+                    decodeHeader(CodedInputStream.newInstance(byteBuffer.array(), byteBuffer.arrayOffset()
+                            + byteBuffer.position(), headerLength));
+            byteBuffer.position(byteBuffer.position() + headerLength);
+        }
+        else {
+            byte[] headerData = new byte[headerLength];
+            byteBuffer.get(headerData);
+            cmd = decodeHeader(CodedInputStream.newInstance(headerData));
+        }
 
         int bodyLength = length - 4 - headerLength;
         byte[] bodyData = null;
@@ -379,8 +330,46 @@ public class RemotingCommand {
             byteBuffer.get(bodyData);
         }
 
+        cmd.body = bodyData;
+
+        return cmd;
+    }
+
+
+    private static RemotingCommand decodeCompactHeader(final ByteBuffer byteBuffer, final int headerLength) {
+        RemotingCommand cmd = new RemotingCommand();
+        Reader reader = new Reader(byteBuffer, headerLength);
+        cmd.code = (int) reader.readVarint();
+        cmd.language = LanguageCode.valueOf(reader.readByte());
+        if (null == cmd.language) {
+            cmd.language = LanguageCode.OTHER;
+        }
+        cmd.version = (int) reader.readVarint();
+        cmd.opaque = (int) reader.readVarint();
+        cmd.flag = (int) reader.readVarint();
+        cmd.remark = reader.readNullableString();
+
+        CompactFields fields = new CompactFields();
+        fields.read(reader);
+        cmd.compactFields = fields;
+        cmd.compactHeader = true;
+
+        return cmd;
+    }
+
+
+    private static RemotingCommand decodeHeader(final CodedInputStream input) throws InvalidProtocolBufferException {
         RemotingCommand cmd = new RemotingCommand();
-        CommandHeader header = CommandHeader.parseFrom(headerData);
+        CommandHeader header;
+        try {
+            header = CommandHeader.parseFrom(input);
+        }
+        catch (InvalidProtocolBufferException e) {
+            throw e;
+        }
+        catch (IOException e) {
+            throw new InvalidProtocolBufferException(e.getMessage());
+        }
 
         cmd.code = header.getCode();
         cmd.language = header.getLanguage();
@@ -392,8 +381,6 @@ public class RemotingCommand {
 
         cmd.extFields = header.getExtFieldsList();
 
-        cmd.body = bodyData;
-
         return cmd;
     }
 
@@ -422,6 +409,44 @@ public class RemotingCommand {
     }
 
 
+    public void markCompactHeaderAccepted() {
+        int bits = 1 << CompactHeaderAcceptedBit;
+        this.flag |= bits;
+    }
+
+
+    /**
+     * ԶǷԽսHeaderʽ
+     */
+    public boolean isCompactHeaderAccepted() {
+        int bits = 1 << CompactHeaderAcceptedBit;
+        return (this.flag & bits) == bits;
+    }
+
+
+    /**
+     * ӦʹõHeaderʽԽսոʽʱʹýոʽ
+     */
+    public void negotiateHeaderFormat(final RemotingCommand request) {
+        this.compactHeader = CompactHeaderEnable && request.isCompactHeaderAccepted();
+    }
+
+
+    public static boolean isCompactHeaderEnable() {
+        return CompactHeaderEnable;
+    }
+
+
+    public boolean isCompactHeader() {
+        return compactHeader;
+    }
+
+
+    public void setCompactHeader(boolean compactHeader) {
+        this.compactHeader = compactHeader;
+    }
+
+
     public int getCode() {
         return code;
     }
@@ -502,6 +527,10 @@ public class RemotingCommand {
 
 
     public List<NVPair> getExtFields() {
+        if (null == this.extFields && this.compactFields != null) {
+            this.extFields = this.compactFields.toNVPairs();
+        }
+
         return extFields;
     }
 
@@ -515,7 +544,7 @@ public class RemotingCommand {
     public String toString() {
         return "RemotingCommand [code=" + code + ", language=" + language + ", version=" + version + ", opaque="
                 + opaque + ", flag(B)=" + Integer.toBinaryString(flag) + ", remark=" + remark + ", extFields="
-                + extFields + "]";
+                + this.getExtFields() + "]";
     }
 
     // public CommandCustomHeader getCustomHeader() {
@@ -0,0 +1,199 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundMessageHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedByteChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.remoting.ChannelEventListener;
+import com.alibaba.rocketmq.remoting.common.Pair;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.ResponseCode;
+
+
+/**
+ * BrokerͬķϢϢн̳߳أĳһŶʱֻӰһ飬ϵͳæ
+ * Ŷӵ󲻻ᶪʧ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class BoundedExecutorBusyTest {
+    private static final int SendCode = 10;
+    private static final int PullCode = 11;
+    // ûעĬϴ󣩴
+    private static final int AdminCode = 25;
+    private static final int ThreadNums = 1;
+    private static final int QueueCapacity = 2;
+
+    private final Semaphore startedSemaphore = new Semaphore(0);
+    private final CountDownLatch blockLatch = new CountDownLatch(1);
+    private final List<ThreadPoolExecutor> executors = new ArrayList<ThreadPoolExecutor>();
+    private NettyRemotingAbstract remoting;
+    private EmbeddedByteChannel channel;
+
+
+    private ThreadPoolExecutor newBoundedExecutor() {
+        ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(ThreadNums, ThreadNums, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(QueueCapacity));
+        this.executors.add(executor);
+        return executor;
+    }
+
+
+    @Before
+    public void setUp() {
+        this.remoting = new NettyRemotingAbstract(16, 16) {
+            @Override
+            public ChannelEventListener getChannelEventListener() {
+                return null;
+            }
+
+
+            @Override
+            public Executor getCallbackExecutor() {
+                return null;
+            }
+        };
+
+        NettyRequestProcessor processor = new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                startedSemaphore.release();
+                try {
+                    blockLatch.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return RemotingCommand.createResponseCommand(ResponseCode.SUCCESS_VALUE, null);
+            }
+        };
+
+        this.remoting.putProcessor(SendCode, new Pair<NettyRequestProcessor, Executor>(processor,
+            this.newBoundedExecutor()));
+        this.remoting.putProcessor(PullCode, new Pair<NettyRequestProcessor, Executor>(processor,
+            this.newBoundedExecutor()));
+        this.remoting.defaultRequestProcessor =
+                new Pair<NettyRequestProcessor, Executor>(processor, this.newBoundedExecutor());
+
+        this.channel =
+                new EmbeddedByteChannel(new NettyEncoder(), new NettyDecoder(),
+                    new ChannelInboundMessageHandlerAdapter<Object>() {
+                        @Override
+                        public void messageReceived(ChannelHandlerContext ctx, Object msg) throws Exception {
+                            remoting.processMessageReceived(ctx, msg);
+                        }
+                    });
+    }
+
+
+    @After
+    public void tearDown() {
+        this.blockLatch.countDown();
+        for (ThreadPoolExecutor executor : this.executors) {
+            executor.shutdown();
+        }
+        this.remoting.shutdownResponseTimer();
+    }
+
+
+    private void sendRequest(final int code, final boolean oneway) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(code, null);
+        if (oneway) {
+            request.markOnewayRPC();
+        }
+        this.channel.writeInbound(this.channel.alloc().buffer().writeBytes(request.encode()));
+    }
+
+
+    /**
+     * ĿǰдȫӦ
+     */
+    private List<RemotingCommand> readResponses() throws Exception {
+        List<RemotingCommand> responses = new ArrayList<RemotingCommand>();
+        ByteBuf buf = this.channel.readOutbound();
+        while (buf != null && buf.readableBytes() > 0) {
+            byte[] data = new byte[buf.readInt()];
+            buf.readBytes(data);
+            responses.add(RemotingCommand.decode(data));
+        }
+        return responses;
+    }
+
+
+    /**
+     * ռס̳߳ص̣߳
+     */
+    private void fillExecutor(final int code) throws Exception {
+        sendRequest(code, false);
+        assertTrue(this.startedSemaphore.tryAcquire(3000, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < QueueCapacity; i++) {
+            sendRequest(code, false);
+        }
+    }
+
+
+    @Test
+    public void test_busy_per_executor_when_queue_full() throws Exception {
+        int[] codes = { SendCode, PullCode, AdminCode };
+        for (int code : codes) {
+            fillExecutor(code);
+            // 󶼻ŶӣûӦ
+            assertTrue(readResponses().isEmpty());
+
+            // ϵͳæIO̲߳ȴ
+            long begin = System.currentTimeMillis();
+            sendRequest(code, false);
+            List<RemotingCommand> responses = readResponses();
+            assertTrue(System.currentTimeMillis() - begin < 1000);
+            assertEquals(1, responses.size());
+            assertEquals(ResponseCode.SYSTEM_BUSY_VALUE, responses.get(0).getCode());
+
+            // Oneway󱻾ܾʱӦ𣬵ܾ
+            sendRequest(code, true);
+            assertTrue(readResponses().isEmpty());
+
+            RequestCodeStats stats = this.remoting.getRequestCodeStats(code);
+            assertEquals(2, stats.getRejectedTimes().get());
+            assertEquals(QueueCapacity, stats.getQueueSize().get());
+        }
+
+        // ſŶӵȫõ
+        this.blockLatch.countDown();
+        for (ThreadPoolExecutor executor : this.executors) {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(3000, TimeUnit.MILLISECONDS));
+        }
+
+        List<RemotingCommand> responses = readResponses();
+        assertEquals(codes.length * (ThreadNums + QueueCapacity), responses.size());
+        for (RemotingCommand response : responses) {
+            assertEquals(ResponseCode.SUCCESS_VALUE, response.getCode());
+        }
+
+        for (int code : codes) {
+            RequestCodeStats stats = this.remoting.getRequestCodeStats(code);
+            assertEquals(0, stats.getQueueSize().get());
+            assertEquals(ThreadNums + QueueCapacity, stats.getRequestTimes().get());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+/**
+ * ӵôڵĻȡAIMD
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class ChannelInflightWindowTest {
+    @Test
+    public void test_tryAcquire_nonBlockingWhenFull() {
+        ChannelInflightWindow window = new ChannelInflightWindow(4, 1, 8);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(window.tryAcquire());
+        }
+
+        assertTrue(window.isFull());
+        assertFalse(window.tryAcquire());
+        assertEquals(4, window.getInflight());
+
+        window.release(1, true);
+        assertTrue(window.tryAcquire());
+    }
+
+
+    @Test
+    public void test_additiveIncrease() {
+        ChannelInflightWindow window = new ChannelInflightWindow(4, 1, 5);
+        // һڵȫӦ𣬴ڼ1
+        for (int i = 0; i < 4; i++) {
+            assertTrue(window.tryAcquire());
+            window.release(1, true);
+        }
+        assertEquals(5, window.getSize());
+
+        // ֵ
+        for (int i = 0; i < 20; i++) {
+            assertTrue(window.tryAcquire());
+            window.release(1, true);
+        }
+        assertEquals(5, window.getSize());
+    }
+
+
+    @Test
+    public void test_multiplicativeDecrease_onTimeout() throws InterruptedException {
+        ChannelInflightWindow window = new ChannelInflightWindow(16, 3, 32);
+        assertTrue(window.tryAcquire());
+        window.release(3000, false);
+        assertEquals(8, window.getSize());
+
+        // ͬһĳʱֻСһ
+        assertTrue(window.tryAcquire());
+        window.release(3000, false);
+        assertEquals(8, window.getSize());
+
+        Thread.sleep(100);
+        assertTrue(window.tryAcquire());
+        window.release(3000, false);
+        assertEquals(4, window.getSize());
+
+        // Сֵ
+        Thread.sleep(100);
+        assertTrue(window.tryAcquire());
+        window.release(3000, false);
+        assertEquals(3, window.getSize());
+    }
+
+
+    @Test
+    public void test_multiplicativeDecrease_onRttInflation() {
+        ChannelInflightWindow window = new ChannelInflightWindow(16, 1, 32);
+        assertTrue(window.tryAcquire());
+        window.release(2, true);
+        assertEquals(16, window.getSize());
+
+        // RTTԶڻ׼RTTΪӵ
+        assertTrue(window.tryAcquire());
+        window.release(200, true);
+        assertEquals(8, window.getSize());
+    }
+}
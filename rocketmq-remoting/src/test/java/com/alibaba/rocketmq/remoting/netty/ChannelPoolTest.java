@@ -0,0 +1,316 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.remoting.InvokeCallback;
+import com.alibaba.rocketmq.remoting.exception.RemotingTooMuchRequestException;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+
+
+/**
+ * ͬһַӵѡ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class ChannelPoolTest {
+    private static final int ListenPort = 10923;
+    private static final String Addr = "127.0.0.1:" + ListenPort;
+    private static final int CodeFast = 100;
+    private static final int CodeSlow = 101;
+
+    private final CountDownLatch slowLatch = new CountDownLatch(1);
+    private volatile Channel lastServerChannel;
+    private NettyRemotingServer server;
+    private NettyRemotingClient client;
+
+
+    @Before
+    public void setUp() throws InterruptedException {
+        NettyServerConfig config = new NettyServerConfig();
+        config.setListenPort(ListenPort);
+        this.server = new NettyRemotingServer(config);
+        NettyRequestProcessor processor = new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                if (request.getCode() == CodeSlow) {
+                    try {
+                        slowLatch.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e) {
+                    }
+                }
+                lastServerChannel = ctx.channel();
+                RemotingCommand response = RemotingCommand.createResponseCommand(0, null);
+                response.setRemark(ctx.channel().remoteAddress().toString());
+                return response;
+            }
+        };
+        this.server.registerProcessor(CodeFast, processor, Executors.newCachedThreadPool());
+        this.server.registerProcessor(CodeSlow, processor, Executors.newCachedThreadPool());
+        this.server.start();
+    }
+
+
+    @After
+    public void tearDown() {
+        this.slowLatch.countDown();
+        if (this.client != null) {
+            this.client.shutdown();
+        }
+        this.server.shutdown();
+    }
+
+
+    private void startClient(int poolSize, String policy, String laneCodes) {
+        NettyClientConfig config = new NettyClientConfig();
+        config.setClientChannelPoolSize(poolSize);
+        config.setClientChannelSelectPolicy(policy);
+        config.setClientChannelLaneCodes(laneCodes);
+        this.startClient(config);
+    }
+
+
+    private void startClient(NettyClientConfig config) {
+        this.client = new NettyRemotingClient(config);
+        this.client.start();
+    }
+
+
+    private NettyClientConfig windowConfig(int poolSize, int windowSize, String laneCodes) {
+        NettyClientConfig config = new NettyClientConfig();
+        config.setClientChannelPoolSize(poolSize);
+        config.setClientChannelSelectPolicy("REQUEST_CODE_LANE");
+        config.setClientChannelLaneCodes(laneCodes);
+        config.setClientChannelWindowEnable(true);
+        config.setClientChannelWindowInitSize(windowSize);
+        config.setClientChannelWindowMinSize(windowSize);
+        config.setClientChannelWindowMaxSize(windowSize);
+        return config;
+    }
+
+
+    private void invokeSlowAsync(final CountDownLatch done, final String[] remote, final int index)
+            throws Exception {
+        RemotingCommand request = RemotingCommand.createRequestCommand(CodeSlow, null);
+        this.client.invokeAsync(Addr, request, 5000, new InvokeCallback() {
+            @Override
+            public void operationComplete(ResponseFuture responseFuture) {
+                remote[index] = responseFuture.getResponseCommand().getRemark();
+                done.countDown();
+            }
+        });
+    }
+
+
+    private String invoke(int code) throws Exception {
+        RemotingCommand request = RemotingCommand.createRequestCommand(code, null);
+        return this.client.invokeSync(Addr, request, 3000).getRemark();
+    }
+
+
+    @Test
+    public void test_roundRobin_useAllChannels() throws Exception {
+        this.startClient(3, "ROUND_ROBIN", "");
+
+        Set<String> remotes = new HashSet<String>();
+        for (int i = 0; i < 30; i++) {
+            remotes.add(this.invoke(CodeFast));
+        }
+
+        assertEquals(3, remotes.size());
+    }
+
+
+    @Test
+    public void test_requestCodeLane_separateChannel() throws Exception {
+        this.startClient(2, "REQUEST_CODE_LANE", String.valueOf(CodeSlow));
+        this.slowLatch.countDown();
+
+        Set<String> fastRemotes = new HashSet<String>();
+        Set<String> slowRemotes = new HashSet<String>();
+        for (int i = 0; i < 10; i++) {
+            fastRemotes.add(this.invoke(CodeFast));
+            slowRemotes.add(this.invoke(CodeSlow));
+        }
+
+        assertEquals(1, fastRemotes.size());
+        assertEquals(1, slowRemotes.size());
+        assertFalse(fastRemotes.equals(slowRemotes));
+    }
+
+
+    @Test
+    public void test_leastInflight_avoidBusyChannel() throws Exception {
+        this.startClient(2, "LEAST_INFLIGHT", "");
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final String[] slowRemote = new String[1];
+        RemotingCommand request = RemotingCommand.createRequestCommand(CodeSlow, null);
+        this.client.invokeAsync(Addr, request, 5000, new InvokeCallback() {
+            @Override
+            public void operationComplete(ResponseFuture responseFuture) {
+                slowRemote[0] = responseFuture.getResponseCommand().getRemark();
+                done.countDown();
+            }
+        });
+
+        // һδ󣬺ߵڶ
+        String fastRemote = this.invoke(CodeFast);
+        assertEquals(fastRemote, this.invoke(CodeFast));
+
+        this.slowLatch.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(fastRemote.equals(slowRemote[0]));
+    }
+
+
+    @Test
+    public void test_closedChannel_recreated() throws Exception {
+        this.startClient(2, "ROUND_ROBIN", "");
+
+        Set<String> before = new HashSet<String>();
+        for (int i = 0; i < 4; i++) {
+            before.add(this.invoke(CodeFast));
+        }
+        assertEquals(2, before.size());
+
+        // ˹رһӣͻ˽ӳƳٴѡʱ´
+        String closed = this.lastServerChannel.remoteAddress().toString();
+        this.lastServerChannel.close().await();
+
+        Set<String> after = new HashSet<String>();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (after.size() < 2 && System.currentTimeMillis() < deadline) {
+            try {
+                after.add(this.invoke(CodeFast));
+            }
+            catch (Exception e) {
+                // ر¼δӳ
+            }
+        }
+
+        assertEquals(2, after.size());
+        assertFalse(after.contains(closed));
+        before.remove(closed);
+        assertTrue(after.containsAll(before));
+        assertFalse(Collections.disjoint(before, after));
+    }
+
+
+    @Test
+    public void test_window_failFastWhenFull() throws Exception {
+        this.startClient(this.windowConfig(1, 2, ""));
+
+        CountDownLatch done = new CountDownLatch(2);
+        String[] remotes = new String[2];
+        this.invokeSlowAsync(done, remotes, 0);
+        this.invokeSlowAsync(done, remotes, 1);
+
+        // ʧܣȴʱ
+        long begin = System.currentTimeMillis();
+        try {
+            this.invokeSlowAsync(done, remotes, 0);
+            assertTrue("window full, must throw", false);
+        }
+        catch (RemotingTooMuchRequestException e) {
+        }
+        assertTrue(System.currentTimeMillis() - begin < 1000);
+
+        // ͬòܴ
+        assertNotNull(this.invoke(CodeFast));
+
+        this.slowLatch.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+
+    private boolean invokeSlowAsyncUntilAccepted(final CountDownLatch done, final String[] remotes,
+            final int index) throws Exception {
+        long deadline = System.currentTimeMillis() + 3000;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                this.invokeSlowAsync(done, remotes, index);
+                return true;
+            }
+            catch (RemotingTooMuchRequestException e) {
+                Thread.sleep(10);
+            }
+        }
+
+        return false;
+    }
+
+
+    @Test
+    public void test_window_failoverToOtherChannel() throws Exception {
+        // δöռӣĬߵ0
+        this.startClient(this.windowConfig(2, 1, ""));
+
+        CountDownLatch done = new CountDownLatch(2);
+        String[] remotes = new String[2];
+        this.invokeSlowAsync(done, remotes, 0);
+
+        // 0Ӵ1ں̨εʧ
+        long begin = System.currentTimeMillis();
+        try {
+            this.invokeSlowAsync(done, remotes, 1);
+            assertTrue("no active channel to fail over, must throw", false);
+        }
+        catch (RemotingTooMuchRequestException e) {
+        }
+        assertTrue(System.currentTimeMillis() - begin < 1000);
+
+        // ӽ󻻵1
+        assertTrue(this.invokeSlowAsyncUntilAccepted(done, remotes, 1));
+
+        this.slowLatch.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(remotes[0].equals(remotes[1]));
+    }
+
+
+    @Test
+    public void test_window_failoverWithinLane() throws Exception {
+        // 0: 02ӣ1(CodeSlow): 13
+        this.startClient(this.windowConfig(4, 1, String.valueOf(CodeSlow)));
+        assertNotNull(this.invoke(CodeFast));
+
+        CountDownLatch done = new CountDownLatch(2);
+        String[] remotes = new String[2];
+        this.invokeSlowAsync(done, remotes, 0);
+        assertTrue(this.invokeSlowAsyncUntilAccepted(done, remotes, 1));
+
+        // 1Ӵڶó0Ѿ
+        try {
+            this.invokeSlowAsync(done, remotes, 0);
+            assertTrue("lane full, must throw", false);
+        }
+        catch (RemotingTooMuchRequestException e) {
+        }
+
+        this.slowLatch.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(remotes[0].equals(remotes[1]));
+        assertFalse(remotes[0].equals(this.invoke(CodeFast)));
+        assertFalse(remotes[1].equals(this.invoke(CodeFast)));
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedByteChannel;
+
+import org.junit.Test;
+
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+
+
+/**
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class NettyDecoderTest {
+    private static RemotingCommand buildCommand(final int code, final int bodySize, final boolean compact) {
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(code, null);
+        cmd.setRemark("remark" + code);
+        byte[] body = new byte[bodySize];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) (i + code);
+        }
+        cmd.setBody(body);
+        cmd.setCompactHeader(compact);
+        return cmd;
+    }
+
+
+    private void decodeFrames(final ByteBuf buffer) {
+        RemotingCommand[] sent =
+                { buildCommand(1, 1024, false), buildCommand(2, 0, true), buildCommand(3, 64 * 1024, true) };
+        for (RemotingCommand cmd : sent) {
+            buffer.writeBytes(cmd.encode());
+        }
+
+        // ֡ͬһУε
+        EmbeddedByteChannel channel = new EmbeddedByteChannel(new NettyDecoder());
+        int half = buffer.readableBytes() / 2;
+        channel.writeInbound(buffer.slice(0, half));
+        channel.writeInbound(buffer.slice(half, buffer.readableBytes() - half));
+
+        for (RemotingCommand expected : sent) {
+            RemotingCommand cmd = (RemotingCommand) channel.readInbound();
+            assertEquals(expected.getCode(), cmd.getCode());
+            assertEquals(expected.getOpaque(), cmd.getOpaque());
+            assertEquals(expected.getRemark(), cmd.getRemark());
+            assertEquals(expected.isCompactHeader(), cmd.isCompactHeader());
+            if (expected.getBody().length == 0) {
+                assertNull(cmd.getBody());
+            }
+            else {
+                assertArrayEquals(expected.getBody(), cmd.getBody());
+            }
+        }
+        assertNull(channel.readInbound());
+    }
+
+
+    @Test
+    public void test_decode_heap() {
+        this.decodeFrames(Unpooled.buffer());
+    }
+
+
+    @Test
+    public void test_decode_direct() {
+        this.decodeFrames(Unpooled.directBuffer());
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedByteChannel;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.ResponseCode;
+
+
+/**
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class NettyEncoderTest {
+    private static RemotingCommand buildResponse(final byte[] body, final boolean compact) {
+        RemotingCommand cmd = RemotingCommand.createResponseCommand(ResponseCode.SUCCESS_VALUE, "remark");
+        cmd.setOpaque(100);
+        cmd.setBody(body);
+        cmd.setCompactHeader(compact);
+        return cmd;
+    }
+
+
+    private static byte[] buildBody(final int size) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+
+    private static byte[] toBytes(final ByteBuf buf) {
+        byte[] data = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), data);
+        return data;
+    }
+
+
+    /**
+     * NettyEncoder룬NettyDecoder
+     */
+    private static void roundTrip(final RemotingCommand expected) {
+        EmbeddedByteChannel encodeChannel = new EmbeddedByteChannel(new NettyEncoder());
+        encodeChannel.writeOutbound(expected);
+        ByteBuf frame = encodeChannel.readOutbound();
+
+        // RemotingCommand.encode֡ʽһ
+        ByteBuffer encoded = expected.encode();
+        byte[] data = new byte[encoded.remaining()];
+        encoded.get(data);
+        assertArrayEquals(data, toBytes(frame));
+
+        EmbeddedByteChannel decodeChannel = new EmbeddedByteChannel(new NettyDecoder());
+        decodeChannel.writeInbound(frame);
+        RemotingCommand cmd = (RemotingCommand) decodeChannel.readInbound();
+        assertEquals(expected.getCode(), cmd.getCode());
+        assertEquals(expected.getOpaque(), cmd.getOpaque());
+        assertEquals(expected.getRemark(), cmd.getRemark());
+        assertEquals(expected.isResponseType(), cmd.isResponseType());
+        assertEquals(expected.isCompactHeader(), cmd.isCompactHeader());
+        if (null == expected.getBody() || expected.getBody().length == 0) {
+            assertNull(cmd.getBody());
+        }
+        else {
+            assertArrayEquals(expected.getBody(), cmd.getBody());
+        }
+        assertNull(decodeChannel.readInbound());
+    }
+
+
+    @Test
+    public void test_encode_with_body() {
+        roundTrip(buildResponse(buildBody(1024), false));
+        roundTrip(buildResponse(buildBody(1024), true));
+        // ĬϷͻbody
+        roundTrip(buildResponse(buildBody(1024 * 1024), false));
+    }
+
+
+    @Test
+    public void test_encode_without_body() {
+        roundTrip(buildResponse(null, false));
+        roundTrip(buildResponse(null, true));
+        roundTrip(buildResponse(new byte[0], false));
+    }
+
+
+    @Test
+    public void test_encode_request() {
+        RemotingCommand request = RemotingCommand.createRequestCommand(11, null);
+        request.setRemark("request");
+        request.setBody(buildBody(64));
+        roundTrip(request);
+
+        RemotingCommand empty = RemotingCommand.createRequestCommand(12, null);
+        roundTrip(empty);
+    }
+}
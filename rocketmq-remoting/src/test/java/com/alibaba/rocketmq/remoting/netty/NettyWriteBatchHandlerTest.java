@@ -0,0 +1,184 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.MessageBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOperationHandlerAdapter;
+import io.netty.channel.ChannelOutboundMessageHandler;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedMessageChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * ϲд
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class NettyWriteBatchHandlerTest {
+    private DefaultEventExecutorGroup group;
+
+    /**
+     * ͳƵSocket֮ǰˢ
+     */
+    static class FlushCounter extends ChannelOperationHandlerAdapter implements
+            ChannelOutboundMessageHandler<Object> {
+        private final AtomicInteger flushTimes = new AtomicInteger(0);
+
+
+        @Override
+        public MessageBuf<Object> newOutboundBuffer(ChannelHandlerContext ctx) throws Exception {
+            return Unpooled.messageBuffer();
+        }
+
+
+        @Override
+        public void flush(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+            this.flushTimes.incrementAndGet();
+            ctx.outboundMessageBuffer().drainTo(ctx.nextOutboundMessageBuffer());
+            ctx.flush(promise);
+        }
+    }
+
+
+    @Before
+    public void setUp() {
+        this.group = new DefaultEventExecutorGroup(1);
+    }
+
+
+    @After
+    public void tearDown() {
+        this.group.shutdownGracefully();
+    }
+
+
+    /**
+     * EmbeddedChannelκ̶߳ΪIỌ߳ܵawaitֻѯ
+     */
+    private static boolean waitDone(final ChannelFuture future) throws InterruptedException {
+        long begin = System.currentTimeMillis();
+        while (!future.isDone() && System.currentTimeMillis() - begin < 3000) {
+            Thread.sleep(1);
+        }
+
+        return future.isSuccess();
+    }
+
+
+    /**
+     * ռס̣߳öд߳Ŷӣͳˢ
+     */
+    private int writeQueued(final int maxBatchWrites, final int writes) throws Exception {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedMessageChannel channel = new EmbeddedMessageChannel(counter);
+        channel.pipeline().addLast(this.group, new NettyWriteBatchHandler(maxBatchWrites));
+        EventExecutor executor = channel.pipeline().lastContext().executor();
+
+        final CountDownLatch block = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    block.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        ChannelFuture[] futures = new ChannelFuture[writes];
+        for (int i = 0; i < writes; i++) {
+            futures[i] = channel.write(i);
+        }
+        block.countDown();
+
+        for (int i = 0; i < writes; i++) {
+            assertTrue(waitDone(futures[i]));
+        }
+
+        for (int i = 0; i < writes; i++) {
+            assertEquals(i, channel.readOutbound());
+        }
+
+        return counter.flushTimes.get();
+    }
+
+
+    @Test
+    public void test_queued_writes_coalesced() throws Exception {
+        assertEquals(1, this.writeQueued(64, 10));
+    }
+
+
+    @Test
+    public void test_flush_when_max_writes_reached() throws Exception {
+        assertEquals(3, this.writeQueued(4, 10));
+    }
+
+
+    @Test
+    public void test_done_promise_not_block_batch() throws Exception {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedMessageChannel channel = new EmbeddedMessageChannel(counter);
+        channel.pipeline().addLast(this.group, new NettyWriteBatchHandler(64));
+        EventExecutor executor = channel.pipeline().lastContext().executor();
+
+        final CountDownLatch block = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    block.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        // һˢ֮ǰѾɣͬһȻҪ
+        ChannelPromise first = channel.newPromise();
+        channel.write(0, first);
+        ChannelFuture[] futures = new ChannelFuture[3];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = channel.write(i + 1);
+        }
+        first.setFailure(new Exception("cancelled"));
+        block.countDown();
+
+        for (ChannelFuture future : futures) {
+            assertTrue(waitDone(future));
+        }
+    }
+
+
+    @Test
+    public void test_lone_write_flushed_immediately() throws Exception {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedMessageChannel channel = new EmbeddedMessageChannel(counter);
+        channel.pipeline().addLast(this.group, new NettyWriteBatchHandler(64));
+
+        for (int i = 0; i < 3; i++) {
+            ChannelFuture future = channel.write(i);
+            assertTrue(waitDone(future));
+            assertEquals(i + 1, counter.flushTimes.get());
+            assertEquals(i, channel.readOutbound());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundMessageHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedByteChannel;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.remoting.ChannelEventListener;
+import com.alibaba.rocketmq.remoting.common.Pair;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.ResponseCode;
+
+
+/**
+ * ַ̳߳Ŷʱϵͳæ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class RequestDispatchTest {
+    private static final int RequestCode = 11;
+
+    private final CountDownLatch startedLatch = new CountDownLatch(1);
+    private final CountDownLatch blockLatch = new CountDownLatch(1);
+    private ThreadPoolExecutor executor;
+    private NettyRemotingAbstract remoting;
+    private EmbeddedByteChannel channel;
+
+
+    @Before
+    public void setUp() {
+        // 1̣߳Ŷ1
+        this.executor =
+                new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(1));
+
+        this.remoting = new NettyRemotingAbstract(16, 16) {
+            @Override
+            public ChannelEventListener getChannelEventListener() {
+                return null;
+            }
+
+
+            @Override
+            public Executor getCallbackExecutor() {
+                return null;
+            }
+        };
+
+        NettyRequestProcessor processor = new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                startedLatch.countDown();
+                try {
+                    blockLatch.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return RemotingCommand.createResponseCommand(ResponseCode.SUCCESS_VALUE, null);
+            }
+        };
+        this.remoting.putProcessor(RequestCode, new Pair<NettyRequestProcessor, Executor>(processor,
+            this.executor));
+
+        this.channel =
+                new EmbeddedByteChannel(new NettyEncoder(), new NettyDecoder(),
+                    new ChannelInboundMessageHandlerAdapter<Object>() {
+                        @Override
+                        public void messageReceived(ChannelHandlerContext ctx, Object msg) throws Exception {
+                            remoting.processMessageReceived(ctx, msg);
+                        }
+                    });
+    }
+
+
+    @After
+    public void tearDown() {
+        this.blockLatch.countDown();
+        this.executor.shutdown();
+        this.remoting.shutdownResponseTimer();
+    }
+
+
+    private void sendRequest(final int code) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(code, null);
+        this.channel.writeInbound(this.channel.alloc().buffer().writeBytes(request.encode()));
+    }
+
+
+    private RemotingCommand readResponse() throws Exception {
+        ByteBuf buf = this.channel.readOutbound();
+        if (null == buf) {
+            return null;
+        }
+
+        buf.skipBytes(4);
+        byte[] data = new byte[buf.readableBytes()];
+        buf.readBytes(data);
+        return RemotingCommand.decode(data);
+    }
+
+
+    @Test
+    public void test_busy_when_queue_full() throws Exception {
+        sendRequest(RequestCode);
+        // ȴһռס̣߳ʱѾ뿪Ŷ
+        assertTrue(this.startedLatch.await(3000, TimeUnit.MILLISECONDS));
+        sendRequest(RequestCode);
+        assertNull(readResponse());
+
+        long begin = System.currentTimeMillis();
+        sendRequest(RequestCode);
+        RemotingCommand busy = readResponse();
+        assertTrue(System.currentTimeMillis() - begin < 1000);
+        assertEquals(ResponseCode.SYSTEM_BUSY_VALUE, busy.getCode());
+
+        RequestCodeStats stats = this.remoting.getRequestCodeStats(RequestCode);
+        assertEquals(1, stats.getRejectedTimes().get());
+        assertEquals(1, stats.getQueueSize().get());
+        assertEquals(1, stats.getRequestTimes().get());
+
+        this.blockLatch.countDown();
+        this.executor.shutdown();
+        assertTrue(this.executor.awaitTermination(3000, TimeUnit.MILLISECONDS));
+        assertEquals(0, stats.getQueueSize().get());
+        assertEquals(2, stats.getRequestTimes().get());
+
+        HashMap<String, String> runtimeInfo = new HashMap<String, String>();
+        this.remoting.putRuntimeInfo(runtimeInfo);
+        assertEquals("1", runtimeInfo.get("request" + RequestCode + "RejectedTimes"));
+        assertEquals("2", runtimeInfo.get("request" + RequestCode + "Times"));
+    }
+
+
+    @Test
+    public void test_unknown_code_not_supported() throws Exception {
+        sendRequest(RequestCode + 1);
+        assertEquals(ResponseCode.REQUEST_CODE_NOT_SUPPORTED_VALUE, readResponse().getCode());
+
+        sendRequest(NettyRemotingAbstract.MaxRequestCode + 1);
+        assertEquals(ResponseCode.REQUEST_CODE_NOT_SUPPORTED_VALUE, readResponse().getCode());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_register_out_of_range() {
+        this.remoting.putProcessor(NettyRemotingAbstract.MaxRequestCode, null);
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.channel.embedded.EmbeddedByteChannel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.remoting.ChannelEventListener;
+import com.alibaba.rocketmq.remoting.InvokeCallback;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+
+
+/**
+ * 첽óʱʱִ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class ResponseTimeoutTest {
+    private static final int PermitsAsync = 16;
+
+    private ExecutorService callbackExecutor;
+    private NettyRemotingAbstract remoting;
+    private EmbeddedByteChannel channel;
+
+
+    @Before
+    public void setUp() {
+        this.callbackExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "TestCallbackExecutor");
+            }
+        });
+
+        this.remoting = new NettyRemotingAbstract(PermitsAsync, PermitsAsync) {
+            @Override
+            public ChannelEventListener getChannelEventListener() {
+                return null;
+            }
+
+
+            @Override
+            public Executor getCallbackExecutor() {
+                return callbackExecutor;
+            }
+        };
+
+        this.channel = new EmbeddedByteChannel(new NettyEncoder());
+    }
+
+
+    @After
+    public void tearDown() {
+        this.remoting.shutdownResponseTimer();
+        this.callbackExecutor.shutdown();
+    }
+
+
+    @Test
+    public void test_timeout_fired_in_callback_executor() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<String> threadName = new AtomicReference<String>();
+        final AtomicReference<ResponseFuture> future = new AtomicReference<ResponseFuture>();
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(10, null);
+        long begin = System.currentTimeMillis();
+        this.remoting.invokeAsyncImpl(this.channel, request, 100, new InvokeCallback() {
+            @Override
+            public void operationComplete(ResponseFuture responseFuture) {
+                threadName.set(Thread.currentThread().getName());
+                future.set(responseFuture);
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(3000, TimeUnit.MILLISECONDS));
+        long elapsed = System.currentTimeMillis() - begin;
+        assertTrue("fired too early, " + elapsed, elapsed >= 100);
+        assertTrue("fired too late, " + elapsed, elapsed < 1000);
+
+        assertEquals("TestCallbackExecutor", threadName.get());
+        assertNull(future.get().getResponseCommand());
+        assertTrue(this.remoting.responseTable.isEmpty());
+        assertEquals(PermitsAsync, this.remoting.semaphoreAsync.availablePermits());
+    }
+
+
+    @Test
+    public void test_response_cancel_timeout() throws Exception {
+        final AtomicInteger invoked = new AtomicInteger(0);
+        final AtomicReference<ResponseFuture> future = new AtomicReference<ResponseFuture>();
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(10, null);
+        this.remoting.invokeAsyncImpl(this.channel, request, 200, new InvokeCallback() {
+            @Override
+            public void operationComplete(ResponseFuture responseFuture) {
+                future.set(responseFuture);
+                invoked.incrementAndGet();
+            }
+        });
+
+        ResponseFuture responseFuture = this.remoting.responseTable.get(request.getOpaque());
+        assertNotNull(responseFuture.getTimeout());
+
+        RemotingCommand response = RemotingCommand.createResponseCommand(0, null);
+        response.setOpaque(request.getOpaque());
+        this.remoting.processResponseCommand(null, response);
+
+        assertTrue(responseFuture.getTimeout().isCancelled());
+        assertTrue(this.remoting.responseTable.isEmpty());
+
+        // ʱʱصִֻһ
+        Thread.sleep(500);
+        assertEquals(1, invoked.get());
+        assertEquals(response, future.get().getResponseCommand());
+        assertEquals(PermitsAsync, this.remoting.semaphoreAsync.availablePermits());
+    }
+
+
+    @Test
+    public void test_write_failure_release_inflight() throws Exception {
+        final AtomicInteger invoked = new AtomicInteger(0);
+        AtomicInteger inflight = new AtomicInteger(0);
+        ChannelInflightWindow window = new ChannelInflightWindow(4, 1, 8);
+
+        // ѹرգдʧ
+        this.channel.close();
+        RemotingCommand request = RemotingCommand.createRequestCommand(10, null);
+        this.remoting.invokeAsyncImpl(this.channel, request, 200, new InvokeCallback() {
+            @Override
+            public void operationComplete(ResponseFuture responseFuture) {
+                invoked.incrementAndGet();
+            }
+        }, window, inflight);
+
+        assertEquals(0, inflight.get());
+        assertEquals(0, window.getInflight());
+        assertTrue(this.remoting.responseTable.isEmpty());
+
+        // ʱѾȡٴͷ
+        Thread.sleep(500);
+        assertEquals(0, inflight.get());
+        assertEquals(0, invoked.get());
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * ڴ滷λ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class SharedMemoryRingBufferTest {
+    private File file;
+    private SharedMemoryRingBuffer writer;
+    private SharedMemoryRingBuffer reader;
+
+
+    @Before
+    public void setUp() throws IOException {
+        this.file = File.createTempFile("rocketmq-ring-test", ".ring");
+        this.writer = SharedMemoryRingBuffer.create(this.file, 1024);
+        this.reader = SharedMemoryRingBuffer.open(this.file);
+    }
+
+
+    @After
+    public void tearDown() {
+        this.reader.release();
+        this.writer.release();
+        this.file.delete();
+    }
+
+
+    private static ByteBuffer frame(int length, byte[] data) {
+        ByteBuffer header = ByteBuffer.allocate(4 + data.length);
+        header.putInt(length);
+        header.put(data);
+        header.flip();
+        return header;
+    }
+
+
+    @Test
+    public void test_write_read() throws IOException {
+        byte[] data = "hello".getBytes();
+        this.writer.write(frame(data.length, data), null);
+        assertArrayEquals(data, this.reader.read());
+        assertNull(this.reader.read());
+    }
+
+
+    @Test
+    public void test_read_corrupted_length() throws IOException {
+        byte[] data = "hello".getBytes();
+        this.writer.write(frame(data.length, data), null);
+
+        // ֶαдΪѷ
+        RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        try {
+            raf.seek(SharedMemoryRingBuffer.HeaderSize);
+            raf.writeInt(this.writer.getCapacity());
+        }
+        finally {
+            raf.close();
+        }
+
+        try {
+            this.reader.read();
+            fail("corrupted frame length should be rejected");
+        }
+        catch (IOException e) {
+        }
+    }
+
+
+    @Test
+    public void test_read_negative_length() throws IOException {
+        byte[] data = "hello".getBytes();
+        this.writer.write(frame(-1, data), null);
+        try {
+            this.reader.read();
+            fail("negative frame length should be rejected");
+        }
+        catch (IOException e) {
+        }
+    }
+
+
+    @Test
+    public void test_unsupported_platform() throws IOException {
+        // дλÿܱ𿪵ƽ̨ϲʹ
+        String arch = System.getProperty("os.arch");
+        System.setProperty("os.arch", "aarch64");
+        try {
+            SharedMemoryRingBuffer.open(this.file);
+            fail("shared memory ring buffer should be refused on aarch64");
+        }
+        catch (IOException e) {
+        }
+        finally {
+            System.setProperty("os.arch", arch);
+        }
+    }
+}
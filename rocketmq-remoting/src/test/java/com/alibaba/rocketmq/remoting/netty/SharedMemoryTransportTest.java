@@ -0,0 +1,215 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.netty;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.remoting.InvokeCallback;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+
+
+/**
+ * ͬڴͨ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class SharedMemoryTransportTest {
+    private static final int ListenPort = 10925;
+    private static final String Addr = "127.0.0.1:" + ListenPort;
+    private static final int CodeEcho = 100;
+    private static final int CodeOneway = 101;
+
+    private final String baseDir = System.getProperty("java.io.tmpdir") + File.separator
+            + "rocketmq-shm-test-" + System.nanoTime();
+    private final AtomicInteger onewayCount = new AtomicInteger(0);
+    private volatile Channel lastServerChannel;
+    private NettyRemotingServer server;
+    private NettyRemotingClient client;
+
+
+    @Before
+    public void setUp() throws InterruptedException {
+        NettyServerConfig config = new NettyServerConfig();
+        config.setListenPort(ListenPort);
+        config.setServerLocalTransportEnable(true);
+        config.setServerLocalTransportDir(this.baseDir);
+        this.server = new NettyRemotingServer(config);
+        NettyRequestProcessor processor = new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                lastServerChannel = ctx.channel();
+                if (request.getCode() == CodeOneway) {
+                    onewayCount.incrementAndGet();
+                }
+                RemotingCommand response = RemotingCommand.createResponseCommand(0, null);
+                response.setRemark(ctx.channel().remoteAddress().getClass().getSimpleName());
+                response.setBody(request.getBody());
+                return response;
+            }
+        };
+        this.server.registerProcessor(CodeEcho, processor, Executors.newCachedThreadPool());
+        this.server.registerProcessor(CodeOneway, processor, Executors.newCachedThreadPool());
+        this.server.start();
+    }
+
+
+    @After
+    public void tearDown() {
+        if (this.client != null) {
+            this.client.shutdown();
+        }
+        this.server.shutdown();
+        deleteDir(new File(this.baseDir));
+    }
+
+
+    private static void deleteDir(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                deleteDir(f);
+            }
+        }
+        file.delete();
+    }
+
+
+    private void startClient(String dir, int ringSize) {
+        NettyClientConfig config = new NettyClientConfig();
+        config.setClientLocalTransportEnable(true);
+        config.setClientLocalTransportDir(dir);
+        config.setClientLocalTransportRingSize(ringSize);
+        this.client = new NettyRemotingClient(config);
+        this.client.start();
+    }
+
+
+    private RemotingCommand echo(byte[] body) throws Exception {
+        RemotingCommand request = RemotingCommand.createRequestCommand(CodeEcho, null);
+        request.setBody(body);
+        return this.client.invokeSync(Addr, request, 3000);
+    }
+
+
+    @Test
+    public void test_sync_async_oneway() throws Exception {
+        this.startClient(this.baseDir, 1024 * 1024);
+
+        RemotingCommand response = this.echo("hello".getBytes());
+        assertEquals("LocalAddress", response.getRemark());
+        assertEquals("hello", new String(response.getBody()));
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final String[] remark = new String[1];
+        this.client.invokeAsync(Addr, RemotingCommand.createRequestCommand(CodeEcho, null), 3000,
+            new InvokeCallback() {
+                @Override
+                public void operationComplete(ResponseFuture responseFuture) {
+                    remark[0] = responseFuture.getResponseCommand().getRemark();
+                    done.countDown();
+                }
+            });
+        assertTrue(done.await(3, TimeUnit.SECONDS));
+        assertEquals("LocalAddress", remark[0]);
+
+        for (int i = 0; i < 100; i++) {
+            this.client.invokeOneway(Addr, RemotingCommand.createRequestCommand(CodeOneway, null), 3000);
+        }
+        for (int i = 0; i < 300 && this.onewayCount.get() < 100; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(100, this.onewayCount.get());
+    }
+
+
+    @Test
+    public void test_large_body_wrap() throws Exception {
+        // λ1Mη300KϢǻ
+        this.startClient(this.baseDir, 1024 * 1024);
+        for (int i = 0; i < 20; i++) {
+            byte[] body = new byte[300 * 1024];
+            for (int k = 0; k < body.length; k++) {
+                body[k] = (byte) (i + k);
+            }
+            RemotingCommand response = this.echo(body);
+            assertEquals("LocalAddress", response.getRemark());
+            assertArrayEquals(body, response.getBody());
+        }
+    }
+
+
+    @Test
+    public void test_ring_full_pending() throws Exception {
+        // 첽Զλݣдݴ棬Զ˶д
+        this.startClient(this.baseDir, 1024 * 1024);
+        final int count = 20;
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger matched = new AtomicInteger(0);
+        for (int i = 0; i < count; i++) {
+            final byte[] body = new byte[300 * 1024];
+            for (int k = 0; k < body.length; k++) {
+                body[k] = (byte) (i + k);
+            }
+            RemotingCommand request = RemotingCommand.createRequestCommand(CodeEcho, null);
+            request.setBody(body);
+            this.client.invokeAsync(Addr, request, 10000, new InvokeCallback() {
+                @Override
+                public void operationComplete(ResponseFuture responseFuture) {
+                    RemotingCommand response = responseFuture.getResponseCommand();
+                    if (response != null && Arrays.equals(body, response.getBody())) {
+                        matched.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(count, matched.get());
+    }
+
+
+    @Test
+    public void test_fallback_tcp() throws Exception {
+        // Ŀ¼ûн㣬ʹTCP
+        this.startClient(this.baseDir + "-none", 1024 * 1024);
+        RemotingCommand response = this.echo(null);
+        assertEquals("InetSocketAddress", response.getRemark());
+    }
+
+
+    @Test
+    public void test_reconnect() throws Exception {
+        this.startClient(this.baseDir, 1024 * 1024);
+        assertEquals("LocalAddress", this.echo(null).getRemark());
+
+        this.lastServerChannel.close().await(3000);
+        Thread.sleep(100);
+
+        RemotingCommand response = null;
+        for (int i = 0; i < 10 && null == response; i++) {
+            try {
+                response = this.echo(null);
+            }
+            catch (Exception e) {
+                Thread.sleep(100);
+            }
+        }
+        assertEquals("LocalAddress", response.getRemark());
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.alibaba.rocketmq.remoting.protocol.CompactHeaderSerializer.CompactFields;
+import com.alibaba.rocketmq.remoting.protocol.CompactHeaderSerializer.Reader;
+import com.alibaba.rocketmq.remoting.protocol.CompactHeaderSerializer.Writer;
+import com.alibaba.rocketmq.remoting.protocol.CustomHeaderCodecTest.TestHeader;
+import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.NVPair;
+
+
+/**
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class CompactHeaderTest {
+    private static RemotingCommand transfer(final RemotingCommand request, final boolean compact) throws Exception {
+        request.setCompactHeader(compact);
+        ByteBuffer bb = request.encode();
+        bb.getInt();
+        return RemotingCommand.decode(bb.slice());
+    }
+
+
+    private static TestHeader buildHeader() {
+        TestHeader header = new TestHeader();
+        header.topic = "TopicTest";
+        header.queueId = -1;
+        header.offset = Long.MAX_VALUE;
+        header.flag = false;
+        header.ratio = -0.75;
+        header.count = Integer.MIN_VALUE;
+        header.timestamp = System.currentTimeMillis();
+        header.enable = true;
+        header.weight = 3.5;
+        return header;
+    }
+
+
+    @Test
+    public void test_compact_round_trip() throws Exception {
+        TestHeader header = buildHeader();
+        RemotingCommand request = RemotingCommand.createRequestCommand(11, header);
+        request.setRemark("remark");
+        request.setBody(new byte[] { 1, 2, 3 });
+
+        RemotingCommand cmd = transfer(request, true);
+        assertTrue(cmd.isCompactHeader());
+        assertEquals(request.getCode(), cmd.getCode());
+        assertEquals(request.getOpaque(), cmd.getOpaque());
+        assertEquals(request.getFlag(), cmd.getFlag());
+        assertEquals(request.getRemark(), cmd.getRemark());
+        assertEquals(3, cmd.getBody().length);
+
+        TestHeader decoded = (TestHeader) cmd.decodeCommandCustomHeader(TestHeader.class);
+        assertEquals(header.topic, decoded.topic);
+        assertEquals(header.queueId, decoded.queueId);
+        assertEquals(header.offset, decoded.offset);
+        assertEquals(header.flag, decoded.flag);
+        assertEquals(header.ratio, decoded.ratio);
+        assertEquals(header.count, decoded.count);
+        assertEquals(header.timestamp, decoded.timestamp);
+        assertEquals(header.enable, decoded.enable);
+        assertEquals(header.weight, decoded.weight, 0);
+    }
+
+
+    @Test
+    public void test_compact_smaller() throws Exception {
+        RemotingCommand request = RemotingCommand.createRequestCommand(11, buildHeader());
+        request.setCompactHeader(false);
+        int protobufSize = request.encodeHeader().remaining();
+        request.setCompactHeader(true);
+        int compactSize = request.encodeHeader().remaining();
+        assertTrue(compactSize < protobufSize);
+    }
+
+
+    @Test
+    public void test_compact_ext_fields() throws Exception {
+        // ûбŵֶԼӽոʽתprotobufʽ
+        List<NVPair> extFields = new ArrayList<NVPair>();
+        extFields.add(NVPair.newBuilder().setName("topic").setValue("TopicTest").build());
+        extFields.add(NVPair.newBuilder().setName("notWellKnownName").setValue("value").build());
+        RemotingCommand request = RemotingCommand.createResponseCommand(0, null);
+        request.setExtFields(extFields);
+
+        RemotingCommand compact = transfer(request, true);
+        assertNull(compact.getRemark());
+        assertNull(compact.getBody());
+        assertEquals(extFields, compact.getExtFields());
+
+        RemotingCommand protobuf = transfer(compact, false);
+        assertFalse(protobuf.isCompactHeader());
+        assertEquals(extFields, protobuf.getExtFields());
+    }
+
+
+    @Test
+    public void test_skip_unknown_field_id() throws Exception {
+        // ģ°汾׷ӵֶαţϰ汾Щֶ
+        Writer writer = new Writer(64);
+        writer.writeFieldName("topic", CompactHeaderSerializer.fieldId("topic"));
+        writer.writeStringValue("TopicTest");
+        writer.writeFieldName(null, 1000);
+        writer.writeStringValue("newField");
+        writer.writeFieldName(null, 1001);
+        writer.writeLongValue(-5);
+        writer.writeFieldName(null, 1002);
+        writer.writeBooleanValue(true);
+        writer.writeFieldName(null, 1003);
+        writer.writeDoubleValue(1.5);
+        writer.writeFieldName("queueId", CompactHeaderSerializer.fieldId("queueId"));
+        writer.writeLongValue(3);
+
+        ByteBuffer bb = ByteBuffer.wrap(writer.getBuffer(), 0, writer.getPosition());
+        CompactFields fields = new CompactFields();
+        fields.read(new Reader(bb, writer.getPosition()));
+        assertFalse(bb.hasRemaining());
+        assertEquals(2, fields.getSize());
+        assertEquals("topic", fields.getName(0));
+        assertEquals("TopicTest", fields.getString(0));
+        assertEquals("queueId", fields.getName(1));
+        assertEquals(3, fields.getLong(1));
+    }
+
+
+    @Test
+    public void test_negotiate() throws Exception {
+        RemotingCommand request = RemotingCommand.createRequestCommand(11, null);
+        assertTrue(request.isCompactHeaderAccepted());
+
+        RemotingCommand response = RemotingCommand.createResponseCommand(0, null);
+        response.negotiateHeaderFormat(request);
+        assertTrue(response.isCompactHeader());
+
+        // ϰ汾ûб־λ
+        request.setFlag(0);
+        response.negotiateHeaderFormat(request);
+        assertFalse(response.isCompactHeader());
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.remoting.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.alibaba.rocketmq.remoting.CommandCustomHeader;
+import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
+import com.alibaba.rocketmq.remoting.annotation.CFNullable;
+import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import com.alibaba.rocketmq.remoting.protocol.RemotingProtos.NVPair;
+
+
+/**
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class CustomHeaderCodecTest {
+    public static class TestHeader implements CommandCustomHeader {
+        private static final String Ignored = "static";
+        @CFNotNull
+        String topic;
+        @CFNotNull
+        Integer queueId;
+        @CFNullable
+        Long offset;
+        Boolean flag;
+        Double ratio;
+        int count;
+        long timestamp;
+        boolean enable;
+        double weight;
+
+
+        @Override
+        public void checkFields() throws RemotingCommandException {
+        }
+    }
+
+
+    private static TestHeader roundTrip(final TestHeader header) throws Exception {
+        RemotingCommand request = RemotingCommand.createRequestCommand(10, header);
+        ByteBuffer bb = request.encode();
+        bb.getInt();
+        RemotingCommand cmd = RemotingCommand.decode(bb.slice());
+        return (TestHeader) cmd.decodeCommandCustomHeader(TestHeader.class);
+    }
+
+
+    @Test
+    public void test_round_trip() throws Exception {
+        TestHeader header = new TestHeader();
+        header.topic = "TopicTest";
+        header.queueId = 3;
+        header.offset = 1234567890123L;
+        header.flag = true;
+        header.ratio = 0.5;
+        header.count = -7;
+        header.timestamp = System.currentTimeMillis();
+        header.enable = true;
+        header.weight = 2.25;
+
+        TestHeader decoded = roundTrip(header);
+        assertEquals(header.topic, decoded.topic);
+        assertEquals(header.queueId, decoded.queueId);
+        assertEquals(header.offset, decoded.offset);
+        assertEquals(header.flag, decoded.flag);
+        assertEquals(header.ratio, decoded.ratio);
+        assertEquals(header.count, decoded.count);
+        assertEquals(header.timestamp, decoded.timestamp);
+        assertEquals(header.enable, decoded.enable);
+        assertEquals(header.weight, decoded.weight, 0);
+    }
+
+
+    @Test
+    public void test_null_field() throws Exception {
+        TestHeader header = new TestHeader();
+        header.topic = "TopicTest";
+        header.queueId = 0;
+
+        TestHeader decoded = roundTrip(header);
+        assertNull(decoded.offset);
+        assertNull(decoded.flag);
+        assertEquals(0, decoded.count);
+    }
+
+
+    @Test
+    public void test_malformed_number() throws Exception {
+        List<NVPair> extFields = new ArrayList<NVPair>();
+        extFields.add(NVPair.newBuilder().setName("topic").setValue("TopicTest").build());
+        extFields.add(NVPair.newBuilder().setName("queueId").setValue("1").build());
+        extFields.add(NVPair.newBuilder().setName("offset").setValue("abc").build());
+        extFields.add(NVPair.newBuilder().setName("count").setValue("12x").build());
+        extFields.add(NVPair.newBuilder().setName("ratio").setValue("").build());
+
+        TestHeader decoded = (TestHeader) CustomHeaderCodec.getCodec(TestHeader.class).decode(extFields);
+        assertEquals("TopicTest", decoded.topic);
+        assertEquals(Integer.valueOf(1), decoded.queueId);
+        assertNull(decoded.offset);
+        assertNull(decoded.ratio);
+        assertEquals(0, decoded.count);
+    }
+
+
+    @Test
+    public void test_codec_cached() {
+        assertSame(CustomHeaderCodec.getCodec(TestHeader.class), CustomHeaderCodec.getCodec(TestHeader.class));
+    }
+}
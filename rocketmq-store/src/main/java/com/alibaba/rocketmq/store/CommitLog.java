@@ -49,6 +49,8 @@ public class CommitLog {
     private final static int BlankMagicCode = 0xBBCCDDEE ^ 1880681586 + 8;
     // 洢ϢʱĻصӿ
     private final AppendMessageCallback appendMessageCallback;
+    // ׷лϢʱĻصӿ
+    private final AppendMessageCallback rawAppendMessageCallback;
 
     abstract class FlushCommitLogService extends ServiceThread {
     }
@@ -166,7 +168,8 @@ public class CommitLog {
         public boolean waitForFlush(long timeout) {
             try {
                 boolean result = this.countDownLatch.await(timeout, TimeUnit.MILLISECONDS);
-                return result || this.flushOK;
+                // ѲɹʱʱflushOKΪfalse
+                return result && this.flushOK;
             }
             catch (InterruptedException e) {
                 e.printStackTrace();
@@ -472,6 +475,92 @@ public class CommitLog {
         }
     }
 
+    /**
+     * ׷ѾлõϢֻдλصֶ
+     */
+    class RawAppendMessageCallback implements AppendMessageCallback {
+        // 洢ϢID
+        private final ByteBuffer msgIdMemory;
+        // 洢ַ
+        private final ByteBuffer storeHostMemory;
+        // ļĩβն
+        private final ByteBuffer blankMemory;
+        // Ϣ󳤶
+        private final int maxMessageSize;
+
+        // ļĩβնС
+        private static final int END_FILE_MIN_BLANK_LENGTH = 4 + 4;
+
+
+        RawAppendMessageCallback(final int size) {
+            this.msgIdMemory = ByteBuffer.allocate(MessageDecoder.MSG_ID_LENGTH);
+            this.storeHostMemory = ByteBuffer.allocate(8);
+            this.blankMemory = ByteBuffer.allocate(END_FILE_MIN_BLANK_LENGTH);
+            this.maxMessageSize = size;
+        }
+
+
+        public AppendMessageResult doAppend(final long fileFromOffset, final ByteBuffer byteBuffer,
+                final int maxBlank, final Object msg) {
+            RawMessageBrokerInner msgInner = (RawMessageBrokerInner) msg;
+            ByteBuffer msgBuffer = msgInner.getMessageBuffer();
+            final int msgLen = msgInner.getMsgSize();
+            // PHY OFFSET
+            long wroteOffset = fileFromOffset + byteBuffer.position();
+            long storeTimestamp = CommitLog.this.defaultMessageStore.getSystemClock().now();
+
+            String key = msgInner.getTopic() + "-" + msgInner.getQueueId();
+            Long queueOffset = CommitLog.this.topicQueueTable.get(key);
+            if (null == queueOffset) {
+                queueOffset = 0L;
+                CommitLog.this.topicQueueTable.put(key, queueOffset);
+            }
+
+            // Ϣ趨ֵ
+            if (msgLen > this.maxMessageSize) {
+                CommitLog.log.warn("raw message size exceeded, msg total size: " + msgLen + ", maxMessageSize: "
+                        + this.maxMessageSize);
+                return new AppendMessageResult(AppendMessageStatus.MESSAGE_SIZE_EXCEEDED);
+            }
+
+            // жǷ㹻ռ䣬նʣಿֿκֵֻдͷ8ֽ
+            if ((msgLen + END_FILE_MIN_BLANK_LENGTH) > maxBlank) {
+                this.blankMemory.clear();
+                // 1 TOTALSIZE
+                this.blankMemory.putInt(maxBlank);
+                // 2 MAGICCODE
+                this.blankMemory.putInt(CommitLog.BlankMagicCode);
+                byteBuffer.put(this.blankMemory.array(), 0, END_FILE_MIN_BLANK_LENGTH);
+                return new AppendMessageResult(AppendMessageStatus.END_OF_FILE, wroteOffset, maxBlank, null,
+                    storeTimestamp, queueOffset);
+            }
+
+            // 6 QUEUEOFFSET
+            msgBuffer.putLong(MessageDecoder.MessageQueueOffsetPostion, queueOffset);
+            // 7 PHYSICALOFFSET
+            msgBuffer.putLong(MessageDecoder.MessagePhysicOffsetPostion, wroteOffset);
+            // 11 STORETIMESTAMP
+            msgBuffer.putLong(MessageDecoder.MessageStoreTimestampPostion, storeTimestamp);
+
+            // лдϢ
+            byteBuffer.put(msgBuffer.array(), msgBuffer.arrayOffset(), msgLen);
+
+            this.storeHostMemory.clear();
+            this.storeHostMemory.put(msgBuffer.array(), msgBuffer.arrayOffset()
+                    + MessageDecoder.MessageStoreHostPostion, 8);
+            this.storeHostMemory.flip();
+            String msgId =
+                    MessageDecoder.createMessageId(this.msgIdMemory, (int) (storeTimestamp / 1000),
+                        this.storeHostMemory, wroteOffset);
+
+            // һεConsumeQueueϢ
+            CommitLog.this.topicQueueTable.put(key, queueOffset + 1);
+
+            return new AppendMessageResult(AppendMessageStatus.PUT_OK, wroteOffset, msgLen, msgId,
+                storeTimestamp, queueOffset);
+        }
+    }
+
 
     /**
      * 캯
@@ -492,6 +581,8 @@ public class CommitLog {
 
         this.appendMessageCallback =
                 new DefaultAppendMessageCallback(defaultMessageStore.getMessageStoreConfig().getMaxMessageSize());
+        this.rawAppendMessageCallback =
+                new RawAppendMessageCallback(defaultMessageStore.getMessageStoreConfig().getMaxMessageSize());
     }
 
 
@@ -720,6 +811,28 @@ public class CommitLog {
     }
 
 
+    /**
+     * Slaveʹ УMasterƹķַ¼뱾CommitLogеϢǷһ£ֻȡϢͷ
+     * 
+     * @param position
+     *            ϢbyteBufferеλ
+     */
+    public boolean checkDispatchRecord(final java.nio.ByteBuffer byteBuffer, final int position,
+            final DispatchRequest dispatchRequest) {
+        if (position + 64 > byteBuffer.limit()) {
+            return false;
+        }
+
+        return byteBuffer.getInt(position) == dispatchRequest.getMsgSize() // 1 TOTALSIZE
+                && byteBuffer.getInt(position + 4) == MessageMagicCode // 2 MAGICCODE
+                && byteBuffer.getInt(position + 12) == dispatchRequest.getQueueId() // 4 QUEUEID
+                && byteBuffer.getLong(position + 20) == dispatchRequest.getConsumeQueueOffset() // 6 QUEUEOFFSET
+                && byteBuffer.getLong(position + 28) == dispatchRequest.getCommitLogOffset() // 7 PHYSICALOFFSET
+                && byteBuffer.getInt(position + 36) == dispatchRequest.getSysFlag() // 8 SYSFLAG
+                && byteBuffer.getLong(position + 56) == dispatchRequest.getStoreTimestamp(); // 11 STORETIMESTAMP
+    }
+
+
     /**
      * ˳ʱݻָڴݶѾˢ
      */
@@ -1013,19 +1126,22 @@ public class CommitLog {
             this.flushCommitLogService.wakeup();
         }
 
+        // д룬HẠ߳ѯ
+        if (BrokerRole.SLAVE != this.defaultMessageStore.getMessageStoreConfig().getBrokerRole()
+                && this.defaultMessageStore.getHaService().getConnectionCount().get() > 0) {
+            this.defaultMessageStore.getHaService().getWaitNotifyObject().wakeupAll();
+        }
+
         // ͬ˫д
         if (BrokerRole.SYNC_MASTER == this.defaultMessageStore.getMessageStoreConfig().getBrokerRole()) {
             HAService service = this.defaultMessageStore.getHaService();
             if (msg.isWaitStoreMsgOK()) {
                 // жǷҪȴ
                 if (service.isSlaveOK(result.getWroteOffset() + result.getWroteBytes())) {
-                    if (null == request) {
-                        request = new GroupCommitRequest(result.getWroteOffset() + result.getWroteBytes());
-                    }
+                    // ͬˢ̵Ѿѣܸ
+                    request = new GroupCommitRequest(result.getWroteOffset() + result.getWroteBytes());
                     service.putRequest(request);
 
-                    service.getWaitNotifyObject().wakeupAll();
-
                     boolean flushOK =
                     // TODO ˴ˢ̹Ƿ
                             request.waitForFlush(this.defaultMessageStore.getMessageStoreConfig()
@@ -1049,6 +1165,94 @@ public class CommitLog {
     }
 
 
+    /**
+     * ׷ѾлõϢֻһֻһˢ̷<br>
+     * ʧأѾдϢͨRawMessageBrokerInner.isStored()ж
+     */
+    public PutMessageResult putRawMessages(final List<RawMessageBrokerInner> msgs) {
+        AppendMessageResult result = null;
+        long wroteBytesTotal = 0;
+
+        // дļҪ
+        synchronized (this) {
+            long beginLockTimestamp = this.defaultMessageStore.getSystemClock().now();
+
+            for (RawMessageBrokerInner msg : msgs) {
+                MapedFile mapedFile = this.mapedFileQueue.getLastMapedFile();
+                if (null == mapedFile) {
+                    log.error("create maped file1 error, raw message topic: " + msg.getTopic());
+                    return new PutMessageResult(PutMessageStatus.CREATE_MAPEDFILE_FAILED, result);
+                }
+                result = mapedFile.appendMessage(msg, this.rawAppendMessageCallback);
+                switch (result.getStatus()) {
+                // ɹ׷Ϣ
+                case PUT_OK:
+                    break;
+                // ߵļĩβ
+                case END_OF_FILE:
+                    // ļдϢ
+                    mapedFile = this.mapedFileQueue.getLastMapedFile();
+                    if (null == mapedFile) {
+                        log.error("create maped file2 error, raw message topic: " + msg.getTopic());
+                        return new PutMessageResult(PutMessageStatus.CREATE_MAPEDFILE_FAILED, result);
+                    }
+                    result = mapedFile.appendMessage(msg, this.rawAppendMessageCallback);
+                    if (!result.isOk()) {
+                        return new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, result);
+                    }
+                    break;
+                // ϢС
+                case MESSAGE_SIZE_EXCEEDED:
+                    return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, result);
+                    // δ֪
+                case UNKNOWN_ERROR:
+                default:
+                    return new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, result);
+                }
+
+                msg.setAppendMessageResult(result);
+                wroteBytesTotal += result.getWroteBytes();
+
+                DispatchRequest dispatchRequest = new DispatchRequest(//
+                    msg.getTopic(),// 1
+                    msg.getQueueId(),// 2
+                    result.getWroteOffset(),// 3
+                    result.getWroteBytes(),// 4
+                    msg.getTagsCode(),// 5
+                    result.getStoreTimestamp(),// 6
+                    result.getLogicsOffset(),// 7
+                    msg.getKeys(),// 8
+                    msg.getSysFlag(),// 9
+                    0L, // 10
+                    msg.getMessageBuffer().getLong(MessageDecoder.MessagePreparedTransactionOffsetPostion),// 11
+                    msg.getProducerGroup()// 12
+                    );
+
+                this.defaultMessageStore.putDispatchRequest(dispatchRequest);
+            }
+
+            long eclipseTime = this.defaultMessageStore.getSystemClock().now() - beginLockTimestamp;
+            if (eclipseTime > 1000) {
+                log.warn("putRawMessages in lock eclipse time(ms) " + eclipseTime + " size " + msgs.size());
+            }
+        }
+
+        // ͳϢSIZE
+        this.defaultMessageStore.getStoreStatsService().getPutMessageSizeTotal().addAndGet(wroteBytesTotal);
+
+        // ֻһˢ̣ȴˢ̼ͬ˫д
+        this.flushCommitLogService.wakeup();
+
+        // д룬HẠ߳ѯ
+        if (BrokerRole.SLAVE != this.defaultMessageStore.getMessageStoreConfig().getBrokerRole()
+                && this.defaultMessageStore.getHaService().getConnectionCount().get() > 0) {
+            this.defaultMessageStore.getHaService().getWaitNotifyObject().wakeupAll();
+        }
+
+        return new PutMessageResult(PutMessageStatus.PUT_OK, result);
+    }
+
+
     /**
      * offsetȡضϢĴ洢ʱ 򷵻-1
      */
@@ -5,9 +5,12 @@ package com.alibaba.rocketmq.store;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -24,6 +27,8 @@ import com.alibaba.rocketmq.common.protocol.heartbeat.SubscriptionData;
 import com.alibaba.rocketmq.common.sysflag.MessageSysFlag;
 import com.alibaba.rocketmq.store.config.BrokerRole;
 import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+import com.alibaba.rocketmq.store.ha.HABootstrapClient;
+import com.alibaba.rocketmq.store.ha.HADispatchRecordQueue;
 import com.alibaba.rocketmq.store.ha.HAService;
 import com.alibaba.rocketmq.store.index.IndexService;
 import com.alibaba.rocketmq.store.index.QueryOffsetResult;
@@ -71,6 +76,8 @@ public class DefaultMessageStore implements MessageStore {
     private final TransactionStateService transactionStateService;
     // ʱͳ
     private final StoreStatsService storeStatsService;
+    // ϢڴʱԤϢ
+    private final ReadAheadService readAheadService;
     // й̱־λ
     private final RunningFlags runningFlags = new RunningFlags();
     // 洢
@@ -103,6 +110,7 @@ public class DefaultMessageStore implements MessageStore {
         this.dispatchMessageService =
                 new DispatchMessageService(this.messageStoreConfig.getPutMsgIndexHightWater());
         this.storeStatsService = new StoreStatsService();
+        this.readAheadService = new ReadAheadService(this);
         this.indexService = new IndexService(this);
         this.haService = new HAService(this);
         this.scheduleMessageService = new ScheduleMessageService(this);
@@ -503,8 +511,6 @@ public class DefaultMessageStore implements MessageStore {
 
         public void putRequest(final DispatchRequest dispatchRequest) {
             int requestsWriteSize = 0;
-            int putMsgIndexHightWater =
-                    DefaultMessageStore.this.getMessageStoreConfig().getPutMsgIndexHightWater();
             synchronized (this) {
                 this.requestsWrite.add(dispatchRequest);
                 requestsWriteSize = this.requestsWrite.size();
@@ -514,6 +520,32 @@ public class DefaultMessageStore implements MessageStore {
                 }
             }
 
+            this.checkHightWater(requestsWriteSize);
+        }
+
+
+        /**
+         * ַֻ֪ͨһ
+         */
+        public void putRequests(final List<DispatchRequest> dispatchRequests) {
+            int requestsWriteSize = 0;
+            synchronized (this) {
+                this.requestsWrite.addAll(dispatchRequests);
+                requestsWriteSize = this.requestsWrite.size();
+                if (!this.hasNotified) {
+                    this.hasNotified = true;
+                    this.notify();
+                }
+            }
+
+            this.checkHightWater(requestsWriteSize);
+        }
+
+
+        private void checkHightWater(final int requestsWriteSize) {
+            int putMsgIndexHightWater =
+                    DefaultMessageStore.this.getMessageStoreConfig().getPutMsgIndexHightWater();
+
             DefaultMessageStore.this.getStoreStatsService().setDispatchMaxBuffer(requestsWriteSize);
 
             if ((requestsWriteSize > putMsgIndexHightWater) || (this.indexRequestCnt > putMsgIndexHightWater)) {
@@ -542,6 +574,7 @@ public class DefaultMessageStore implements MessageStore {
                     case MessageSysFlag.TransactionNotType:
                     case MessageSysFlag.TransactionCommitType:
                         // 󷢵Consume Queue
+                        // ύָͬǱ֤Consume QueueеλõȡʱҵPreparedϢ
                         DefaultMessageStore.this.putMessagePostionInfo(req.getTopic(), req.getQueueId(),
                             req.getCommitLogOffset(), req.getMsgSize(), req.getTagsCode(),
                             req.getStoreTimestamp(), req.getConsumeQueueOffset());
@@ -565,7 +598,7 @@ public class DefaultMessageStore implements MessageStore {
                     case MessageSysFlag.TransactionRollbackType:
                         DefaultMessageStore.this.getTransactionStateService().updateTransactionState(//
                             req.getTranStateTableOffset(),//
-                            req.getCommitLogOffset(),//
+                            req.getPreparedTransactionOffset(),//
                             req.getProducerGroup().hashCode(),//
                             tranType//
                             );
@@ -607,6 +640,14 @@ public class DefaultMessageStore implements MessageStore {
                             DefaultMessageStore.this.indexService.putRequest(this.requestsRead.toArray());
                 }
 
+                // ¼ַHAӸƸSlave
+                HADispatchRecordQueue dispatchRecordQueue =
+                        DefaultMessageStore.this.haService.getDispatchRecordQueue();
+                if (dispatchRecordQueue != null) {
+                    dispatchRecordQueue.putRecords(this.requestsRead);
+                    DefaultMessageStore.this.haService.getWaitNotifyObject().wakeupAll();
+                }
+
                 this.requestsRead.clear();
             }
         }
@@ -656,26 +697,131 @@ public class DefaultMessageStore implements MessageStore {
     }
 
     /**
-     * SLAVE: LoadϢַ߼
+     * SLAVE: LoadϢַ߼<br>
+     * յMasterƵķַ¼ʱУϢͷֱӷַٽϢ
      */
     class ReputMessageService extends ServiceThread {
         // ￪ʼݣַ߼
         private volatile long reputFromOffset = 0;
+        // һηַʱһϢMaster洢Slaveַĺʱ
+        private volatile long dispatchLagMillis = 0;
+        // Masterƹķַ¼CommitLog˳
+        private final LinkedList<DispatchRequest> dispatchRecords = new LinkedList<DispatchRequest>();
+        // ǷյMasterƵķַ¼
+        private volatile boolean dispatchRecordActive = false;
+        // ʼȴǰOffsetַ¼ʱ
+        private long dispatchRecordWaitTimestamp = 0;
+        // ֱʹ÷ַ¼ϢCommitLogϢַ¼CommitLogһµĴ
+        private final AtomicLong dispatchRecordAppliedTimes = new AtomicLong(0);
+        private final AtomicLong dispatchParsedTimes = new AtomicLong(0);
+        private final AtomicLong dispatchRecordDivergeTimes = new AtomicLong(0);
+
+
+        public void putDispatchRecords(final List<DispatchRequest> records) {
+            synchronized (this.dispatchRecords) {
+                this.dispatchRecords.addAll(records);
+            }
+
+            this.dispatchRecordActive = true;
+            this.wakeup();
+        }
+
+
+        /**
+         * ȡǰOffsetӦķַ¼Ѿַļ¼
+         * 
+         * @return ǰOffsetûм¼ҪCommitLogʱnull
+         */
+        private DispatchRequest peekDispatchRecord(final int available, final boolean[] waiting) {
+            waiting[0] = false;
+            if (!this.dispatchRecordActive) {
+                return null;
+            }
+
+            synchronized (this.dispatchRecords) {
+                while (!this.dispatchRecords.isEmpty()
+                        && this.dispatchRecords.getFirst().getCommitLogOffset() < this.reputFromOffset) {
+                    this.dispatchRecords.removeFirst();
+                }
+
+                DispatchRequest record = this.dispatchRecords.peekFirst();
+                if (record != null) {
+                    this.dispatchRecordWaitTimestamp = 0;
+                    // мм¼ȱʧߵļĩβCommitLog
+                    if (record.getCommitLogOffset() != this.reputFromOffset) {
+                        return null;
+                    }
+
+                    // Ϣûд
+                    if (record.getMsgSize() > available) {
+                        waiting[0] = true;
+                        return null;
+                    }
+
+                    return this.dispatchRecords.removeFirst();
+                }
+            }
+
+            // ȴַ¼ʱCommitLog
+            long now = DefaultMessageStore.this.systemClock.now();
+            if (0 == this.dispatchRecordWaitTimestamp) {
+                this.dispatchRecordWaitTimestamp = now;
+            }
+
+            waiting[0] =
+                    now - this.dispatchRecordWaitTimestamp < DefaultMessageStore.this.messageStoreConfig
+                        .getHaDispatchRecordWaitMillis();
+            return null;
+        }
 
 
         private void doReput() {
+            List<DispatchRequest> dispatchRequests = new ArrayList<DispatchRequest>();
+            boolean[] waiting = new boolean[1];
             for (boolean doNext = true; doNext;) {
                 SelectMapedBufferResult result = DefaultMessageStore.this.commitLog.getData(reputFromOffset);
                 if (result != null) {
                     try {
+                        ByteBuffer byteBuffer = result.getByteBuffer();
                         for (int readSize = 0; readSize < result.getSize() && doNext;) {
                             DispatchRequest dispatchRequest =
-                                    DefaultMessageStore.this.commitLog.checkMessageAndReturnSize(
-                                        result.getByteBuffer(), false, false);
+                                    this.peekDispatchRecord(result.getSize() - readSize, waiting);
+                            if (dispatchRequest != null) {
+                                // ֻУ鶨Ϣͷһм¼ΪCommitLog
+                                if (DefaultMessageStore.this.commitLog.checkDispatchRecord(byteBuffer,
+                                    byteBuffer.position(), dispatchRequest)) {
+                                    byteBuffer.position(byteBuffer.position() + dispatchRequest.getMsgSize());
+                                    this.dispatchRecordAppliedTimes.incrementAndGet();
+                                }
+                                else {
+                                    DefaultMessageStore.log.error("dispatch record not matched the commit log, offset: "
+                                            + this.reputFromOffset + " topic: " + dispatchRequest.getTopic()
+                                            + " queueId: " + dispatchRequest.getQueueId());
+                                    this.dispatchRecordDivergeTimes.incrementAndGet();
+                                    synchronized (this.dispatchRecords) {
+                                        this.dispatchRecords.clear();
+                                    }
+                                    dispatchRequest = null;
+                                }
+                            }
+                            else if (waiting[0]) {
+                                doNext = false;
+                                break;
+                            }
+
+                            if (null == dispatchRequest) {
+                                dispatchRequest =
+                                        DefaultMessageStore.this.commitLog.checkMessageAndReturnSize(byteBuffer,
+                                            false, false);
+                                if (dispatchRequest.getMsgSize() > 0) {
+                                    this.dispatchParsedTimes.incrementAndGet();
+                                }
+                            }
+
                             int size = dispatchRequest.getMsgSize();
                             // 
                             if (size > 0) {
-                                DefaultMessageStore.this.putDispatchRequest(dispatchRequest);
+                                dispatchRequests.add(dispatchRequest);
 
                                 this.reputFromOffset += size;
                                 readSize += size;
@@ -699,8 +845,19 @@ public class DefaultMessageStore implements MessageStore {
                     finally {
                         result.release();
                     }
+
+                    // ζϢһԷַ
+                    if (!dispatchRequests.isEmpty()) {
+                        DispatchRequest last = dispatchRequests.get(dispatchRequests.size() - 1);
+                        DefaultMessageStore.this.dispatchMessageService.putRequests(dispatchRequests);
+                        this.dispatchLagMillis =
+                                DefaultMessageStore.this.systemClock.now() - last.getStoreTimestamp();
+                        dispatchRequests.clear();
+                    }
                 }
                 else {
+                    // Ѿ׷ϣ´ʱµȴַ¼
+                    this.dispatchRecordWaitTimestamp = 0;
                     doNext = false;
                 }
             }
@@ -713,7 +870,10 @@ public class DefaultMessageStore implements MessageStore {
 
             while (!this.isStoped()) {
                 try {
-                    this.waitForRunning(1000);
+                    // HAClientдCommitLogյַ¼ѣĳʱֻǶ
+                    // ȴַ¼ʱʱҪʱΪCommitLog
+                    this.waitForRunning(0 == this.dispatchRecordWaitTimestamp ? 1000
+                            : DefaultMessageStore.this.messageStoreConfig.getHaDispatchRecordWaitMillis());
                     this.doReput();
                 }
                 catch (Exception e) {
@@ -736,9 +896,37 @@ public class DefaultMessageStore implements MessageStore {
         }
 
 
+        public long getDispatchLagMillis() {
+            return dispatchLagMillis;
+        }
+
+
         public void setReputFromOffset(long reputFromOffset) {
             this.reputFromOffset = reputFromOffset;
         }
+
+
+        public AtomicLong getDispatchRecordAppliedTimes() {
+            return dispatchRecordAppliedTimes;
+        }
+
+
+        public AtomicLong getDispatchParsedTimes() {
+            return dispatchParsedTimes;
+        }
+
+
+        public AtomicLong getDispatchRecordDivergeTimes() {
+            return dispatchRecordDivergeTimes;
+        }
+    }
+
+
+    /**
+     * ַǷδϢ
+     */
+    public boolean hasRemainDispatchMessage() {
+        return this.dispatchMessageService.hasRemainMessage();
     }
 
 
@@ -754,7 +942,7 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
-    private void recover(final boolean lastExitOK) {
+    private boolean recover(final boolean lastExitOK) {
         // Ȱָ̻Consume Queue
         this.recoverConsumeQueue();
 
@@ -782,9 +970,13 @@ public class DefaultMessageStore implements MessageStore {
         }
 
         // ָģ
-        this.transactionStateService.recoverStateTable(lastExitOK);
+        if (!this.transactionStateService.recoverStateTable(lastExitOK)) {
+            log.error("recover transaction state table failed");
+            return false;
+        }
 
         this.recoverTopicQueueTable();
+        return true;
     }
 
 
@@ -800,6 +992,13 @@ public class DefaultMessageStore implements MessageStore {
             boolean lastExitOK = !this.isTempFileExist();
             log.info("last shutdown " + (lastExitOK ? "normally" : "abnormally"));
 
+            // Slave洢ΪգȴMasterȡѾдļ
+            boolean bootstrapOK = false;
+            if (BrokerRole.SLAVE == this.messageStoreConfig.getBrokerRole()
+                    && HABootstrapClient.needBootstrap(this.messageStoreConfig)) {
+                bootstrapOK = new HABootstrapClient(this.messageStoreConfig).bootstrap();
+            }
+
             // load Commit Log
             result = this.commitLog.load();
 
@@ -818,7 +1017,13 @@ public class DefaultMessageStore implements MessageStore {
                 this.indexService.load(lastExitOK);
 
                 // Իָ
-                this.recover(lastExitOK);
+                result = this.recover(lastExitOK);
+
+                // ȡConsumeQueueܳCommitLog߽磬HAƺ·ַ
+                if (result && bootstrapOK) {
+                    this.truncateDirtyLogicFiles(this.commitLog.getMaxOffset());
+                    this.recoverTopicQueueTable();
+                }
 
                 log.info("load over, and the max phy offset = " + this.getMaxPhyOffset());
             }
@@ -923,7 +1128,9 @@ public class DefaultMessageStore implements MessageStore {
         this.flushConsumeQueueService.start();
         this.commitLog.start();
         this.scheduleMessageService.start();
+        this.transactionStateService.start();
         this.storeStatsService.start();
+        this.readAheadService.start();
 
         if (this.reputMessageService != null) {
             this.reputMessageService.setReputFromOffset(this.commitLog.getMaxOffset());
@@ -953,9 +1160,11 @@ public class DefaultMessageStore implements MessageStore {
             }
 
             this.scheduleMessageService.shutdown();
+            this.transactionStateService.shutdown();
             this.haService.shutdown();
 
             this.storeStatsService.shutdown();
+            this.readAheadService.shutdown();
             this.cleanCommitLogService.shutdown();
             this.cleanConsumeQueueService.shutdown();
             this.dispatchMessageService.shutdown();
@@ -1031,6 +1240,50 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
+    /**
+     * длõϢĿǰʱϢͶʹ
+     */
+    public PutMessageResult putRawMessages(final List<RawMessageBrokerInner> msgs) {
+        if (this.shutdown) {
+            log.warn("message store has shutdown, so putRawMessages is forbidden");
+            return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
+        }
+
+        if (BrokerRole.SLAVE == this.messageStoreConfig.getBrokerRole()) {
+            return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
+        }
+
+        if (!this.runningFlags.isWriteable()) {
+            log.warn("message store is not writeable, so putRawMessages is forbidden "
+                    + this.runningFlags.getFlagBits());
+            return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
+        }
+
+        long beginTime = this.getSystemClock().now();
+        PutMessageResult result = this.commitLog.putRawMessages(msgs);
+        // ͳ
+        long eclipseTime = this.getSystemClock().now() - beginTime;
+        if (eclipseTime > 1000) {
+            log.warn("putRawMessages not in lock eclipse time(ms) " + eclipseTime);
+        }
+        this.storeStatsService.setPutMessageEntireTimeMax(eclipseTime);
+
+        int stored = 0;
+        for (RawMessageBrokerInner msg : msgs) {
+            if (msg.isStored()) {
+                stored++;
+            }
+        }
+        this.storeStatsService.getPutMessageTimesTotal().addAndGet(stored);
+
+        if (PutMessageStatus.PUT_OK != result.getPutMessageStatus()) {
+            this.storeStatsService.getPutMessageFailedTimes().incrementAndGet();
+        }
+
+        return result;
+    }
+
+
     private boolean isTheBatchFull(long offsetPy, int sizePy, int maxMsgNums, int bufferTotal, int messageTotal) {
         long maxOffsetPy = this.commitLog.getMaxOffset();
         long memory =
@@ -1126,6 +1379,14 @@ public class DefaultMessageStore implements MessageStore {
                         long nextPhyFileStartOffset = Long.MIN_VALUE;
                         long maxPhyOffsetPulling = 0;
 
+                        // һϢϲΪһζȡ
+                        final int mapedFileSize = this.messageStoreConfig.getMapedFileSizeCommitLog();
+                        final int[] runSizes = new int[Math.max(maxMsgNums, 1) + 1];
+                        final long[] runQueueOffsets = new long[runSizes.length];
+                        long runStartPy = 0;
+                        int runSize = 0;
+                        int runCount = 0;
+
                         int i = 0;
                         final int MaxFilterMessageCount = 16000;
                         for (; i < bufferConsumeQueue.getSize() && i < MaxFilterMessageCount; i +=
@@ -1143,31 +1404,49 @@ public class DefaultMessageStore implements MessageStore {
                             }
 
                             // Ϣﵽ
-                            if (this.isTheBatchFull(offsetPy, sizePy, maxMsgNums, getResult.getBufferTotalSize(),
-                                getResult.getMessageCount())) {
+                            if (this.isTheBatchFull(offsetPy, sizePy, maxMsgNums, getResult.getBufferTotalSize()
+                                    + runSize, getResult.getMessageCount() + runCount)) {
                                 break;
                             }
 
                             // Ϣ
                             if (this.messageFilter.isMessageMatched(subscriptionData, tagsCode)) {
-                                SelectMapedBufferResult selectResult = this.commitLog.getMessage(offsetPy, sizePy);
-                                if (selectResult != null) {
-                                    this.storeStatsService.getGetMessageTransferedMsgCount().incrementAndGet();
-                                    getResult.addMessage(selectResult);
-                                    status = GetMessageStatus.FOUND;
-                                    nextPhyFileStartOffset = Long.MIN_VALUE;
-                                }
-                                else {
-                                    if (getResult.getBufferTotalSize() == 0) {
-                                        status = GetMessageStatus.MESSAGE_WAS_REMOVING;
+                                // һϢͬһļ
+                                boolean contiguous =
+                                        runCount > 0 && offsetPy == runStartPy + runSize
+                                                && offsetPy / mapedFileSize == runStartPy / mapedFileSize;
+                                if (!contiguous && runCount > 0) {
+                                    if (this.addMessageRun(getResult, runStartPy, runSize, runSizes,
+                                        runQueueOffsets, runCount)) {
+                                        status = GetMessageStatus.FOUND;
+                                        nextPhyFileStartOffset = Long.MIN_VALUE;
                                     }
+                                    else {
+                                        if (getResult.getBufferTotalSize() == 0) {
+                                            status = GetMessageStatus.MESSAGE_WAS_REMOVING;
+                                        }
 
-                                    // ļڱɾ
-                                    nextPhyFileStartOffset = this.commitLog.rollNextFile(offsetPy);
+                                        // ļڱɾ
+                                        nextPhyFileStartOffset = this.commitLog.rollNextFile(runStartPy);
+                                    }
+                                    runCount = 0;
+
+                                    if (offsetPy < nextPhyFileStartOffset) {
+                                        continue;
+                                    }
+                                }
+
+                                if (0 == runCount) {
+                                    runStartPy = offsetPy;
+                                    runSize = 0;
                                 }
+                                runSizes[runCount] = sizePy;
+                                runQueueOffsets[runCount] = offset + (i / ConsumeQueue.CQStoreUnitSize);
+                                runSize += sizePy;
+                                runCount++;
                             }
                             else {
-                                if (getResult.getBufferTotalSize() == 0) {
+                                if (getResult.getBufferTotalSize() == 0 && 0 == runCount) {
                                     status = GetMessageStatus.NO_MATCHED_MESSAGE;
                                 }
 
@@ -1178,13 +1457,30 @@ public class DefaultMessageStore implements MessageStore {
                             }
                         }
 
+                        if (runCount > 0) {
+                            if (this.addMessageRun(getResult, runStartPy, runSize, runSizes, runQueueOffsets,
+                                runCount)) {
+                                status = GetMessageStatus.FOUND;
+                            }
+                            else if (getResult.getBufferTotalSize() == 0) {
+                                status = GetMessageStatus.MESSAGE_WAS_REMOVING;
+                            }
+                        }
+
                         nextBeginOffset = offset + (i / ConsumeQueue.CQStoreUnitSize);
 
                         long diff = this.getMaxPhyOffset() - maxPhyOffsetPulling;
                         long memory =
                                 (long) (MixAll.TotalPhysicalMemorySize * (this.messageStoreConfig
                                     .getAccessMessageInMemoryMaxRatio() / 100.0));
-                        getResult.setSuggestPullingFromSlave(diff > memory);
+                        getResult.setSuggestPullingFromSlave(this.isSuggestPullingFromSlave(diff, memory,
+                            maxPhyOffsetPulling));
+
+                        // Ϣڴ̣첽ԤϢ´ȡͬȴȱҳ
+                        if (diff > memory && nextBeginOffset < maxOffset
+                                && this.messageStoreConfig.isReadAheadEnable()) {
+                            this.readAheadService.putRequest(topic, queueId, nextBeginOffset);
+                        }
                     }
                     finally {
                         // ͷԴ
@@ -1263,6 +1559,132 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
+    /**
+     * ȡCommitLogĳϢĴСʧܷ-1
+     */
+    private int pickupMessageSize(final long offset) {
+        SelectMapedBufferResult result = this.commitLog.getMessage(offset, 4);
+        if (null != result) {
+            try {
+                return result.getByteBuffer().getInt();
+            }
+            finally {
+                result.release();
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * һζȡһϢֻһ
+     * 
+     * @return ļѾɾfalse
+     */
+    private boolean addMessageRun(final GetMessageResult getResult, final long runStartPy, final int runSize,
+            final int[] runSizes, final long[] runQueueOffsets, final int runCount) {
+        SelectMapedBufferResult selectResult = this.commitLog.getMessage(runStartPy, runSize);
+        if (null == selectResult) {
+            return false;
+        }
+
+        ByteBuffer byteBuffer = selectResult.getByteBuffer();
+        List<ByteBuffer> messageBuffers = new ArrayList<ByteBuffer>(runCount);
+        boolean hasMarker = false;
+        for (int i = 0, pos = 0; i < runCount; pos += runSizes[i], i++) {
+            final int sysFlag = byteBuffer.getInt(pos + MessageDecoder.MessageSysFlagPostion);
+            if (isLightweightMarker(sysFlag)) {
+                hasMarker = true;
+                break;
+            }
+
+            ByteBuffer message = byteBuffer.duplicate();
+            message.position(pos);
+            message.limit(pos + runSizes[i]);
+            messageBuffers.add(message.slice());
+        }
+
+        if (!hasMarker) {
+            getResult.addMessageRun(selectResult, messageBuffers);
+            this.storeStatsService.getGetMessageTransferedMsgCount().addAndGet(runCount);
+            return true;
+        }
+
+        // ύǣҪ滻ΪPreparedϢȡ
+        selectResult.release();
+        int added = 0;
+        long offsetPy = runStartPy;
+        for (int i = 0; i < runCount; offsetPy += runSizes[i], i++) {
+            SelectMapedBufferResult message = this.commitLog.getMessage(offsetPy, runSizes[i]);
+            if (null == message) {
+                break;
+            }
+
+            message = this.resolvePreparedMessage(message, runQueueOffsets[i]);
+            if (null == message) {
+                continue;
+            }
+
+            getResult.addMessage(message);
+            this.storeStatsService.getGetMessageTransferedMsgCount().incrementAndGet();
+            added++;
+        }
+
+        return added > 0;
+    }
+
+
+    private static boolean isLightweightMarker(final int sysFlag) {
+        final int markerFlag = MessageSysFlag.TransactionLightweightMarkerFlag;
+        return (sysFlag & markerFlag) == markerFlag;
+    }
+
+
+    /**
+     * Consume QueueָύʱһݱָPreparedϢ߼λʶ<br>
+     * ͨϢԭأƣPreparedϢѾɾʱnull
+     */
+    private SelectMapedBufferResult resolvePreparedMessage(final SelectMapedBufferResult selectResult,
+            final long queueOffset) {
+        final int markerSysFlag = selectResult.getByteBuffer().getInt(MessageDecoder.MessageSysFlagPostion);
+        if (!isLightweightMarker(markerSysFlag)) {
+            return selectResult;
+        }
+
+        final long preparedOffset;
+        try {
+            preparedOffset =
+                    selectResult.getByteBuffer().getLong(MessageDecoder.MessagePreparedTransactionOffsetPostion);
+        }
+        finally {
+            selectResult.release();
+        }
+
+        final int preparedSize = this.pickupMessageSize(preparedOffset);
+        SelectMapedBufferResult prepared =
+                preparedSize > 0 ? this.commitLog.getMessage(preparedOffset, preparedSize) : null;
+        if (null == prepared) {
+            log.warn("the prepared message of lightweight commit marker not exist, " + preparedOffset);
+            return null;
+        }
+
+        try {
+            final ByteBuffer copy = ByteBuffer.allocate(prepared.getSize());
+            copy.put(prepared.getByteBuffer());
+            copy.flip();
+            final int sysFlag = copy.getInt(MessageDecoder.MessageSysFlagPostion);
+            copy.putLong(MessageDecoder.MessageQueueOffsetPostion, queueOffset);
+            copy.putInt(MessageDecoder.MessageSysFlagPostion,
+                MessageSysFlag.resetTransactionValue(sysFlag, MessageSysFlag.TransactionCommitType));
+            return new SelectMapedBufferResult(prepared.getStartOffset(), copy, prepared.getSize(), null);
+        }
+        finally {
+            prepared.release();
+        }
+    }
+
+
     public void putDispatchRequest(final DispatchRequest dispatchRequest) {
         this.dispatchMessageService.putRequest(dispatchRequest);
     }
@@ -1320,6 +1742,11 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
+    public ReadAheadService getReadAheadService() {
+        return readAheadService;
+    }
+
+
     public String getRunningDataInfo() {
         return this.storeStatsService.toString();
     }
@@ -1432,6 +1859,71 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
+    /**
+     * ͻǷSlaveϢ˳ʹòֵ֮ͬл<br>
+     * Master󳬹accessMessageInMemoryMaxRatioSlaveѾַЩϢûSlave㱨ַʱԭΪ<br>
+     * Slave󳬹slaveReadExitRatioSlave
+     */
+    private boolean isSuggestPullingFromSlave(final long diff, final long memory, final long maxPhyOffsetPulling) {
+        if (BrokerRole.SLAVE == this.messageStoreConfig.getBrokerRole()) {
+            int exitRatio =
+                    Math.min(this.messageStoreConfig.getSlaveReadExitRatio(),
+                        this.messageStoreConfig.getAccessMessageInMemoryMaxRatio());
+            long exitMemory = (long) (MixAll.TotalPhysicalMemorySize * (exitRatio / 100.0));
+            return diff > exitMemory;
+        }
+
+        if (diff <= memory) {
+            return false;
+        }
+
+        // ûSlave㱨ַȣԭ߼飬ͻҲSlaveʱصMaster
+        long slaveDispatchOffset = this.haService.getSlaveDispatchOffset();
+        if (slaveDispatchOffset < 0) {
+            return true;
+        }
+
+        // SlaveûзַSlaveȡֻϢ
+        return slaveDispatchOffset > maxPhyOffsetPulling;
+    }
+
+
+    /**
+     * SlaveѾַConsumeQueuePhy OffsetMasterCommitLogOffset
+     */
+    public long getSlaveDispatchOffset() {
+        if (this.reputMessageService != null) {
+            return this.reputMessageService.getReputFromOffset();
+        }
+
+        return this.commitLog.getMaxOffset();
+    }
+
+
+    @Override
+    public boolean checkInDiskByConsumeOffset(final String topic, final int queueId, final long consumeOffset) {
+        ConsumeQueue consumeQueue = this.findConsumeQueue(topic, queueId);
+        if (consumeQueue != null && consumeOffset >= consumeQueue.getMinOffsetInQuque()
+                && consumeOffset < consumeQueue.getMaxOffsetInQuque()) {
+            SelectMapedBufferResult bufferConsumeQueue = consumeQueue.getIndexBuffer(consumeOffset);
+            if (bufferConsumeQueue != null) {
+                try {
+                    long offsetPy = bufferConsumeQueue.getByteBuffer().getLong();
+                    long memory =
+                            (long) (MixAll.TotalPhysicalMemorySize * (this.messageStoreConfig
+                                .getAccessMessageInMemoryMaxRatio() / 100.0));
+                    return (this.getMaxPhyOffset() - offsetPy) > memory;
+                }
+                finally {
+                    bufferConsumeQueue.release();
+                }
+            }
+        }
+
+        return false;
+    }
+
+
     @Override
     public long getEarliestMessageTime(String topic, int queueId) {
         ConsumeQueue logicQueue = this.findConsumeQueue(topic, queueId);
@@ -1481,6 +1973,16 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
+    /**
+     * SlaveյMasterƵķַ¼
+     */
+    public void putDispatchRecords(final List<DispatchRequest> records) {
+        if (this.reputMessageService != null) {
+            this.reputMessageService.putDispatchRecords(records);
+        }
+    }
+
+
     @Override
     public boolean appendToCommitLog(long startOffset, byte[] data) {
         if (this.shutdown) {
@@ -1551,8 +2053,48 @@ public class DefaultMessageStore implements MessageStore {
 
     @Override
     public HashMap<String, String> getRuntimeInfo() {
-        // TODO Auto-generated method stub
-        return null;
+        HashMap<String, String> result = this.storeStatsService.getRuntimeInfo();
+
+        // ز
+        result.put("tranCheckOffset", String.valueOf(this.transactionStateService.getCheckOffset()));
+        result.put("tranCheckOffsetBehind", String.valueOf(this.transactionStateService.getCheckOffsetBehind()));
+        result.put("tranPreparedTimeoutCount",
+            String.valueOf(this.transactionStateService.getPreparedTimeoutCount()));
+
+        // SlaveַConsumeQueueCommitLogֽԼϢMaster洢Slaveַĺʱ
+        if (this.reputMessageService != null) {
+            result.put("slaveReputBehindBytes",
+                String.valueOf(this.commitLog.getMaxOffset() - this.reputMessageService.getReputFromOffset()));
+            result.put("slaveDispatchLagMillis", String.valueOf(this.reputMessageService.getDispatchLagMillis()));
+            // ֱʹ÷ַ¼CommitLogϢԼַ¼CommitLogһµĴ
+            result.put("slaveDispatchRecordApplied",
+                String.valueOf(this.reputMessageService.getDispatchRecordAppliedTimes().get()));
+            result.put("slaveDispatchParsed", String.valueOf(this.reputMessageService.getDispatchParsedTimes().get()));
+            result.put("slaveDispatchRecordDiverge",
+                String.valueOf(this.reputMessageService.getDispatchRecordDivergeTimes().get()));
+        }
+
+        // ϢԤ
+        result.put("readAheadTimes", String.valueOf(this.readAheadService.getReadAheadTimes().get()));
+        result.put("readAheadPages", String.valueOf(this.readAheadService.getReadAheadPages().get()));
+        result.put("readAheadDroppedTimes",
+            String.valueOf(this.readAheadService.getReadAheadDroppedTimes().get()));
+
+        // ѹ
+        this.haService.getCompressStats().putRuntimeInfo(result);
+
+        // ӸƣÿSlaveMasterֽ
+        if (BrokerRole.SLAVE != this.messageStoreConfig.getBrokerRole()) {
+            long masterOffset = this.commitLog.getMaxOffset();
+            result.put("haSlaveAckOffset", String.valueOf(this.haService.getPush2SlaveAckOffset()));
+            result.put("haSlaveDispatchOffset", String.valueOf(this.haService.getSlaveDispatchOffset()));
+            for (Map.Entry<String, Long> entry : this.haService.getSlaveAckOffsetTable().entrySet()) {
+                long fallbehind = entry.getValue() < 0 ? masterOffset : masterOffset - entry.getValue();
+                result.put("haSlaveFallbehind_" + entry.getKey(), String.valueOf(fallbehind));
+            }
+        }
+
+        return result;
     }
 
 
@@ -22,12 +22,16 @@ public class GetMessageResult {
     private long minOffset;
     // ߼еOffset
     private long maxOffset;
-    // Ϣ
+    // ϢϣһϢֻһ
     private final List<SelectMapedBufferResult> messageMapedList = new ArrayList<SelectMapedBufferResult>(100);
-    // ConsumerϢ
+    // ÿϢһByteBuffer
     private final List<ByteBuffer> messageBufferList = new ArrayList<ByteBuffer>(100);
+    // ConsumerϢһϢϲΪһByteBuffer
+    private final List<ByteBuffer> transferBufferList = new ArrayList<ByteBuffer>(100);
     // ByteBuffer ֽ
     private int bufferTotalSize = 0;
+    // Ϣ
+    private int messageCount = 0;
     // ǷslaveϢ
     private boolean suggestPullingFromSlave = false;
 
@@ -86,10 +90,34 @@ public class GetMessageResult {
     }
 
 
+    public List<ByteBuffer> getTransferBufferList() {
+        return transferBufferList;
+    }
+
+
     public void addMessage(final SelectMapedBufferResult mapedBuffer) {
         this.messageMapedList.add(mapedBuffer);
         this.messageBufferList.add(mapedBuffer.getByteBuffer());
+        this.transferBufferList.add(mapedBuffer.getByteBuffer().duplicate());
+        this.bufferTotalSize += mapedBuffer.getSize();
+        this.messageCount++;
+    }
+
+
+    /**
+     * һϢ
+     * 
+     * @param mapedBuffer
+     *            Ϣ
+     * @param messageBuffers
+     *            ÿϢݣmapedBufferڴ
+     */
+    public void addMessageRun(final SelectMapedBufferResult mapedBuffer, final List<ByteBuffer> messageBuffers) {
+        this.messageMapedList.add(mapedBuffer);
+        this.messageBufferList.addAll(messageBuffers);
+        this.transferBufferList.add(mapedBuffer.getByteBuffer().duplicate());
         this.bufferTotalSize += mapedBuffer.getSize();
+        this.messageCount += messageBuffers.size();
     }
 
 
@@ -106,7 +134,7 @@ public class GetMessageResult {
 
 
     public int getMessageCount() {
-        return this.messageMapedList.size();
+        return this.messageCount;
     }
 
 
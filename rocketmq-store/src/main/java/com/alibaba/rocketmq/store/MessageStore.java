@@ -102,6 +102,12 @@ public interface MessageStore {
     public long getMaxPhyOffset();
 
 
+    /**
+     * ж߼ָλõϢǷѾڴ
+     */
+    public boolean checkInDiskByConsumeOffset(final String topic, final int queueId, final long consumeOffset);
+
+
     /**
      * ȡϢʱ
      */
@@ -0,0 +1,92 @@
+/**
+ * $Id: RawMessageBrokerInner.java 1831 2013-05-16 01:39:51Z shijia.wxr $
+ */
+package com.alibaba.rocketmq.store;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * ѾлõϢдCommitLogʱֻQUEUEOFFSETPHYSICALOFFSETSTORETIMESTAMPл
+ *
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class RawMessageBrokerInner {
+    // Ϣ洢¼positionΪ0limitΪϢ
+    private final ByteBuffer messageBuffer;
+    private final String topic;
+    private final int queueId;
+    private final long tagsCode;
+    private final String keys;
+    private final int sysFlag;
+    private final String producerGroup;
+    // дɹ
+    private AppendMessageResult appendMessageResult;
+
+
+    public RawMessageBrokerInner(ByteBuffer messageBuffer, String topic, int queueId, long tagsCode,
+            String keys, int sysFlag, String producerGroup) {
+        this.messageBuffer = messageBuffer;
+        this.topic = topic;
+        this.queueId = queueId;
+        this.tagsCode = tagsCode;
+        this.keys = keys;
+        this.sysFlag = sysFlag;
+        this.producerGroup = producerGroup;
+    }
+
+
+    public int getMsgSize() {
+        return this.messageBuffer.limit();
+    }
+
+
+    public boolean isStored() {
+        return this.appendMessageResult != null && this.appendMessageResult.isOk();
+    }
+
+
+    public ByteBuffer getMessageBuffer() {
+        return messageBuffer;
+    }
+
+
+    public String getTopic() {
+        return topic;
+    }
+
+
+    public int getQueueId() {
+        return queueId;
+    }
+
+
+    public long getTagsCode() {
+        return tagsCode;
+    }
+
+
+    public String getKeys() {
+        return keys;
+    }
+
+
+    public int getSysFlag() {
+        return sysFlag;
+    }
+
+
+    public String getProducerGroup() {
+        return producerGroup;
+    }
+
+
+    public AppendMessageResult getAppendMessageResult() {
+        return appendMessageResult;
+    }
+
+
+    public void setAppendMessageResult(AppendMessageResult appendMessageResult) {
+        this.appendMessageResult = appendMessageResult;
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * $Id: ReadAheadService.java 1831 2013-05-16 01:39:51Z shijia.wxr $
+ */
+package com.alibaba.rocketmq.store;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.rocketmq.common.MixAll;
+import com.alibaba.rocketmq.common.ServiceThread;
+
+
+/**
+ * ϢԤ<br>
+ * ȡϢѾڴʱ첽ʸöкϢڵCommitLogҳ
+ * ʹϢ̲߳ͬȴȱҳжϡ̴߳Ԥȴ뵥Ԥֽ
+ *
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class ReadAheadService extends ServiceThread {
+    /**
+     * ÿѾԤ߼
+     */
+    static class ReadAheadWindow {
+        // ǷŶӻԤ
+        private final AtomicBoolean inflight = new AtomicBoolean(false);
+        // ԤĿʼOffset߼У
+        private volatile long beginOffset = -1;
+        // ԤĽOffset߼У
+        private volatile long endOffset = -1;
+        // һԤϢ
+        private volatile long lastSpan = 0;
+        // һʱ
+        private volatile long lastRequestTimestamp = System.currentTimeMillis();
+    }
+
+    static class ReadAheadRequest {
+        private final String topic;
+        private final int queueId;
+        private final long fromOffset;
+        private final ReadAheadWindow window;
+
+
+        public ReadAheadRequest(String topic, int queueId, long fromOffset, ReadAheadWindow window) {
+            this.topic = topic;
+            this.queueId = queueId;
+            this.fromOffset = fromOffset;
+            this.window = window;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(MixAll.StoreLoggerName);
+    // ʱûĶУԤ
+    private static final long WindowExpiredMillis = 1000 * 60;
+
+    private final DefaultMessageStore defaultMessageStore;
+    private final ConcurrentHashMap<String/* topic@queueId */, ReadAheadWindow> windowTable =
+            new ConcurrentHashMap<String, ReadAheadWindow>(64);
+    private final LinkedBlockingQueue<ReadAheadRequest> requestQueue;
+    private long lastCleanTimestamp = System.currentTimeMillis();
+    // ۼӷʵֽڣʱŻ
+    private int touchedSum = 0;
+
+    // ɵԤ
+    private final AtomicLong readAheadTimes = new AtomicLong(0);
+    // Ԥʵҳ
+    private final AtomicLong readAheadPages = new AtomicLong(0);
+    // 
+    private final AtomicLong readAheadDroppedTimes = new AtomicLong(0);
+
+
+    public ReadAheadService(final DefaultMessageStore defaultMessageStore) {
+        this.defaultMessageStore = defaultMessageStore;
+        this.requestQueue =
+                new LinkedBlockingQueue<ReadAheadRequest>(Math.max(1, defaultMessageStore.getMessageStoreConfig()
+                    .getReadAheadMaxRequests()));
+    }
+
+
+    /**
+     * ȡϢڴʱã´ȡλÿʼԤ<br>
+     * ȡλԤʱʣδȡϢϴԤһ룬ŽĩβԤ
+     *
+     * @return ǷύԤ
+     */
+    public boolean putRequest(final String topic, final int queueId, final long nextBeginOffset) {
+        String key = topic + "@" + queueId;
+        ReadAheadWindow window = this.windowTable.get(key);
+        if (null == window) {
+            window = new ReadAheadWindow();
+            ReadAheadWindow prev = this.windowTable.putIfAbsent(key, window);
+            if (prev != null) {
+                window = prev;
+            }
+        }
+
+        window.lastRequestTimestamp = System.currentTimeMillis();
+
+        long fromOffset = nextBeginOffset;
+        long begin = window.beginOffset;
+        long end = window.endOffset;
+        if (nextBeginOffset >= begin && nextBeginOffset < end) {
+            // ԤϢһûбȡ
+            if ((end - nextBeginOffset) > window.lastSpan / 2) {
+                return false;
+            }
+
+            fromOffset = end;
+        }
+
+        if (!window.inflight.compareAndSet(false, true)) {
+            return false;
+        }
+
+        if (!this.requestQueue.offer(new ReadAheadRequest(topic, queueId, fromOffset, window))) {
+            window.inflight.set(false);
+            this.readAheadDroppedTimes.incrementAndGet();
+            return false;
+        }
+
+        this.wakeup();
+        return true;
+    }
+
+
+    /**
+     * ߼fromOffsetʼϢڵCommitLogҳÿҳһֽ
+     *
+     * @return Ԥ߼Offset
+     */
+    long readAhead(final String topic, final int queueId, final long fromOffset) {
+        ConsumeQueue consumeQueue = this.defaultMessageStore.findConsumeQueue(topic, queueId);
+        if (null == consumeQueue || fromOffset >= consumeQueue.getMaxOffsetInQuque()) {
+            return fromOffset;
+        }
+
+        SelectMapedBufferResult bufferConsumeQueue = consumeQueue.getIndexBuffer(fromOffset);
+        if (null == bufferConsumeQueue) {
+            return fromOffset;
+        }
+
+        final CommitLog commitLog = this.defaultMessageStore.getCommitLog();
+        final int mapedFileSize = this.defaultMessageStore.getMessageStoreConfig().getMapedFileSizeCommitLog();
+        final int maxPages =
+                Math.max(1, this.defaultMessageStore.getMessageStoreConfig().getReadAheadBytesOnMessageInDisk()
+                        / MapedFile.OS_PAGE_SIZE);
+
+        SelectMapedBufferResult bufferCommitLog = null;
+        long lastPage = -1;
+        int pages = 0;
+        int sum = 0;
+        int i = 0;
+        try {
+            ByteBuffer byteBuffer = bufferConsumeQueue.getByteBuffer();
+            for (; i < bufferConsumeQueue.getSize() && pages < maxPages && !this.isStoped(); i +=
+                    ConsumeQueue.CQStoreUnitSize) {
+                long offsetPy = byteBuffer.getLong();
+                int sizePy = byteBuffer.getInt();
+                byteBuffer.getLong();
+
+                long fileFromOffset = offsetPy - (offsetPy % mapedFileSize);
+                if (null == bufferCommitLog || bufferCommitLog.getStartOffset() != fileFromOffset) {
+                    if (bufferCommitLog != null) {
+                        bufferCommitLog.release();
+                    }
+
+                    bufferCommitLog = commitLog.getData(fileFromOffset, false);
+                    // ļѾɾ
+                    if (null == bufferCommitLog) {
+                        continue;
+                    }
+                }
+
+                ByteBuffer data = bufferCommitLog.getByteBuffer();
+                long firstPage = Math.max(offsetPy / MapedFile.OS_PAGE_SIZE, lastPage + 1);
+                long endPage = (offsetPy + sizePy - 1) / MapedFile.OS_PAGE_SIZE;
+                for (long page = firstPage; page <= endPage; page++) {
+                    int pos = (int) (page * MapedFile.OS_PAGE_SIZE - fileFromOffset);
+                    if (pos < 0 || pos >= bufferCommitLog.getSize()) {
+                        break;
+                    }
+
+                    sum += data.get(pos);
+                    lastPage = page;
+                    pages++;
+                }
+            }
+        }
+        finally {
+            if (bufferCommitLog != null) {
+                bufferCommitLog.release();
+            }
+            bufferConsumeQueue.release();
+        }
+
+        this.touchedSum += sum;
+        this.readAheadPages.addAndGet(pages);
+        return fromOffset + (i / ConsumeQueue.CQStoreUnitSize);
+    }
+
+
+    private void cleanExpiredWindow() {
+        long now = System.currentTimeMillis();
+        if ((now - this.lastCleanTimestamp) < WindowExpiredMillis) {
+            return;
+        }
+
+        this.lastCleanTimestamp = now;
+        Iterator<Map.Entry<String, ReadAheadWindow>> it = this.windowTable.entrySet().iterator();
+        while (it.hasNext()) {
+            ReadAheadWindow window = it.next().getValue();
+            if (!window.inflight.get() && (now - window.lastRequestTimestamp) > WindowExpiredMillis) {
+                it.remove();
+            }
+        }
+    }
+
+
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStoped()) {
+            try {
+                this.waitForRunning(1000);
+
+                ReadAheadRequest request = null;
+                while (!this.isStoped() && (request = this.requestQueue.poll()) != null) {
+                    try {
+                        long endOffset = this.readAhead(request.topic, request.queueId, request.fromOffset);
+                        // ǽϴεԤ¿ʼһ
+                        if (request.fromOffset != request.window.endOffset) {
+                            request.window.beginOffset = request.fromOffset;
+                        }
+                        request.window.lastSpan = endOffset - request.fromOffset;
+                        request.window.endOffset = endOffset;
+                        this.readAheadTimes.incrementAndGet();
+                    }
+                    finally {
+                        request.window.inflight.set(false);
+                    }
+                }
+
+                this.cleanExpiredWindow();
+            }
+            catch (Exception e) {
+                log.warn(this.getServiceName() + " service has exception. ", e);
+            }
+        }
+
+        log.info(this.getServiceName() + " service end");
+    }
+
+
+    @Override
+    public String getServiceName() {
+        return ReadAheadService.class.getSimpleName();
+    }
+
+
+    public AtomicLong getReadAheadTimes() {
+        return readAheadTimes;
+    }
+
+
+    public AtomicLong getReadAheadPages() {
+        return readAheadPages;
+    }
+
+
+    public AtomicLong getReadAheadDroppedTimes() {
+        return readAheadDroppedTimes;
+    }
+}
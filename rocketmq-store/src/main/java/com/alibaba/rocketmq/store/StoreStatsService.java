@@ -70,6 +70,8 @@ public class StoreStatsService extends ServiceThread {
     private final AtomicLong[] putMessageDistributeTime = new AtomicLong[7];
     // DispatchMessageServiceֵ
     private volatile long dispatchMaxBuffer = 0;
+    // ز飬
+    private final AtomicLong checkTransactionTimesTotal = new AtomicLong(0);
 
     // Ƶʣ1Ӳһ
     private static final int FrequencyOfSampling = 1000;
@@ -84,6 +86,8 @@ public class StoreStatsService extends ServiceThread {
     private final LinkedList<CallSnapshot> getTimesFoundList = new LinkedList<CallSnapshot>();
     private final LinkedList<CallSnapshot> getTimesMissList = new LinkedList<CallSnapshot>();
     private final LinkedList<CallSnapshot> transferedMsgCountList = new LinkedList<CallSnapshot>();
+    // ز10Ӳ
+    private final LinkedList<CallSnapshot> checkTransactionTimesList = new LinkedList<CallSnapshot>();
 
     // ӡTPSݼʱ䣬λ룬1
     private static int PrintTPSInterval = 60 * 1;
@@ -229,6 +233,8 @@ public class StoreStatsService extends ServiceThread {
         sb.append("\tgetMissTps: " + this.getGetMissTps() + "\r\n");
         sb.append("\tgetTotalTps: " + this.getGetTotalTps() + "\r\n");
         sb.append("\tgetTransferedTps: " + this.getGetTransferedTps() + "\r\n");
+        sb.append("\tcheckTransactionTimesTotal: " + this.checkTransactionTimesTotal.get() + "\r\n");
+        sb.append("\tcheckTransactionTps: " + this.getCheckTransactionTps() + "\r\n");
         return sb.toString();
     }
 
@@ -247,6 +253,8 @@ public class StoreStatsService extends ServiceThread {
         result.put("putMessageAverageSize",
             String.valueOf((this.putMessageSizeTotal.get() / totalTimes.doubleValue())));
         result.put("dispatchMaxBuffer", String.valueOf(this.dispatchMaxBuffer));
+        result.put("checkTransactionTimesTotal", String.valueOf(this.checkTransactionTimesTotal.get()));
+        result.put("checkTransactionTps", this.getCheckTransactionTps());
 
         return result;
     }
@@ -278,6 +286,12 @@ public class StoreStatsService extends ServiceThread {
             this.transferedMsgCountList.removeFirst();
         }
 
+        this.checkTransactionTimesList.add(new CallSnapshot(System.currentTimeMillis(),
+            this.checkTransactionTimesTotal.get()));
+        if (this.checkTransactionTimesList.size() > (MaxRecordsOfSampling + 1)) {
+            this.checkTransactionTimesList.removeFirst();
+        }
+
         this.lockSampling.unlock();
     }
 
@@ -415,6 +429,39 @@ public class StoreStatsService extends ServiceThread {
     }
 
 
+    private String getCheckTransactionTps(int time) {
+        String result = "";
+        this.lockSampling.lock();
+        if (this.checkTransactionTimesList.size() > time) {
+            CallSnapshot last = this.checkTransactionTimesList.getLast();
+            CallSnapshot lastBefore =
+                    this.checkTransactionTimesList.get(this.checkTransactionTimesList.size() - (time + 1));
+            result += CallSnapshot.getTPS(lastBefore, last);
+        }
+
+        this.lockSampling.unlock();
+
+        return result;
+    }
+
+
+    private String getCheckTransactionTps() {
+        StringBuilder sb = new StringBuilder();
+        // 10
+        sb.append(this.getCheckTransactionTps(10));
+        sb.append(" ");
+
+        // 1
+        sb.append(this.getCheckTransactionTps(60));
+        sb.append(" ");
+
+        // 10
+        sb.append(this.getCheckTransactionTps(600));
+
+        return sb.toString();
+    }
+
+
     private String getGetTotalTps(int time) {
         this.lockSampling.lock();
         double found = 0;
@@ -473,6 +520,8 @@ public class StoreStatsService extends ServiceThread {
             log.info("get_miss_tps {}", this.getGetMissTps(PrintTPSInterval));
 
             log.info("get_transfered_tps {}", this.getGetTransferedTps(PrintTPSInterval));
+
+            log.info("check_transaction_tps {}", this.getCheckTransactionTps(PrintTPSInterval));
         }
     }
 
@@ -521,4 +570,9 @@ public class StoreStatsService extends ServiceThread {
     public AtomicLong getPutMessageFailedTimes() {
         return putMessageFailedTimes;
     }
+
+
+    public AtomicLong getCheckTransactionTimesTotal() {
+        return checkTransactionTimesTotal;
+    }
 }
@@ -0,0 +1,18 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.config;
+
+/**
+ * ͬ˫дʱҪٸSlaveӦΪƳɹ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public enum HASyncAckMode {
+    // һSlaveӦ𼴿ɣSlaveӰ췢ͺʱ
+    ANY_ONE,
+    // SlaveӦ𣬻ΪSlaveеĽϴֵ
+    MAJORITY,
+    // SlaveӦ𣬻ͬϣӵSlaveʱSlave
+    ALL
+}
@@ -79,6 +79,14 @@ public class MessageStoreConfig {
     private int maxTransferCountOnMessageInDisk = 8;
     // Ϣڴ
     private int accessMessageInMemoryMaxRatio = 30;
+    // SlaveϢʱСڴ˱ŽصMasterСaccessMessageInMemoryMaxRatio֮л
+    private int slaveReadExitRatio = 20;
+    // ȡϢڴʱǷ첽ԤöкϢڵCommitLogҳ
+    private boolean readAheadEnable = true;
+    // ԤCommitLogֽ
+    private int readAheadBytesOnMessageInDisk = 1024 * 1024 * 4;
+    // ȴԤޣ
+    private int readAheadMaxRequests = 256;
 
     // ǷϢ
     private boolean messageIndexEnable = true;
@@ -91,11 +99,33 @@ public class MessageStoreConfig {
     private int haSendHeartbeatInterval = 1000 * 5;
     private int haHousekeepingInterval = 1000 * 20;
     private int haTransferBatchSize = 1024 * 32;
+    // Slave϶ʱδӦŴޣܳSlave4M
+    private int haTransferBatchSizeMax = 1024 * 1024;
     // ãNameServerȡMasterַȻַͨҵHAַ
     private String masterAddress = null;
 
     // SlaveMasterֵΪ쳣
     private int haSlaveFallbehindMax = 1024 * 1024 * 256;
+    // ͬ˫дӦģʽ
+    private HASyncAckMode haSyncAckMode = HASyncAckMode.ANY_ONE;
+    // ͬ˫дSlaveMAJORITYALLеĽϴֵ㣬SlaveϿήҪ
+    private int haSyncExpectedSlaveNums = 1;
+    // ӸǷѹ䣬SlaveMasterMasterŻͬ
+    private boolean haTransferCompressEnable = false;
+    // Slave洢ΪʱǷMasterȡѾдļ
+    private boolean haBootstrapEnable = false;
+    // Masterͬ˿ڣSlaveMasterַϵĴ˶˿
+    private int haBootstrapListenPort = 10913;
+    // ͬдļ߳
+    private int haBootstrapThreads = 4;
+    // MasterǷSlaveƷַ¼SlaveֱдConsumeQueueٽCommitLog
+    private boolean haReplicateDispatchEnable = false;
+    // Slaveȴַ¼ʱ䣬ʱԼCommitLog
+    private int haDispatchRecordWaitMillis = 500;
+    // SlaveǷMaster㱨ַȣMasterͬŻOffset㱨иַ
+    private boolean haSlaveDispatchReportEnable = false;
+    // SlaveϲTopicԶŷָ
+    private String slaveIndexIgnoreTopics = "";
 
     private BrokerRole brokerRole = BrokerRole.ASYNC_MASTER;
     private FlushDiskType flushDiskType = FlushDiskType.ASYNC_FLUSH;
@@ -108,6 +138,8 @@ public class MessageStoreConfig {
     private long flushDelayOffsetInterval = 1000 * 5;
     private String delayOffsetStorePath = System.getProperty("user.home") + File.separator + "store"
             + File.separator + "delayOffset.properties";
+    // ʱϢںһͶݶ
+    private int scheduleMessageBatchSize = 128;
 
     // ֲʽ
     private String tranStateTableStorePath = System.getProperty("user.home") + File.separator + "store"
@@ -117,6 +149,19 @@ public class MessageStoreConfig {
     private String tranRedoLogStorePath = System.getProperty("user.home") + File.separator + "store"
             + File.separator + "transaction" + File.separator + "redolog";
     private int tranRedoLogMapedFileSize = 2000000 * ConsumeQueue.CQStoreUnitSize;
+    // زȣState Table ɨλã
+    private String tranStateTableCheckOffsetStorePath = System.getProperty("user.home") + File.separator
+            + "store" + File.separator + "transaction" + File.separator + "checkOffset";
+    // ز飬ɨState Tableʱ
+    private long checkTransactionMessageTimerInterval = 1000 * 60;
+    // ز飬PreparedϢ೤ʱδύعŷز
+    private long checkTransactionMessageTimeout = 1000 * 60;
+    // ز飬ÿز
+    private int checkTransactionMessageMaxNumsPerRound = 1024;
+    // ز飬زٴΣÿλزӱٻز
+    private int checkTransactionMessageMaxTimes = 15;
+    // ύعʱֻдһǣظ洢Ϣ
+    private boolean lightweightTransactionMarkerEnable = false;
 
 
     public int getMapedFileSizeCommitLog() {
@@ -517,6 +562,16 @@ public class MessageStoreConfig {
     }
 
 
+    public int getHaTransferBatchSizeMax() {
+        return haTransferBatchSizeMax;
+    }
+
+
+    public void setHaTransferBatchSizeMax(int haTransferBatchSizeMax) {
+        this.haTransferBatchSizeMax = haTransferBatchSizeMax;
+    }
+
+
     public int getHaSlaveFallbehindMax() {
         return haSlaveFallbehindMax;
     }
@@ -527,6 +582,151 @@ public class MessageStoreConfig {
     }
 
 
+    public HASyncAckMode getHaSyncAckMode() {
+        return haSyncAckMode;
+    }
+
+
+    public void setHaSyncAckMode(HASyncAckMode haSyncAckMode) {
+        this.haSyncAckMode = haSyncAckMode;
+    }
+
+
+    public void setHaSyncAckMode(String haSyncAckMode) {
+        this.haSyncAckMode = HASyncAckMode.valueOf(haSyncAckMode);
+    }
+
+
+    public int getHaSyncExpectedSlaveNums() {
+        return haSyncExpectedSlaveNums;
+    }
+
+
+    public void setHaSyncExpectedSlaveNums(int haSyncExpectedSlaveNums) {
+        this.haSyncExpectedSlaveNums = haSyncExpectedSlaveNums;
+    }
+
+
+    public boolean isHaTransferCompressEnable() {
+        return haTransferCompressEnable;
+    }
+
+
+    public void setHaTransferCompressEnable(boolean haTransferCompressEnable) {
+        this.haTransferCompressEnable = haTransferCompressEnable;
+    }
+
+
+    public boolean isHaBootstrapEnable() {
+        return haBootstrapEnable;
+    }
+
+
+    public void setHaBootstrapEnable(boolean haBootstrapEnable) {
+        this.haBootstrapEnable = haBootstrapEnable;
+    }
+
+
+    public int getHaBootstrapListenPort() {
+        return haBootstrapListenPort;
+    }
+
+
+    public void setHaBootstrapListenPort(int haBootstrapListenPort) {
+        this.haBootstrapListenPort = haBootstrapListenPort;
+    }
+
+
+    public int getHaBootstrapThreads() {
+        return haBootstrapThreads;
+    }
+
+
+    public void setHaBootstrapThreads(int haBootstrapThreads) {
+        this.haBootstrapThreads = haBootstrapThreads;
+    }
+
+
+    public boolean isHaReplicateDispatchEnable() {
+        return haReplicateDispatchEnable;
+    }
+
+
+    public void setHaReplicateDispatchEnable(boolean haReplicateDispatchEnable) {
+        this.haReplicateDispatchEnable = haReplicateDispatchEnable;
+    }
+
+
+    public int getHaDispatchRecordWaitMillis() {
+        return haDispatchRecordWaitMillis;
+    }
+
+
+    public void setHaDispatchRecordWaitMillis(int haDispatchRecordWaitMillis) {
+        this.haDispatchRecordWaitMillis = haDispatchRecordWaitMillis;
+    }
+
+
+    public boolean isHaSlaveDispatchReportEnable() {
+        return haSlaveDispatchReportEnable;
+    }
+
+
+    public void setHaSlaveDispatchReportEnable(boolean haSlaveDispatchReportEnable) {
+        this.haSlaveDispatchReportEnable = haSlaveDispatchReportEnable;
+    }
+
+
+    public int getSlaveReadExitRatio() {
+        return slaveReadExitRatio;
+    }
+
+
+    public void setSlaveReadExitRatio(int slaveReadExitRatio) {
+        this.slaveReadExitRatio = slaveReadExitRatio;
+    }
+
+
+    public boolean isReadAheadEnable() {
+        return readAheadEnable;
+    }
+
+
+    public void setReadAheadEnable(boolean readAheadEnable) {
+        this.readAheadEnable = readAheadEnable;
+    }
+
+
+    public int getReadAheadBytesOnMessageInDisk() {
+        return readAheadBytesOnMessageInDisk;
+    }
+
+
+    public void setReadAheadBytesOnMessageInDisk(int readAheadBytesOnMessageInDisk) {
+        this.readAheadBytesOnMessageInDisk = readAheadBytesOnMessageInDisk;
+    }
+
+
+    public int getReadAheadMaxRequests() {
+        return readAheadMaxRequests;
+    }
+
+
+    public void setReadAheadMaxRequests(int readAheadMaxRequests) {
+        this.readAheadMaxRequests = readAheadMaxRequests;
+    }
+
+
+    public String getSlaveIndexIgnoreTopics() {
+        return slaveIndexIgnoreTopics;
+    }
+
+
+    public void setSlaveIndexIgnoreTopics(String slaveIndexIgnoreTopics) {
+        this.slaveIndexIgnoreTopics = slaveIndexIgnoreTopics;
+    }
+
+
     public FlushDiskType getFlushDiskType() {
         return flushDiskType;
     }
@@ -592,6 +792,16 @@ public class MessageStoreConfig {
     }
 
 
+    public int getScheduleMessageBatchSize() {
+        return scheduleMessageBatchSize;
+    }
+
+
+    public void setScheduleMessageBatchSize(int scheduleMessageBatchSize) {
+        this.scheduleMessageBatchSize = scheduleMessageBatchSize;
+    }
+
+
     public String getTranStateTableStorePath() {
         return tranStateTableStorePath;
     }
@@ -630,4 +840,64 @@ public class MessageStoreConfig {
     public void setTranRedoLogMapedFileSize(int tranRedoLogMapedFileSize) {
         this.tranRedoLogMapedFileSize = tranRedoLogMapedFileSize;
     }
+
+
+    public String getTranStateTableCheckOffsetStorePath() {
+        return tranStateTableCheckOffsetStorePath;
+    }
+
+
+    public void setTranStateTableCheckOffsetStorePath(String tranStateTableCheckOffsetStorePath) {
+        this.tranStateTableCheckOffsetStorePath = tranStateTableCheckOffsetStorePath;
+    }
+
+
+    public long getCheckTransactionMessageTimerInterval() {
+        return checkTransactionMessageTimerInterval;
+    }
+
+
+    public void setCheckTransactionMessageTimerInterval(long checkTransactionMessageTimerInterval) {
+        this.checkTransactionMessageTimerInterval = checkTransactionMessageTimerInterval;
+    }
+
+
+    public long getCheckTransactionMessageTimeout() {
+        return checkTransactionMessageTimeout;
+    }
+
+
+    public void setCheckTransactionMessageTimeout(long checkTransactionMessageTimeout) {
+        this.checkTransactionMessageTimeout = checkTransactionMessageTimeout;
+    }
+
+
+    public int getCheckTransactionMessageMaxNumsPerRound() {
+        return checkTransactionMessageMaxNumsPerRound;
+    }
+
+
+    public void setCheckTransactionMessageMaxNumsPerRound(int checkTransactionMessageMaxNumsPerRound) {
+        this.checkTransactionMessageMaxNumsPerRound = checkTransactionMessageMaxNumsPerRound;
+    }
+
+
+    public int getCheckTransactionMessageMaxTimes() {
+        return checkTransactionMessageMaxTimes;
+    }
+
+
+    public void setCheckTransactionMessageMaxTimes(int checkTransactionMessageMaxTimes) {
+        this.checkTransactionMessageMaxTimes = checkTransactionMessageMaxTimes;
+    }
+
+
+    public boolean isLightweightTransactionMarkerEnable() {
+        return lightweightTransactionMarkerEnable;
+    }
+
+
+    public void setLightweightTransactionMarkerEnable(boolean lightweightTransactionMarkerEnable) {
+        this.lightweightTransactionMarkerEnable = lightweightTransactionMarkerEnable;
+    }
 }
@@ -0,0 +1,312 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.rocketmq.common.MixAll;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * SlaveͬSlave<br>
+ * 洢Ŀ¼ΪʱMasterȡѾдļʣHA
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HABootstrapClient {
+    private static final Logger log = LoggerFactory.getLogger(MixAll.StoreLoggerName);
+    private static final int SocketTimeoutMills = 1000 * 30;
+    private static final int ListFilesRetryTimes = 3;
+    private static final long ListFilesRetryIntervalMills = 1000 * 3;
+    private static final String TmpFileSuffix = ".tmp";
+
+    private final MessageStoreConfig messageStoreConfig;
+    private final InetSocketAddress bootstrapAddress;
+    // ȡɺCommitLogOffset
+    private long boundaryOffset = 0;
+
+
+    public HABootstrapClient(final MessageStoreConfig messageStoreConfig) {
+        this.messageStoreConfig = messageStoreConfig;
+        String[] s = messageStoreConfig.getMasterAddress().split(":");
+        this.bootstrapAddress =
+                new InetSocketAddress(s[0], messageStoreConfig.getHaBootstrapListenPort());
+    }
+
+
+    /**
+     * ͬеıļͬ˳ʱݴѾȡļ
+     */
+    static File markerFile(final MessageStoreConfig messageStoreConfig) {
+        return new File(messageStoreConfig.getStorePathCommitLog() + ".bootstrap");
+    }
+
+
+    /**
+     * CommitLogĿ¼ΪգҪͬ<br>
+     * ϴͬûʱļ
+     */
+    public static boolean needBootstrap(final MessageStoreConfig messageStoreConfig) {
+        if (!messageStoreConfig.isHaBootstrapEnable() || null == messageStoreConfig.getMasterAddress()) {
+            return false;
+        }
+
+        if (markerFile(messageStoreConfig).exists()) {
+            log.warn("last bootstrap not completed, delete fetched files and bootstrap again");
+            deleteStoreFiles(messageStoreConfig);
+            markerFile(messageStoreConfig).delete();
+        }
+        else {
+            deleteTmpFiles(new File(messageStoreConfig.getStorePathCommitLog()));
+            deleteTmpFiles(new File(messageStoreConfig.getStorePathConsumeQueue()));
+            deleteTmpFiles(new File(messageStoreConfig.getStorePathIndex()));
+        }
+
+        String[] files = new File(messageStoreConfig.getStorePathCommitLog()).list();
+        return null == files || 0 == files.length;
+    }
+
+
+    private static void deleteTmpFiles(final File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteTmpFiles(file);
+                }
+                else if (file.getName().endsWith(TmpFileSuffix)) {
+                    log.warn("delete stale bootstrap tmp file " + file);
+                    file.delete();
+                }
+            }
+        }
+    }
+
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        socket.setSoTimeout(SocketTimeoutMills);
+        socket.connect(this.bootstrapAddress, SocketTimeoutMills);
+        return socket;
+    }
+
+
+    private List<Object[]> listFiles() throws IOException {
+        Socket socket = this.connect();
+        try {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeByte(HABootstrapService.RequestListFiles);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.boundaryOffset = in.readLong();
+            int count = in.readInt();
+            List<Object[]> files = new ArrayList<Object[]>(count);
+            for (int i = 0; i < count; i++) {
+                byte kind = in.readByte();
+                String name = in.readUTF();
+                long size = in.readLong();
+                files.add(new Object[] { kind, name, size });
+            }
+
+            return files;
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+
+    /**
+     * MasterΪConsumeQueueַδɶܾԺ
+     */
+    private List<Object[]> listFilesWithRetry() throws IOException, InterruptedException {
+        for (int times = 1;; times++) {
+            try {
+                return this.listFiles();
+            }
+            catch (IOException e) {
+                if (times >= ListFilesRetryTimes) {
+                    throw e;
+                }
+
+                log.warn("bootstrap list files from master " + this.bootstrapAddress + " failed, retry times: "
+                        + times, e);
+                Thread.sleep(ListFilesRetryIntervalMills);
+            }
+        }
+    }
+
+
+    private void fetchFile(final byte kind, final String name) throws IOException {
+        File file = HABootstrapService.resolveFile(this.messageStoreConfig, kind, name);
+        File tmpFile = new File(file.getPath() + TmpFileSuffix);
+        tmpFile.getParentFile().mkdirs();
+
+        Socket socket = this.connect();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(HABootstrapService.RequestGetFile);
+            out.writeByte(kind);
+            out.writeUTF(name);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1024 * 64));
+            long size = in.readLong();
+            CRC32 crc32 = new CRC32();
+            OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(tmpFile), 1024 * 64);
+            try {
+                byte[] buffer = new byte[1024 * 64];
+                for (long remain = size; remain > 0;) {
+                    int readSize = in.read(buffer, 0, (int) Math.min(buffer.length, remain));
+                    if (readSize < 0) {
+                        throw new IOException("bootstrap file truncated, " + name);
+                    }
+                    crc32.update(buffer, 0, readSize);
+                    fileOut.write(buffer, 0, readSize);
+                    remain -= readSize;
+                }
+            }
+            finally {
+                fileOut.close();
+            }
+
+            if (crc32.getValue() != in.readLong()) {
+                throw new IOException("bootstrap file crc check failed, " + name);
+            }
+        }
+        finally {
+            socket.close();
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("bootstrap rename file failed, " + file);
+        }
+    }
+
+
+    private static void deleteFiles(final String path) {
+        File[] files = new File(path).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteFiles(file.getPath());
+                }
+                file.delete();
+            }
+        }
+    }
+
+
+    private static void deleteStoreFiles(final MessageStoreConfig messageStoreConfig) {
+        deleteFiles(messageStoreConfig.getStorePathCommitLog());
+        deleteFiles(messageStoreConfig.getStorePathConsumeQueue());
+        deleteFiles(messageStoreConfig.getStorePathIndex());
+    }
+
+
+    /**
+     * ȡļʧʱѾȡļHAƴ0ʼͬ
+     * 
+     * @return Ƿȡɹ
+     */
+    public boolean bootstrap() {
+        long beginTime = System.currentTimeMillis();
+        ExecutorService executorService =
+                Executors.newFixedThreadPool(this.messageStoreConfig.getHaBootstrapThreads(),
+                    new ThreadFactory() {
+                        private AtomicInteger threadIndex = new AtomicInteger(0);
+
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "HABootstrapThread_" + this.threadIndex.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+
+        File markerFile = markerFile(this.messageStoreConfig);
+        try {
+            markerFile.getParentFile().mkdirs();
+            if (!markerFile.exists() && !markerFile.createNewFile()) {
+                throw new IOException("create bootstrap marker file failed, " + markerFile);
+            }
+
+            List<Object[]> files = this.listFilesWithRetry();
+            List<Future<?>> futures = new ArrayList<Future<?>>(files.size());
+            long totalSize = 0;
+            for (final Object[] file : files) {
+                totalSize += (Long) file[2];
+                futures.add(executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            HABootstrapClient.this.fetchFile((Byte) file[0], (String) file[1]);
+                        }
+                        catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            if (!markerFile.delete()) {
+                throw new IOException("delete bootstrap marker file failed, " + markerFile);
+            }
+
+            log.info("bootstrap from master OK, boundary offset: " + this.boundaryOffset + " file count: "
+                    + files.size() + " total size: " + totalSize + " eclipse time(ms): "
+                    + (System.currentTimeMillis() - beginTime));
+            return true;
+        }
+        catch (Exception e) {
+            log.error("bootstrap from master " + this.bootstrapAddress + " failed", e);
+            executorService.shutdownNow();
+            try {
+                executorService.awaitTermination(SocketTimeoutMills, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ie) {
+            }
+            deleteStoreFiles(this.messageStoreConfig);
+            markerFile.delete();
+        }
+        finally {
+            executorService.shutdown();
+        }
+
+        return false;
+    }
+
+
+    public long getBoundaryOffset() {
+        return boundaryOffset;
+    }
+}
@@ -0,0 +1,366 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.rocketmq.common.MixAll;
+import com.alibaba.rocketmq.common.ServiceThread;
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+import com.alibaba.rocketmq.store.index.IndexHeader;
+
+
+/**
+ * SlaveͬMaster<br>
+ * SlaveṩѾдCommitLogļConsumeQueueļԼļļͨsendfile<br>
+ * Э <Request Type> [<File Kind> <File Name>]ÿӴһ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HABootstrapService extends ServiceThread {
+    private static final Logger log = LoggerFactory.getLogger(MixAll.StoreLoggerName);
+    // ļбӦ <CommitLog߽Offset> <ļ> [<File Kind> <File Name> <File Size>]...
+    public static final byte RequestListFiles = 0;
+    // ļݣӦ <File Size> <File Data> <CRC32>
+    public static final byte RequestGetFile = 1;
+
+    public static final byte KindCommitLog = 0;
+    public static final byte KindConsumeQueue = 1;
+    public static final byte KindIndex = 2;
+    // ȴϢַConsumeQueueʱ䣬СSlave˵Socketʱ
+    private static final long WaitDispatchTimeoutMills = 1000 * 3;
+
+    private final DefaultMessageStore defaultMessageStore;
+    private final ExecutorService executorService;
+    private ServerSocketChannel serverSocketChannel;
+
+
+    public HABootstrapService(final DefaultMessageStore defaultMessageStore) {
+        this.defaultMessageStore = defaultMessageStore;
+        this.executorService =
+                Executors.newFixedThreadPool(defaultMessageStore.getMessageStoreConfig().getHaBootstrapThreads(),
+                    new ThreadFactory() {
+                        private AtomicInteger threadIndex = new AtomicInteger(0);
+
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "HABootstrapThread_" + this.threadIndex.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+    }
+
+
+    public void beginAccept() throws IOException {
+        this.serverSocketChannel = ServerSocketChannel.open();
+        this.serverSocketChannel.socket().setReuseAddress(true);
+        this.serverSocketChannel.socket().bind(
+            new InetSocketAddress(this.defaultMessageStore.getMessageStoreConfig().getHaBootstrapListenPort()));
+    }
+
+
+    /**
+     * ļ͵õ洢Ŀ¼
+     */
+    public static String getStorePath(final MessageStoreConfig config, final byte kind) {
+        switch (kind) {
+        case KindCommitLog:
+            return config.getStorePathCommitLog();
+        case KindConsumeQueue:
+            return config.getStorePathConsumeQueue();
+        case KindIndex:
+            return config.getStorePathIndex();
+        default:
+            return null;
+        }
+    }
+
+
+    /**
+     * ļֻǴ洢Ŀ¼µ·ֹȡ洢Ŀ¼ļ
+     */
+    public static File resolveFile(final MessageStoreConfig config, final byte kind, final String name)
+            throws IOException {
+        String root = getStorePath(config, kind);
+        if (null == root || name.length() == 0 || name.contains("..")) {
+            throw new IOException("invalid bootstrap file, kind: " + kind + " name: " + name);
+        }
+
+        File file = new File(root, name);
+        if (!file.getCanonicalPath().startsWith(new File(root).getCanonicalPath() + File.separator)) {
+            throw new IOException("invalid bootstrap file, kind: " + kind + " name: " + name);
+        }
+
+        return file;
+    }
+
+
+    private static File[] listSortedFiles(final File dir) {
+        File[] files = dir.listFiles();
+        if (null == files) {
+            return new File[0];
+        }
+
+        Arrays.sort(files);
+        return files;
+    }
+
+
+    /**
+     * ļļδɵʱļ
+     */
+    private static File[] listDataFiles(final File dir) {
+        List<File> result = new ArrayList<File>();
+        for (File file : listSortedFiles(dir)) {
+            if (isDataFileName(file.getName())) {
+                result.add(file);
+            }
+        }
+
+        return result.toArray(new File[result.size()]);
+    }
+
+
+    static boolean isDataFileName(final String name) {
+        if (name.length() == 0) {
+            return false;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private static long readIndexEndPhyOffset(final File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            randomAccessFile.seek(IndexHeader.ENDPHYOFFSET_INDEX);
+            return randomAccessFile.readLong();
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+
+    private void listFiles(final DataOutputStream out) throws IOException {
+        MessageStoreConfig config = this.defaultMessageStore.getMessageStoreConfig();
+
+        // дCommitLogļOffset߽翪ʼ
+        long maxOffset = this.defaultMessageStore.getMaxPhyOffset();
+        long boundary = maxOffset - (maxOffset % config.getMapedFileSizeCommitLog());
+
+        // ȴ߽֮ǰϢѾַConsumeQueueʱܾSlave
+        long deadline = System.currentTimeMillis() + WaitDispatchTimeoutMills;
+        while (this.defaultMessageStore.hasRemainDispatchMessage()) {
+            if (System.currentTimeMillis() > deadline) {
+                log.warn("bootstrap list files, wait dispatch timeout, boundary: " + boundary);
+                throw new IOException("bootstrap wait dispatch timeout, boundary: " + boundary);
+            }
+
+            try {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException e) {
+            }
+        }
+
+        List<Object[]> files = new ArrayList<Object[]>();
+        for (File file : listDataFiles(new File(config.getStorePathCommitLog()))) {
+            if (Long.parseLong(file.getName()) < boundary) {
+                files.add(new Object[] { KindCommitLog, file.getName(), file.length() });
+            }
+        }
+
+        // ConsumeQueueȫ䣬Slaveغص߽֮Ĳ
+        for (File topicDir : listSortedFiles(new File(config.getStorePathConsumeQueue()))) {
+            for (File queueDir : listSortedFiles(topicDir)) {
+                for (File file : listDataFiles(queueDir)) {
+                    String name = topicDir.getName() + File.separator + queueDir.getName() + File.separator
+                                    + file.getName();
+                    files.add(new Object[] { KindConsumeQueue, name, file.length() });
+                }
+            }
+        }
+
+        // һļдļֻΧڱ߽֮ǰ
+        File[] indexFiles = listDataFiles(new File(config.getStorePathIndex()));
+        for (int i = 0; i < indexFiles.length - 1; i++) {
+            if (readIndexEndPhyOffset(indexFiles[i]) < boundary) {
+                files.add(new Object[] { KindIndex, indexFiles[i].getName(), indexFiles[i].length() });
+            }
+        }
+
+        out.writeLong(boundary);
+        out.writeInt(files.size());
+        for (Object[] file : files) {
+            out.writeByte((Byte) file[0]);
+            out.writeUTF((String) file[1]);
+            out.writeLong((Long) file[2]);
+        }
+        out.flush();
+
+        log.info("bootstrap list files, boundary: " + boundary + " file count: " + files.size());
+    }
+
+
+    private void sendFile(final SocketChannel socketChannel, final DataInputStream in, final DataOutputStream out)
+            throws IOException {
+        byte kind = in.readByte();
+        String name = in.readUTF();
+        File file = resolveFile(this.defaultMessageStore.getMessageStoreConfig(), kind, name);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            long size = fileChannel.size();
+            out.writeLong(size);
+
+            CRC32 crc32 = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            // ConsumeQueueܻдУͱ밴ʵʷ͵ݼ
+            if (KindConsumeQueue == kind) {
+                for (long position = 0; position < size;) {
+                    buffer.clear();
+                    int readSize = fileChannel.read(buffer, position);
+                    if (readSize < 0) {
+                        throw new IOException("bootstrap file truncated, " + file);
+                    }
+                    crc32.update(buffer.array(), 0, readSize);
+                    out.write(buffer.array(), 0, readSize);
+                    position += readSize;
+                }
+            }
+            // дļٱ仯ȼУͣʱʹsendfileپû̬
+            else {
+                for (long position = 0; position < size;) {
+                    buffer.clear();
+                    int readSize = fileChannel.read(buffer, position);
+                    if (readSize < 0) {
+                        throw new IOException("bootstrap file truncated, " + file);
+                    }
+                    crc32.update(buffer.array(), 0, readSize);
+                    position += readSize;
+                }
+
+                out.flush();
+                for (long position = 0; position < size;) {
+                    position += fileChannel.transferTo(position, size - position, socketChannel);
+                }
+            }
+
+            out.writeLong(crc32.getValue());
+            out.flush();
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+
+    private void processRequest(final SocketChannel socketChannel) {
+        try {
+            DataInputStream in = new DataInputStream(socketChannel.socket().getInputStream());
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(socketChannel.socket().getOutputStream()));
+            byte type = in.readByte();
+            switch (type) {
+            case RequestListFiles:
+                this.listFiles(out);
+                break;
+            case RequestGetFile:
+                this.sendFile(socketChannel, in, out);
+                break;
+            default:
+                log.warn("bootstrap unknown request type " + type);
+                break;
+            }
+        }
+        catch (Exception e) {
+            log.warn("bootstrap process request exception, " + socketChannel.socket().getRemoteSocketAddress(), e);
+        }
+        finally {
+            try {
+                socketChannel.close();
+            }
+            catch (IOException e) {
+            }
+        }
+    }
+
+
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStoped()) {
+            try {
+                final SocketChannel socketChannel = this.serverSocketChannel.accept();
+                this.executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        HABootstrapService.this.processRequest(socketChannel);
+                    }
+                });
+            }
+            catch (Exception e) {
+                if (!this.isStoped()) {
+                    log.warn(this.getServiceName() + " service has exception.", e);
+                }
+            }
+        }
+
+        log.info(this.getServiceName() + " service end");
+    }
+
+
+    @Override
+    public void shutdown() {
+        this.stoped = true;
+        try {
+            this.serverSocketChannel.close();
+        }
+        catch (IOException e) {
+            log.warn("close bootstrap server socket exception", e);
+        }
+
+        super.shutdown();
+        this.executorService.shutdown();
+    }
+
+
+    @Override
+    public String getServiceName() {
+        return HABootstrapService.class.getSimpleName();
+    }
+}
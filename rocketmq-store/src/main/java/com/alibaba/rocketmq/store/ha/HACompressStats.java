@@ -0,0 +1,92 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * ѹͳƣMasterͳѹSlaveͳƽѹ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HACompressStats {
+    private static final long OneMB = 1024 * 1024;
+    // ѹǰֽ
+    private final AtomicLong compressRawBytes = new AtomicLong(0);
+    // ʵʴֽѹݰԭʼС
+    private final AtomicLong compressWireBytes = new AtomicLong(0);
+    private final AtomicLong compressTimeNanos = new AtomicLong(0);
+    // ѹֽ
+    private final AtomicLong decompressRawBytes = new AtomicLong(0);
+    private final AtomicLong decompressTimeNanos = new AtomicLong(0);
+
+
+    public void addCompress(final long rawBytes, final long wireBytes, final long timeNanos) {
+        this.compressRawBytes.addAndGet(rawBytes);
+        this.compressWireBytes.addAndGet(wireBytes);
+        this.compressTimeNanos.addAndGet(timeNanos);
+    }
+
+
+    public void addDecompress(final long rawBytes, final long timeNanos) {
+        this.decompressRawBytes.addAndGet(rawBytes);
+        this.decompressTimeNanos.addAndGet(timeNanos);
+    }
+
+
+    /**
+     * ѹʣֽ/ԭʼֽ
+     */
+    public double getCompressRatio() {
+        long raw = this.compressRawBytes.get();
+        if (raw <= 0) {
+            return 1.0;
+        }
+
+        return (double) this.compressWireBytes.get() / raw;
+    }
+
+
+    /**
+     * ÿѹ1MԭʼݺķѵCPUʱ䣬λ
+     */
+    public long getCompressNanosPerMB() {
+        long raw = this.compressRawBytes.get();
+        if (raw <= 0) {
+            return 0;
+        }
+
+        return (long) (this.compressTimeNanos.get() * ((double) OneMB / raw));
+    }
+
+
+    /**
+     * ÿѹ1MݺķѵCPUʱ䣬λ
+     */
+    public long getDecompressNanosPerMB() {
+        long raw = this.decompressRawBytes.get();
+        if (raw <= 0) {
+            return 0;
+        }
+
+        return (long) (this.decompressTimeNanos.get() * ((double) OneMB / raw));
+    }
+
+
+    public void putRuntimeInfo(final HashMap<String, String> result) {
+        if (this.compressRawBytes.get() > 0) {
+            result.put("haCompressRawBytes", String.valueOf(this.compressRawBytes.get()));
+            result.put("haCompressWireBytes", String.valueOf(this.compressWireBytes.get()));
+            result.put("haCompressRatio", String.format("%.4f", this.getCompressRatio()));
+            result.put("haCompressNanosPerMB", String.valueOf(this.getCompressNanosPerMB()));
+        }
+
+        if (this.decompressRawBytes.get() > 0) {
+            result.put("haDecompressRawBytes", String.valueOf(this.decompressRawBytes.get()));
+            result.put("haDecompressNanosPerMB", String.valueOf(this.getDecompressNanosPerMB()));
+        }
+    }
+}
@@ -5,9 +5,12 @@ package com.alibaba.rocketmq.store.ha;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.zip.Deflater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,7 +18,9 @@ import org.slf4j.LoggerFactory;
 import com.alibaba.rocketmq.common.MixAll;
 import com.alibaba.rocketmq.common.ServiceThread;
 import com.alibaba.rocketmq.remoting.common.RemotingUtil;
+import com.alibaba.rocketmq.store.DispatchRequest;
 import com.alibaba.rocketmq.store.SelectMapedBufferResult;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
 
 
 /**
@@ -37,6 +42,14 @@ public class HAConnection {
     private volatile long slaveRequestOffset = -1;
     // SlaveյݺӦOffset
     private volatile long slaveAckOffset = -1;
+    // ǷSlaveЭΪѹ
+    private volatile boolean compressTransfer = false;
+    // ǷSlaveЭΪƷַ¼
+    private volatile boolean dispatchRecordTransfer = false;
+    // SlaveѾַConsumeQueuePhy Offset
+    private volatile long slaveDispatchOffset = -1;
+    // Slave㱨ַȣȴд̻߳ظͬ
+    private volatile boolean dispatchReportAcceptPending = false;
 
     /**
      * ȡSlaveһΪpush ack
@@ -50,6 +63,8 @@ public class HAConnection {
         private final ByteBuffer byteBufferRead = ByteBuffer.allocate(ReadMaxBufferSize);
         private int processPostion = 0;
         private volatile long lastReadTimestamp = System.currentTimeMillis();
+        // һֵSlaveķַ
+        private boolean expectDispatchOffset = false;
 
 
         public ReadSocketService(final SocketChannel socketChannel) throws IOException {
@@ -79,15 +94,46 @@ public class HAConnection {
                         // Slaveϴoffset
                         if ((this.byteBufferRead.position() - this.processPostion) >= 8) {
                             int pos = this.byteBufferRead.position() - (this.byteBufferRead.position() % 8);
-                            long readOffset = this.byteBufferRead.getLong(pos - 8);
+                            long readOffset = -1;
+                            for (int i = this.processPostion; i < pos; i += 8) {
+                                long value = this.byteBufferRead.getLong(i);
+                                // Slave㱨ķַ
+                                if (this.expectDispatchOffset) {
+                                    this.expectDispatchOffset = false;
+                                    HAConnection.this.slaveDispatchOffset = value;
+                                }
+                                else if (HAService.SlaveDispatchReport == value) {
+                                    this.expectDispatchOffset = true;
+                                }
+                                // Slaveѹ
+                                else if (HAService.CompressTransferHandshake == value) {
+                                    this.acceptCompressTransfer();
+                                }
+                                // SlaveƷַ¼
+                                else if (HAService.DispatchRecordHandshake == value) {
+                                    this.acceptDispatchRecordTransfer();
+                                }
+                                // Slave㱨ַ
+                                else if (HAService.SlaveDispatchReportHandshake == value) {
+                                    this.acceptSlaveDispatchReport();
+                                }
+                                else {
+                                    readOffset = value;
+                                }
+                            }
                             this.processPostion = pos;
 
+                            if (readOffset < 0) {
+                                continue;
+                            }
+
                             // Slave
                             HAConnection.this.slaveAckOffset = readOffset;
                             if (HAConnection.this.slaveRequestOffset < 0) {
                                 HAConnection.this.slaveRequestOffset = readOffset;
                                 log.info("slave[" + HAConnection.this.clientAddr + "] request offset "
                                         + readOffset);
+                                HAConnection.this.writeSocketService.wakeup();
                             }
 
                             // ֪ͨǰ߳
@@ -114,6 +160,38 @@ public class HAConnection {
         }
 
 
+        private void acceptCompressTransfer() {
+            if (HAConnection.this.haService.getDefaultMessageStore().getMessageStoreConfig()
+                .isHaTransferCompressEnable()) {
+                HAConnection.this.compressTransfer = true;
+                log.info("slave[" + HAConnection.this.clientAddr + "] request compress transfer, accepted");
+            }
+            else {
+                log.warn("slave[" + HAConnection.this.clientAddr
+                        + "] request compress transfer, but master not enable it");
+            }
+        }
+
+
+        private void acceptDispatchRecordTransfer() {
+            if (HAConnection.this.haService.getDispatchRecordQueue() != null) {
+                HAConnection.this.dispatchRecordTransfer = true;
+                log.info("slave[" + HAConnection.this.clientAddr + "] request dispatch records, accepted");
+            }
+            else {
+                log.warn("slave[" + HAConnection.this.clientAddr
+                        + "] request dispatch records, but master not enable it");
+            }
+        }
+
+
+        private void acceptSlaveDispatchReport() {
+            HAConnection.this.dispatchReportAcceptPending = true;
+            HAConnection.this.writeSocketService.wakeup();
+            log.info("slave[" + HAConnection.this.clientAddr + "] request dispatch report, accepted");
+        }
+
+
         @Override
         public void run() {
             HAConnection.log.info(this.getServiceName() + " service started");
@@ -148,6 +226,7 @@ public class HAConnection {
 
             // ֻж߳Ҫִ
             HAConnection.this.haService.getConnectionCount().decrementAndGet();
+            HAConnection.this.haService.removeConnection(HAConnection.this);
 
             SelectionKey sk = this.socketChannel.keyFor(this.selector);
             if (sk != null) {
@@ -174,6 +253,9 @@ public class HAConnection {
 
     /**
      * SlaveЭ <Phy Offset> <Body Size> <Body Data><br>
+     * ѹʱBody SizeΪBodyΪ <ԭʼС> <ѹ><br>
+     * Ʒַ¼ʱPhy OffsetΪ-1BodyΪķַ¼<br>
+     * ͬSlave㱨ַʱPhy OffsetΪ-5ûBody<br>
      * SlaveЭ <Phy Offset>
      */
     /**
@@ -185,11 +267,27 @@ public class HAConnection {
         private final Selector selector;
         private final SocketChannel socketChannel;
         private long nextTransferFromWhere = -1;
+        // һַ¼ĸCommitLog Offsetʼ
+        private long nextRecordFromWhere = -1;
 
         // Ҫ
         private final int HEADER_SIZE = 8 + 4;
+        // һη͵ķַ¼ֽ
+        private final int DispatchRecordMaxBytes = 1024 * 256;
+        // СڸôСĿ鲻ѹŲ4ֽڵԭʼСѹҲû
+        private final int CompressMinSize = 64;
         private final ByteBuffer byteBufferHeader = ByteBuffer.allocate(HEADER_SIZE);
         private SelectMapedBufferResult selectMapedBufferResult;
+        // ڴCommitLogļڵλãԼʣֽ
+        private long transferFilePosition = 0;
+        private int transferRemaining = 0;
+        // ӦСSlaveʱ𲽷Ŵ׷ϺС
+        private int transferBatchSize = 0;
+        // ѹʹõĻBodyΪѹ
+        private Deflater deflater;
+        private byte[] compressInput;
+        private byte[] compressOutput;
+        private ByteBuffer byteBufferBody;
 
         private boolean lastWriteOver = true;
         private long lastWriteTimestamp = System.currentTimeMillis();
@@ -211,8 +309,9 @@ public class HAConnection {
                 try {
                     this.selector.select(1000);
 
+                    // ȴSlaveϱOffsetɶ̻߳
                     if (-1 == HAConnection.this.slaveRequestOffset) {
-                        Thread.sleep(10);
+                        this.waitForRunning(1000);
                         continue;
                     }
 
@@ -243,6 +342,10 @@ public class HAConnection {
                                 + HAConnection.this.slaveRequestOffset);
                     }
 
+                    if (-1 == this.nextRecordFromWhere) {
+                        this.nextRecordFromWhere = this.nextTransferFromWhere;
+                    }
+
                     if (this.lastWriteOver) {
                         // ʱûзϢԷ
                         long interval =
@@ -271,38 +374,64 @@ public class HAConnection {
                             continue;
                     }
 
+                    // ظSlaveͬ㱨ַ
+                    if (HAConnection.this.dispatchReportAcceptPending) {
+                        HAConnection.this.dispatchReportAcceptPending = false;
+                        this.byteBufferHeader.position(0);
+                        this.byteBufferHeader.limit(HEADER_SIZE);
+                        this.byteBufferHeader.putLong(HAService.SlaveDispatchReportHandshake);
+                        this.byteBufferHeader.putInt(0);
+                        this.byteBufferHeader.flip();
+                        this.lastWriteOver = this.transferData();
+                        continue;
+                    }
+
+                    // ȷѴݶӦķַ¼Slaveյݺֱӷַ
+                    if (HAConnection.this.dispatchRecordTransfer && this.buildDispatchRecords()) {
+                        this.lastWriteOver = this.transferData();
+                        continue;
+                    }
+
                     // ,
                     // selectResultḳֵthis.selectMapedBufferResult쳣Ҳ
                     SelectMapedBufferResult selectResult =
                             HAConnection.this.haService.getDefaultMessageStore().getCommitLogData(
                                 this.nextTransferFromWhere);
                     if (selectResult != null) {
-                        int size = selectResult.getSize();
-                        if (size > HAConnection.this.haService.getDefaultMessageStore().getMessageStoreConfig()
-                            .getHaTransferBatchSize()) {
-                            size =
-                                    HAConnection.this.haService.getDefaultMessageStore().getMessageStoreConfig()
-                                        .getHaTransferBatchSize();
-                        }
+                        int size = this.nextTransferSize(selectResult.getSize());
 
                         long thisOffset = this.nextTransferFromWhere;
                         this.nextTransferFromWhere += size;
 
-                        selectResult.getByteBuffer().limit(size);
-                        this.selectMapedBufferResult = selectResult;
+                        // ѹɹѹݣݲѹʱȻԭʼ
+                        int bodySize = size;
+                        if (HAConnection.this.compressTransfer) {
+                            bodySize = this.compress(selectResult, size);
+                            if (bodySize < 0) {
+                                selectResult.release();
+                            }
+                        }
+
+                        if (bodySize > 0) {
+                            // BodyֱӴCommitLogļtransferToSocketû̬
+                            this.selectMapedBufferResult = selectResult;
+                            this.transferFilePosition =
+                                    thisOffset - selectResult.getMapedFile().getFileFromOffset();
+                            this.transferRemaining = size;
+                        }
 
                         // Build Header
                         this.byteBufferHeader.position(0);
                         this.byteBufferHeader.limit(HEADER_SIZE);
                         this.byteBufferHeader.putLong(thisOffset);
-                        this.byteBufferHeader.putInt(size);
+                        this.byteBufferHeader.putInt(bodySize);
                         this.byteBufferHeader.flip();
 
                         this.lastWriteOver = this.transferData();
                     }
                     else {
-                        // ûݣȴ֪ͨ
-                        HAConnection.this.haService.getWaitNotifyObject().allWaitForRunning(100);
+                        // ûݣȴCommitLogд֪ͨ
+                        HAConnection.this.haService.getWaitNotifyObject().allWaitForRunning(1000);
                     }
                 }
                 catch (Exception e) {
@@ -317,6 +446,10 @@ public class HAConnection {
                 this.selectMapedBufferResult.release();
             }
 
+            if (this.deflater != null) {
+                this.deflater.end();
+            }
+
             this.makeStop();
 
             SelectionKey sk = this.socketChannel.keyFor(this.selector);
@@ -336,6 +469,103 @@ public class HAConnection {
         }
 
 
+        /**
+         * 㱾δСѹǰСʱӱ룬Χ[haTransferBatchSize,
+         * haTransferBatchSizeMax]֮
+         */
+        private int nextTransferSize(final int available) {
+            MessageStoreConfig config = HAConnection.this.haService.getDefaultMessageStore().getMessageStoreConfig();
+            int min = config.getHaTransferBatchSize();
+            int max = Math.max(min, config.getHaTransferBatchSizeMax());
+            if (this.transferBatchSize < min || this.transferBatchSize > max) {
+                this.transferBatchSize = min;
+            }
+
+            if (available > this.transferBatchSize) {
+                int size = this.transferBatchSize;
+                this.transferBatchSize = Math.min(max, this.transferBatchSize * 2);
+                return size;
+            }
+
+            this.transferBatchSize = Math.max(min, this.transferBatchSize / 2);
+            return available;
+        }
+
+
+        /**
+         * ѹһݣɹظBodyС̫СѹûбС򷵻ԭʼС
+         */
+        private int compress(final SelectMapedBufferResult selectResult, final int size) {
+            if (size < CompressMinSize) {
+                return size;
+            }
+
+            long beginTime = System.nanoTime();
+            if (null == this.deflater) {
+                this.deflater = new Deflater(Deflater.BEST_SPEED);
+            }
+
+            if (null == this.compressInput || this.compressInput.length < size) {
+                this.compressInput = new byte[size];
+                this.compressOutput = new byte[size];
+            }
+
+            selectResult.getByteBuffer().get(this.compressInput, 0, size);
+            this.deflater.reset();
+            this.deflater.setInput(this.compressInput, 0, size);
+            this.deflater.finish();
+            // ǰ4ֽڴԭʼСռֻԭʼСŲ˵ֵѹ
+            int compressedSize = this.deflater.deflate(this.compressOutput, 4, size - 4);
+            boolean compressed = this.deflater.finished();
+
+            HAConnection.this.haService.getCompressStats().addCompress(size, compressed ? compressedSize + 4 : size,
+                System.nanoTime() - beginTime);
+
+            if (!compressed) {
+                return size;
+            }
+
+            ByteBuffer body = ByteBuffer.wrap(this.compressOutput, 0, compressedSize + 4);
+            body.putInt(0, size);
+            this.byteBufferBody = body;
+            return -(compressedSize + 4);
+        }
+
+
+        /**
+         * ȡѴݶӦķַ¼һûм¼false
+         */
+        private boolean buildDispatchRecords() {
+            List<DispatchRequest> records =
+                    HAConnection.this.haService.getDispatchRecordQueue().getRecords(this.nextRecordFromWhere,
+                        this.nextTransferFromWhere, DispatchRecordMaxBytes);
+            if (records.isEmpty()) {
+                return false;
+            }
+
+            int maxSize = 0;
+            for (DispatchRequest req : records) {
+                maxSize += HADispatchRecordQueue.encodeSize(req);
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(maxSize);
+            HADispatchRecordQueue.encode(records, body);
+            body.flip();
+            this.byteBufferBody = body;
+
+            DispatchRequest last = records.get(records.size() - 1);
+            this.nextRecordFromWhere = last.getCommitLogOffset() + last.getMsgSize();
+
+            // Build Header
+            this.byteBufferHeader.position(0);
+            this.byteBufferHeader.limit(HEADER_SIZE);
+            this.byteBufferHeader.putLong(HAService.DispatchRecordFrame);
+            this.byteBufferHeader.putInt(body.limit());
+            this.byteBufferHeader.flip();
+            return true;
+        }
+
+
         /**
          * ʾǷ
          */
@@ -359,6 +589,34 @@ public class HAConnection {
                 }
             }
 
+            // Write Compressed Body or Dispatch Records
+            if (this.byteBufferBody != null) {
+                writeSizeZeroTimes = 0;
+                while (!this.byteBufferHeader.hasRemaining() && this.byteBufferBody.hasRemaining()) {
+                    int writeSize = this.socketChannel.write(this.byteBufferBody);
+                    if (writeSize > 0) {
+                        writeSizeZeroTimes = 0;
+                        this.lastWriteTimestamp =
+                                HAConnection.this.haService.getDefaultMessageStore().getSystemClock().now();
+                    }
+                    else if (writeSize == 0) {
+                        if (++writeSizeZeroTimes >= 3) {
+                            break;
+                        }
+                    }
+                    else {
+                        throw new Exception("ha master write compressed body error < 0");
+                    }
+                }
+
+                boolean result = !this.byteBufferHeader.hasRemaining() && !this.byteBufferBody.hasRemaining();
+                if (result) {
+                    this.byteBufferBody = null;
+                }
+
+                return result;
+            }
+
             if (null == this.selectMapedBufferResult) {
                 return !this.byteBufferHeader.hasRemaining();
             }
@@ -367,9 +625,14 @@ public class HAConnection {
 
             // Write Body
             if (!this.byteBufferHeader.hasRemaining()) {
-                while (this.selectMapedBufferResult.getByteBuffer().hasRemaining()) {
-                    int writeSize = this.socketChannel.write(this.selectMapedBufferResult.getByteBuffer());
+                FileChannel fileChannel = this.selectMapedBufferResult.getMapedFile().getFileChannel();
+                while (this.transferRemaining > 0) {
+                    long writeSize =
+                            fileChannel.transferTo(this.transferFilePosition, this.transferRemaining,
+                                this.socketChannel);
                     if (writeSize > 0) {
+                        this.transferFilePosition += writeSize;
+                        this.transferRemaining -= writeSize;
                         writeSizeZeroTimes = 0;
                         this.lastWriteTimestamp =
                                 HAConnection.this.haService.getDefaultMessageStore().getSystemClock().now();
@@ -385,11 +648,9 @@ public class HAConnection {
                 }
             }
 
-            boolean result =
-                    !this.byteBufferHeader.hasRemaining()
-                            && !this.selectMapedBufferResult.getByteBuffer().hasRemaining();
+            boolean result = !this.byteBufferHeader.hasRemaining() && this.transferRemaining <= 0;
 
-            if (!this.selectMapedBufferResult.getByteBuffer().hasRemaining()) {
+            if (this.transferRemaining <= 0) {
                 this.selectMapedBufferResult.release();
                 this.selectMapedBufferResult = null;
             }
@@ -444,6 +705,21 @@ public class HAConnection {
     }
 
 
+    public String getClientAddr() {
+        return clientAddr;
+    }
+
+
+    public long getSlaveAckOffset() {
+        return slaveAckOffset;
+    }
+
+
+    public long getSlaveDispatchOffset() {
+        return slaveDispatchOffset;
+    }
+
+
     public void close() {
         if (this.socketChannel != null) {
             try {
@@ -0,0 +1,216 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alibaba.rocketmq.common.MixAll;
+import com.alibaba.rocketmq.store.DispatchRequest;
+
+
+/**
+ * MasterַϢ¼SlaveConsumeQueueķַ<br>
+ * 飬ֻзַ߳д룬HAӵд̰߳CommitLog Offsetȡ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HADispatchRecordQueue {
+    // 8 commitLogOffset + 4 msgSize + 4 queueId + 8 consumeQueueOffset + 8 tagsCode + 8 storeTimestamp
+    // + 4 sysFlag + 8 tranStateTableOffset + 8 preparedTransactionOffset + 3 * 2 ַ
+    private static final int RecordFixedSize = 8 + 4 + 4 + 8 + 8 + 8 + 4 + 8 + 8 + 3 * 2;
+
+    private final DispatchRequest[] records;
+    // һ¼ţֻзַ߳޸
+    private volatile long writeIndex = 0;
+
+
+    public HADispatchRecordQueue(final int capacity) {
+        this.records = new DispatchRequest[capacity];
+    }
+
+
+    /**
+     * CommitLog˳׷ӣֻɷ̵ַ߳
+     */
+    public void putRecords(final List<DispatchRequest> dispatchRequests) {
+        // ţ߳̾ݴжϲλǷڱ
+        long index = this.writeIndex;
+        for (DispatchRequest req : dispatchRequests) {
+            this.records[(int) (index % this.records.length)] = req;
+            this.writeIndex = ++index;
+        }
+    }
+
+
+    private DispatchRequest getRecord(final long index) {
+        DispatchRequest req = this.records[(int) (index % this.records.length)];
+        // ȡڼѾ
+        if (index + this.records.length <= this.writeIndex) {
+            return null;
+        }
+
+        return req;
+    }
+
+
+    /**
+     * ȡCommitLog OffsetСfromOffset¼¼ӦϢendOffset֮ǰ
+     * 
+     * @param maxBytes
+     *            ֽ
+     */
+    public List<DispatchRequest> getRecords(final long fromOffset, final long endOffset, final int maxBytes) {
+        List<DispatchRequest> result = new ArrayList<DispatchRequest>();
+        long end = this.writeIndex;
+        // һֿռ䣬ҹб̸ַ߳
+        long begin = Math.max(0, end - this.records.length + this.records.length / 4);
+
+        // ֲҵһOffsetСfromOffsetļ¼
+        long low = begin;
+        long high = end;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            DispatchRequest req = this.getRecord(mid);
+            if (null == req) {
+                return result;
+            }
+
+            if (req.getCommitLogOffset() < fromOffset) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+
+        int bytes = 0;
+        for (long index = low; index < end; index++) {
+            DispatchRequest req = this.getRecord(index);
+            if (null == req || req.getCommitLogOffset() + req.getMsgSize() > endOffset) {
+                break;
+            }
+
+            bytes += encodeSize(req);
+            if (bytes > maxBytes && !result.isEmpty()) {
+                break;
+            }
+
+            result.add(req);
+        }
+
+        return result;
+    }
+
+
+    private static byte[] stringBytes(final String s) {
+        if (null == s) {
+            return null;
+        }
+
+        try {
+            return s.getBytes(MixAll.DEFAULT_CHARSET);
+        }
+        catch (UnsupportedEncodingException e) {
+            return s.getBytes();
+        }
+    }
+
+
+    private static int stringSize(final String s) {
+        return null == s ? 0 : s.length() * 3;
+    }
+
+
+    /**
+     * 󳤶
+     */
+    public static int encodeSize(final DispatchRequest req) {
+        return RecordFixedSize + stringSize(req.getTopic()) + stringSize(req.getKeys())
+                + stringSize(req.getProducerGroup());
+    }
+
+
+    private static void putString(final ByteBuffer byteBuffer, final String s) {
+        byte[] bytes = stringBytes(s);
+        if (null == bytes) {
+            byteBuffer.putShort((short) -1);
+        }
+        else {
+            byteBuffer.putShort((short) bytes.length);
+            byteBuffer.put(bytes);
+        }
+    }
+
+
+    private static String getString(final ByteBuffer byteBuffer) throws UnsupportedEncodingException {
+        short length = byteBuffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        byteBuffer.get(bytes);
+        return new String(bytes, MixAll.DEFAULT_CHARSET);
+    }
+
+
+    /**
+     * һ¼Bufferռ䰴encodeSize֮ͷ
+     */
+    public static void encode(final List<DispatchRequest> dispatchRequests, final ByteBuffer byteBuffer) {
+        for (DispatchRequest req : dispatchRequests) {
+            byteBuffer.putLong(req.getCommitLogOffset());
+            byteBuffer.putInt(req.getMsgSize());
+            byteBuffer.putInt(req.getQueueId());
+            byteBuffer.putLong(req.getConsumeQueueOffset());
+            byteBuffer.putLong(req.getTagsCode());
+            byteBuffer.putLong(req.getStoreTimestamp());
+            byteBuffer.putInt(req.getSysFlag());
+            byteBuffer.putLong(req.getTranStateTableOffset());
+            byteBuffer.putLong(req.getPreparedTransactionOffset());
+            putString(byteBuffer, req.getTopic());
+            putString(byteBuffer, req.getKeys());
+            putString(byteBuffer, req.getProducerGroup());
+        }
+    }
+
+
+    public static List<DispatchRequest> decode(final ByteBuffer byteBuffer) throws UnsupportedEncodingException {
+        List<DispatchRequest> result = new ArrayList<DispatchRequest>();
+        while (byteBuffer.hasRemaining()) {
+            long commitLogOffset = byteBuffer.getLong();
+            int msgSize = byteBuffer.getInt();
+            int queueId = byteBuffer.getInt();
+            long consumeQueueOffset = byteBuffer.getLong();
+            long tagsCode = byteBuffer.getLong();
+            long storeTimestamp = byteBuffer.getLong();
+            int sysFlag = byteBuffer.getInt();
+            long tranStateTableOffset = byteBuffer.getLong();
+            long preparedTransactionOffset = byteBuffer.getLong();
+            String topic = getString(byteBuffer);
+            String keys = getString(byteBuffer);
+            String producerGroup = getString(byteBuffer);
+
+            result.add(new DispatchRequest(//
+                topic,// 1
+                queueId,// 2
+                commitLogOffset,// 3
+                msgSize,// 4
+                tagsCode,// 5
+                storeTimestamp,// 6
+                consumeQueueOffset,// 7
+                keys,// 8
+                sysFlag,// 9
+                tranStateTableOffset,// 10
+                preparedTransactionOffset,// 11
+                producerGroup// 12
+            ));
+        }
+
+        return result;
+    }
+}
@@ -13,12 +13,18 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +34,9 @@ import com.alibaba.rocketmq.common.ServiceThread;
 import com.alibaba.rocketmq.remoting.common.RemotingUtil;
 import com.alibaba.rocketmq.store.DefaultMessageStore;
 import com.alibaba.rocketmq.store.CommitLog.GroupCommitRequest;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.HASyncAckMode;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
 
 
 /**
@@ -37,6 +46,18 @@ import com.alibaba.rocketmq.store.CommitLog.GroupCommitRequest;
  */
 public class HAService {
     private static final Logger log = LoggerFactory.getLogger(MixAll.StoreLoggerName);
+    // SlaveӺʹֵOffsetMasterѹ
+    public static final long CompressTransferHandshake = -2;
+    // SlaveӺʹֵOffsetMasterƷַ¼
+    public static final long DispatchRecordHandshake = -3;
+    // Masterͷַ¼ʱôֵPhy Offset
+    public static final long DispatchRecordFrame = -1;
+    // Slave㱨OffsetʱȷʹֵSlaveѾַConsumeQueuePhy Offset
+    public static final long SlaveDispatchReport = -4;
+    // SlaveӺʹֵOffset㱨ַȣMasterͬԴֵΪPhy Offsetظһ֡
+    public static final long SlaveDispatchReportHandshake = -5;
+    // Masterַ¼
+    private static final int DispatchRecordQueueSize = 1024 * 256;
     // ͻӼ
     private final AtomicInteger connectionCount = new AtomicInteger(0);
     // 洢ͻ
@@ -47,13 +68,19 @@ public class HAService {
     private final DefaultMessageStore defaultMessageStore;
     // 첽֪ͨ
     private final WaitNotifyObject waitNotifyObject = new WaitNotifyObject();
-    // д뵽SlaveOffset
-    private final AtomicLong push2SlaveMaxOffset = new AtomicLong(0);
+    // ӦģʽѾ㹻SlaveӦOffset
+    private final AtomicLong push2SlaveAckOffset = new AtomicLong(0);
     // Ӹ֪ͨ
     private final GroupTransferService groupTransferService;
+    // ѹͳ
+    private final HACompressStats compressStats = new HACompressStats();
 
     // SlaveĶ
     private final HAClient haClient;
+    // SlaveֻͬMaster
+    private HABootstrapService haBootstrapService;
+    // ķַ¼ֻMasterϿƷַ¼ʱ
+    private HADispatchRecordQueue dispatchRecordQueue;
 
     class AcceptSocketService extends ServiceThread {
         private ServerSocketChannel serverSocketChannel;
@@ -132,13 +159,32 @@ public class HAService {
     }
 
     /**
-     * GroupTransferService Service
+     * GroupTransferService Service<br>
+     * ȴеnextOffsetţSlaveӦƽһԻѸƵ󣻳ʱʱִ
      */
     class GroupTransferService extends ServiceThread {
+        // ʱÿʱ
+        private static final long TickMillis = 100;
         private volatile List<GroupCommitRequest> requestsWrite = new ArrayList<GroupCommitRequest>();
         private volatile List<GroupCommitRequest> requestsRead = new ArrayList<GroupCommitRequest>();
-        // 첽֪ͨ
-        private final WaitNotifyObject notifyTransferObject = new WaitNotifyObject();
+        // ȴSlaveӦ󣬰nextOffset
+        private final TreeMap<Long/* nextOffset */, List<GroupCommitRequest>> waitingRequests =
+                new TreeMap<Long, List<GroupCommitRequest>>();
+        // ʱʱ֣ȴڳʱʱ䣬ÿɨ赽ʱһѾ
+        private final List<List<GroupCommitRequest>> timeoutWheel;
+        private final long timeoutTicks;
+        // һɨĸӣ֮ǰĸӶѾɨ
+        private long currentTick = -1;
+
+
+        public GroupTransferService() {
+            long timeout = HAService.this.defaultMessageStore.getMessageStoreConfig().getSyncFlushTimeout();
+            this.timeoutTicks = Math.max(1, (timeout + TickMillis - 1) / TickMillis);
+            this.timeoutWheel = new ArrayList<List<GroupCommitRequest>>((int) this.timeoutTicks + 1);
+            for (int i = 0; i <= this.timeoutTicks; i++) {
+                this.timeoutWheel.add(new LinkedList<GroupCommitRequest>());
+            }
+        }
 
 
         private void swapRequests() {
@@ -154,38 +200,68 @@ public class HAService {
                 if (!this.hasNotified) {
                     this.hasNotified = true;
                     this.notify();
-
-                    // TODO ҪNotify߳ 1GroupTransferService
-                    // 2WriteSocketService
-                    // ڵputRequestѾNotifyWriteSocketService
                 }
             }
         }
 
 
         public void notifyTransferSome() {
-            this.notifyTransferObject.wakeup();
+            this.wakeup();
         }
 
 
         private void doWaitTransfer() {
-            if (!this.requestsRead.isEmpty()) {
-                for (GroupCommitRequest req : this.requestsRead) {
-                    boolean transferOK = HAService.this.push2SlaveMaxOffset.get() >= req.getNextOffset();
-                    for (int i = 0; !transferOK && i < 5;) {
-                        this.notifyTransferObject.waitForRunning(1000);
-                        transferOK = HAService.this.push2SlaveMaxOffset.get() >= req.getNextOffset();
-                    }
+            long nowTick = HAService.this.defaultMessageStore.getSystemClock().now() / TickMillis;
+            if (this.currentTick < 0) {
+                this.currentTick = nowTick;
+            }
+
+            // 
+            for (GroupCommitRequest req : this.requestsRead) {
+                List<GroupCommitRequest> list = this.waitingRequests.get(req.getNextOffset());
+                if (null == list) {
+                    list = new LinkedList<GroupCommitRequest>();
+                    this.waitingRequests.put(req.getNextOffset(), list);
+                }
+                list.add(req);
+            }
+
+            // ѾƵSlave
+            SortedMap<Long, List<GroupCommitRequest>> acked =
+                    this.waitingRequests.headMap(HAService.this.push2SlaveAckOffset.get(), true);
+            for (List<GroupCommitRequest> list : acked.values()) {
+                for (GroupCommitRequest req : list) {
+                    req.wakeupCustomer(true);
+                }
+            }
+            acked.clear();
+
+            // ƽʱ֣ڵȴΪʱ
+            final int wheelSize = this.timeoutWheel.size();
+            long fromTick = Math.max(this.currentTick, nowTick - wheelSize + 1);
+            for (long tick = fromTick; tick <= nowTick; tick++) {
+                List<GroupCommitRequest> slot = this.timeoutWheel.get((int) (tick % wheelSize));
+                for (GroupCommitRequest req : slot) {
+                    List<GroupCommitRequest> list = this.waitingRequests.get(req.getNextOffset());
+                    if (list != null && list.remove(req)) {
+                        if (list.isEmpty()) {
+                            this.waitingRequests.remove(req.getNextOffset());
+                        }
 
-                    if (!transferOK) {
                         log.warn("transfer messsage to slave timeout, " + req.getNextOffset());
+                        req.wakeupCustomer(false);
                     }
-
-                    req.wakeupCustomer(transferOK);
                 }
+                slot.clear();
+            }
+            this.currentTick = nowTick + 1;
 
-                this.requestsRead.clear();
+            // ʱ׷ϵǰʱٷ󣬷ڸӿܱɨǰΪʱ
+            for (GroupCommitRequest req : this.requestsRead) {
+                long deadlineTick = nowTick + this.timeoutTicks;
+                this.timeoutWheel.get((int) (deadlineTick % wheelSize)).add(req);
             }
+            this.requestsRead.clear();
         }
 
 
@@ -194,7 +270,8 @@ public class HAService {
 
             while (!this.isStoped()) {
                 try {
-                    this.waitForRunning(0);
+                    // ûеȴеʱֻȴ
+                    this.waitForRunning(this.waitingRequests.isEmpty() ? 0 : TickMillis);
                     this.doWaitTransfer();
                 }
                 catch (Exception e) {
@@ -228,15 +305,21 @@ public class HAService {
 
         // SlaveMaster㱨Offset㱨
         private long currentReportedOffset = 0;
+        // SlaveMaster㱨ķַ
+        private long currentReportedDispatchOffset = -1;
+        // MasterǷͬ㱨ַȣ֮ͬǰֻ㱨Offset
+        private boolean dispatchReportAccepted = false;
 
-        // Master㱨SlaveOffset
-        private final ByteBuffer reportOffset = ByteBuffer.allocate(8);
+        // Master㱨SlaveOffsetԼַ
+        private final ByteBuffer reportOffset = ByteBuffer.allocate(8 * 3);
 
         private static final int ReadMaxBufferSize = 1024 * 1024 * 4;
         private int dispatchPostion = 0;
         // MasterBuffer
         private ByteBuffer byteBufferRead = ByteBuffer.allocate(ReadMaxBufferSize);
         private ByteBuffer byteBufferBackup = ByteBuffer.allocate(ReadMaxBufferSize);
+        // ѹMasterѹ
+        private final Inflater inflater = new Inflater();
 
 
         public HAClient() throws IOException {
@@ -264,10 +347,15 @@ public class HAService {
 
         private boolean reportSlaveMaxOffset(final long maxOffset) {
             this.reportOffset.position(0);
-            this.reportOffset.limit(8);
+            this.reportOffset.limit(this.reportOffset.capacity());
+            // ַȷOffset֮ǰֻMasterͬŻ㱨
+            if (maxOffset >= 0 && this.dispatchReportAccepted) {
+                this.currentReportedDispatchOffset = HAService.this.defaultMessageStore.getSlaveDispatchOffset();
+                this.reportOffset.putLong(SlaveDispatchReport);
+                this.reportOffset.putLong(this.currentReportedDispatchOffset);
+            }
             this.reportOffset.putLong(maxOffset);
-            this.reportOffset.position(0);
-            this.reportOffset.limit(8);
+            this.reportOffset.flip();
 
             for (int i = 0; i < 3 && this.reportOffset.hasRemaining(); i++) {
                 try {
@@ -363,6 +451,41 @@ public class HAService {
                     long masterPhyOffset = this.byteBufferRead.getLong(this.dispatchPostion);
                     int bodySize = this.byteBufferRead.getInt(this.dispatchPostion + 8);
 
+                    // Masterͬ㱨ַȣ㱨һ
+                    if (SlaveDispatchReportHandshake == masterPhyOffset) {
+                        this.dispatchPostion += MSG_HEADER_SIZE;
+                        this.dispatchReportAccepted = true;
+                        this.currentReportedDispatchOffset = -1;
+                        log.info("HAClient, master accept slave dispatch report");
+                        continue;
+                    }
+
+                    // ַ¼дCommitLog
+                    if (DispatchRecordFrame == masterPhyOffset) {
+                        if (diff >= (MSG_HEADER_SIZE + bodySize)) {
+                            ByteBuffer body = this.byteBufferRead.duplicate();
+                            body.position(this.dispatchPostion + MSG_HEADER_SIZE);
+                            body.limit(this.dispatchPostion + MSG_HEADER_SIZE + bodySize);
+                            try {
+                                HAService.this.defaultMessageStore.putDispatchRecords(HADispatchRecordQueue
+                                    .decode(body));
+                            }
+                            catch (Exception e) {
+                                log.error("HAClient, decode dispatch records exception", e);
+                                return false;
+                            }
+
+                            this.dispatchPostion += MSG_HEADER_SIZE + bodySize;
+                            continue;
+                        }
+
+                        if (!this.byteBufferRead.hasRemaining()) {
+                            this.reallocateByteBuffer();
+                        }
+
+                        break;
+                    }
+
                     long slavePhyOffset = HAService.this.defaultMessageStore.getMaxPhyOffset();
 
                     // ش
@@ -374,12 +497,25 @@ public class HAService {
                         }
                     }
 
+                    // Body SizeΪʾѹ
+                    boolean compressed = bodySize < 0;
+                    if (compressed) {
+                        bodySize = -bodySize;
+                    }
+
                     // Դչһ
                     if (diff >= (MSG_HEADER_SIZE + bodySize)) {
                         byte[] bodyData = new byte[bodySize];
                         this.byteBufferRead.position(this.dispatchPostion + MSG_HEADER_SIZE);
                         this.byteBufferRead.get(bodyData);
 
+                        if (compressed) {
+                            bodyData = this.decompress(bodyData);
+                            if (null == bodyData) {
+                                return false;
+                            }
+                        }
+
                         // TODO ǷҪʱ
                         HAService.this.defaultMessageStore.appendToCommitLog(masterPhyOffset, bodyData);
 
@@ -405,11 +541,39 @@ public class HAService {
         }
 
 
+        /**
+         * ѹһѹBodyʽΪ <ԭʼС> <ѹ>
+         */
+        private byte[] decompress(final byte[] body) {
+            long beginTime = System.nanoTime();
+            int rawSize = ByteBuffer.wrap(body).getInt();
+            byte[] rawData = new byte[rawSize];
+            try {
+                this.inflater.reset();
+                this.inflater.setInput(body, 4, body.length - 4);
+                int size = this.inflater.inflate(rawData);
+                if (size != rawSize || !this.inflater.finished()) {
+                    log.error("HAClient, decompress size not matched, " + size + " " + rawSize);
+                    return null;
+                }
+            }
+            catch (DataFormatException e) {
+                log.error("HAClient, decompress exception", e);
+                return null;
+            }
+
+            HAService.this.compressStats.addDecompress(rawSize, System.nanoTime() - beginTime);
+            return rawData;
+        }
+
+
         private boolean reportSlaveMaxOffsetPlus() {
             boolean result = true;
             // ֻҪи£ͻ㱨Offset
             long currentPhyOffset = HAService.this.defaultMessageStore.getMaxPhyOffset();
-            if (currentPhyOffset > this.currentReportedOffset) {
+            if (currentPhyOffset > this.currentReportedOffset
+                    || (this.dispatchReportAccepted && HAService.this.defaultMessageStore
+                        .getSlaveDispatchOffset() > this.currentReportedDispatchOffset)) {
                 this.currentReportedOffset = currentPhyOffset;
                 result = this.reportSlaveMaxOffset(this.currentReportedOffset);
                 if (!result) {
@@ -487,6 +651,29 @@ public class HAService {
                         this.socketChannel = RemotingUtil.connect(socketAddress);
                         if (this.socketChannel != null) {
                             this.socketChannel.register(this.selector, SelectionKey.OP_READ);
+
+                            // Masterѹ
+                            if (HAService.this.defaultMessageStore.getMessageStoreConfig()
+                                .isHaTransferCompressEnable()
+                                    && !this.reportSlaveMaxOffset(CompressTransferHandshake)) {
+                                this.closeMaster();
+                            }
+
+                            // MasterƷַ¼
+                            if (this.socketChannel != null
+                                    && HAService.this.defaultMessageStore.getMessageStoreConfig()
+                                        .isHaReplicateDispatchEnable()
+                                    && !this.reportSlaveMaxOffset(DispatchRecordHandshake)) {
+                                this.closeMaster();
+                            }
+
+                            // 㱨ַȣȴMasterͬ
+                            if (this.socketChannel != null
+                                    && HAService.this.defaultMessageStore.getMessageStoreConfig()
+                                        .isHaSlaveDispatchReportEnable()
+                                    && !this.reportSlaveMaxOffset(SlaveDispatchReportHandshake)) {
+                                this.closeMaster();
+                            }
                         }
                     }
                 }
@@ -520,6 +707,7 @@ public class HAService {
 
                 this.lastWriteTimestamp = 0;
                 this.dispatchPostion = 0;
+                this.dispatchReportAccepted = false;
 
                 this.byteBufferBackup.position(0);
                 this.byteBufferBackup.limit(ReadMaxBufferSize);
@@ -567,6 +755,16 @@ public class HAService {
                 new AcceptSocketService(defaultMessageStore.getMessageStoreConfig().getHaListenPort());
         this.groupTransferService = new GroupTransferService();
         this.haClient = new HAClient();
+        // MasterΪSlaveṩͬ
+        if (defaultMessageStore.getMessageStoreConfig().isHaBootstrapEnable()
+                && BrokerRole.SLAVE != defaultMessageStore.getMessageStoreConfig().getBrokerRole()) {
+            this.haBootstrapService = new HABootstrapService(defaultMessageStore);
+        }
+
+        if (defaultMessageStore.getMessageStoreConfig().isHaReplicateDispatchEnable()
+                && BrokerRole.SLAVE != defaultMessageStore.getMessageStoreConfig().getBrokerRole()) {
+            this.dispatchRecordQueue = new HADispatchRecordQueue(DispatchRecordQueueSize);
+        }
     }
 
 
@@ -592,27 +790,79 @@ public class HAService {
      * @return
      */
     public boolean isSlaveOK(final long masterPutWhere) {
-        boolean result = this.connectionCount.get() > 0;
+        int connected = this.connectionCount.get();
+        boolean result = connected > 0 && connected >= this.requiredAckSlaveNums(connected);
         result =
                 result
-                        && ((masterPutWhere - this.push2SlaveMaxOffset.get()) < this.defaultMessageStore
+                        && ((masterPutWhere - this.push2SlaveAckOffset.get()) < this.defaultMessageStore
                             .getMessageStoreConfig().getHaSlaveFallbehindMax());
         return result;
     }
 
 
     /**
-     * ֪ͨ˲
+     * ӦģʽҪӦSlave<br>
+     * ȡSlaveеĽϴֵSlaveϿҪ󲻻֮
+     */
+    private int requiredAckSlaveNums(final int connected) {
+        MessageStoreConfig config = this.defaultMessageStore.getMessageStoreConfig();
+        int total = Math.max(config.getHaSyncExpectedSlaveNums(), connected);
+        if (HASyncAckMode.MAJORITY == config.getHaSyncAckMode()) {
+            return total / 2 + 1;
+        }
+        else if (HASyncAckMode.ALL == config.getHaSyncAckMode()) {
+            return total;
+        }
+
+        return 1;
+    }
+
+
+    /**
+     * ӦģʽSlave㹻ӦOffsetӵSlaveʱ-1
+     */
+    private long computeAckOffset() {
+        long[] ackOffsets;
+        synchronized (this.connectionList) {
+            if (this.connectionList.isEmpty()) {
+                return -1;
+            }
+
+            ackOffsets = new long[this.connectionList.size()];
+            int i = 0;
+            for (HAConnection c : this.connectionList) {
+                ackOffsets[i++] = c.getSlaveAckOffset();
+            }
+        }
+
+        int required = this.requiredAckSlaveNums(ackOffsets.length);
+        if (ackOffsets.length < required) {
+            return -1;
+        }
+
+        // requiredӦOffset
+        Arrays.sort(ackOffsets);
+        return ackOffsets[ackOffsets.length - required];
+    }
+
+
+    /**
+     * ֪ͨ˲ݣoffsetΪĳSlaveӦOffset
      */
     public void notifyTransferSome(final long offset) {
-        for (long value = this.push2SlaveMaxOffset.get(); offset > value;) {
-            boolean ok = this.push2SlaveMaxOffset.compareAndSet(value, offset);
+        long ackOffset = offset;
+        if (this.defaultMessageStore.getMessageStoreConfig().getHaSyncAckMode() != HASyncAckMode.ANY_ONE) {
+            ackOffset = this.computeAckOffset();
+        }
+
+        for (long value = this.push2SlaveAckOffset.get(); ackOffset > value;) {
+            boolean ok = this.push2SlaveAckOffset.compareAndSet(value, ackOffset);
             if (ok) {
                 this.groupTransferService.notifyTransferSome();
                 break;
             }
             else {
-                value = this.push2SlaveMaxOffset.get();
+                value = this.push2SlaveAckOffset.get();
             }
         }
     }
@@ -623,22 +873,30 @@ public class HAService {
     }
 
 
-    public void start() {
+    public void start() throws Exception {
         this.acceptSocketService.beginAccept();
         this.acceptSocketService.start();
         this.groupTransferService.start();
         this.haClient.start();
+
+        if (this.haBootstrapService != null) {
+            this.haBootstrapService.beginAccept();
+            this.haBootstrapService.start();
+        }
     }
 
 
     public void destroyConnections() {
+        // ӹرʱбƳԼԲܳر
+        List<HAConnection> connections;
         synchronized (this.connectionList) {
-            for (HAConnection c : this.connectionList) {
-                c.shutdown();
-            }
-
+            connections = new ArrayList<HAConnection>(this.connectionList);
             this.connectionList.clear();
         }
+
+        for (HAConnection c : connections) {
+            c.shutdown();
+        }
     }
 
 
@@ -653,12 +911,56 @@ public class HAService {
         synchronized (this.connectionList) {
             this.connectionList.remove(conn);
         }
+
+        // ӼٺʣSlaveѾӦҪ
+        this.notifyTransferSome(-1);
+    }
+
+
+    /**
+     * ÿSlaveӦOffsetkeyΪSlaveַ
+     */
+    public HashMap<String, Long> getSlaveAckOffsetTable() {
+        HashMap<String, Long> result = new HashMap<String, Long>();
+        synchronized (this.connectionList) {
+            for (HAConnection c : this.connectionList) {
+                result.put(c.getClientAddr(), c.getSlaveAckOffset());
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * л㱨ַȵSlaveУСѷַPhy Offsetû򷵻-1
+     */
+    public long getSlaveDispatchOffset() {
+        long result = -1;
+        synchronized (this.connectionList) {
+            for (HAConnection c : this.connectionList) {
+                long offset = c.getSlaveDispatchOffset();
+                if (offset >= 0 && (result < 0 || offset < result)) {
+                    result = offset;
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+    public long getPush2SlaveAckOffset() {
+        return push2SlaveAckOffset.get();
     }
 
 
     public void shutdown() {
         this.haClient.shutdown();
         this.acceptSocketService.shutdown(true);
+        if (this.haBootstrapService != null) {
+            this.haBootstrapService.shutdown();
+        }
         this.destroyConnections();
         this.groupTransferService.shutdown();
     }
@@ -672,4 +974,14 @@ public class HAService {
     public WaitNotifyObject getWaitNotifyObject() {
         return waitNotifyObject;
     }
+
+
+    public HACompressStats getCompressStats() {
+        return compressStats;
+    }
+
+
+    public HADispatchRecordQueue getDispatchRecordQueue() {
+        return dispatchRecordQueue;
+    }
 }
@@ -4,6 +4,7 @@
 package com.alibaba.rocketmq.store.ha;
 
 import java.util.HashMap;
+import java.util.Map;
 
 
 /**
@@ -58,9 +59,9 @@ public class WaitNotifyObject {
         synchronized (this) {
             boolean needNotify = false;
 
-            for (Boolean value : this.waitingThreadTable.values()) {
-                needNotify = needNotify || !value;
-                value = true;
+            for (Map.Entry<Long, Boolean> entry : this.waitingThreadTable.entrySet()) {
+                needNotify = needNotify || !entry.getValue();
+                entry.setValue(true);
             }
 
             if (needNotify) {
@@ -83,6 +84,11 @@ public class WaitNotifyObject {
                 return;
             }
 
+            // ״εȴҲҪǼǣwakeupAll©߳
+            if (null == notified) {
+                this.waitingThreadTable.put(currentThreadId, false);
+            }
+
             try {
                 this.wait(interval);
             }
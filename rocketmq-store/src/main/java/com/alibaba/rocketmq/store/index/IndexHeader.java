@@ -27,7 +27,7 @@ public class IndexHeader {
     private static int BEGINTIMESTAMP_INDEX = 0;
     private static int ENDTIMESTAMP_INDEX = 8;
     private static int BEGINPHYOFFSET_INDEX = 16;
-    private static int ENDPHYOFFSET_INDEX = 24;
+    public static final int ENDPHYOFFSET_INDEX = 24;
     private static int HASHSLOTCOUNT_INDEX = 32;
     private static int INDEXCOUNT_INDEX = 36;
 
@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -24,6 +25,7 @@ import com.alibaba.rocketmq.common.ServiceThread;
 import com.alibaba.rocketmq.common.sysflag.MessageSysFlag;
 import com.alibaba.rocketmq.store.DefaultMessageStore;
 import com.alibaba.rocketmq.store.DispatchRequest;
+import com.alibaba.rocketmq.store.config.BrokerRole;
 
 
 /**
@@ -43,6 +45,8 @@ public class IndexService extends ServiceThread {
     private final int hashSlotNum;
     private final int indexNum;
     private final String storePath;
+    // SlaveϲTopic
+    private final HashSet<String> ignoreTopics = new HashSet<String>();
 
     // ļ
     private final ArrayList<IndexFile> indexFileList = new ArrayList<IndexFile>();
@@ -55,6 +59,13 @@ public class IndexService extends ServiceThread {
         this.hashSlotNum = store.getMessageStoreConfig().getMaxHashSlotNum();
         this.indexNum = store.getMessageStoreConfig().getMaxIndexNum();
         this.storePath = store.getMessageStoreConfig().getStorePathIndex();
+        if (BrokerRole.SLAVE == store.getMessageStoreConfig().getBrokerRole()) {
+            for (String topic : store.getMessageStoreConfig().getSlaveIndexIgnoreTopics().split(",")) {
+                if (topic.trim().length() > 0) {
+                    this.ignoreTopics.add(topic.trim());
+                }
+            }
+        }
     }
 
 
@@ -363,6 +374,10 @@ public class IndexService extends ServiceThread {
                     continue;
                 }
 
+                if (this.ignoreTopics.contains(topic)) {
+                    continue;
+                }
+
                 final int tranType = MessageSysFlag.getTransactionValue(msg.getSysFlag());
                 switch (tranType) {
                 case MessageSysFlag.TransactionNotType:
@@ -3,7 +3,11 @@
  */
 package com.alibaba.rocketmq.store.schedule;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Timer;
@@ -16,7 +20,6 @@ import org.slf4j.LoggerFactory;
 
 import com.alibaba.rocketmq.common.Message;
 import com.alibaba.rocketmq.common.MessageDecoder;
-import com.alibaba.rocketmq.common.MessageExt;
 import com.alibaba.rocketmq.common.MixAll;
 import com.alibaba.rocketmq.common.TopicFilterType;
 import com.alibaba.rocketmq.common.sysflag.MessageSysFlag;
@@ -25,6 +28,7 @@ import com.alibaba.rocketmq.store.DefaultMessageStore;
 import com.alibaba.rocketmq.store.MessageExtBrokerInner;
 import com.alibaba.rocketmq.store.PutMessageResult;
 import com.alibaba.rocketmq.store.PutMessageStatus;
+import com.alibaba.rocketmq.store.RawMessageBrokerInner;
 import com.alibaba.rocketmq.store.SelectMapedBufferResult;
 
 
@@ -82,37 +86,117 @@ public class ScheduleMessageService {
         }
 
 
-        private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
-            MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
-            msgInner.setBody(msgExt.getBody());
-            msgInner.setFlag(msgExt.getFlag());
-            msgInner.setProperties(msgExt.getProperties());
-
-            TopicFilterType topicFilterType =
-                    (msgInner.getSysFlag() & MessageSysFlag.MultiTagsFlag) == MessageSysFlag.MultiTagsFlag ? TopicFilterType.MULTI_TAG
-                            : TopicFilterType.SINGLE_TAG;
-            long tagsCodeValue = MessageExtBrokerInner.tagsString2tagsCode(topicFilterType, msgInner.getTags());
-            msgInner.setTagsCode(tagsCodeValue);
-            msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgExt.getProperties()));
+        /**
+         * ֱڴ洢¼TopicQueueIdԣϢ
+         * 
+         * @return nullʾϢѲڻ߸ʽǷ
+         */
+        private RawMessageBrokerInner messageTimeup(final long offsetPy, final int sizePy) {
+            SelectMapedBufferResult sbr =
+                    ScheduleMessageService.this.defaultMessageStore.getCommitLog().getMessage(offsetPy, sizePy);
+            if (null == sbr) {
+                return null;
+            }
 
-            msgInner.setSysFlag(msgExt.getSysFlag());
-            msgInner.setBornTimestamp(msgExt.getBornTimestamp());
-            msgInner.setBornHost(msgExt.getBornHost());
-            msgInner.setStoreHost(msgExt.getStoreHost());
-            msgInner.setReconsumeTimes(msgExt.getReconsumeTimes());
+            try {
+                ByteBuffer src = sbr.getByteBuffer();
+                int bodyLen = src.getInt(MessageDecoder.MessageBodyLengthPostion);
+                int topicPos = MessageDecoder.MessageBodyPostion + Math.max(bodyLen, 0);
+                int topicLen = src.get(topicPos);
+                int propertiesPos = topicPos + 1 + topicLen;
+                int propertiesLength = src.getShort(propertiesPos);
+
+                byte[] propertiesData = new byte[propertiesLength];
+                src.position(propertiesPos + 2);
+                src.get(propertiesData);
+                String propertiesString = new String(propertiesData);
+                Map<String, String> properties = MessageDecoder.string2messageProperties(propertiesString);
+
+                // ָTopic
+                String topic = properties.get(Message.PROPERTY_REAL_TOPIC);
+                // ָQueueId
+                String queueIdStr = properties.get(Message.PROPERTY_REAL_QUEUE_ID);
+                if (null == topic || null == queueIdStr) {
+                    log.error("a message time up, but real topic or queueId not found, offset: {}", offsetPy);
+                    return null;
+                }
+                int queueId = Integer.parseInt(queueIdStr);
+
+                byte[] topicData = topic.getBytes();
+                byte[] newPropertiesData =
+                        MessageDecoder.clearProperty(propertiesString, Message.PROPERTY_DELAY_TIME_LEVEL)
+                            .getBytes();
+
+                int msgLen = topicPos + 1 + topicData.length + 2 + newPropertiesData.length;
+                ByteBuffer record = ByteBuffer.allocate(msgLen);
+                // ԭϢͷϢ壬BODYCRCSYSFLAGBORNHOSTSTOREHOSTRECONSUMETIMES
+                src.position(0);
+                src.limit(topicPos);
+                record.put(src);
+                record.put((byte) topicData.length);
+                record.put(topicData);
+                record.putShort((short) newPropertiesData.length);
+                record.put(newPropertiesData);
+                record.flip();
+
+                // 1 TOTALSIZE
+                record.putInt(0, msgLen);
+                // 4 QUEUEID
+                record.putInt(MessageDecoder.MessageQueueIdPostion, queueId);
+
+                int sysFlag = record.getInt(MessageDecoder.MessageSysFlagPostion);
+                TopicFilterType topicFilterType =
+                        (sysFlag & MessageSysFlag.MultiTagsFlag) == MessageSysFlag.MultiTagsFlag ? TopicFilterType.MULTI_TAG
+                                : TopicFilterType.SINGLE_TAG;
+                long tagsCodeValue =
+                        MessageExtBrokerInner.tagsString2tagsCode(topicFilterType,
+                            properties.get(Message.PROPERTY_TAGS));
+
+                return new RawMessageBrokerInner(record, topic, queueId, tagsCodeValue,
+                    properties.get(Message.PROPERTY_KEYS), sysFlag,
+                    properties.get(Message.PROPERTY_PRODUCER_GROUP));
+            }
+            catch (Exception e) {
+                log.error("a message time up, but parse it failed, offset: " + offsetPy, e);
+                return null;
+            }
+            finally {
+                sbr.release();
+            }
+        }
 
-            msgInner.setWaitStoreMsgOK(false);
-            msgInner.clearProperty(Message.PROPERTY_DELAY_TIME_LEVEL);
 
-            // ָTopic
-            msgInner.setTopic(msgInner.getProperty(Message.PROPERTY_REAL_TOPIC));
+        /**
+         * ͶݵڵϢ
+         * 
+         * @return ȫͶݳɹtrueѰ
+         */
+        private boolean deliverBatch(final List<RawMessageBrokerInner> batch, final long[] batchOffsets) {
+            if (batch.isEmpty()) {
+                return true;
+            }
 
-            // ָQueueId
-            String queueIdStr = msgInner.getProperty(Message.PROPERTY_REAL_QUEUE_ID);
-            int queueId = Integer.parseInt(queueIdStr);
-            msgInner.setQueueId(queueId);
+            PutMessageResult putMessageResult =
+                    ScheduleMessageService.this.defaultMessageStore.putRawMessages(batch);
+            // ɹ
+            if (putMessageResult != null && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+                ScheduleMessageService.this.updateOffset(this.delayLevel, batchOffsets[batch.size() - 1] + 1);
+                batch.clear();
+                return true;
+            }
 
-            return msgInner;
+            // ʧܣӵһδдϢʼ
+            int i = 0;
+            while (i < batch.size() && batch.get(i).isStored()) {
+                i++;
+            }
+            long failedOffset = batchOffsets[Math.min(i, batch.size() - 1)];
+            log.error("a batch of messages time up, but reput it failed, level: {} offset {}", this.delayLevel,
+                failedOffset);
+            ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(this.delayLevel,
+                failedOffset), DELAY_FOR_A_PERIOD);
+            ScheduleMessageService.this.updateOffset(this.delayLevel, failedOffset);
+            return false;
         }
 
 
@@ -124,6 +208,13 @@ public class ScheduleMessageService {
                 SelectMapedBufferResult bufferCQ = cq.getIndexBuffer(this.offset);
                 if (bufferCQ != null) {
                     try {
+                        final int batchSize =
+                                Math.max(1, ScheduleMessageService.this.defaultMessageStore
+                                    .getMessageStoreConfig().getScheduleMessageBatchSize());
+                        final List<RawMessageBrokerInner> batch = new ArrayList<RawMessageBrokerInner>(batchSize);
+                        // ÿϢӦConsumeQueue offsetʧʱݴ
+                        final long[] batchOffsets = new long[batchSize];
+
                         long nextOffset = offset;
                         int i = 0;
                         for (; i < bufferCQ.getSize(); i += ConsumeQueue.CQStoreUnitSize) {
@@ -137,34 +228,23 @@ public class ScheduleMessageService {
                             nextOffset = offset + (i / ConsumeQueue.CQStoreUnitSize);
 
                             long countdown = deliverTimestamp - System.currentTimeMillis();
-                            // ʱ䵽ˣͶ
+                            // ʱ䵽ˣͶ
                             if (countdown <= 0) {
-                                MessageExt msgExt =
-                                        ScheduleMessageService.this.defaultMessageStore.lookMessageByOffset(offsetPy,
-                                            sizePy);
-                                if (msgExt != null) {
-                                    MessageExtBrokerInner msgInner = this.messageTimeup(msgExt);
-                                    PutMessageResult putMessageResult =
-                                            ScheduleMessageService.this.defaultMessageStore.putMessage(msgInner);
-                                    // ɹ
-                                    if (putMessageResult != null
-                                            && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
-                                        continue;
-                                    }
-                                    // ʧ
-                                    else {
-                                        log.error("a message time up, but reput it failed, topic: {} msgId {}",
-                                            msgExt.getTopic(), msgExt.getMsgId());
-                                        ScheduleMessageService.this.timer.schedule(
-                                            new DeliverDelayedMessageTimerTask(this.delayLevel, nextOffset),
-                                            DELAY_FOR_A_PERIOD);
-                                        ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
+                                RawMessageBrokerInner msgInner = this.messageTimeup(offsetPy, sizePy);
+                                if (msgInner != null) {
+                                    batchOffsets[batch.size()] = nextOffset;
+                                    batch.add(msgInner);
+                                    if (batch.size() >= batchSize && !this.deliverBatch(batch, batchOffsets)) {
                                         return;
                                     }
                                 }
                             }
-                            // ʱδʱ
+                            // ʱδʱ
                             else {
+                                if (!this.deliverBatch(batch, batchOffsets)) {
+                                    return;
+                                }
+
                                 ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(
                                     this.delayLevel, nextOffset), countdown);
                                 ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
@@ -172,6 +252,10 @@ public class ScheduleMessageService {
                             }
                         } // end of for
 
+                        if (!this.deliverBatch(batch, batchOffsets)) {
+                            return;
+                        }
+
                         nextOffset = offset + (i / ConsumeQueue.CQStoreUnitSize);
                         ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(
                             this.delayLevel, nextOffset), DELAY_FOR_A_WHILE);
@@ -0,0 +1,169 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.transaction;
+
+import java.util.Arrays;
+
+
+/**
+ * 洢longĿѰַHashϣ̽⣩װ䣬ÿԪֻռ8ֽ<br>
+ * ڻָ״̬ʱ¼Preparedλãִ֧洢
+ *
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class LongHashSet {
+    // ղ۱ǣλòǸ
+    private static final long EMPTY = -1;
+    private static final float LoadFactor = 0.5f;
+
+    private long[] table;
+    private int mask;
+    private int threshold;
+    private int size = 0;
+
+
+    public LongHashSet(final int initialCapacity) {
+        int capacity = 16;
+        while (capacity * LoadFactor < initialCapacity) {
+            capacity <<= 1;
+        }
+
+        this.allocate(capacity);
+    }
+
+
+    private void allocate(final int capacity) {
+        this.table = new long[capacity];
+        Arrays.fill(this.table, EMPTY);
+        this.mask = capacity - 1;
+        this.threshold = (int) (capacity * LoadFactor);
+    }
+
+
+    private static int hash(final long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+
+    /**
+     * ղ۱ǲΪԪأƻ̽
+     */
+    private static void checkValue(final long value) {
+        if (EMPTY == value) {
+            throw new IllegalArgumentException("LongHashSet not support value " + value);
+        }
+    }
+
+
+    public boolean add(final long value) {
+        checkValue(value);
+        int i = hash(value) & this.mask;
+        while (this.table[i] != EMPTY) {
+            if (this.table[i] == value) {
+                return false;
+            }
+            i = (i + 1) & this.mask;
+        }
+
+        this.table[i] = value;
+        if (++this.size > this.threshold) {
+            this.rehash();
+        }
+        return true;
+    }
+
+
+    public boolean contains(final long value) {
+        checkValue(value);
+        int i = hash(value) & this.mask;
+        while (this.table[i] != EMPTY) {
+            if (this.table[i] == value) {
+                return true;
+            }
+            i = (i + 1) & this.mask;
+        }
+
+        return false;
+    }
+
+
+    public boolean remove(final long value) {
+        checkValue(value);
+        int i = hash(value) & this.mask;
+        while (this.table[i] != value) {
+            if (this.table[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & this.mask;
+        }
+
+        // ͻԪǰƣ֤̽Ͽ
+        int gap = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & this.mask;
+            final long v = this.table[j];
+            if (v == EMPTY) {
+                break;
+            }
+
+            final int home = hash(v) & this.mask;
+            final boolean movable = (gap <= j) ? (home <= gap || home > j) : (home <= gap && home > j);
+            if (movable) {
+                this.table[gap] = v;
+                gap = j;
+            }
+        }
+
+        this.table[gap] = EMPTY;
+        this.size--;
+        return true;
+    }
+
+
+    private void rehash() {
+        final long[] old = this.table;
+        this.allocate(old.length << 1);
+        this.size = 0;
+        for (long v : old) {
+            if (v != EMPTY) {
+                this.add(v);
+            }
+        }
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public boolean isEmpty() {
+        return 0 == this.size;
+    }
+
+
+    public long[] toArray() {
+        final long[] result = new long[this.size];
+        int n = 0;
+        for (long v : this.table) {
+            if (v != EMPTY) {
+                result[n++] = v;
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * شСԪ
+     */
+    public long[] toSortedArray() {
+        final long[] result = this.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+}
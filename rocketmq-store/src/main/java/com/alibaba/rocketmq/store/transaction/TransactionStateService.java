@@ -4,16 +4,26 @@
 package com.alibaba.rocketmq.store.transaction;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alibaba.rocketmq.common.Message;
-import com.alibaba.rocketmq.common.MessageExt;
+import com.alibaba.rocketmq.common.MessageDecoder;
 import com.alibaba.rocketmq.common.MixAll;
 import com.alibaba.rocketmq.common.sysflag.MessageSysFlag;
 import com.alibaba.rocketmq.store.ConsumeQueue;
@@ -21,6 +31,8 @@ import com.alibaba.rocketmq.store.DefaultMessageStore;
 import com.alibaba.rocketmq.store.MapedFile;
 import com.alibaba.rocketmq.store.MapedFileQueue;
 import com.alibaba.rocketmq.store.SelectMapedBufferResult;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
 
 
 /**
@@ -56,6 +68,17 @@ public class TransactionStateService {
     // State Table Offsetʱ
     private final AtomicLong tranStateTableOffset = new AtomicLong(0);
 
+    // ʱزPrepared
+    private final Timer timer = new Timer("CheckTransactionMessageTimer", true);
+    // زȣλ֮ǰѾtsOffset
+    private final AtomicLong checkOffset = new AtomicLong(0);
+    // һɨ跢ֵĳʱPrepared
+    private volatile long preparedTimeoutCount = 0;
+    // ѻزĻزԼ´λزʱ䣬tsOffset -> [times, nextCheckTimestamp]ֻڶʱ߳з
+    private final HashMap<Long, long[]> checkTimesTable = new HashMap<Long, long[]>();
+    // زӱĴ
+    private static final int MaxCheckBackoffShift = 6;
+
 
     public TransactionStateService(final DefaultMessageStore defaultMessageStore) {
         this.defaultMessageStore = defaultMessageStore;
@@ -77,17 +100,206 @@ public class TransactionStateService {
         boolean result = this.tranRedoLog.load();
         result = result && this.tranStateTable.load();
 
+        String str =
+                MixAll.file2String(this.defaultMessageStore.getMessageStoreConfig()
+                    .getTranStateTableCheckOffsetStorePath());
+        if (str != null) {
+            try {
+                this.checkOffset.set(Long.parseLong(str.trim()));
+                log.info("load transaction check offset, {}", this.checkOffset.get());
+            }
+            catch (NumberFormatException e) {
+                log.warn("load transaction check offset exception, " + str, e);
+            }
+        }
+
         return result;
     }
 
 
+    public void start() {
+        this.timer.scheduleAtFixedRate(new TimerTask() {
+
+            @Override
+            public void run() {
+                try {
+                    TransactionStateService.this.checkPreparedTransaction();
+                    TransactionStateService.this.flushCheckOffset();
+                }
+                catch (Exception e) {
+                    log.error("checkPreparedTransaction exception", e);
+                }
+            }
+        }, 1000 * 60, this.defaultMessageStore.getMessageStoreConfig().getCheckTransactionMessageTimerInterval());
+    }
+
+
+    public void shutdown() {
+        this.timer.cancel();
+        this.flushCheckOffset();
+    }
+
+
+    private void flushCheckOffset() {
+        boolean result =
+                MixAll.string2File(String.valueOf(this.checkOffset.get()), this.defaultMessageStore
+                    .getMessageStoreConfig().getTranStateTableCheckOffsetStorePath());
+        if (!result) {
+            log.warn("flush transaction check offset failed, {}", this.checkOffset.get());
+        }
+    }
+
+
+    /**
+     * ӻزȿʼɨState TableԳʱδPreparedز<br>
+     * زProducer Group飬ÿزcheckTransactionMessageMaxNumsPerRound<br>
+     * ͬһÿλزӱcheckTransactionMessageMaxTimesκز
+     */
+    private void checkPreparedTransaction() {
+        final MessageStoreConfig config = this.defaultMessageStore.getMessageStoreConfig();
+        // SlaveûProducerӣҪز
+        if (BrokerRole.SLAVE == config.getBrokerRole()) {
+            return;
+        }
+
+        final long minOffset = this.tranStateTable.getMinOffset() / TSStoreUnitSize;
+        final long maxOffset = this.tranStateTable.getMaxOffset() / TSStoreUnitSize;
+        // ļѾɾز
+        if (this.checkOffset.get() < minOffset) {
+            this.checkOffset.set(minOffset);
+        }
+
+        // State Tableеʱ䵥λΪ
+        final long timeoutPoint = (System.currentTimeMillis() - config.getCheckTransactionMessageTimeout()) / 1000;
+        final int maxNums = config.getCheckTransactionMessageMaxNumsPerRound();
+        final int maxTimes = config.getCheckTransactionMessageMaxTimes();
+        final long now = System.currentTimeMillis();
+        final HashMap<Integer /* group hash code */, List<long[]>> checkTable =
+                new HashMap<Integer, List<long[]>>();
+
+        long timeoutCount = 0;
+        int checkNums = 0;
+        boolean allOver = true;
+        boolean scanOver = false;
+        long tsOffset = this.checkOffset.get();
+        while (!scanOver && tsOffset < maxOffset) {
+            SelectMapedBufferResult result = this.findTransactionBuffer(tsOffset);
+            if (null == result) {
+                break;
+            }
+
+            try {
+                final ByteBuffer byteBuffer = result.getByteBuffer();
+                for (int i = 0; i + TSStoreUnitSize <= result.getSize(); i += TSStoreUnitSize, tsOffset++) {
+                    final long clOffset = byteBuffer.getLong();
+                    final int size = byteBuffer.getInt();
+                    final int timestamp = byteBuffer.getInt();
+                    final int groupHashCode = byteBuffer.getInt();
+                    final int state = byteBuffer.getInt();
+
+                    // Ѿ֮ǰҲˣƽز
+                    if (MessageSysFlag.TransactionPreparedType != state) {
+                        if (allOver) {
+                            this.checkOffset.set(tsOffset + 1);
+                        }
+                        continue;
+                    }
+
+                    // State Tableմ洢ʱ˳д룬δʱ񼴿ɽɨ
+                    if (timestamp > timeoutPoint || checkNums >= maxNums) {
+                        scanOver = true;
+                        break;
+                    }
+
+                    timeoutCount++;
+
+                    // زProducerѾڣƽز
+                    final long[] checkTimes = this.checkTimesTable.get(tsOffset);
+                    if (checkTimes != null && checkTimes[0] >= maxTimes) {
+                        if (allOver) {
+                            this.checkOffset.set(tsOffset + 1);
+                        }
+                        continue;
+                    }
+
+                    allOver = false;
+                    // زδ
+                    if (checkTimes != null && now < checkTimes[1]) {
+                        continue;
+                    }
+
+                    checkNums++;
+
+                    List<long[]> checkList = checkTable.get(groupHashCode);
+                    if (null == checkList) {
+                        checkList = new ArrayList<long[]>();
+                        checkTable.put(groupHashCode, checkList);
+                    }
+                    checkList.add(new long[] { tsOffset, clOffset, size });
+                }
+            }
+            finally {
+                result.release();
+            }
+        }
+
+        this.preparedTimeoutCount = timeoutCount;
+
+        final TransactionCheckExecuter transactionCheckExecuter =
+                this.defaultMessageStore.getTransactionCheckExecuter();
+        if (transactionCheckExecuter != null) {
+            for (Map.Entry<Integer, List<long[]>> entry : checkTable.entrySet()) {
+                for (long[] item : entry.getValue()) {
+                    transactionCheckExecuter.gotoCheck(entry.getKey(), item[0], item[1], (int) item[2]);
+                    this.defaultMessageStore.getStoreStatsService().getCheckTransactionTimesTotal()
+                        .incrementAndGet();
+                    this.recordCheckTimes(item[0], item[1], now, maxTimes,
+                        config.getCheckTransactionMessageTimerInterval());
+                }
+            }
+        }
+
+        // ز֮ǰ񲻻ɨ赽
+        for (Iterator<Long> it = this.checkTimesTable.keySet().iterator(); it.hasNext();) {
+            if (it.next() < this.checkOffset.get()) {
+                it.remove();
+            }
+        }
+
+        if (timeoutCount > 0) {
+            log.info("check prepared transaction, check offset: {} timeout count: {} group count: {}",
+                this.checkOffset.get(), timeoutCount, checkTable.size());
+        }
+    }
+
+
+    private void recordCheckTimes(final long tsOffset, final long clOffset, final long now, final int maxTimes,
+            final long interval) {
+        long[] checkTimes = this.checkTimesTable.get(tsOffset);
+        if (null == checkTimes) {
+            checkTimes = new long[2];
+            this.checkTimesTable.put(tsOffset, checkTimes);
+        }
+
+        checkTimes[0]++;
+        checkTimes[1] = now + (interval << Math.min(checkTimes[0] - 1, MaxCheckBackoffShift));
+        if (checkTimes[0] >= maxTimes) {
+            log.warn("check prepared transaction " + checkTimes[0] + " times, give up, tsOffset: " + tsOffset
+                    + " clOffset: " + clOffset);
+        }
+    }
+
+
     public int deleteExpiredStateFile(long offset) {
         int cnt = this.tranStateTable.deleteExpiredFileByOffset(offset, TSStoreUnitSize);
         return cnt;
     }
 
 
-    public void recoverStateTable(final boolean lastExitOK) {
+    /**
+     * @return ؽʧܷfalseʱᶪʧPrepared
+     */
+    public boolean recoverStateTable(final boolean lastExitOK) {
         if (lastExitOK) {
             this.recoverStateTableNormal();
         }
@@ -95,66 +307,194 @@ public class TransactionStateService {
             // һɾState Table
             this.tranStateTable.destroy();
             // ڶͨRedoLogȫָStateTable
-            this.recreateStateTable();
+            if (!this.recreateStateTable()) {
+                return false;
+            }
+            // StateTableؽλ÷仯ͷʼز
+            this.checkOffset.set(0);
         }
+
+        return true;
     }
 
 
-    private void recreateStateTable() {
+    private boolean recreateStateTable() {
         this.tranStateTable =
                 new MapedFileQueue(defaultMessageStore.getMessageStoreConfig().getTranStateTableStorePath(),
                     defaultMessageStore.getMessageStoreConfig().getTranStateTableMapedFileSize(),
                     defaultMessageStore.getAllocateMapedFileService());
 
-        final TreeSet<Long> preparedItemSet = new TreeSet<Long>();
-
-        // һͷɨRedoLog
+        // һRedoLogļɨ裬ÿļõļδPreparedԼ֮ǰļе
         final long minOffset = this.tranRedoLog.getMinOffsetInQuque();
-        long processOffset = minOffset;
-        while (true) {
-            SelectMapedBufferResult bufferConsumeQueue = this.tranRedoLog.getIndexBuffer(processOffset);
-            if (bufferConsumeQueue != null) {
+        final long maxOffset = this.tranRedoLog.getMaxOffsetInQuque();
+        final List<Long> fileStartOffsets = new ArrayList<Long>();
+        for (long offset = minOffset; offset < maxOffset; offset = this.tranRedoLog.rollNextFile(offset)) {
+            fileStartOffsets.add(offset);
+        }
+
+        LongHashSet preparedItemSet;
+        try {
+            preparedItemSet = this.scanRedoLogParallel(fileStartOffsets);
+        }
+        catch (Exception e) {
+            log.error("scan transaction redolog in parallel exception, scan again sequentially", e);
+            try {
+                preparedItemSet = new LongHashSet(1024);
+                for (Long startOffset : fileStartOffsets) {
+                    this.mergeScanResult(preparedItemSet, this.scanRedoLogFile(startOffset));
+                }
+            }
+            catch (Exception e1) {
+                log.error("scan transaction redolog exception", e1);
+                return false;
+            }
+        }
+
+        log.info("scan transaction redolog over, End offset: {},  Prepared Transaction Count: {}", maxOffset,
+            preparedItemSet.size());
+
+        // ؽStateTableֻȡϢеĹ̶ֶԼԣķл
+        final long[] preparedOffsets = preparedItemSet.toSortedArray();
+        for (long offset : preparedOffsets) {
+            SelectMapedBufferResult result = this.defaultMessageStore.selectOneMessageByOffset(offset);
+            if (result != null) {
                 try {
-                    long i = 0;
-                    for (; i < bufferConsumeQueue.getSize(); i += ConsumeQueue.CQStoreUnitSize) {
-                        long offsetMsg = bufferConsumeQueue.getByteBuffer().getLong();
-                        int sizeMsg = bufferConsumeQueue.getByteBuffer().getInt();
-                        long tagsCode = bufferConsumeQueue.getByteBuffer().getLong();
-
-                        // Prepared
-                        if (TransactionStateService.PreparedMessageTagsCode == tagsCode) {
-                            preparedItemSet.add(offsetMsg);
-                        }
-                        // Commit/Rollback
-                        else {
-                            preparedItemSet.remove(tagsCode);
-                        }
+                    final ByteBuffer byteBuffer = result.getByteBuffer();
+                    final int size = byteBuffer.getInt(0);
+                    final long storeTimestamp = byteBuffer.getLong(MessageDecoder.MessageStoreTimestampPostion);
+                    final String producerGroup = this.readProducerGroup(byteBuffer);
+                    if (null == producerGroup) {
+                        log.warn("recreateStateTable: the prepared message has no producer group, offset: {}",
+                            offset);
+                        continue;
                     }
 
-                    processOffset += i;
+                    if (!this.appendPreparedTransaction(offset, size, (int) (storeTimestamp / 1000),
+                        producerGroup.hashCode())) {
+                        log.error("recreateStateTable: append prepared transaction failed, offset: {}", offset);
+                        return false;
+                    }
                 }
                 finally {
-                    // ͷԴ
-                    bufferConsumeQueue.release();
+                    result.release();
                 }
             }
-            else {
-                break;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * ļɨRedoLogκһļɨʧܶ׳쳣
+     */
+    private LongHashSet scanRedoLogParallel(final List<Long> fileStartOffsets) throws Exception {
+        final LongHashSet preparedItemSet = new LongHashSet(1024);
+        if (!fileStartOffsets.isEmpty()) {
+            final int threadNums =
+                    Math.min(fileStartOffsets.size(), Runtime.getRuntime().availableProcessors());
+            final ExecutorService executorService =
+                    Executors.newFixedThreadPool(threadNums, new ThreadFactory() {
+                        private AtomicInteger threadIndex = new AtomicInteger(0);
+
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "RecreateStateTableThread_" + this.threadIndex.incrementAndGet());
+                        }
+                    });
+
+            try {
+                final List<Future<LongHashSet[]>> futures = new ArrayList<Future<LongHashSet[]>>();
+                for (final Long startOffset : fileStartOffsets) {
+                    futures.add(executorService.submit(new Callable<LongHashSet[]>() {
+                        @Override
+                        public LongHashSet[] call() throws Exception {
+                            return TransactionStateService.this.scanRedoLogFile(startOffset);
+                        }
+                    }));
+                }
+
+                // ڶļ˳ϲļеCommit/RollbackֻܽǰļеPrepared
+                for (Future<LongHashSet[]> future : futures) {
+                    this.mergeScanResult(preparedItemSet, future.get());
+                }
+            }
+            finally {
+                executorService.shutdown();
             }
         }
 
-        log.info("scan transaction redolog over, End offset: {},  Prepared Transaction Count: {}", processOffset,
-            preparedItemSet.size());
-        // ڶؽStateTable
-        Iterator<Long> it = preparedItemSet.iterator();
-        while (it.hasNext()) {
-            Long offset = it.next();
-            MessageExt msgExt = this.defaultMessageStore.lookMessageByOffset(offset);
-            if (msgExt != null) {
-                this.appendPreparedTransaction(msgExt.getCommitLogOffset(), msgExt.getStoreSize(), (int) (msgExt
-                    .getStoreTimestamp() / 1000), msgExt.getProperty(Message.PROPERTY_PRODUCER_GROUP).hashCode());
+        return preparedItemSet;
+    }
+
+
+    private void mergeScanResult(final LongHashSet preparedItemSet, final LongHashSet[] result) {
+        for (long offset : result[0].toArray()) {
+            preparedItemSet.add(offset);
+        }
+
+        for (long offset : result[1].toArray()) {
+            preparedItemSet.remove(offset);
+        }
+    }
+
+
+    /**
+     * ɨһRedoLogļ
+     * 
+     * @return [0] ļδPrepared[1] ļڽPreparedڱļڵ
+     */
+    private LongHashSet[] scanRedoLogFile(final long startOffset) {
+        final LongHashSet preparedSet = new LongHashSet(1024);
+        final LongHashSet endedSet = new LongHashSet(1024);
+        SelectMapedBufferResult bufferConsumeQueue = this.tranRedoLog.getIndexBuffer(startOffset);
+        if (bufferConsumeQueue != null) {
+            try {
+                final ByteBuffer byteBuffer = bufferConsumeQueue.getByteBuffer();
+                for (int i = 0; i + ConsumeQueue.CQStoreUnitSize <= bufferConsumeQueue.getSize(); i +=
+                        ConsumeQueue.CQStoreUnitSize) {
+                    long offsetMsg = byteBuffer.getLong();
+                    byteBuffer.getInt();
+                    long tagsCode = byteBuffer.getLong();
+
+                    // Prepared
+                    if (TransactionStateService.PreparedMessageTagsCode == tagsCode) {
+                        preparedSet.add(offsetMsg);
+                    }
+                    // Commit/Rollback
+                    else if (!preparedSet.remove(tagsCode)) {
+                        endedSet.add(tagsCode);
+                    }
+                }
+            }
+            finally {
+                // ͷԴ
+                bufferConsumeQueue.release();
             }
         }
+
+        return new LongHashSet[] { preparedSet, endedSet };
+    }
+
+
+    /**
+     * ֱӴCommitLog洢ʽжȡProducer Group
+     */
+    private String readProducerGroup(final ByteBuffer byteBuffer) {
+        final int bodyLen = byteBuffer.getInt(MessageDecoder.MessageBodyLengthPostion);
+        final int topicLenPos = MessageDecoder.MessageBodyPostion + bodyLen;
+        final byte topicLen = byteBuffer.get(topicLenPos);
+        final int propertiesLenPos = topicLenPos + 1 + topicLen;
+        final short propertiesLength = byteBuffer.getShort(propertiesLenPos);
+        if (propertiesLength <= 0) {
+            return null;
+        }
+
+        final byte[] properties = new byte[propertiesLength];
+        byteBuffer.position(propertiesLenPos + 2);
+        byteBuffer.get(properties);
+        return MessageDecoder.getProperty(new String(properties), Message.PROPERTY_PRODUCER_GROUP);
     }
 
 
@@ -318,6 +658,25 @@ public class TransactionStateService {
     }
 
 
+    public long getCheckOffset() {
+        return this.checkOffset.get();
+    }
+
+
+    /**
+     * زState Table
+     */
+    public long getCheckOffsetBehind() {
+        long behind = this.tranStateTable.getMaxOffset() / TSStoreUnitSize - this.checkOffset.get();
+        return behind > 0 ? behind : 0;
+    }
+
+
+    public long getPreparedTimeoutCount() {
+        return preparedTimeoutCount;
+    }
+
+
     public AtomicLong getTranStateTableOffset() {
         return tranStateTableOffset;
     }
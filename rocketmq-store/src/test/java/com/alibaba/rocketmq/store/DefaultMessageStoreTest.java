@@ -1,5 +1,6 @@
 package com.alibaba.rocketmq.store;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.net.InetAddress;
@@ -171,4 +172,54 @@ public class DefaultMessageStoreTest {
         master.destroy();
         System.out.println("================================================================");
     }
+
+
+    @Test
+    public void test_check_in_disk_by_consume_offset() throws Exception {
+        QUEUE_TOTAL = 1;
+        QueueId.set(0);
+        MessageBody = new byte[1024];
+
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 256);
+        messageStoreConfig.setMapedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+        // ڴֻ0%ϢеϢΪڴ
+        messageStoreConfig.setAccessMessageInMemoryMaxRatio(0);
+
+        MessageStore master = new DefaultMessageStore(messageStoreConfig);
+        assertTrue(master.load());
+        master.start();
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                MessageExtBrokerInner msg = buildMessage();
+                // PreparedϢConsume QueueʹͨϢ
+                msg.setSysFlag(0);
+                assertTrue(master.putMessage(msg).isOk());
+            }
+
+            while (master.getMaxOffsetInQuque("AAA", 0) < 10) {
+                Thread.sleep(10);
+            }
+
+            // һϢ֮ǰĶΪڴ
+            assertTrue(master.checkInDiskByConsumeOffset("AAA", 0, 0));
+            assertTrue(master.checkInDiskByConsumeOffset("AAA", 0, 9));
+
+            // ȴϢȡԼڵĶ
+            assertFalse(master.checkInDiskByConsumeOffset("AAA", 0, 10));
+            assertFalse(master.checkInDiskByConsumeOffset("AAA", 0, -1));
+            assertFalse(master.checkInDiskByConsumeOffset("AAA", 1, 0));
+
+            // ڴ㹻ʱڴ
+            messageStoreConfig.setAccessMessageInMemoryMaxRatio(100);
+            assertFalse(master.checkInDiskByConsumeOffset("AAA", 0, 0));
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
 }
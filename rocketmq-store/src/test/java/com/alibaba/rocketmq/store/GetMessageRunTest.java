@@ -0,0 +1,117 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.common.MessageDecoder;
+import com.alibaba.rocketmq.common.MessageExt;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * ϢʱϢϲȡ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class GetMessageRunTest {
+    private static final String Topic = "GET_MESSAGE_RUN";
+    private static SocketAddress BornHost;
+    private static SocketAddress StoreHost;
+    private static byte[] MessageBody;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        StoreHost = new InetSocketAddress(InetAddress.getLocalHost(), 8123);
+        BornHost = new InetSocketAddress(InetAddress.getByName("10.232.102.184"), 0);
+        MessageBody = new byte[64];
+    }
+
+
+    private static MessageExtBrokerInner buildMessage(final int queueId) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(Topic);
+        msg.setTags("TAG1");
+        msg.setBody(MessageBody);
+        msg.setQueueId(queueId);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(StoreHost);
+        msg.setBornHost(BornHost);
+        return msg;
+    }
+
+
+    @Test
+    public void test_coalesce_contiguous_messages() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setMapedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+
+        DefaultMessageStore master = new DefaultMessageStore(messageStoreConfig);
+        assertTrue(master.load());
+        master.start();
+
+        try {
+            // 0ÿ10Ϣһ1ϢҿԽCommitLogļ
+            int total = 0;
+            for (int i = 0; i < 2000; i++) {
+                assertTrue(master.putMessage(buildMessage(0)).isOk());
+                total++;
+                if (i % 10 == 9) {
+                    assertTrue(master.putMessage(buildMessage(1)).isOk());
+                }
+            }
+
+            while (master.getMaxOffsetInQuque(Topic, 0) < total) {
+                Thread.sleep(10);
+            }
+
+            long offset = 0;
+            int runTotal = 0;
+            while (offset < total) {
+                GetMessageResult result = master.getMessage(Topic, 0, offset, 32, null);
+                assertEquals(GetMessageStatus.FOUND, result.getStatus());
+                assertEquals(result.getMessageCount(), result.getMessageBufferList().size());
+                assertTrue(result.getTransferBufferList().size() < result.getMessageCount());
+
+                // ÿϢBuffer
+                int transferSize = 0;
+                for (ByteBuffer bb : result.getMessageBufferList()) {
+                    MessageExt msgExt = MessageDecoder.decode(bb);
+                    assertEquals(0, msgExt.getQueueId());
+                    assertEquals(offset++, msgExt.getQueueOffset());
+                }
+
+                // ϲBufferϢһ
+                for (ByteBuffer bb : result.getTransferBufferList()) {
+                    transferSize += bb.remaining();
+                }
+                assertEquals(result.getBufferTotalSize(), transferSize);
+                assertEquals(offset, result.getNextBeginOffset());
+
+                runTotal += result.getTransferBufferList().size();
+                result.release();
+            }
+
+            // ÿ10һΣļʱһ
+            assertTrue(runTotal < total / 5);
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
+}
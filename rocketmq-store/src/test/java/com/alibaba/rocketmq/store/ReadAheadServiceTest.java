@@ -0,0 +1,132 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * ϢڴʱԤϢ
+ *
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class ReadAheadServiceTest {
+    private static final String Topic = "READ_AHEAD";
+    private static SocketAddress BornHost;
+    private static SocketAddress StoreHost;
+    private static byte[] MessageBody;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        StoreHost = new InetSocketAddress(InetAddress.getLocalHost(), 8123);
+        BornHost = new InetSocketAddress(InetAddress.getByName("10.232.102.184"), 0);
+        MessageBody = new byte[1024];
+    }
+
+
+    private static MessageExtBrokerInner buildMessage(final int queueId) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(Topic);
+        msg.setTags("TAG1");
+        msg.setBody(MessageBody);
+        msg.setQueueId(queueId);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(StoreHost);
+        msg.setBornHost(BornHost);
+        return msg;
+    }
+
+
+    private static void waitReadAheadTimes(final ReadAheadService service, final long times) throws Exception {
+        for (int i = 0; i < 500 && service.getReadAheadTimes().get() < times; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(service.getReadAheadTimes().get() >= times);
+    }
+
+
+    @Test
+    public void test_read_ahead_on_disk() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 256);
+        messageStoreConfig.setMapedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+        // ϢΪڴ
+        messageStoreConfig.setAccessMessageInMemoryMaxRatio(0);
+        messageStoreConfig.setReadAheadBytesOnMessageInDisk(1024 * 64);
+
+        DefaultMessageStore master = new DefaultMessageStore(messageStoreConfig);
+        assertTrue(master.load());
+        master.start();
+
+        try {
+            // 01Ϣ洢
+            int total = 0;
+            for (int i = 0; i < 500; i++) {
+                assertTrue(master.putMessage(buildMessage(0)).isOk());
+                assertTrue(master.putMessage(buildMessage(1)).isOk());
+                total++;
+            }
+
+            while (master.getMaxOffsetInQuque(Topic, 0) < total) {
+                Thread.sleep(10);
+            }
+
+            ReadAheadService service = master.getReadAheadService();
+
+            // Ϣڴ̣ȡޣҴԤ
+            GetMessageResult result = master.getMessage(Topic, 0, 0, 32, null);
+            assertEquals(GetMessageStatus.FOUND, result.getStatus());
+            assertEquals(messageStoreConfig.getMaxTransferCountOnMessageInDisk(), result.getMessageCount());
+            assertTrue(result.isSuggestPullingFromSlave());
+            long nextBeginOffset = result.getNextBeginOffset();
+            result.release();
+            waitReadAheadTimes(service, 1);
+
+            // Ԥõֽ
+            long pages = service.getReadAheadPages().get();
+            assertTrue(pages > 0);
+            assertTrue(pages <= messageStoreConfig.getReadAheadBytesOnMessageInDisk() / MapedFile.OS_PAGE_SIZE);
+
+            // ԤϢ󲿷ֻûбȡظԤ
+            assertFalse(service.putRequest(Topic, 0, nextBeginOffset + 1));
+
+            // ȡԤĺΣϴνλüԤ
+            long offset = nextBeginOffset;
+            while (offset < total && service.getReadAheadTimes().get() < 2) {
+                result = master.getMessage(Topic, 0, offset, 32, null);
+                assertEquals(GetMessageStatus.FOUND, result.getStatus());
+                offset = result.getNextBeginOffset();
+                result.release();
+            }
+            waitReadAheadTimes(service, 2);
+            // ȴȡύԤ
+            Thread.sleep(100);
+            assertTrue(service.getReadAheadPages().get() > pages);
+            assertEquals(0, service.getReadAheadDroppedTimes().get());
+
+            // ԤOffsetԽ粻
+            long times = service.getReadAheadTimes().get();
+            assertTrue(service.putRequest(Topic, 1, total * 2));
+            waitReadAheadTimes(service, times + 1);
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.common.MessageExt;
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.PutMessageResult;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * Slaveȡдļʣ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HABootstrapTest {
+    private static final String Topic = "HA_BOOTSTRAP";
+    private static final int QueueTotal = 4;
+    private static final int ConsumeQueueUnits = 100;
+    private static final int MasterHAPort = 10966;
+    private static final int SlaveHAPort = 10967;
+    private static final int BootstrapPort = 10968;
+    private static SocketAddress BornHost;
+    private static SocketAddress StoreHost;
+    private static byte[] MessageBody;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        StoreHost = new InetSocketAddress(InetAddress.getLocalHost(), 8123);
+        BornHost = new InetSocketAddress(InetAddress.getByName("10.232.102.184"), 0);
+        MessageBody = new byte[1024];
+    }
+
+
+    private static MessageExtBrokerInner buildMessage(final int queueId) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(Topic);
+        msg.setTags("TAG1");
+        msg.setKeys("Hello");
+        msg.setBody(MessageBody);
+        msg.setQueueId(queueId);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(StoreHost);
+        msg.setBornHost(BornHost);
+        return msg;
+    }
+
+
+    private static MessageStoreConfig buildConfig(final String name, final BrokerRole role, final int haPort) {
+        MessageStoreConfig config = SlaveReputTest.buildConfig(name, role, haPort);
+        config.setMapedFileSizeCommitLog(1024 * 1024);
+        config.setMapedFileSizeConsumeQueue(ConsumeQueueUnits * 20);
+        config.setHaBootstrapEnable(true);
+        config.setHaBootstrapListenPort(BootstrapPort);
+        return config;
+    }
+
+
+    private static File createFile(final String dir, final String name) throws IOException {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        assertTrue(file.createNewFile());
+        return file;
+    }
+
+
+    @Test
+    public void test_bootstrap_slave() throws Exception {
+        DefaultMessageStore master =
+                new DefaultMessageStore(buildConfig("bootstrap_master", BrokerRole.ASYNC_MASTER, MasterHAPort));
+        assertTrue(master.load());
+        master.start();
+
+        MessageStoreConfig slaveConfig = buildConfig("bootstrap_slave", BrokerRole.SLAVE, SlaveHAPort);
+        slaveConfig.setMasterAddress("127.0.0.1:" + MasterHAPort);
+        DefaultMessageStore slave = new DefaultMessageStore(slaveConfig);
+
+        try {
+            // MasterĿ¼еķļ䣬SlaveϴβʱļҪ
+            createFile(master.getMessageStoreConfig().getStorePathCommitLog(), "README");
+            File staleTmpFile = createFile(slaveConfig.getStorePathCommitLog(), "00000000000000000000.tmp");
+
+            // дCommitLogļһļдһ
+            long[] wroteOffsets = new long[3500];
+            for (int i = 0; i < wroteOffsets.length; i++) {
+                PutMessageResult result = master.putMessage(buildMessage(i % QueueTotal));
+                assertTrue(result.isOk());
+                wroteOffsets[i] = result.getAppendMessageResult().getWroteOffset();
+            }
+
+            long boundary = master.getMaxPhyOffset() - master.getMaxPhyOffset() % (1024 * 1024);
+            assertTrue(boundary > 0);
+
+            // ȡSlaveCommitLogConsumeQueueͣڱ߽磬ļĩβĿնƲ
+            assertTrue(slave.load());
+            assertFalse(staleTmpFile.exists());
+            assertFalse(HABootstrapClient.markerFile(slaveConfig).exists());
+            assertTrue(slave.getMaxPhyOffset() <= boundary);
+            assertTrue(slave.getMaxPhyOffset() > boundary - MessageBody.length * 2);
+            long[] expectQueueOffsets = new long[QueueTotal];
+            for (int i = 0; i < wroteOffsets.length; i++) {
+                if (wroteOffsets[i] < boundary) {
+                    expectQueueOffsets[i % QueueTotal]++;
+                }
+            }
+            for (int i = 0; i < QueueTotal; i++) {
+                assertEquals(expectQueueOffsets[i], slave.getMaxOffsetInQuque(Topic, i));
+            }
+
+            // ߽֮
+            slave.updateMasterAddress(slaveConfig.getMasterAddress());
+            slave.start();
+            long deadline = System.currentTimeMillis() + 30 * 1000;
+            while (slave.getMaxPhyOffset() < master.getMaxPhyOffset() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(master.getMaxPhyOffset(), slave.getMaxPhyOffset());
+
+            deadline = System.currentTimeMillis() + 30 * 1000;
+            while (slave.getMaxOffsetInQuque(Topic, QueueTotal - 1) < master.getMaxOffsetInQuque(Topic,
+                QueueTotal - 1) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            for (int i = 0; i < QueueTotal; i++) {
+                assertEquals(master.getMaxOffsetInQuque(Topic, i), slave.getMaxOffsetInQuque(Topic, i));
+            }
+
+            for (int i = 0; i < wroteOffsets.length; i += 100) {
+                MessageExt msg = slave.lookMessageByOffset(wroteOffsets[i]);
+                assertEquals(i % QueueTotal, msg.getQueueId());
+                assertEquals(wroteOffsets[i], msg.getCommitLogOffset());
+            }
+        }
+        finally {
+            slave.shutdown();
+            master.shutdown();
+            slave.destroy();
+            master.destroy();
+        }
+    }
+
+
+    @Test
+    public void test_clean_unfinished_bootstrap() throws Exception {
+        MessageStoreConfig config = buildConfig("bootstrap_unfinished", BrokerRole.SLAVE, SlaveHAPort);
+        config.setMasterAddress("127.0.0.1:" + MasterHAPort);
+
+        // ϴͬ˳Ѿȡ˲ļ
+        File fetched = createFile(config.getStorePathCommitLog(), "00000000000001048576");
+        File queueFile = createFile(config.getStorePathConsumeQueue() + File.separator + Topic + File.separator + "0",
+            "00000000000000000000");
+        createFile(config.getStorePathCommitLog(), "00000000000000000000.tmp");
+        assertTrue(HABootstrapClient.markerFile(config).createNewFile());
+        try {
+            assertTrue(HABootstrapClient.needBootstrap(config));
+            assertFalse(fetched.exists());
+            assertFalse(queueFile.exists());
+            assertFalse(HABootstrapClient.markerFile(config).exists());
+            assertEquals(0, new File(config.getStorePathCommitLog()).list().length);
+        }
+        finally {
+            HABootstrapClient.markerFile(config).delete();
+            new DefaultMessageStore(config).destroy();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HashMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.PutMessageResult;
+import com.alibaba.rocketmq.store.SelectMapedBufferResult;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * ѹ䣬SlaveݱMasterȫһ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HACompressTest {
+    private static final String Topic = "HA_COMPRESS";
+    private static final int MasterHAPort = 10964;
+    private static final int SlaveHAPort = 10965;
+    private static final int SmallChunkMasterHAPort = 10974;
+    private static final int SmallChunkSlaveHAPort = 10975;
+    private static SocketAddress BornHost;
+    private static SocketAddress StoreHost;
+    private static byte[] MessageBody;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        StoreHost = new InetSocketAddress(InetAddress.getLocalHost(), 8123);
+        BornHost = new InetSocketAddress(InetAddress.getByName("10.232.102.184"), 0);
+        // ѹϢ
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 1024; i++) {
+            sb.append("{\"orderId\":").append(i).append(",\"status\":\"PAID\"}");
+        }
+        MessageBody = sb.toString().getBytes();
+    }
+
+
+    private static MessageExtBrokerInner buildMessage() {
+        return buildMessage(MessageBody);
+    }
+
+
+    private static MessageExtBrokerInner buildMessage(final byte[] body) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(Topic);
+        msg.setTags("TAG1");
+        msg.setBody(body);
+        msg.setQueueId(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(StoreHost);
+        msg.setBornHost(BornHost);
+        return msg;
+    }
+
+
+    @Test
+    public void test_compress_transfer() throws Exception {
+        MessageStoreConfig masterConfig =
+                SlaveReputTest.buildConfig("compress_master", BrokerRole.ASYNC_MASTER, MasterHAPort);
+        masterConfig.setHaTransferCompressEnable(true);
+        MessageStoreConfig slaveConfig = SlaveReputTest.buildConfig("compress_slave", BrokerRole.SLAVE, SlaveHAPort);
+        slaveConfig.setHaTransferCompressEnable(true);
+
+        DefaultMessageStore master = new DefaultMessageStore(masterConfig);
+        DefaultMessageStore slave = new DefaultMessageStore(slaveConfig);
+        slave.updateMasterAddress("127.0.0.1:" + MasterHAPort);
+        assertTrue(master.load());
+        assertTrue(slave.load());
+        master.start();
+        slave.start();
+
+        try {
+            // SlaveǰдһϢ֤0ʼ
+            assertTrue(master.putMessage(buildMessage()).isOk());
+            long deadline = System.currentTimeMillis() + 30 * 1000;
+            while (slave.getMaxPhyOffset() < master.getMaxPhyOffset() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            for (int i = 0; i < 20000; i++) {
+                assertTrue(master.putMessage(buildMessage()).isOk());
+            }
+
+            deadline = System.currentTimeMillis() + 30 * 1000;
+            while (slave.getMaxPhyOffset() < master.getMaxPhyOffset() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // OffsetʼδѹCommitLogռ䣬ֽһ
+            assertEquals(master.getMaxPhyOffset(), slave.getMaxPhyOffset());
+            for (long offset = 0; offset < master.getMaxPhyOffset();) {
+                SelectMapedBufferResult m = master.getCommitLogData(offset);
+                SelectMapedBufferResult s = slave.getCommitLogData(offset);
+                try {
+                    int size = Math.min(m.getSize(), s.getSize());
+                    m.getByteBuffer().limit(size);
+                    s.getByteBuffer().limit(size);
+                    assertEquals(0, m.getByteBuffer().compareTo(s.getByteBuffer()));
+                    offset += size;
+                }
+                finally {
+                    m.release();
+                    s.release();
+                }
+            }
+
+            HashMap<String, String> masterInfo = master.getRuntimeInfo();
+            HashMap<String, String> slaveInfo = slave.getRuntimeInfo();
+            System.out.println("compress ratio: " + masterInfo.get("haCompressRatio") + " compress ns/MB: "
+                    + masterInfo.get("haCompressNanosPerMB") + " decompress ns/MB: "
+                    + slaveInfo.get("haDecompressNanosPerMB"));
+            assertTrue(Double.parseDouble(masterInfo.get("haCompressRatio")) < 0.5);
+            assertEquals(masterInfo.get("haCompressRawBytes"), slaveInfo.get("haDecompressRawBytes"));
+        }
+        finally {
+            slave.shutdown();
+            master.shutdown();
+            slave.destroy();
+            master.destroy();
+        }
+    }
+
+
+    private static void waitSlaveCatchUp(final DefaultMessageStore master, final DefaultMessageStore slave)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30 * 1000;
+        while (slave.getMaxPhyOffset() < master.getMaxPhyOffset() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+
+    /**
+     * ѹֻȴ1~3ֽڣʣС鲻4ֽڵԭʼСֶΣԭ
+     */
+    @Test
+    public void test_compress_small_chunk() throws Exception {
+        MessageStoreConfig masterConfig =
+                SlaveReputTest.buildConfig("compress_small_master", BrokerRole.ASYNC_MASTER,
+                    SmallChunkMasterHAPort);
+        masterConfig.setHaTransferCompressEnable(true);
+        MessageStoreConfig slaveConfig =
+                SlaveReputTest.buildConfig("compress_small_slave", BrokerRole.SLAVE, SmallChunkSlaveHAPort);
+        slaveConfig.setHaTransferCompressEnable(true);
+
+        DefaultMessageStore master = new DefaultMessageStore(masterConfig);
+        DefaultMessageStore slave = new DefaultMessageStore(slaveConfig);
+        slave.updateMasterAddress("127.0.0.1:" + SmallChunkMasterHAPort);
+        assertTrue(master.load());
+        assertTrue(slave.load());
+        master.start();
+        slave.start();
+
+        try {
+            PutMessageResult result = master.putMessage(buildMessage());
+            assertTrue(result.isOk());
+            waitSlaveCatchUp(master, slave);
+            assertEquals(master.getMaxPhyOffset(), slave.getMaxPhyOffset());
+
+            // ̶Ϊһ׼ϢĴС֮ÿϢ1~3ֽ
+            int batchSize = result.getAppendMessageResult().getWroteBytes();
+            masterConfig.setHaTransferBatchSize(batchSize);
+            masterConfig.setHaTransferBatchSizeMax(batchSize);
+            for (int extra = 1; extra <= 3; extra++) {
+                byte[] body = new byte[MessageBody.length + extra];
+                System.arraycopy(MessageBody, 0, body, 0, MessageBody.length);
+                result = master.putMessage(buildMessage(body));
+                assertTrue(result.isOk());
+                assertEquals(batchSize + extra, result.getAppendMessageResult().getWroteBytes());
+                waitSlaveCatchUp(master, slave);
+                assertEquals(master.getMaxPhyOffset(), slave.getMaxPhyOffset());
+            }
+
+            SelectMapedBufferResult m = master.getCommitLogData(0);
+            SelectMapedBufferResult s = slave.getCommitLogData(0);
+            try {
+                assertEquals(m.getSize(), s.getSize());
+                assertEquals(0, m.getByteBuffer().compareTo(s.getByteBuffer()));
+            }
+            finally {
+                m.release();
+                s.release();
+            }
+        }
+        finally {
+            slave.shutdown();
+            master.shutdown();
+            slave.destroy();
+            master.destroy();
+        }
+    }
+}
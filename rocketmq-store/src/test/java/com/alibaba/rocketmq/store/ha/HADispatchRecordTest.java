@@ -0,0 +1,211 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.store.ConsumeQueue;
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.DispatchRequest;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.QueryMessageResult;
+import com.alibaba.rocketmq.store.SelectMapedBufferResult;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * SlaveֱʹMasterƵķַ¼ConsumeQueueMasterȫһ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HADispatchRecordTest {
+    private static final String Topic = "HA_DISPATCH_RECORD";
+    private static final String IgnoreIndexTopic = "HA_DISPATCH_RECORD_NO_INDEX";
+    private static final int QueueTotal = 4;
+    private static final int MasterHAPort = 10969;
+    private static final int SlaveHAPort = 10970;
+    private static SocketAddress BornHost;
+    private static SocketAddress StoreHost;
+    private static byte[] MessageBody;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        StoreHost = new InetSocketAddress(InetAddress.getLocalHost(), 8123);
+        BornHost = new InetSocketAddress(InetAddress.getByName("10.232.102.184"), 0);
+        MessageBody = new byte[256];
+    }
+
+
+    private static MessageExtBrokerInner buildMessage(final String topic, final int queueId, final String keys) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(topic);
+        msg.setTags("TAG1");
+        msg.setKeys(keys);
+        msg.setBody(MessageBody);
+        msg.setQueueId(queueId);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(StoreHost);
+        msg.setBornHost(BornHost);
+        return msg;
+    }
+
+
+    @Test
+    public void test_encode_decode() throws Exception {
+        List<DispatchRequest> records = new ArrayList<DispatchRequest>();
+        records.add(new DispatchRequest(Topic, 1, 100, 200, 300, 400, 500, "K1 K2", 4, 600, 700, "PG"));
+        records.add(new DispatchRequest(Topic, 2, 300, 200, 0, 0, 0, null, 0, 0, 0, null));
+
+        int size = 0;
+        for (DispatchRequest req : records) {
+            size += HADispatchRecordQueue.encodeSize(req);
+        }
+        ByteBuffer byteBuffer = ByteBuffer.allocate(size);
+        HADispatchRecordQueue.encode(records, byteBuffer);
+        byteBuffer.flip();
+
+        List<DispatchRequest> decoded = HADispatchRecordQueue.decode(byteBuffer);
+        assertEquals(2, decoded.size());
+        DispatchRequest req = decoded.get(0);
+        assertEquals(Topic, req.getTopic());
+        assertEquals(1, req.getQueueId());
+        assertEquals(100, req.getCommitLogOffset());
+        assertEquals(200, req.getMsgSize());
+        assertEquals(300, req.getTagsCode());
+        assertEquals(400, req.getStoreTimestamp());
+        assertEquals(500, req.getConsumeQueueOffset());
+        assertEquals("K1 K2", req.getKeys());
+        assertEquals(4, req.getSysFlag());
+        assertEquals(600, req.getTranStateTableOffset());
+        assertEquals(700, req.getPreparedTransactionOffset());
+        assertEquals("PG", req.getProducerGroup());
+        assertEquals(null, decoded.get(1).getKeys());
+        assertEquals(null, decoded.get(1).getProducerGroup());
+    }
+
+
+    @Test
+    public void test_record_queue() {
+        HADispatchRecordQueue queue = new HADispatchRecordQueue(8);
+        List<DispatchRequest> records = new ArrayList<DispatchRequest>();
+        for (int i = 0; i < 20; i++) {
+            records.add(new DispatchRequest(Topic, 0, i * 100, 100, 0, 0, i, null, 0, 0, 0, null));
+        }
+        queue.putRecords(records);
+
+        // ֻļ¼Ҽ¼ӦϢendOffset֮ǰ
+        List<DispatchRequest> result = queue.getRecords(0, 1850, 1024 * 1024);
+        assertEquals(1800 - 100, result.get(result.size() - 1).getCommitLogOffset());
+        assertTrue(result.get(0).getCommitLogOffset() >= 1200);
+
+        result = queue.getRecords(1550, 2000, 1024 * 1024);
+        assertEquals(1600, result.get(0).getCommitLogOffset());
+        assertEquals(4, result.size());
+    }
+
+
+    private static void assertConsumeQueueEquals(final DefaultMessageStore master, final DefaultMessageStore slave,
+            final int queueId) {
+        ConsumeQueue m = master.findConsumeQueue(Topic, queueId);
+        ConsumeQueue s = slave.findConsumeQueue(Topic, queueId);
+        long max = master.getMaxOffsetInQuque(Topic, queueId);
+        assertEquals(max, slave.getMaxOffsetInQuque(Topic, queueId));
+        for (long index = 0; index < max;) {
+            SelectMapedBufferResult mr = m.getIndexBuffer(index);
+            SelectMapedBufferResult sr = s.getIndexBuffer(index);
+            try {
+                int size = Math.min(mr.getSize(), sr.getSize());
+                size = (int) Math.min(size, (max - index) * ConsumeQueue.CQStoreUnitSize);
+                mr.getByteBuffer().limit(size);
+                sr.getByteBuffer().limit(size);
+                assertEquals(0, mr.getByteBuffer().compareTo(sr.getByteBuffer()));
+                index += size / ConsumeQueue.CQStoreUnitSize;
+            }
+            finally {
+                mr.release();
+                sr.release();
+            }
+        }
+    }
+
+
+    @Test
+    public void test_replicate_dispatch_records() throws Exception {
+        MessageStoreConfig masterConfig =
+                SlaveReputTest.buildConfig("record_master", BrokerRole.ASYNC_MASTER, MasterHAPort);
+        masterConfig.setHaReplicateDispatchEnable(true);
+        MessageStoreConfig slaveConfig = SlaveReputTest.buildConfig("record_slave", BrokerRole.SLAVE, SlaveHAPort);
+        slaveConfig.setHaReplicateDispatchEnable(true);
+        slaveConfig.setSlaveIndexIgnoreTopics(IgnoreIndexTopic);
+
+        DefaultMessageStore master = new DefaultMessageStore(masterConfig);
+        DefaultMessageStore slave = new DefaultMessageStore(slaveConfig);
+        slave.updateMasterAddress("127.0.0.1:" + MasterHAPort);
+        assertTrue(master.load());
+        assertTrue(slave.load());
+        master.start();
+        slave.start();
+
+        try {
+            // SlaveǰдһϢ֤0ʼ
+            assertTrue(master.putMessage(buildMessage(Topic, 0, "FIRST")).isOk());
+            long deadline = System.currentTimeMillis() + 30 * 1000;
+            while (slave.getMaxPhyOffset() < master.getMaxPhyOffset() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            for (int i = 0; i < 10000; i++) {
+                assertTrue(master.putMessage(buildMessage(Topic, i % QueueTotal, "KEY" + i)).isOk());
+                if (i % 100 == 0) {
+                    assertTrue(master.putMessage(buildMessage(IgnoreIndexTopic, 0, "KEY" + i)).isOk());
+                }
+            }
+
+            deadline = System.currentTimeMillis() + 30 * 1000;
+            while (slave.getMaxOffsetInQuque(Topic, QueueTotal - 1) < master.getMaxOffsetInQuque(Topic,
+                QueueTotal - 1) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            for (int i = 0; i < QueueTotal; i++) {
+                assertConsumeQueueEquals(master, slave, i);
+            }
+
+            HashMap<String, String> slaveInfo = slave.getRuntimeInfo();
+            System.out.println("dispatch record applied: " + slaveInfo.get("slaveDispatchRecordApplied")
+                    + " parsed: " + slaveInfo.get("slaveDispatchParsed"));
+            assertEquals("0", slaveInfo.get("slaveDispatchRecordDiverge"));
+            assertTrue(Long.parseLong(slaveInfo.get("slaveDispatchRecordApplied")) > 9000);
+
+            // ַ¼KeySlaveճԵTopic
+            Thread.sleep(500);
+            QueryMessageResult result = slave.queryMessage(Topic, "KEY5000", 32, 0, Long.MAX_VALUE);
+            assertEquals(1, result.getMessageBufferList().size());
+            result.release();
+            result = slave.queryMessage(IgnoreIndexTopic, "KEY5000", 32, 0, Long.MAX_VALUE);
+            assertEquals(0, result.getMessageBufferList().size());
+            result.release();
+        }
+        finally {
+            slave.shutdown();
+            master.shutdown();
+            slave.destroy();
+            master.destroy();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.alibaba.rocketmq.store.CommitLog.GroupCommitRequest;
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * ͬ˫дȴʱ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HAGroupTransferTest {
+    private static final int MasterHAPort = 10973;
+    private static final int SyncFlushTimeout = 1000;
+
+
+    private static long waitTransfer(final DefaultMessageStore master, final long nextOffset) {
+        GroupCommitRequest request = master.getCommitLog().new GroupCommitRequest(nextOffset);
+        master.getHaService().putRequest(request);
+
+        long begin = System.currentTimeMillis();
+        assertFalse(request.waitForFlush(SyncFlushTimeout * 3));
+        return System.currentTimeMillis() - begin;
+    }
+
+
+    @Test
+    public void test_timeout_after_idle() throws Exception {
+        MessageStoreConfig config =
+                SlaveReputTest.buildConfig("transfer_master", BrokerRole.SYNC_MASTER, MasterHAPort);
+        config.setSyncFlushTimeout(SyncFlushTimeout);
+        final DefaultMessageStore master = new DefaultMessageStore(config);
+        assertTrue(master.load());
+        master.start();
+
+        try {
+            // ûSlaveʱʱʧܣ֮ҲܱǰΪʱ
+            for (int i = 0; i < 3; i++) {
+                Thread.sleep(SyncFlushTimeout * 2);
+                long elapsed = waitTransfer(master, 1024 * (i + 1));
+                assertTrue("elapsed " + elapsed, elapsed >= SyncFlushTimeout - 100);
+                assertTrue("elapsed " + elapsed, elapsed < SyncFlushTimeout * 2);
+            }
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.junit.Test;
+
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.GetMessageResult;
+import com.alibaba.rocketmq.store.GetMessageStatus;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * Slaveַȣͻ˴SlaveϢ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HASlaveReadRouteTest {
+    private static final String Topic = "SLAVE_READ_ROUTE";
+    private static final int MasterHAPort = 10971;
+    private static final int SlaveHAPort = 10972;
+    private static final int NoReportMasterHAPort = 10979;
+    private static final int NoReportSlaveHAPort = 10980;
+
+
+    private static MessageExtBrokerInner buildMessage() throws Exception {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(Topic);
+        msg.setTags("TAG1");
+        msg.setBody(new byte[512]);
+        msg.setQueueId(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(new InetSocketAddress(InetAddress.getLocalHost(), 8123));
+        msg.setBornHost(new InetSocketAddress(InetAddress.getByName("10.232.102.184"), 0));
+        return msg;
+    }
+
+
+    private static boolean waitSlaveDispatch(final DefaultMessageStore master, final long offset,
+            final long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (master.getRuntimeInfo().get("haSlaveDispatchOffset") == null
+                || Long.parseLong(master.getRuntimeInfo().get("haSlaveDispatchOffset")) < offset) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+
+        return true;
+    }
+
+
+    @Test
+    public void test_suggest_slave_after_dispatched() throws Exception {
+        // Ϊ0κȡΪ̫
+        MessageStoreConfig masterConfig =
+                SlaveReputTest.buildConfig("route_master", BrokerRole.ASYNC_MASTER, MasterHAPort);
+        masterConfig.setAccessMessageInMemoryMaxRatio(0);
+        MessageStoreConfig slaveConfig = SlaveReputTest.buildConfig("route_slave", BrokerRole.SLAVE, SlaveHAPort);
+        slaveConfig.setHaSlaveDispatchReportEnable(true);
+        final DefaultMessageStore master = new DefaultMessageStore(masterConfig);
+        final DefaultMessageStore slave = new DefaultMessageStore(slaveConfig);
+        assertTrue(master.load());
+        assertTrue(slave.load());
+        master.start();
+
+        try {
+            for (int i = 0; i < 32; i++) {
+                assertTrue(master.putMessage(buildMessage()).isOk());
+            }
+            Thread.sleep(200);
+
+            // ûSlave㱨ַȣԭΪ
+            GetMessageResult result = master.getMessage(Topic, 0, 0, 8, null);
+            assertEquals(GetMessageStatus.FOUND, result.getStatus());
+            assertTrue(result.isSuggestPullingFromSlave());
+            result.release();
+
+            slave.updateMasterAddress("127.0.0.1:" + MasterHAPort);
+            slave.start();
+
+            // Master֪Slaveķַ
+            long masterMax = master.getMaxPhyOffset();
+            assertTrue(waitSlaveDispatch(master, masterMax, 10 * 1000));
+            assertEquals(32, slave.getMaxOffsetInQuque(Topic, 0));
+
+            result = master.getMessage(Topic, 0, 0, 8, null);
+            assertEquals(GetMessageStatus.FOUND, result.getStatus());
+            assertTrue(result.isSuggestPullingFromSlave());
+            result.release();
+
+            // Slave󲻶࣬صMaster
+            result = slave.getMessage(Topic, 0, 0, 8, null);
+            assertEquals(GetMessageStatus.FOUND, result.getStatus());
+            assertFalse(result.isSuggestPullingFromSlave());
+            result.release();
+
+            // ˳ֵֵܳ
+            slaveConfig.setAccessMessageInMemoryMaxRatio(0);
+            result = slave.getMessage(Topic, 0, 0, 8, null);
+            assertEquals(GetMessageStatus.FOUND, result.getStatus());
+            assertTrue(result.isSuggestPullingFromSlave());
+            result.release();
+        }
+        finally {
+            slave.shutdown();
+            master.shutdown();
+            slave.destroy();
+            master.destroy();
+        }
+    }
+
+
+    @Test
+    public void test_no_dispatch_report_without_handshake() throws Exception {
+        // Slaveû㱨ַȣֻ㱨Offset
+        MessageStoreConfig masterConfig =
+                SlaveReputTest.buildConfig("route_noreport_master", BrokerRole.ASYNC_MASTER, NoReportMasterHAPort);
+        MessageStoreConfig slaveConfig =
+                SlaveReputTest.buildConfig("route_noreport_slave", BrokerRole.SLAVE, NoReportSlaveHAPort);
+        final DefaultMessageStore master = new DefaultMessageStore(masterConfig);
+        final DefaultMessageStore slave = new DefaultMessageStore(slaveConfig);
+        slave.updateMasterAddress("127.0.0.1:" + NoReportMasterHAPort);
+        assertTrue(master.load());
+        assertTrue(slave.load());
+        master.start();
+        slave.start();
+
+        try {
+            for (int i = 0; i < 32; i++) {
+                assertTrue(master.putMessage(buildMessage()).isOk());
+            }
+
+            long deadline = System.currentTimeMillis() + 10 * 1000;
+            while (master.getHaService().getPush2SlaveAckOffset() < master.getMaxPhyOffset()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(master.getMaxPhyOffset(), master.getHaService().getPush2SlaveAckOffset());
+
+            // MasterȻûյַ
+            Thread.sleep(slaveConfig.getHaSendHeartbeatInterval() * 3);
+            assertEquals(-1, master.getHaService().getSlaveDispatchOffset());
+        }
+        finally {
+            slave.shutdown();
+            master.shutdown();
+            slave.destroy();
+            master.destroy();
+        }
+    }
+}
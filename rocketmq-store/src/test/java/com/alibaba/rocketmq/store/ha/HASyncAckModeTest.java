@@ -0,0 +1,103 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.junit.Test;
+
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.PutMessageStatus;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.HASyncAckMode;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * ͬ˫дӦģʽSlaveϿܽӦҪ
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class HASyncAckModeTest {
+    private static final String Topic = "HA_SYNC_ACK";
+    private static final int MasterHAPort = 10976;
+    private static final int Slave1HAPort = 10977;
+    private static final int Slave2HAPort = 10978;
+
+
+    private static MessageExtBrokerInner buildMessage() throws Exception {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(Topic);
+        msg.setTags("TAG1");
+        msg.setBody(new byte[256]);
+        msg.setQueueId(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(new InetSocketAddress(InetAddress.getLocalHost(), 8123));
+        msg.setBornHost(new InetSocketAddress(InetAddress.getByName("10.232.102.184"), 0));
+        return msg;
+    }
+
+
+    private static DefaultMessageStore startSlave(final String name, final int haPort) throws Exception {
+        DefaultMessageStore slave =
+                new DefaultMessageStore(SlaveReputTest.buildConfig(name, BrokerRole.SLAVE, haPort));
+        slave.updateMasterAddress("127.0.0.1:" + MasterHAPort);
+        assertTrue(slave.load());
+        slave.start();
+        return slave;
+    }
+
+
+    private static void waitConnectionCount(final DefaultMessageStore master, final int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30 * 1000;
+        while (master.getHaService().getConnectionCount().get() != count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, master.getHaService().getConnectionCount().get());
+    }
+
+
+    @Test
+    public void test_all_slave_disconnect() throws Exception {
+        MessageStoreConfig config = SlaveReputTest.buildConfig("ack_master", BrokerRole.SYNC_MASTER, MasterHAPort);
+        config.setHaSyncAckMode(HASyncAckMode.ALL);
+        config.setHaSyncExpectedSlaveNums(2);
+        config.setSyncFlushTimeout(3000);
+        DefaultMessageStore master = new DefaultMessageStore(config);
+        assertTrue(master.load());
+        master.start();
+
+        DefaultMessageStore slave1 = startSlave("ack_slave1", Slave1HAPort);
+        DefaultMessageStore slave2 = startSlave("ack_slave2", Slave2HAPort);
+        boolean slave2Stoped = false;
+        try {
+            waitConnectionCount(master, 2);
+            assertEquals(PutMessageStatus.PUT_OK, master.putMessage(buildMessage()).getPutMessageStatus());
+
+            // һSlaveϿʣSlaveٷسɹ
+            slave2.shutdown();
+            slave2Stoped = true;
+            waitConnectionCount(master, 1);
+            assertEquals(PutMessageStatus.SLAVE_NOT_AVAILABLE, master.putMessage(buildMessage())
+                .getPutMessageStatus());
+        }
+        finally {
+            if (!slave2Stoped) {
+                slave2.shutdown();
+            }
+            slave1.shutdown();
+            master.shutdown();
+            slave2.destroy();
+            slave1.destroy();
+            master.destroy();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.PutMessageResult;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * SlaveյHAݺַConsumeQueue
+ * 
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class SlaveReputTest {
+    private static final String Topic = "SLAVE_REPUT";
+    private static final int MasterHAPort = 10962;
+    private static final int SlaveHAPort = 10963;
+    private static SocketAddress BornHost;
+    private static SocketAddress StoreHost;
+    private static byte[] MessageBody;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        StoreHost = new InetSocketAddress(InetAddress.getLocalHost(), 8123);
+        BornHost = new InetSocketAddress(InetAddress.getByName("10.232.102.184"), 0);
+        MessageBody = new byte[512];
+    }
+
+
+    static MessageStoreConfig buildConfig(final String name, final BrokerRole role, final int haPort) {
+        String root =
+                System.getProperty("user.home") + File.separator + "unit_test_store_ha" + File.separator + name
+                        + File.separator;
+        MessageStoreConfig config = new MessageStoreConfig();
+        config.setStorePathCommitLog(root + "commitlog");
+        config.setStorePathConsumeQueue(root + "consumequeue");
+        config.setStorePathIndex(root + "index");
+        config.setStoreCheckpoint(root + "checkpoint");
+        config.setAbortFile(root + "abort");
+        config.setDelayOffsetStorePath(root + "config" + File.separator + "delayOffset.json");
+        config.setTranStateTableStorePath(root + "transaction" + File.separator + "statetable");
+        config.setTranRedoLogStorePath(root + "transaction" + File.separator + "redolog");
+        config.setTranStateTableCheckOffsetStorePath(root + "transaction" + File.separator + "checkOffset");
+        config.setMapedFileSizeCommitLog(1024 * 1024 * 64);
+        config.setMaxHashSlotNum(100);
+        config.setMaxIndexNum(100 * 10);
+        config.setBrokerRole(role);
+        config.setHaListenPort(haPort);
+        config.setHaSendHeartbeatInterval(200);
+        return config;
+    }
+
+
+    private static MessageExtBrokerInner buildMessage(final int queueId) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(Topic);
+        msg.setTags("TAG1");
+        msg.setBody(MessageBody);
+        msg.setQueueId(queueId);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(StoreHost);
+        msg.setBornHost(BornHost);
+        return msg;
+    }
+
+
+    /**
+     * ȴSlaveConsumeQueueﵽָλãغʱλ
+     */
+    private static long waitSlaveVisible(final DefaultMessageStore slave, final int queueId,
+            final long maxOffset, final long timeoutMillis) {
+        long begin = System.nanoTime();
+        long deadline = begin + timeoutMillis * 1000 * 1000;
+        while (slave.getMaxOffsetInQuque(Topic, queueId) < maxOffset) {
+            if (System.nanoTime() > deadline) {
+                return -1;
+            }
+            Thread.yield();
+        }
+
+        return System.nanoTime() - begin;
+    }
+
+
+    @Test
+    public void test_slave_visible_under_load() throws Exception {
+        final DefaultMessageStore master =
+                new DefaultMessageStore(buildConfig("master", BrokerRole.ASYNC_MASTER, MasterHAPort));
+        final DefaultMessageStore slave =
+                new DefaultMessageStore(buildConfig("slave", BrokerRole.SLAVE, SlaveHAPort));
+        slave.updateMasterAddress("127.0.0.1:" + MasterHAPort);
+        assertTrue(master.load());
+        assertTrue(slave.load());
+        master.start();
+        slave.start();
+
+        final AtomicBoolean stoped = new AtomicBoolean(false);
+        Thread[] loadThreads = new Thread[4];
+        try {
+            // ȴӽ
+            assertTrue(master.putMessage(buildMessage(0)).isOk());
+            assertTrue(waitSlaveVisible(slave, 0, 1, 30 * 1000) >= 0);
+
+            // ̨дУΪ
+            for (int i = 0; i < loadThreads.length; i++) {
+                loadThreads[i] = new Thread() {
+                    public void run() {
+                        while (!stoped.get()) {
+                            master.putMessage(buildMessage(1));
+                            try {
+                                Thread.sleep(1);
+                            }
+                            catch (InterruptedException e) {
+                            }
+                        }
+                    }
+                };
+                loadThreads[i].start();
+            }
+
+            long[] costs = new long[200];
+            for (int i = 0; i < costs.length; i++) {
+                PutMessageResult result = master.putMessage(buildMessage(0));
+                assertTrue(result.isOk());
+                costs[i] = waitSlaveVisible(slave, 0, i + 2, 5000);
+                assertTrue(costs[i] >= 0);
+            }
+
+            Arrays.sort(costs);
+            long median = costs[costs.length / 2] / 1000;
+            long p99 = costs[costs.length * 99 / 100] / 1000;
+            System.out.println("slave visible cost(us), median: " + median + " p99: " + p99 + " max: "
+                    + costs[costs.length - 1] / 1000);
+            System.out.println("slave runtime info: " + slave.getRuntimeInfo().get("slaveDispatchLagMillis") + " "
+                    + slave.getRuntimeInfo().get("slaveReputBehindBytes"));
+            assertTrue(median < 10 * 1000);
+
+            stoped.set(true);
+            for (Thread t : loadThreads) {
+                t.join();
+            }
+
+            // ֹͣSlave׷ƽMaster
+            long masterMax = master.getMaxOffsetInQuque(Topic, 1);
+            assertTrue(waitSlaveVisible(slave, 1, masterMax, 5000) >= 0);
+            assertEquals(masterMax, slave.getMaxOffsetInQuque(Topic, 1));
+        }
+        finally {
+            stoped.set(true);
+            slave.shutdown();
+            master.shutdown();
+            slave.destroy();
+            master.destroy();
+        }
+    }
+}
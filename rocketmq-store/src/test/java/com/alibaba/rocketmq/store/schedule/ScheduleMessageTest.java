@@ -3,19 +3,26 @@
  */
 package com.alibaba.rocketmq.store.schedule;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.alibaba.rocketmq.common.Message;
+import com.alibaba.rocketmq.common.MessageDecoder;
+import com.alibaba.rocketmq.common.MessageExt;
 import com.alibaba.rocketmq.store.DefaultMessageStore;
 import com.alibaba.rocketmq.store.GetMessageResult;
+import com.alibaba.rocketmq.store.GetMessageStatus;
 import com.alibaba.rocketmq.store.MessageExtBrokerInner;
 import com.alibaba.rocketmq.store.MessageStore;
 import com.alibaba.rocketmq.store.PutMessageResult;
@@ -126,4 +133,58 @@ public class ScheduleMessageTest {
         master.destroy();
         System.out.println("================================================================");
     }
+
+
+    @Test
+    public void test_delay_message_batch_redeliver() throws Exception {
+        long totalMsgs = 1000;
+        QUEUE_TOTAL = 1;
+        MessageBody = StoreMessage.getBytes();
+
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 32);
+        messageStoreConfig.setMapedFileSizeConsumeQueue(1024 * 16);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+        messageStoreConfig.setScheduleMessageBatchSize(64);
+
+        MessageStore master = new DefaultMessageStore(messageStoreConfig);
+        assertTrue(master.load());
+        master.start();
+
+        for (int i = 0; i < totalMsgs; i++) {
+            MessageExtBrokerInner msg = buildMessage();
+            msg.setTopic("DELAY_BATCH");
+            msg.setQueueId(0);
+            msg.setSysFlag(0);
+            msg.setDelayTimeLevel(1);
+            msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+            PutMessageResult result = master.putMessage(msg);
+            assertTrue(result.isOk());
+        }
+
+        // 1ʱ1sȴͶ
+        Thread.sleep(1000 * 6);
+
+        // ͶݺϢдʵTopicȥʱ
+        long received = 0;
+        while (received < totalMsgs) {
+            GetMessageResult result = master.getMessage("DELAY_BATCH", 0, received, 32, null);
+            assertEquals(GetMessageStatus.FOUND, result.getStatus());
+            for (ByteBuffer bb : result.getMessageBufferList()) {
+                MessageExt msgExt = MessageDecoder.decode(bb);
+                assertEquals("DELAY_BATCH", msgExt.getTopic());
+                assertEquals(0, msgExt.getQueueId());
+                assertEquals(received, msgExt.getQueueOffset());
+                assertEquals(StoreMessage, new String(msgExt.getBody()));
+                assertEquals("TAG1", msgExt.getTags());
+                assertNull(msgExt.getProperty(Message.PROPERTY_DELAY_TIME_LEVEL));
+                received++;
+            }
+            result.release();
+        }
+
+        master.shutdown();
+        master.destroy();
+    }
 }
@@ -0,0 +1,287 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.common.Message;
+import com.alibaba.rocketmq.common.MessageDecoder;
+import com.alibaba.rocketmq.common.MessageExt;
+import com.alibaba.rocketmq.common.sysflag.MessageSysFlag;
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.GetMessageResult;
+import com.alibaba.rocketmq.store.GetMessageStatus;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.PutMessageResult;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+
+
+/**
+ * ύǣConsume QueueָύǣȡʱPreparedϢ
+ *
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class LightweightTransactionMarkerTest {
+    private static final String Topic = "TRAN_MARKER";
+    private static final String ProducerGroup = "TRAN_MARKER_PG";
+    private static SocketAddress BornHost;
+    private static SocketAddress StoreHost;
+    private static byte[] MessageBody;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        StoreHost = new InetSocketAddress(InetAddress.getLocalHost(), 8123);
+        BornHost = new InetSocketAddress(InetAddress.getByName("10.232.102.184"), 0);
+        MessageBody = new byte[1024];
+        for (int i = 0; i < MessageBody.length; i++) {
+            MessageBody[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+
+    private MessageExtBrokerInner buildMessage(final int sysFlag, final String body) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(Topic);
+        msg.setQueueId(0);
+        msg.setBody(null == body ? null : body.getBytes());
+        msg.putProperty(Message.PROPERTY_TAGS, "TAG1");
+        msg.putProperty(Message.PROPERTY_PRODUCER_GROUP, ProducerGroup);
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        msg.setSysFlag(sysFlag);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(StoreHost);
+        msg.setBornHost(BornHost);
+        return msg;
+    }
+
+
+    private MessageStoreConfig buildStoreConfig() {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setMapedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+        return messageStoreConfig;
+    }
+
+
+    private DefaultMessageStore startStore(final MessageStoreConfig messageStoreConfig) throws Exception {
+        DefaultMessageStore store = new DefaultMessageStore(messageStoreConfig);
+        assertTrue(store.load());
+        store.start();
+        return store;
+    }
+
+
+    /**
+     * дһPreparedϢԼύ
+     * 
+     * @return [0] PreparedϢλã[1] ύλ
+     */
+    private long[] putCommittedTransaction(final DefaultMessageStore store, final String body,
+            final long tsOffset) {
+        PutMessageResult prepared =
+                store.putMessage(this.buildMessage(MessageSysFlag.TransactionPreparedType, body));
+        assertTrue(prepared.isOk());
+        return new long[] { prepared.getAppendMessageResult().getWroteOffset(),
+                           this.putCommitMarker(store, prepared, tsOffset) };
+    }
+
+
+    private long putCommitMarker(final DefaultMessageStore store, final PutMessageResult prepared,
+            final long tsOffset) {
+        MessageExtBrokerInner marker =
+                this.buildMessage(MessageSysFlag.TransactionLightweightMarkerFlag
+                        | MessageSysFlag.TransactionCommitType, null);
+        marker.setPreparedTransactionOffset(prepared.getAppendMessageResult().getWroteOffset());
+        marker.setQueueOffset(tsOffset);
+        PutMessageResult end = store.putMessage(marker);
+        assertTrue(end.isOk());
+        return end.getAppendMessageResult().getWroteOffset();
+    }
+
+
+    /**
+     * ģ쳣˳
+     */
+    private DefaultMessageStore restartAbnormally(final DefaultMessageStore store,
+            final MessageStoreConfig messageStoreConfig) throws Exception {
+        store.shutdown();
+        assertTrue(new File(messageStoreConfig.getAbortFile()).createNewFile());
+        return this.startStore(messageStoreConfig);
+    }
+
+
+    private void assertPulledBodies(final DefaultMessageStore store, final List<String> expected) {
+        assertEquals(expected.size(), store.getMaxOffsetInQuque(Topic, 0));
+        GetMessageResult result = store.getMessage(Topic, 0, 0, 32, null);
+        assertEquals(GetMessageStatus.FOUND, result.getStatus());
+        assertEquals(expected.size(), result.getMessageBufferList().size());
+        int i = 0;
+        for (ByteBuffer bb : result.getMessageBufferList()) {
+            MessageExt msgExt = MessageDecoder.decode(bb);
+            assertEquals(i, msgExt.getQueueOffset());
+            assertEquals(expected.get(i), new String(msgExt.getBody()));
+            i++;
+        }
+        result.release();
+    }
+
+
+    @Test
+    public void test_commit_marker() throws Exception {
+        final int totalMsgs = 200;
+
+        MessageStoreConfig messageStoreConfig = this.buildStoreConfig();
+        DefaultMessageStore master = this.startStore(messageStoreConfig);
+
+        // һͨϢһϢϢÿ4ع1
+        final List<String> expected = new ArrayList<String>();
+        long tsOffset = 0;
+        for (int i = 0; i < totalMsgs; i++) {
+            final String body = i + new String(MessageBody);
+            if (i % 2 == 0) {
+                PutMessageResult result = master.putMessage(this.buildMessage(0, body));
+                assertTrue(result.isOk());
+                expected.add(body);
+                continue;
+            }
+
+            PutMessageResult prepared =
+                    master.putMessage(this.buildMessage(MessageSysFlag.TransactionPreparedType, body));
+            assertTrue(prepared.isOk());
+
+            final boolean rollback = (i % 8 == 1);
+            final int tranType =
+                    rollback ? MessageSysFlag.TransactionRollbackType : MessageSysFlag.TransactionCommitType;
+            MessageExtBrokerInner marker =
+                    this.buildMessage(MessageSysFlag.TransactionLightweightMarkerFlag | tranType, null);
+            marker.setPreparedTransactionOffset(prepared.getAppendMessageResult().getWroteOffset());
+            marker.setQueueOffset(tsOffset++);
+            PutMessageResult end = master.putMessage(marker);
+            assertTrue(end.isOk());
+
+            // ύǲϢ
+            assertTrue(end.getAppendMessageResult().getWroteBytes() + MessageBody.length < prepared
+                .getAppendMessageResult().getWroteBytes());
+
+            if (!rollback) {
+                expected.add(body);
+            }
+        }
+
+        // ȴַ
+        Thread.sleep(1000 * 2);
+
+        int received = 0;
+        while (received < expected.size()) {
+            GetMessageResult result = master.getMessage(Topic, 0, received, 32, null);
+            assertEquals(GetMessageStatus.FOUND, result.getStatus());
+            for (ByteBuffer bb : result.getMessageBufferList()) {
+                MessageExt msgExt = MessageDecoder.decode(bb);
+                assertEquals(Topic, msgExt.getTopic());
+                assertEquals(received, msgExt.getQueueOffset());
+                assertEquals(expected.get(received), new String(msgExt.getBody()));
+                assertTrue(MessageSysFlag.TransactionPreparedType != MessageSysFlag.getTransactionValue(msgExt
+                    .getSysFlag()));
+                received++;
+            }
+            result.release();
+        }
+
+        assertEquals(expected.size(), master.getMaxOffsetInQuque(Topic, 0));
+
+        master.shutdown();
+        master.destroy();
+    }
+
+
+    /**
+     * 쳣·ַPreparedϢύ֮ͨϢظдConsume Queue
+     */
+    @Test
+    public void test_recover_abnormally_no_duplicate() throws Exception {
+        MessageStoreConfig messageStoreConfig = this.buildStoreConfig();
+        DefaultMessageStore master = this.startStore(messageStoreConfig);
+
+        final List<String> expected = new ArrayList<String>();
+        assertTrue(master.putMessage(this.buildMessage(0, "N0")).isOk());
+        expected.add("N0");
+        PutMessageResult prepared =
+                master.putMessage(this.buildMessage(MessageSysFlag.TransactionPreparedType, "P0"));
+        assertTrue(prepared.isOk());
+        assertTrue(master.putMessage(this.buildMessage(0, "N1")).isOk());
+        expected.add("N1");
+        this.putCommitMarker(master, prepared, 0);
+        expected.add("P0");
+        Thread.sleep(1000 * 2);
+        this.assertPulledBodies(master, expected);
+
+        master = this.restartAbnormally(master, messageStoreConfig);
+        Thread.sleep(1000 * 2);
+        this.assertPulledBodies(master, expected);
+
+        assertTrue(master.putMessage(this.buildMessage(0, "N2")).isOk());
+        expected.add("N2");
+        Thread.sleep(1000 * 2);
+        this.assertPulledBodies(master, expected);
+
+        master.shutdown();
+        master.destroy();
+    }
+
+
+    /**
+     * ύCommitLog𻵱ضϺConsume QueueжӦĿҲɾ
+     */
+    @Test
+    public void test_recover_truncated_marker() throws Exception {
+        MessageStoreConfig messageStoreConfig = this.buildStoreConfig();
+        DefaultMessageStore master = this.startStore(messageStoreConfig);
+
+        final List<String> expected = new ArrayList<String>();
+        assertTrue(master.putMessage(this.buildMessage(0, "N0")).isOk());
+        expected.add("N0");
+        final long[] offsets = this.putCommittedTransaction(master, "P0", 0);
+        Thread.sleep(1000 * 2);
+        assertEquals(2, master.getMaxOffsetInQuque(Topic, 0));
+        master.shutdown();
+
+        // ƻύǵħ
+        final int fileSize = messageStoreConfig.getMapedFileSizeCommitLog();
+        final File file =
+                new File(messageStoreConfig.getStorePathCommitLog(), String.format("%020d", offsets[1] / fileSize
+                        * fileSize));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(offsets[1] % fileSize + MessageDecoder.MessageMagicCodePostion);
+            raf.writeInt(0);
+        }
+        finally {
+            raf.close();
+        }
+
+        assertTrue(new File(messageStoreConfig.getAbortFile()).createNewFile());
+        master = this.startStore(messageStoreConfig);
+        Thread.sleep(1000 * 2);
+        this.assertPulledBodies(master, expected);
+
+        master.shutdown();
+        master.destroy();
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * $Id$
+ */
+package com.alibaba.rocketmq.store.transaction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+
+/**
+ * @author vintage.wang@gmail.com shijia.wxr@taobao.com
+ */
+public class LongHashSetTest {
+
+    @Test
+    public void test_add_remove() {
+        LongHashSet set = new LongHashSet(4);
+        assertTrue(set.add(0));
+        assertTrue(set.add(100));
+        assertFalse(set.add(100));
+        assertTrue(set.contains(0));
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertFalse(set.contains(0));
+        assertTrue(set.contains(100));
+        assertEquals(1, set.size());
+    }
+
+
+    @Test
+    public void test_reject_empty_value() {
+        LongHashSet set = new LongHashSet(4);
+        set.add(0);
+        try {
+            set.add(-1);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+        }
+        try {
+            set.remove(-1);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+        }
+        assertEquals(1, set.size());
+        assertTrue(set.contains(0));
+    }
+
+
+    @Test
+    public void test_compare_with_treeset() {
+        LongHashSet set = new LongHashSet(16);
+        TreeSet<Long> expected = new TreeSet<Long>();
+        Random random = new Random(0);
+
+        for (int i = 0; i < 200000; i++) {
+            // ֵСͻظɾ
+            long value = random.nextInt(50000) * 128L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+
+        long[] values = new long[expected.size()];
+        int i = 0;
+        for (Long value : expected) {
+            values[i++] = value;
+        }
+        assertArrayEquals(values, set.toSortedArray());
+    }
+}